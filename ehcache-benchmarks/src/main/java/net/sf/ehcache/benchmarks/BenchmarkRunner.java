@@ -0,0 +1,70 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count.
+ * <p>
+ * Thread counts are read, comma separated, from the {@value #THREADS_PROPERTY} system property and default to
+ * {@value #DEFAULT_THREADS}. All other arguments are passed as is to JMH, e.g.:
+ * <pre>
+ * java -Dnet.sf.ehcache.benchmarks.threads=1,8,32 -jar target/benchmarks.jar "CacheBenchmark.get" -p store=MEMORY
+ * </pre>
+ * When a result file is given through {@code -rff}, each run writes to that file suffixed with its thread count.
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * System property holding the comma separated thread counts to run with.
+     */
+    public static final String THREADS_PROPERTY = "net.sf.ehcache.benchmarks.threads";
+
+    /**
+     * Thread counts used when none are configured.
+     */
+    public static final String DEFAULT_THREADS = "1,4,16";
+
+    private BenchmarkRunner() {
+        // main class
+    }
+
+    /**
+     * Entry point.
+     *
+     * @param args JMH command line options
+     * @throws RunnerException if a benchmark fails
+     * @throws CommandLineOptionException if the options cannot be parsed
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (String threads : System.getProperty(THREADS_PROPERTY, DEFAULT_THREADS).split(",")) {
+            int count = Integer.parseInt(threads.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).threads(count);
+            if (commandLine.getResult().hasValue()) {
+                options.result(commandLine.getResult().get() + "." + count + "-threads");
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
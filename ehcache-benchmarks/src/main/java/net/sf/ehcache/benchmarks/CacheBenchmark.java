@@ -0,0 +1,180 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the single key {@link Cache} operations against every {@link StoreType}.
+ * <p>
+ * Caches are fully populated before measurement starts, so that {@code get} and {@code putIfAbsent} mostly hit
+ * and {@code put} mostly updates. The thread count is controlled through JMH's {@code -t} option, or through
+ * {@link BenchmarkRunner} which sweeps a list of thread counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CacheBenchmark {
+
+    /**
+     * Shared state: the cache under test and its pre-allocated keys and value.
+     */
+    @State(Scope.Benchmark)
+    public static class CacheState {
+
+        @Param
+        StoreType store;
+
+        @Param
+        KeyDistribution distribution;
+
+        @Param({"100000"})
+        int entries;
+
+        @Param({"128"})
+        int valueSize;
+
+        CacheManager cacheManager;
+        Cache cache;
+        Integer[] keys;
+        byte[] value;
+        private File diskStorePath;
+
+        /**
+         * Creates and populates the cache.
+         *
+         * @throws IOException if the disk store directory cannot be created
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            diskStorePath = File.createTempFile("ehcache-benchmark", "");
+            if (!diskStorePath.delete() || !diskStorePath.mkdirs()) {
+                throw new IOException("Could not create disk store directory " + diskStorePath);
+            }
+            cacheManager = new CacheManager(new Configuration().name("benchmark")
+                .diskStore(new DiskStoreConfiguration().path(diskStorePath.getAbsolutePath())));
+            cache = store.createCache(cacheManager, "benchmark-" + store.name().toLowerCase(), entries);
+
+            keys = new Integer[entries];
+            value = new byte[valueSize];
+            for (int i = 0; i < entries; i++) {
+                keys[i] = Integer.valueOf(i);
+                cache.put(new Element(keys[i], value));
+            }
+        }
+
+        /**
+         * Shuts the cache manager down and removes the disk store files.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            cacheManager.shutdown();
+            File[] files = diskStorePath.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            diskStorePath.delete();
+        }
+    }
+
+    /**
+     * Per thread state: each thread draws its keys from its own generator.
+     */
+    @State(Scope.Thread)
+    public static class KeyState {
+
+        private KeyDistribution.KeyGenerator generator;
+
+        /**
+         * Creates the generator, seeded per thread so that threads do not walk the key space in lock step.
+         *
+         * @param state the shared benchmark state
+         */
+        @Setup(Level.Trial)
+        public void setUp(CacheState state) {
+            generator = state.distribution.generator(state.entries, System.nanoTime() ^ Thread.currentThread().getId());
+        }
+
+        Integer nextKey(CacheState state) {
+            return state.keys[generator.next()];
+        }
+    }
+
+    /**
+     * Measures {@link Cache#get(Object)}.
+     */
+    @Benchmark
+    public Element get(CacheState state, KeyState keys) {
+        return state.cache.get(keys.nextKey(state));
+    }
+
+    /**
+     * Measures {@link Cache#put(Element)}.
+     */
+    @Benchmark
+    public void put(CacheState state, KeyState keys) {
+        state.cache.put(new Element(keys.nextKey(state), state.value));
+    }
+
+    /**
+     * Measures {@link Cache#putIfAbsent(Element)}.
+     */
+    @Benchmark
+    public Element putIfAbsent(CacheState state, KeyState keys) {
+        return state.cache.putIfAbsent(new Element(keys.nextKey(state), state.value));
+    }
+
+    /**
+     * Measures {@link Cache#remove(Object)}.
+     * <p>
+     * The removed mapping is put back quietly so that the cache population stays constant over the run,
+     * the score hence includes the cost of a {@link Cache#putQuiet(Element)}.
+     */
+    @Benchmark
+    public boolean remove(CacheState state, KeyState keys) {
+        Integer key = keys.nextKey(state);
+        boolean removed = state.cache.remove(key);
+        state.cache.putQuiet(new Element(key, state.value));
+        return removed;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.util.Random;
+
+/**
+ * The distributions keys are drawn from when exercising a cache.
+ */
+public enum KeyDistribution {
+
+    /**
+     * Every key of the key space is equally likely to be picked.
+     */
+    UNIFORM {
+        @Override
+        KeyGenerator generator(final int keySpace, final long seed) {
+            return new KeyGenerator() {
+                private final Random random = new Random(seed);
+
+                @Override
+                public int next() {
+                    return random.nextInt(keySpace);
+                }
+            };
+        }
+    },
+
+    /**
+     * Keys are picked following a zipfian distribution, the lowest keys being the most popular ones.
+     */
+    ZIPFIAN {
+        @Override
+        KeyGenerator generator(int keySpace, long seed) {
+            return new ZipfianGenerator(keySpace, ZipfianGenerator.DEFAULT_SKEW, seed);
+        }
+    };
+
+    /**
+     * Creates a new generator following this distribution.
+     * <p>
+     * Generators are not thread safe, each benchmark thread is expected to create its own.
+     *
+     * @param keySpace the number of distinct keys, generated keys are in {@code [0, keySpace)}
+     * @param seed the seed of the underlying random source
+     * @return a new generator
+     */
+    abstract KeyGenerator generator(int keySpace, long seed);
+
+    /**
+     * A source of keys.
+     */
+    interface KeyGenerator {
+
+        /**
+         * @return the next key
+         */
+        int next();
+    }
+
+    /**
+     * Zipfian generator, as described by Gray et al. in "Quickly Generating Billion-Record Synthetic Databases".
+     */
+    static final class ZipfianGenerator implements KeyGenerator {
+
+        /**
+         * The skew used by YCSB and most cache benchmarks.
+         */
+        static final double DEFAULT_SKEW = 0.99;
+
+        private final Random random;
+        private final int items;
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        ZipfianGenerator(int items, double theta, long seed) {
+            this.random = new Random(seed);
+            this.items = items;
+            this.theta = theta;
+            this.alpha = 1.0d / (1.0d - theta);
+            this.zetan = zeta(items, theta);
+            this.eta = (1 - Math.pow(2.0d / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        @Override
+        public int next() {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0d) {
+                return 0;
+            }
+            if (uz < 1.0d + Math.pow(0.5d, theta)) {
+                return 1;
+            }
+            return Math.min(items - 1, (int) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+}
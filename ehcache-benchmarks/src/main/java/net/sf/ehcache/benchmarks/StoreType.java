@@ -0,0 +1,123 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.MemoryUnit;
+import net.sf.ehcache.config.PersistenceConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+
+/**
+ * The store configurations exercised by the benchmarks.
+ * <p>
+ * Each constant builds a {@link Cache} whose {@link net.sf.ehcache.store.Store} is of a given shape, so that
+ * the same operation can be measured against every store implementation a non-clustered cache can end up with.
+ */
+public enum StoreType {
+
+    /**
+     * A heap only cache, backed by a {@link net.sf.ehcache.store.MemoryStore}.
+     */
+    MEMORY {
+        @Override
+        CacheConfiguration configure(CacheConfiguration configuration, int entries) {
+            return configuration.maxEntriesLocalHeap(entries);
+        }
+    },
+
+    /**
+     * A heap only cache, backed by the classic {@link net.sf.ehcache.store.LruMemoryStore}.
+     */
+    CLASSIC_LRU {
+        @Override
+        CacheConfiguration configure(CacheConfiguration configuration, int entries) {
+            return configuration.maxEntriesLocalHeap(entries).memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU);
+        }
+
+        @Override
+        Cache createCache(CacheManager cacheManager, String name, int entries) {
+            String previous = System.setProperty(Cache.NET_SF_EHCACHE_USE_CLASSIC_LRU, "true");
+            try {
+                return super.createCache(cacheManager, name, entries);
+            } finally {
+                if (previous == null) {
+                    System.clearProperty(Cache.NET_SF_EHCACHE_USE_CLASSIC_LRU);
+                } else {
+                    System.setProperty(Cache.NET_SF_EHCACHE_USE_CLASSIC_LRU, previous);
+                }
+            }
+        }
+    },
+
+    /**
+     * A {@link net.sf.ehcache.store.CacheStore} pairing an {@link net.sf.ehcache.store.cachingtier.OnHeapCachingTier}
+     * with a {@link net.sf.ehcache.store.disk.DiskStore}, where only a tenth of the entries fit in heap.
+     */
+    DISK_OVERFLOW {
+        @Override
+        CacheConfiguration configure(CacheConfiguration configuration, int entries) {
+            return configuration.maxEntriesLocalHeap(Math.max(1, entries / 10))
+                .persistence(new PersistenceConfiguration().strategy(PersistenceConfiguration.Strategy.LOCALTEMPSWAP));
+        }
+    },
+
+    /**
+     * A heap only cache copying values on both read and write.
+     */
+    COPY_ON_READ_WRITE {
+        @Override
+        CacheConfiguration configure(CacheConfiguration configuration, int entries) {
+            return configuration.maxEntriesLocalHeap(entries).copyOnRead(true).copyOnWrite(true);
+        }
+    },
+
+    /**
+     * A heap only cache bounded by a byte based pool ({@code maxBytesLocalHeap}), sized through the SizeOf engine.
+     */
+    POOLED_HEAP {
+        @Override
+        CacheConfiguration configure(CacheConfiguration configuration, int entries) {
+            // 256 bytes per entry leaves room for the key, the value and the Element itself
+            return configuration.maxBytesLocalHeap(entries * 256L, MemoryUnit.BYTES);
+        }
+    };
+
+    /**
+     * Applies the store specific settings to the configuration.
+     *
+     * @param configuration the configuration to amend
+     * @param entries the number of entries the cache is expected to hold
+     * @return the amended configuration
+     */
+    abstract CacheConfiguration configure(CacheConfiguration configuration, int entries);
+
+    /**
+     * Creates and registers a cache of this type against the cache manager.
+     *
+     * @param cacheManager the cache manager to register the cache against
+     * @param name the cache name
+     * @param entries the number of entries the cache is expected to hold
+     * @return the initialised cache
+     */
+    Cache createCache(CacheManager cacheManager, String name, int entries) {
+        Cache cache = new Cache(configure(new CacheConfiguration().name(name).eternal(true), entries));
+        cacheManager.addCache(cache);
+        return cache;
+    }
+}
@@ -16,6 +16,7 @@
 
 package net.sf.ehcache;
 
+import net.sf.ehcache.CacheOperationOutcomes.ComputeOutcome;
 import net.sf.ehcache.CacheOperationOutcomes.GetAllOutcome;
 import net.sf.ehcache.CacheOperationOutcomes.GetOutcome;
 import net.sf.ehcache.CacheOperationOutcomes.PutAllOutcome;
@@ -32,6 +33,7 @@ import net.sf.ehcache.cluster.ClusterScheme;
 import net.sf.ehcache.cluster.ClusterSchemeNotAvailableException;
 import net.sf.ehcache.concurrent.CacheLockProvider;
 import net.sf.ehcache.concurrent.LockType;
+import net.sf.ehcache.concurrent.SingleFlight;
 import net.sf.ehcache.concurrent.StripedReadWriteLockSync;
 import net.sf.ehcache.concurrent.Sync;
 import net.sf.ehcache.config.CacheConfiguration;
@@ -59,7 +61,9 @@ import net.sf.ehcache.pool.Pool;
 import net.sf.ehcache.pool.PoolEvictor;
 import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.impl.BoundedPool;
+import net.sf.ehcache.pool.impl.DeferredSizingPool;
 import net.sf.ehcache.pool.impl.FromLargestCachePoolEvictor;
+import net.sf.ehcache.pool.impl.MissCostMeter;
 import net.sf.ehcache.pool.impl.UnboundedPool;
 import net.sf.ehcache.search.Attribute;
 import net.sf.ehcache.search.Query;
@@ -71,11 +75,14 @@ import net.sf.ehcache.search.attribute.DynamicAttributesExtractor;
 import net.sf.ehcache.search.attribute.UnknownAttributeException;
 import net.sf.ehcache.search.expression.BaseCriteria;
 import net.sf.ehcache.statistics.StatisticsGateway;
+import net.sf.ehcache.store.Computation;
+import net.sf.ehcache.store.Computations;
 import net.sf.ehcache.store.CopyingCacheStore;
 import net.sf.ehcache.store.ElementValueComparator;
 import net.sf.ehcache.store.LegacyStoreWrapper;
 import net.sf.ehcache.store.LruMemoryStore;
 import net.sf.ehcache.store.MemoryStore;
+import net.sf.ehcache.store.PrimitiveKeyMemoryStore;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 import net.sf.ehcache.store.Policy;
 import net.sf.ehcache.store.Store;
@@ -88,6 +95,7 @@ import net.sf.ehcache.store.TxCopyingCacheStore;
 import net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy;
 import net.sf.ehcache.store.disk.DiskStore;
 import net.sf.ehcache.store.disk.StoreUpdateException;
+import net.sf.ehcache.store.offheap.OffHeapStore;
 import net.sf.ehcache.terracotta.InternalEhcache;
 import net.sf.ehcache.terracotta.TerracottaNotRunningException;
 import net.sf.ehcache.transaction.AbstractTransactionStore;
@@ -135,6 +143,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -257,6 +266,10 @@ public class Cache implements InternalEhcache, StoreListener {
 
     private final List<CacheLoader> registeredCacheLoaders = new CopyOnWriteArrayList<CacheLoader>();
 
+    private final MissCostMeter missCostMeter = new MissCostMeter();
+
+    private final SingleFlight<LoadKey, Element> loadsInFlight = new SingleFlight<LoadKey, Element>();
+
     private volatile CacheWriterManager cacheWriterManager;
 
     private final AtomicBoolean cacheWriterManagerInitFlag = new AtomicBoolean(false);
@@ -283,6 +296,8 @@ public class Cache implements InternalEhcache, StoreListener {
       .tag("cache").build();
     private final OperationObserver<RemoveElementOutcome> removeElementObserver = operation(RemoveElementOutcome.class).named("removeElement").of(this)
       .tag("cache").build();
+    private final OperationObserver<ComputeOutcome> computeObserver = operation(ComputeOutcome.class).named("compute").of(this)
+      .tag("cache").build();
 
     /**
      * A ThreadPoolExecutor which uses a thread pool to schedule loads in the order in which they are requested.
@@ -1102,7 +1117,11 @@ public class Cache implements InternalEhcache, StoreListener {
                 LOG.warn("Size based cache capacity constraints at heap tier (maxBytesLocalHeap) is deprecated now and not expected to work from Java 17 onwards. Consider maxEntriesLocalHeap instead");
                 PoolEvictor evictor = new FromLargestCachePoolEvictor();
                 SizeOfEngine sizeOfEngine = cacheManager.createSizeOfEngine(this);
-                onHeapPool = new BoundedPool(configuration.getMaxBytesLocalHeap(), evictor, sizeOfEngine);
+                if (DeferredSizingPool.isEnabled()) {
+                    onHeapPool = new DeferredSizingPool(configuration.getMaxBytesLocalHeap(), evictor, sizeOfEngine);
+                } else {
+                    onHeapPool = new BoundedPool(configuration.getMaxBytesLocalHeap(), evictor, sizeOfEngine);
+                }
             } else if (getCacheManager() != null && getCacheManager().getConfiguration().isMaxBytesLocalHeapSet()) {
                 onHeapPool = getCacheManager().getOnHeapPool();
             } else {
@@ -1197,11 +1216,6 @@ public class Cache implements InternalEhcache, StoreListener {
             } else {
                 FeaturesManager featuresManager = cacheManager.getFeaturesManager();
                 if (featuresManager == null) {
-                    if (configuration.isOverflowToOffHeap()) {
-                        throw new CacheException("Cache " + configuration.getName()
-                                + " cannot be configured because the enterprise features manager could not be found. "
-                                + "You must use an enterprise version of Ehcache to successfully enable overflowToOffHeap.");
-                    }
                     PersistenceConfiguration persistence = configuration.getPersistenceConfiguration();
                     if (persistence != null && Strategy.LOCALRESTARTABLE.equals(persistence.getStrategy())) {
                         throw new CacheException("Cache " + configuration.getName()
@@ -1209,12 +1223,16 @@ public class Cache implements InternalEhcache, StoreListener {
                                 + "You must use an enterprise version of Ehcache to successfully enable enterprise persistence.");
                     }
 
-                    if (useClassicLru && configuration.getMemoryStoreEvictionPolicy().equals(MemoryStoreEvictionPolicy.LRU)) {
+                    if (configuration.isOverflowToOffHeap()) {
+                        store = OffHeapStore.createCacheStore(this, onHeapPool, createOffHeapPool());
+                    } else if (useClassicLru && configuration.getMemoryStoreEvictionPolicy().equals(MemoryStoreEvictionPolicy.LRU)) {
                         Store disk = createDiskStore();
                         store = new LegacyStoreWrapper(new LruMemoryStore(this, disk), disk, registeredEventListeners, configuration);
                     } else {
                         if (configuration.isOverflowToDisk()) {
                             store = DiskStore.createCacheStore(this, onHeapPool, onDiskPool);
+                        } else if (PrimitiveKeyMemoryStore.isEnabled(this, onHeapPool)) {
+                            store = PrimitiveKeyMemoryStore.create(this);
                         } else {
                             store = MemoryStore.create(this, onHeapPool);
                         }
@@ -1457,6 +1475,32 @@ public class Cache implements InternalEhcache, StoreListener {
         }
     }
 
+    /**
+     * Creates the pool bounding the off-heap store of this cache.
+     * <p>
+     * The open source off-heap store can only be used as the sole authority behind the heap, and needs either this
+     * cache or its cache manager to define a <code>maxBytesLocalOffHeap</code>.
+     *
+     * @return the off-heap pool
+     */
+    private Pool createOffHeapPool() {
+        if (configuration.isOverflowToDisk()) {
+            throw new CacheException("Cache " + configuration.getName()
+                    + " cannot be configured because overflowToOffHeap and overflowToDisk can't be combined. "
+                    + "You must use an enterprise version of Ehcache to overflow to both off-heap and disk.");
+        }
+        if (configuration.getMaxBytesLocalOffHeap() > 0) {
+            PoolEvictor evictor = new FromLargestCachePoolEvictor();
+            return new BoundedPool(configuration.getMaxBytesLocalOffHeap(), evictor, null);
+        } else if (getCacheManager() != null && getCacheManager().getConfiguration().isMaxBytesLocalOffHeapSet()) {
+            return getCacheManager().getOffHeapPool();
+        } else {
+            throw new CacheException("Cache " + configuration.getName()
+                    + " cannot be configured because overflowToOffHeap requires maxBytesLocalOffHeap to be set"
+                    + " on either the cache or its cache manager.");
+        }
+    }
+
     /**
      * Whether this cache uses a disk store
      *
@@ -1636,10 +1680,13 @@ public class Cache implements InternalEhcache, StoreListener {
 
         backOffIfDiskSpoolFull();
 
-        compoundStore.putAll(elements);
         for (Element element : elements) {
             element.resetAccessStatistics();
             applyDefaultsToElementWithoutLifespanSet(element);
+            element.updateUpdateStatistics();
+        }
+        compoundStore.putAll(elements);
+        for (Element element : elements) {
             notifyPutInternalListeners(element, doNotNotifyCacheReplicators, false);
         }
         putAllObserver.end(PutAllOutcome.COMPLETED);
@@ -1824,7 +1871,8 @@ public class Cache implements InternalEhcache, StoreListener {
      * the one associated with the cache. If both are null, no load is performed and null is returned.
      * <p>
      * Because this method may take a long time to complete, it is not synchronized. The underlying cache operations
-     * are synchronized.
+     * are synchronized. Concurrent calls missing the same key with the same loader and loader argument share a single
+     * load.
      *
      * @param key            key whose associated value is to be returned.
      * @param loader         the override loader to use. If null, the cache's default loader will be used
@@ -1845,40 +1893,71 @@ public class Cache implements InternalEhcache, StoreListener {
         }
 
         try {
-            //check again in case the last thread loaded it
-            element = getQuiet(key);
-            if (element != null) {
-                return element;
-            }
-
-            //wait for result
+            //join the load in flight for the key with the same loader and argument, if any
             long cacheLoaderTimeoutMillis = configuration.getCacheLoaderTimeoutMillis();
-            final Object value;
+            Callable<Element> load = loadElementUsingLoader(key, loader, loaderArgument);
             if (cacheLoaderTimeoutMillis > 0) {
-                final Future<AtomicReference<Object>> future = asynchronousLoad(key, loader, loaderArgument);
-                value = future.get(cacheLoaderTimeoutMillis, TimeUnit.MILLISECONDS).get();
-            } else {
-                value = loadValueUsingLoader(key, loader, loaderArgument);
-            }
-            if (value == null) {
-                return getQuiet(key);
+                return loadsInFlight.submit(new LoadKey(key, loader, loaderArgument), load, getExecutorService())
+                    .get(cacheLoaderTimeoutMillis, TimeUnit.MILLISECONDS);
             } else {
-                Element newElement = new Element(key, value);
-                put(newElement, false);
-                Element fromCache = getQuiet(key);
-                if (fromCache == null) {
-                    return newElement;
-                } else {
-                    return fromCache;
-                }
+                return loadsInFlight.get(new LoadKey(key, loader, loaderArgument), load);
             }
         } catch (TimeoutException e) {
             throw new LoaderTimeoutException("Timeout on load for key " + key, e);
+        } catch (ExecutionException e) {
+            throw new CacheException("Exception on load for key " + key, e.getCause());
         } catch (Exception e) {
             throw new CacheException("Exception on load for key " + key, e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public CompletableFuture<Element> getWithLoaderAsync(Object key, CacheLoader loader, Object loaderArgument) throws CacheException {
+
+        Element element = get(key);
+        if (element != null || (registeredCacheLoaders.size() == 0 && loader == null)) {
+            return CompletableFuture.completedFuture(element);
+        }
+
+        return loadsInFlight.submit(new LoadKey(key, loader, loaderArgument), loadElementUsingLoader(key, loader, loaderArgument),
+            getExecutorService());
+    }
+
+    /**
+     * Creates the load of an element missing from the cache, which puts the loaded value in the cache.
+     * @param key the key to load for
+     * @param specificLoader the loader to use, can be null to fallback to Cache registered loaders
+     * @param argument the argument to pass the loader
+     * @return the load, returning the element found in or put to the cache, or null if none could be loaded
+     */
+    private Callable<Element> loadElementUsingLoader(final Object key, final CacheLoader specificLoader, final Object argument) {
+        return new Callable<Element>() {
+            public Element call() {
+                //check again in case the last thread loaded it
+                Element element = getQuiet(key);
+                if (element != null) {
+                    return element;
+                }
+
+                Object value = loadValueUsingLoader(key, specificLoader, argument);
+                if (value == null) {
+                    return getQuiet(key);
+                } else {
+                    Element newElement = new Element(key, value);
+                    put(newElement, false);
+                    Element fromCache = getQuiet(key);
+                    if (fromCache == null) {
+                        return newElement;
+                    } else {
+                        return fromCache;
+                    }
+                }
+            }
+        };
+    }
+
     /**
      * The load method provides a means to "pre-load" the cache. This method will, asynchronously, load the specified
      * object into the cache using the associated CacheLoader. If the object already exists in the cache, no action is
@@ -3091,6 +3170,16 @@ public class Cache implements InternalEhcache, StoreListener {
         firePropertyChange("CacheManager", oldValue, cacheManager);
     }
 
+    /**
+     * Accessor for the meter of the time spent loading the entries missing from this cache, as used by the pool
+     * evictors weighing what evicting from this cache costs.
+     *
+     * @return the miss cost meter of this cache
+     */
+    public MissCostMeter getMissCostMeter() {
+        return missCostMeter;
+    }
+
     /**
      * Accessor for the BootstrapCacheLoader associated with this cache. For testing purposes.
      */
@@ -3379,6 +3468,7 @@ public class Cache implements InternalEhcache, StoreListener {
      */
     private Object loadValueUsingLoader(final Object key, final CacheLoader specificLoader, final Object argument) {
         Object value = null;
+        long start = System.nanoTime();
         if (specificLoader != null) {
             if (argument == null) {
                 value = specificLoader.load(key);
@@ -3387,7 +3477,10 @@ public class Cache implements InternalEhcache, StoreListener {
             }
         } else if (!registeredCacheLoaders.isEmpty()) {
             value = loadWithRegisteredLoaders(argument, key);
+        } else {
+            return null;
         }
+        missCostMeter.record(System.nanoTime() - start);
         return value;
     }
 
@@ -3854,6 +3947,136 @@ public class Cache implements InternalEhcache, StoreListener {
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Element compute(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException, CacheException {
+        return compute(key, new ValueComputation(remapper, false, false));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element computeIfAbsent(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        return compute(key, new ValueComputation(remapper, true, false));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element computeIfPresent(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        return compute(key, new ValueComputation(remapper, false, true));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element merge(Object key, final Object value, final ValueMerger merger) throws NullPointerException, IllegalStateException,
+            CacheException {
+        if (value == null || merger == null) {
+            throw new NullPointerException();
+        }
+        return compute(key, new ValueComputation(new ValueRemapper() {
+            public Object remap(Object key, Object currentValue) {
+                return currentValue == null ? value : merger.merge(currentValue, value);
+            }
+        }, false, false));
+    }
+
+    private Element compute(Object key, ValueComputation computation) {
+        computeObserver.begin();
+        checkStatus();
+
+        checkCASOperationSupported();
+
+        if (key == null || computation.remapper == null) {
+            throw new NullPointerException();
+        }
+
+        if (disabled) {
+            computeObserver.end(ComputeOutcome.IGNORED);
+            return null;
+        }
+
+        backOffIfDiskSpoolFull();
+
+        initialiseCacheWriterManager(false);
+        if (registeredCacheWriter != null && cacheWriterManagerInitFlag.get()) {
+            computation.writerManager = cacheWriterManager;
+        }
+
+        Element result;
+        try {
+            result = Computations.compute(compoundStore, key, computation);
+        } catch (CacheWriterManagerException e) {
+            throw e.getCause();
+        }
+        Element previous = computation.previous;
+        if (computation.expired != null) {
+            notifyRemoveInternalListeners(key, true, true, false, computation.expired);
+        }
+        if (result == previous) {
+            computeObserver.end(ComputeOutcome.UNCHANGED);
+        } else if (result == null) {
+            notifyRemoveInternalListeners(key, false, true, false, previous);
+            computeObserver.end(ComputeOutcome.REMOVED);
+        } else {
+            notifyPutInternalListeners(result, false, previous != null);
+            computeObserver.end(previous == null ? ComputeOutcome.ADDED : ComputeOutcome.UPDATED);
+        }
+        return result;
+    }
+
+    /**
+     * Maps a key to the value computed by a {@link ValueRemapper}, recording the element it replaced.
+     * <p>
+     * When the cache has a writer, the new mapping is written through before it is installed, so that a failing
+     * writer leaves the cache unchanged.
+     */
+    private final class ValueComputation implements Computation {
+
+        private final ValueRemapper remapper;
+        private final boolean ifAbsent;
+        private final boolean ifPresent;
+        private CacheWriterManager writerManager;
+        private Element previous;
+        private Element expired;
+
+        private ValueComputation(ValueRemapper remapper, boolean ifAbsent, boolean ifPresent) {
+            this.remapper = remapper;
+            this.ifAbsent = ifAbsent;
+            this.ifPresent = ifPresent;
+        }
+
+        public Element compute(Object key, Element current) {
+            if (current != null && current.isExpired(configuration)) {
+                expired = current;
+            } else {
+                previous = current;
+            }
+            if ((ifAbsent && previous != null) || (ifPresent && previous == null)) {
+                return previous;
+            }
+
+            Object value = remapper.remap(key, previous == null ? null : previous.getObjectValue());
+            if (value == null) {
+                if (writerManager != null && previous != null) {
+                    writerManager.remove(new CacheEntry(key, previous));
+                }
+                return null;
+            }
+            Element element = new Element(key, value);
+            applyDefaultsToElementWithoutLifespanSet(element);
+            element.updateUpdateStatistics();
+            if (writerManager != null) {
+                writerManager.put(element);
+            }
+            return element;
+        }
+    }
+
     private void checkCASOperationSupported() {
         checkCASOperationSupported(false);
     }
@@ -4094,6 +4317,37 @@ public class Cache implements InternalEhcache, StoreListener {
         this.compoundStore.recalculateSize(key);
     }
 
+    /**
+     * Identifies a load in flight: loads of the same key only share a flight when made with the same loader and
+     * loader argument.
+     */
+    private static final class LoadKey {
+        private final Object key;
+        private final CacheLoader loader;
+        private final Object argument;
+
+        private LoadKey(Object key, CacheLoader loader, Object argument) {
+            this.key = key;
+            this.loader = loader;
+            this.argument = argument;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LoadKey)) {
+                return false;
+            }
+            LoadKey other = (LoadKey) obj;
+            return key.equals(other.key) && loader == other.loader
+                   && (argument == null ? other.argument == null : argument.equals(other.argument));
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + System.identityHashCode(loader);
+        }
+    }
+
     /**
      * Private class maintaining status of the cache
      *
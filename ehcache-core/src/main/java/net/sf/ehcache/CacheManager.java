@@ -48,6 +48,8 @@ import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.SizeOfEngineLoader;
 import net.sf.ehcache.pool.impl.BalancedAccessEvictor;
 import net.sf.ehcache.pool.impl.BoundedPool;
+import net.sf.ehcache.pool.impl.CostAwarePoolEvictor;
+import net.sf.ehcache.pool.impl.DeferredSizingPool;
 import net.sf.ehcache.store.Store;
 import net.sf.ehcache.terracotta.ClusteredInstanceFactory;
 import net.sf.ehcache.terracotta.TerracottaClient;
@@ -231,6 +233,8 @@ public class CacheManager {
 
     private volatile Pool onDiskPool;
 
+    private volatile Pool onOffHeapPool;
+
     private volatile Configuration.RuntimeCfg runtimeCfg;
 
     private volatile DelegatingTransactionIDFactory transactionIDFactory;
@@ -452,14 +456,22 @@ public class CacheManager {
           });
 
        if (configuration.isMaxBytesLocalHeapSet()) {
-            PoolEvictor evictor = new BalancedAccessEvictor();
+            PoolEvictor evictor = CostAwarePoolEvictor.isEnabled() ? new CostAwarePoolEvictor() : new BalancedAccessEvictor();
             SizeOfEngine sizeOfEngine = createSizeOfEngine(null);
-            this.onHeapPool = new BoundedPool(configuration.getMaxBytesLocalHeap(), evictor, sizeOfEngine);
+            if (DeferredSizingPool.isEnabled()) {
+                this.onHeapPool = new DeferredSizingPool(configuration.getMaxBytesLocalHeap(), evictor, sizeOfEngine);
+            } else {
+                this.onHeapPool = new BoundedPool(configuration.getMaxBytesLocalHeap(), evictor, sizeOfEngine);
+            }
         }
         if (configuration.isMaxBytesLocalDiskSet()) {
             PoolEvictor evictor = new BalancedAccessEvictor();
             this.onDiskPool = new BoundedPool(configuration.getMaxBytesLocalDisk(), evictor, null);
         }
+        if (configuration.isMaxBytesLocalOffHeapSet()) {
+            PoolEvictor evictor = new BalancedAccessEvictor();
+            this.onOffHeapPool = new BoundedPool(configuration.getMaxBytesLocalOffHeap(), evictor, null);
+        }
 
         boolean clustered = false;
         terracottaClient = new TerracottaClient(this, configuration.getTerracottaConfiguration());
@@ -660,6 +672,15 @@ public class CacheManager {
         return onDiskPool;
     }
 
+    /**
+     * Return this cache manager's shared off-heap pool
+     *
+     * @return this cache manager's shared off-heap pool
+     */
+    public Pool getOffHeapPool() {
+        return onOffHeapPool;
+    }
+
     /**
      * Returns unique cluster-wide id for this cache-manager. Only applicable when running in "cluster" mode, e.g. when this cache-manager
      * contains caches clustered with Terracotta. Otherwise returns blank string.
@@ -58,6 +58,22 @@ public interface CacheOperationOutcomes {
         SUCCESS
     };
 
+    /**
+     * The outcomes for compute operations.
+     */
+    enum ComputeOutcome {
+        /** added. */
+        ADDED,
+        /** updated. */
+        UPDATED,
+        /** removed. */
+        REMOVED,
+        /** mapping left unchanged. */
+        UNCHANGED,
+        /** ignored. */
+        IGNORED
+    };
+
     /**
      * The outcomes for GetAll operations.
      */
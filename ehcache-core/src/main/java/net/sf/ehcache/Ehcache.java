@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import net.sf.ehcache.bootstrap.BootstrapCacheLoader;
 import net.sf.ehcache.config.CacheConfiguration;
@@ -215,6 +216,138 @@ public interface Ehcache extends Cloneable {
      */
     Element replace(Element element) throws NullPointerException;
 
+    /**
+     * Atomically computes the value mapped to the key from its current value.
+     * <p>
+     * {@link Cache} invokes the remapper exactly once, from within the store's lock for the key. Expired elements are
+     * seen as absent. Returning null from the remapper removes the mapping. If a {@link net.sf.ehcache.writer.CacheWriter}
+     * is registered, the change is written through it before being applied to the cache.
+     * <p>
+     * The default implementation retries {@link #putIfAbsent(Element)}, {@link #replace(Element, Element)} and
+     * {@link #removeElement(Element)} until one succeeds, so the remapper may be invoked more than once under contention.
+     *
+     * @param key the key
+     * @param remapper computes the new value from the current one, which may be null
+     * @return the element now mapped to the key, or null if there is none
+     * @throws NullPointerException if the key or the remapper is null
+     * @throws IllegalStateException if the cache is not {@link net.sf.ehcache.Status#STATUS_ALIVE}
+     */
+    default Element compute(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException, CacheException {
+        if (key == null || remapper == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            Element current = getQuiet(key);
+            Object value = remapper.remap(key, current == null ? null : current.getObjectValue());
+            if (value == null) {
+                if (current == null || removeElement(current)) {
+                    return null;
+                }
+            } else {
+                Element element = new Element(key, value);
+                if (current == null ? putIfAbsent(element) == null : replace(current, element)) {
+                    return element;
+                }
+            }
+        }
+    }
+
+    /**
+     * Atomically computes the value mapped to the key if no element is currently mapped to it.
+     * <p>
+     * {@link Cache} invokes the remapper at most once, with a null current value, from within the store's lock for the
+     * key. The default implementation installs the computed value with {@link #putIfAbsent(Element)}.
+     *
+     * @param key the key
+     * @param remapper computes the value to map the key to
+     * @return the element now mapped to the key, or null if there is none
+     * @throws NullPointerException if the key or the remapper is null
+     * @throws IllegalStateException if the cache is not {@link net.sf.ehcache.Status#STATUS_ALIVE}
+     * @see #compute(Object, ValueRemapper)
+     */
+    default Element computeIfAbsent(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        if (key == null || remapper == null) {
+            throw new NullPointerException();
+        }
+        Element current = getQuiet(key);
+        if (current != null) {
+            return current;
+        }
+        Object value = remapper.remap(key, null);
+        if (value == null) {
+            return null;
+        }
+        Element element = new Element(key, value);
+        current = putIfAbsent(element);
+        return current == null ? element : current;
+    }
+
+    /**
+     * Atomically computes the value mapped to the key if an element is currently mapped to it.
+     * <p>
+     * {@link Cache} invokes the remapper at most once, with the current value, from within the store's lock for the key.
+     * The default implementation retries {@link #replace(Element, Element)} and {@link #removeElement(Element)} until one
+     * succeeds or the key is no longer mapped.
+     *
+     * @param key the key
+     * @param remapper computes the new value from the current one
+     * @return the element now mapped to the key, or null if there is none
+     * @throws NullPointerException if the key or the remapper is null
+     * @throws IllegalStateException if the cache is not {@link net.sf.ehcache.Status#STATUS_ALIVE}
+     * @see #compute(Object, ValueRemapper)
+     */
+    default Element computeIfPresent(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        if (key == null || remapper == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            Element current = getQuiet(key);
+            if (current == null) {
+                return null;
+            }
+            Object value = remapper.remap(key, current.getObjectValue());
+            if (value == null) {
+                if (removeElement(current)) {
+                    return null;
+                }
+            } else {
+                Element element = new Element(key, value);
+                if (replace(current, element)) {
+                    return element;
+                }
+            }
+        }
+    }
+
+    /**
+     * Atomically maps the key to the given value if no element is currently mapped to it, or to the merge of the current
+     * value with the given one otherwise.
+     * <p>
+     * {@link Cache} invokes the merger at most once, from within the store's lock for the key. The default
+     * implementation merges through {@link #compute(Object, ValueRemapper)}.
+     *
+     * @param key the key
+     * @param value the value to map or merge in
+     * @param merger merges the current value with the given one
+     * @return the element now mapped to the key, or null if there is none
+     * @throws NullPointerException if the key, the value or the merger is null
+     * @throws IllegalStateException if the cache is not {@link net.sf.ehcache.Status#STATUS_ALIVE}
+     * @see #compute(Object, ValueRemapper)
+     */
+    default Element merge(Object key, final Object value, final ValueMerger merger) throws NullPointerException,
+            IllegalStateException, CacheException {
+        if (value == null || merger == null) {
+            throw new NullPointerException();
+        }
+        return compute(key, new ValueRemapper() {
+            public Object remap(Object key, Object currentValue) {
+                return currentValue == null ? value : merger.merge(currentValue, value);
+            }
+        });
+    }
+
     /**
      * Gets an element from the cache. Updates Element Statistics
      * <p>
@@ -906,6 +1039,23 @@ public interface Ehcache extends Cloneable {
      */
     public Element getWithLoader(Object key, CacheLoader loader, Object loaderArgument) throws CacheException;
 
+    /**
+     * This method will return, without waiting for any load, a future of the element found in the cache or loaded
+     * for the given key. If the element is missing, the cache loader is called on the cache's executor: either the
+     * CacheLoader passed in, or if null, the ones registered with the cache. If both are null, no load is performed
+     * and the future holds null.
+     * <p>
+     * Concurrent calls for a key that is already being loaded are handed the future of that load, so that a key is
+     * only loaded once however many threads miss it. These calls do not run their own loader.
+     *
+     * @param key key whose associated value is to be returned.
+     * @param loader the override loader to use. If null, the cache's default loader will be used
+     * @param loaderArgument an argument to pass to the CacheLoader.
+     * @return the future of an element if it existed or could be loaded, otherwise of null
+     * @throws CacheException a runtime cache exception
+     */
+    public CompletableFuture<Element> getWithLoaderAsync(Object key, CacheLoader loader, Object loaderArgument) throws CacheException;
+
     /**
      * The getAll method will return, from the cache, a Map of the objects associated with the Collection of keys in argument "keys".
      * If the objects are not in the cache, the associated cache loader will be called. If no loader is associated with an object,
@@ -0,0 +1,34 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache;
+
+/**
+ * Merges the value currently mapped to a key with a new one, as used by {@link Ehcache#merge(Object, Object, ValueMerger)}.
+ * <p>
+ * Implementations are invoked while holding the lock for the key, they should be quick and must not access the cache.
+ */
+public interface ValueMerger {
+
+    /**
+     * Merges the two values.
+     *
+     * @param currentValue the value currently mapped to the key
+     * @param value the value being merged in
+     * @return the value to map the key to, or null to remove the mapping
+     */
+    Object merge(Object currentValue, Object value);
+}
@@ -0,0 +1,148 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * Coalesces concurrent loads of the same key into a single one.
+ * <p>
+ * The first thread to ask for a key that is not being loaded starts the load, and every thread asking for that key
+ * until the load completes is handed the same future. Loads are tracked per key, so that a slow load never holds up
+ * the loads of other keys. A key is forgotten as soon as its load completes: a later request starts a new load.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the loaded values
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    /**
+     * Loads the value of a key on the given executor, unless it is being loaded already.
+     *
+     * @param key the key to load
+     * @param load the load to run if none is in flight for the key
+     * @param executor the executor to run the load on
+     * @return the future of the load in flight for the key
+     * @throws RejectedExecutionException if the executor does not accept the load
+     */
+    public CompletableFuture<V> submit(K key, final Callable<V> load, Executor executor) throws RejectedExecutionException {
+        final CompletableFuture<V> flight = new CompletableFuture<V>();
+        CompletableFuture<V> inFlight = start(key, flight);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    complete(flight, load);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            flight.cancel(false);
+            throw e;
+        }
+        return flight;
+    }
+
+    /**
+     * Loads the value of a key in the calling thread, or waits for the load already in flight for it.
+     *
+     * @param key the key to load
+     * @param load the load to run if none is in flight for the key
+     * @return the loaded value
+     * @throws ExecutionException if the load failed
+     * @throws InterruptedException if interrupted while waiting for another thread's load
+     */
+    public V get(K key, Callable<V> load) throws ExecutionException, InterruptedException {
+        CompletableFuture<V> flight = new CompletableFuture<V>();
+        CompletableFuture<V> inFlight = start(key, flight);
+        if (inFlight != null) {
+            return inFlight.get();
+        }
+        complete(flight, load);
+        return flight.get();
+    }
+
+    /**
+     * Loads the value of a key in the calling thread, or waits up to the given time for the load already in flight
+     * for it.
+     *
+     * @param key the key to load
+     * @param load the load to run if none is in flight for the key
+     * @param timeout the maximum time to wait for another thread's load
+     * @param unit the unit of the timeout
+     * @return the loaded value
+     * @throws ExecutionException if the load failed
+     * @throws InterruptedException if interrupted while waiting for another thread's load
+     * @throws TimeoutException if another thread's load did not complete in time
+     */
+    public V get(K key, Callable<V> load, long timeout, TimeUnit unit) throws ExecutionException, InterruptedException,
+        TimeoutException {
+        CompletableFuture<V> flight = new CompletableFuture<V>();
+        CompletableFuture<V> inFlight = start(key, flight);
+        if (inFlight != null) {
+            return inFlight.get(timeout, unit);
+        }
+        complete(flight, load);
+        return flight.get();
+    }
+
+    /**
+     * Returns the number of keys being loaded.
+     *
+     * @return the number of loads in flight
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    /**
+     * Tracks the flight for the key, unless one is in flight already, forgetting it as soon as it completes.
+     *
+     * @return the flight already in flight for the key, or null if the given one was started
+     */
+    private CompletableFuture<V> start(final K key, final CompletableFuture<V> flight) {
+        CompletableFuture<V> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight == null) {
+            flight.whenComplete(new BiConsumer<V, Throwable>() {
+                public void accept(V value, Throwable failure) {
+                    flights.remove(key, flight);
+                }
+            });
+        }
+        return inFlight;
+    }
+
+    private static <V> void complete(CompletableFuture<V> flight, Callable<V> load) {
+        try {
+            flight.complete(load.call());
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import net.sf.ehcache.config.TerracottaConfiguration.Consistency;
 import net.sf.ehcache.event.NotificationScope;
 import net.sf.ehcache.search.attribute.DynamicAttributesExtractor;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import net.sf.ehcache.serialization.Serializer;
 import net.sf.ehcache.store.compound.ReadWriteCopyStrategy;
 
 import org.slf4j.Logger;
@@ -115,6 +116,21 @@ public class CacheConfiguration implements Cloneable {
      */
     public static final int DEFAULT_DISK_ACCESS_STRIPES = 1;
 
+    /**
+     * Default number of disk writer threads.
+     */
+    public static final int DEFAULT_DISK_WRITER_THREADS = 1;
+
+    /**
+     * Default number of elements written to disk in a single batch.
+     */
+    public static final int DEFAULT_DISK_WRITE_BATCH_SIZE = 1;
+
+    /**
+     * Default diskAccessMode.
+     */
+    public static final DiskAccessMode DEFAULT_DISK_ACCESS_MODE = DiskAccessMode.STREAM;
+
     /**
      * Logging is off by default.
      */
@@ -183,6 +199,11 @@ public class CacheConfiguration implements Cloneable {
      */
     public static final CopyStrategyConfiguration DEFAULT_COPY_STRATEGY_CONFIGURATION = new CopyStrategyConfiguration();
 
+    /**
+     * Default serializerConfiguration
+     */
+    public static final SerializerConfiguration DEFAULT_SERIALIZER_CONFIGURATION = new SerializerConfiguration();
+
     /**
      * Default maxBytesOnHeap value
      *
@@ -306,6 +327,26 @@ public class CacheConfiguration implements Cloneable {
      */
     protected volatile int diskAccessStripes = DEFAULT_DISK_ACCESS_STRIPES;
 
+    /**
+     * The number of threads writing to the disk store.
+     */
+    protected volatile int diskWriterThreads = DEFAULT_DISK_WRITER_THREADS;
+
+    /**
+     * The maximum number of elements written to disk in a single batch.
+     */
+    protected volatile int diskWriteBatchSize = DEFAULT_DISK_WRITE_BATCH_SIZE;
+
+    /**
+     * Whether each batch written to a persistent disk store is forced to the device.
+     */
+    protected volatile boolean diskWriteBatchSync;
+
+    /**
+     * The engine used to access the disk store data file.
+     */
+    protected volatile DiskAccessMode diskAccessMode = DEFAULT_DISK_ACCESS_MODE;
+
     /**
      * The interval in seconds between runs of the disk expiry thread.
      * <p>
@@ -387,6 +428,7 @@ public class CacheConfiguration implements Cloneable {
     private volatile TransactionalMode transactionalMode;
     private volatile boolean statistics = DEFAULT_STATISTICS;
     private volatile CopyStrategyConfiguration copyStrategyConfiguration = DEFAULT_COPY_STRATEGY_CONFIGURATION.copy();
+    private volatile SerializerConfiguration serializerConfiguration = DEFAULT_SERIALIZER_CONFIGURATION.copy();
     private volatile SizeOfPolicyConfiguration sizeOfPolicyConfiguration;
     private volatile PersistenceConfiguration persistenceConfiguration;
     private volatile ElementValueComparatorConfiguration elementValueComparatorConfiguration =
@@ -1071,6 +1113,123 @@ public class CacheConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Sets the number of threads writing elements to the disk store. Elements are spread across the writers
+     * by key, so writes to a given key are always performed in order. By default there is one writer.
+     *
+     * @param diskWriterThreads number of writer threads (rounded up to a power-of-2)
+     */
+    public void setDiskWriterThreads(int diskWriterThreads) {
+        checkDynamicChange();
+        if (diskWriterThreads <= 0) {
+            this.diskWriterThreads = DEFAULT_DISK_WRITER_THREADS;
+        } else {
+            int threads = Integer.highestOneBit(diskWriterThreads);
+            this.diskWriterThreads = threads == diskWriterThreads ? threads : threads << 1;
+        }
+    }
+
+    /**
+     * Builder which sets the number of threads writing elements to the disk store.
+     *
+     * @param diskWriterThreads number of writer threads (rounded up to a power-of-2)
+     * @return this configuration instance
+     * @see #setDiskWriterThreads(int)
+     */
+    public final CacheConfiguration diskWriterThreads(int diskWriterThreads) {
+        setDiskWriterThreads(diskWriterThreads);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of elements a disk writer serializes into a single contiguous write. By default
+     * each element is written on its own.
+     *
+     * @param diskWriteBatchSize maximum number of elements per write
+     */
+    public void setDiskWriteBatchSize(int diskWriteBatchSize) {
+        checkDynamicChange();
+        if (diskWriteBatchSize <= 0) {
+            this.diskWriteBatchSize = DEFAULT_DISK_WRITE_BATCH_SIZE;
+        } else {
+            this.diskWriteBatchSize = diskWriteBatchSize;
+        }
+    }
+
+    /**
+     * Builder which sets the maximum number of elements a disk writer serializes into a single contiguous write.
+     *
+     * @param diskWriteBatchSize maximum number of elements per write
+     * @return this configuration instance
+     * @see #setDiskWriteBatchSize(int)
+     */
+    public final CacheConfiguration diskWriteBatchSize(int diskWriteBatchSize) {
+        setDiskWriteBatchSize(diskWriteBatchSize);
+        return this;
+    }
+
+    /**
+     * Sets whether each batch written to a persistent disk store is forced to the storage device before
+     * the elements it contains are made available from disk.
+     *
+     * @param diskWriteBatchSync true to force each batch to the storage device
+     */
+    public void setDiskWriteBatchSync(boolean diskWriteBatchSync) {
+        checkDynamicChange();
+        this.diskWriteBatchSync = diskWriteBatchSync;
+    }
+
+    /**
+     * Builder which sets whether each batch written to a persistent disk store is forced to the storage device.
+     *
+     * @param diskWriteBatchSync true to force each batch to the storage device
+     * @return this configuration instance
+     * @see #setDiskWriteBatchSync(boolean)
+     */
+    public final CacheConfiguration diskWriteBatchSync(boolean diskWriteBatchSync) {
+        setDiskWriteBatchSync(diskWriteBatchSync);
+        return this;
+    }
+
+    /**
+     * Sets the way the disk store accesses its data file. By default the data file is accessed through
+     * the RandomAccessFiles of the disk access stripes.
+     *
+     * @param diskAccessMode one of STREAM, CHANNEL, MAPPED
+     */
+    public final void setDiskAccessMode(final String diskAccessMode) {
+        assertArgumentNotNull("Cache diskAccessMode", diskAccessMode);
+        diskAccessMode(DiskAccessMode.valueOf(diskAccessMode.toUpperCase()));
+    }
+
+    /**
+     * Builder which sets the way the disk store accesses its data file.
+     *
+     * @param diskAccessMode one of STREAM, CHANNEL, MAPPED
+     * @return this configuration instance
+     * @see #setDiskAccessMode(String)
+     */
+    public final CacheConfiguration diskAccessMode(String diskAccessMode) {
+        setDiskAccessMode(diskAccessMode);
+        return this;
+    }
+
+    /**
+     * Builder which sets the way the disk store accesses its data file.
+     *
+     * @param diskAccessMode one of STREAM, CHANNEL, MAPPED
+     * @return this configuration instance
+     * @see #setDiskAccessMode(String)
+     */
+    public final CacheConfiguration diskAccessMode(DiskAccessMode diskAccessMode) {
+        checkDynamicChange();
+        if (diskAccessMode == null) {
+            throw new IllegalArgumentException("DiskAccessMode value must be non-null");
+        }
+        this.diskAccessMode = diskAccessMode;
+        return this;
+    }
+
     /**
      * Sets the maximum number elements on Disk. 0 means unlimited.
      * <p>
@@ -1243,7 +1402,17 @@ public class CacheConfiguration implements Cloneable {
      */
     public ReadWriteCopyStrategy<Element> getCopyStrategy() {
         // todo really make this pluggable through config!
-        return copyStrategyConfiguration.getCopyStrategyInstance(getClassLoader());
+        return copyStrategyConfiguration.getCopyStrategyInstance(getClassLoader(), getSerializer());
+    }
+
+    /**
+     * Getter to the configured Serializer.
+     * This will always return the same unique instance per cache
+     *
+     * @return the {@link Serializer} instance for this cache
+     */
+    public Serializer getSerializer() {
+        return serializerConfiguration.getSerializerInstance(getClassLoader());
     }
 
     /**
@@ -1313,6 +1482,27 @@ public class CacheConfiguration implements Cloneable {
         this.copyStrategyConfiguration = copyStrategyConfiguration;
     }
 
+    /**
+     * Sets the SerializerConfiguration for this cache
+     *
+     * @param serializerConfiguration the Serializer Configuration
+     */
+    public void addSerializer(SerializerConfiguration serializerConfiguration) {
+        checkDynamicChange();
+        this.serializerConfiguration = serializerConfiguration;
+    }
+
+    /**
+     * Builder which sets the SerializerConfiguration for this cache
+     *
+     * @param serializerConfiguration the Serializer Configuration
+     * @return this configuration instance
+     */
+    public final CacheConfiguration serializer(SerializerConfiguration serializerConfiguration) {
+        addSerializer(serializerConfiguration);
+        return this;
+    }
+
     /**
      * Sets the ElementValueComparatorConfiguration for this cache
      * The default configuration will setup a {@link net.sf.ehcache.store.DefaultElementValueComparator}
@@ -1661,6 +1851,15 @@ public class CacheConfiguration implements Cloneable {
         return this.copyStrategyConfiguration;
     }
 
+    /**
+     * Returns the serializerConfiguration
+     *
+     * @return the serializerConfiguration
+     */
+    public SerializerConfiguration getSerializerConfiguration() {
+        return this.serializerConfiguration;
+    }
+
     /**
      * Returns the elementComparatorConfiguration
      *
@@ -2639,6 +2838,34 @@ public class CacheConfiguration implements Cloneable {
         return diskAccessStripes;
     }
 
+    /**
+     * Accessor
+     */
+    public int getDiskWriterThreads() {
+        return diskWriterThreads;
+    }
+
+    /**
+     * Accessor
+     */
+    public int getDiskWriteBatchSize() {
+        return diskWriteBatchSize;
+    }
+
+    /**
+     * Accessor
+     */
+    public boolean isDiskWriteBatchSync() {
+        return diskWriteBatchSync;
+    }
+
+    /**
+     * Accessor
+     */
+    public DiskAccessMode getDiskAccessMode() {
+        return diskAccessMode;
+    }
+
     /**
      * Accessor
      */
@@ -2902,6 +3129,27 @@ public class CacheConfiguration implements Cloneable {
         }
     }
 
+    /**
+     * Represents the way the disk store accesses its data file.
+     */
+    public static enum DiskAccessMode {
+
+        /**
+         * Seek and read/write on striped RandomAccessFiles
+         */
+        STREAM,
+
+        /**
+         * Positional reads and writes on a FileChannel
+         */
+        CHANNEL,
+
+        /**
+         * Memory-mapped regions of the data file
+         */
+        MAPPED
+    }
+
     /**
      * Add a listener to this cache configuration
      *
@@ -16,9 +16,11 @@
 package net.sf.ehcache.config;
 
 import net.sf.ehcache.Element;
+import net.sf.ehcache.serialization.Serializer;
 import net.sf.ehcache.store.compound.CopyStrategy;
 import net.sf.ehcache.store.compound.LegacyCopyStrategyAdapter;
 import net.sf.ehcache.store.compound.ReadWriteCopyStrategy;
+import net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy;
 
 /**
  * @author Alex Snaps
@@ -64,7 +66,20 @@ public class CopyStrategyConfiguration {
      * @return the instance
      */
     public synchronized ReadWriteCopyStrategy<Element> getCopyStrategyInstance(ClassLoader loader) {
-        if (strategy == null) {
+        return getCopyStrategyInstance(loader, null);
+    }
+
+    /**
+     * Get (and potentially) instantiate the instance, the default strategy copying values with the given serializer
+     *
+     * @param loader the class loader to load the strategy class with
+     * @param serializer the serializer of the cache, or {@code null} for java.io serialization
+     * @return the instance
+     */
+    public synchronized ReadWriteCopyStrategy<Element> getCopyStrategyInstance(ClassLoader loader, Serializer serializer) {
+        if (strategy == null && serializer != null && DEFAULT_IMPL.equals(className)) {
+            strategy = new ReadWriteSerializationCopyStrategy(serializer);
+        } else if (strategy == null) {
             Class copyStrategy = null;
             try {                
                 if (DEFAULT_IMPL.equals(className)) {
@@ -22,12 +22,15 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.Status;
+import net.sf.ehcache.ValueMerger;
+import net.sf.ehcache.ValueRemapper;
 import net.sf.ehcache.bootstrap.BootstrapCacheLoader;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
@@ -73,6 +76,15 @@ public class EhcacheDecoratorAdapter implements InternalEhcache {
         this.underlyingCache = underlyingCache;
     }
 
+    /**
+     * Returns the decorated cache, which may itself be a decorator.
+     *
+     * @return the decorated cache
+     */
+    public Ehcache getUnderlyingCache() {
+        return underlyingCache;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -270,6 +282,13 @@ public class EhcacheDecoratorAdapter implements InternalEhcache {
         return underlyingCache.getWithLoader(key, loader, loaderArgument);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public CompletableFuture<Element> getWithLoaderAsync(Object key, CacheLoader loader, Object loaderArgument) throws CacheException {
+        return underlyingCache.getWithLoaderAsync(key, loader, loaderArgument);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -688,6 +707,37 @@ public class EhcacheDecoratorAdapter implements InternalEhcache {
         return underlyingCache.replace(element);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Element compute(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException, CacheException {
+        return underlyingCache.compute(key, remapper);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element computeIfAbsent(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        return underlyingCache.computeIfAbsent(key, remapper);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element computeIfPresent(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        return underlyingCache.computeIfPresent(key, remapper);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element merge(Object key, Object value, ValueMerger merger) throws NullPointerException, IllegalStateException,
+            CacheException {
+        return underlyingCache.merge(key, value, merger);
+    }
+
     /**
      * {@inheritDoc}
      *
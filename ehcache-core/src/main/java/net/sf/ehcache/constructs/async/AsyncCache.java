@@ -0,0 +1,240 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.constructs.async;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.concurrent.SingleFlight;
+import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
+import net.sf.ehcache.constructs.blocking.BlockingCache;
+import net.sf.ehcache.constructs.blocking.CacheEntryFactory;
+import net.sf.ehcache.constructs.blocking.SelfPopulatingCache;
+
+/**
+ * An asynchronous view of an {@link Ehcache}, whose operations return {@link CompletableFuture}s instead of blocking the
+ * calling thread.
+ * <p>
+ * Reads and writes, which may fault entries from disk or off-heap, run on the fault executor. Loads, which call the
+ * cache loaders or an entry factory, run on the loader executor; concurrent loads of the same key share a single
+ * call. Reads of an undecorated {@link Cache} hitting the heap complete in the calling thread.
+ * <p>
+ * The view works over decorated caches as well. A miss on a {@link BlockingCache}, even one decorated further, locks
+ * the key until the missing entry is put, which an asynchronous caller cannot do from the thread holding the lock: this
+ * view releases the key straight away, so that {@link #getAsync(Object)} never leaves a key locked. Missing entries are best populated with
+ * {@link #computeIfAbsentAsync(Object, CacheEntryFactory)} there. Gets on a {@link SelfPopulatingCache} or a
+ * refresh-ahead cache create or refresh entries on the fault executor, as they would in the calling thread.
+ */
+public class AsyncCache {
+
+    private final Ehcache cache;
+    private final Executor faultExecutor;
+    private final Executor loaderExecutor;
+    private final SingleFlight<Object, Element> loadsInFlight = new SingleFlight<Object, Element>();
+    private final SingleFlight<Object, Element> computesInFlight = new SingleFlight<Object, Element>();
+    private final boolean locksOnMiss;
+
+    /**
+     * Creates an asynchronous view of a cache, running faults and loads on the same executor.
+     *
+     * @param cache the cache, possibly decorated
+     * @param executor the executor to run faults and loads on
+     */
+    public AsyncCache(Ehcache cache, Executor executor) {
+        this(cache, executor, executor);
+    }
+
+    /**
+     * Creates an asynchronous view of a cache.
+     *
+     * @param cache the cache, possibly decorated
+     * @param faultExecutor the executor to run reads and writes on
+     * @param loaderExecutor the executor to run loads on
+     */
+    public AsyncCache(Ehcache cache, Executor faultExecutor, Executor loaderExecutor) {
+        if (cache == null || faultExecutor == null || loaderExecutor == null) {
+            throw new NullPointerException();
+        }
+        this.cache = cache;
+        this.faultExecutor = faultExecutor;
+        this.loaderExecutor = loaderExecutor;
+        this.locksOnMiss = locksOnMiss(cache);
+    }
+
+    /**
+     * Returns the cache this is a view of.
+     *
+     * @return the cache
+     */
+    public Ehcache getCache() {
+        return cache;
+    }
+
+    /**
+     * Gets an element from the cache.
+     *
+     * @param key the key of the element
+     * @return the future of the element, or of null if there was no match for the key
+     * @see Ehcache#get(Object)
+     */
+    public CompletableFuture<Element> getAsync(final Object key) {
+        Element element = getFromHeap(key);
+        if (element != null) {
+            return CompletableFuture.completedFuture(element);
+        }
+        return CompletableFuture.supplyAsync(new Supplier<Element>() {
+            public Element get() {
+                return read(key);
+            }
+        }, faultExecutor);
+    }
+
+    /**
+     * Puts an element in the cache.
+     *
+     * @param element the element to put
+     * @return the future of the completion of the put
+     * @see Ehcache#put(Element)
+     */
+    public CompletableFuture<Void> putAsync(final Element element) {
+        return CompletableFuture.runAsync(new Runnable() {
+            public void run() {
+                cache.put(element);
+            }
+        }, faultExecutor);
+    }
+
+    /**
+     * Gets the elements of several keys from the cache.
+     *
+     * @param keys the keys of the elements
+     * @return the future of a map of the keys to their element, or to null for the keys with no match
+     * @see Ehcache#getAll(Collection)
+     */
+    public CompletableFuture<Map<Object, Element>> getAllAsync(final Collection<?> keys) {
+        return CompletableFuture.supplyAsync(new Supplier<Map<Object, Element>>() {
+            public Map<Object, Element> get() {
+                return cache.getAll(keys);
+            }
+        }, faultExecutor);
+    }
+
+    /**
+     * Gets an element from the cache, loading it with the cache loaders if it is missing.
+     *
+     * @param key the key of the element
+     * @return the future of the element, or of null if there was no match for the key and none could be loaded
+     * @see Ehcache#getWithLoader(Object, net.sf.ehcache.loader.CacheLoader, Object)
+     */
+    public CompletableFuture<Element> loadAsync(final Object key) {
+        Element element = getFromHeap(key);
+        if (element != null) {
+            return CompletableFuture.completedFuture(element);
+        }
+        return loadsInFlight.submit(key, new Callable<Element>() {
+            public Element call() {
+                return cache.getWithLoader(key, null, null);
+            }
+        }, loaderExecutor);
+    }
+
+    /**
+     * Gets an element from the cache, creating it with the given factory and putting it in the cache if it is
+     * missing.
+     * <p>
+     * The factory may return the value of the element, or the element itself. A null value is not put in the cache.
+     *
+     * @param key the key of the element
+     * @param factory the factory to create the missing entry with
+     * @return the future of the element found in the cache or created, or of null if the factory returned null
+     */
+    public CompletableFuture<Element> computeIfAbsentAsync(final Object key, final CacheEntryFactory factory) {
+        Element element = getFromHeap(key);
+        if (element != null) {
+            return CompletableFuture.completedFuture(element);
+        }
+        return computesInFlight.submit(key, new Callable<Element>() {
+            public Element call() throws Exception {
+                Element element = read(key);
+                if (element != null) {
+                    return element;
+                }
+                Object value = factory.createEntry(key);
+                if (value == null) {
+                    return null;
+                }
+                Element created = toElement(key, value);
+                Element previous = cache.putIfAbsent(created);
+                return previous == null ? created : previous;
+            }
+        }, loaderExecutor);
+    }
+
+    /**
+     * Gets an element in the calling thread when that cannot fault nor load anything.
+     */
+    private Element getFromHeap(Object key) {
+        if (cache instanceof Cache && cache.isElementInMemory(key)) {
+            return cache.get(key);
+        }
+        return null;
+    }
+
+    /**
+     * Gets an element, releasing the lock a miss takes on a {@link BlockingCache}.
+     */
+    private Element read(Object key) {
+        Element element = cache.get(key);
+        if (element == null && locksOnMiss) {
+            cache.put(new Element(key, null));
+        }
+        return element;
+    }
+
+    /**
+     * Returns true if a miss on the given cache leaves the key locked, that is if the first {@link BlockingCache} down its
+     * decorator chain does not populate itself.
+     */
+    private static boolean locksOnMiss(Ehcache cache) {
+        for (Ehcache c = cache; c instanceof EhcacheDecoratorAdapter; c = ((EhcacheDecoratorAdapter) c).getUnderlyingCache()) {
+            if (c instanceof BlockingCache) {
+                return !(c instanceof SelfPopulatingCache);
+            }
+        }
+        return false;
+    }
+
+    private static Element toElement(Object key, Object value) {
+        if (value instanceof Element) {
+            Element element = (Element) value;
+            if (!key.equals(element.getObjectKey())) {
+                throw new CacheException("CacheEntryFactory returned an Element with a different key: "
+                        + element.getObjectKey() + " compared to the key that was requested: " + key);
+            }
+            return element;
+        }
+        return new Element(key, value);
+    }
+}
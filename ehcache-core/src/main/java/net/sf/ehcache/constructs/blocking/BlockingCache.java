@@ -21,11 +21,14 @@ import static net.sf.ehcache.statistics.StatisticBuilder.operation;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.ValueMerger;
+import net.sf.ehcache.ValueRemapper;
 import net.sf.ehcache.concurrent.CacheLockProvider;
 import net.sf.ehcache.concurrent.LockType;
 import net.sf.ehcache.concurrent.StripedReadWriteLockSync;
@@ -281,13 +284,72 @@ public class BlockingCache extends EhcacheDecoratorAdapter {
         });
     }
 
+    /**
+     * Computes the mapping of the key under its write lock, then releases the lock.
+     */
+    @Override
+    public Element compute(final Object key, final ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        return doAndReleaseWriteLock(key, new PutAction<Element>() {
+            @Override
+            public Element put() {
+                return underlyingCache.compute(key, remapper);
+            }
+        });
+    }
+
+    /**
+     * Computes the mapping of the key under its write lock, then releases the lock.
+     */
+    @Override
+    public Element computeIfAbsent(final Object key, final ValueRemapper remapper) throws NullPointerException,
+            IllegalStateException, CacheException {
+        return doAndReleaseWriteLock(key, new PutAction<Element>() {
+            @Override
+            public Element put() {
+                return underlyingCache.computeIfAbsent(key, remapper);
+            }
+        });
+    }
+
+    /**
+     * Computes the mapping of the key under its write lock, then releases the lock.
+     */
+    @Override
+    public Element computeIfPresent(final Object key, final ValueRemapper remapper) throws NullPointerException,
+            IllegalStateException, CacheException {
+        return doAndReleaseWriteLock(key, new PutAction<Element>() {
+            @Override
+            public Element put() {
+                return underlyingCache.computeIfPresent(key, remapper);
+            }
+        });
+    }
+
+    /**
+     * Merges the value into the mapping of the key under its write lock, then releases the lock.
+     */
+    @Override
+    public Element merge(final Object key, final Object value, final ValueMerger merger) throws NullPointerException,
+            IllegalStateException, CacheException {
+        return doAndReleaseWriteLock(key, new PutAction<Element>() {
+            @Override
+            public Element put() {
+                return underlyingCache.merge(key, value, merger);
+            }
+        });
+    }
+
     private <V> V doAndReleaseWriteLock(PutAction<V> putAction) {
 
         if (putAction.element == null) {
             return null;
         }
 
-        Object key = putAction.element.getObjectKey();
+        return doAndReleaseWriteLock(putAction.element.getObjectKey(), putAction);
+    }
+
+    private <V> V doAndReleaseWriteLock(Object key, PutAction<V> putAction) {
 
         Sync lock = getLockForKey(key);
 
@@ -401,6 +463,16 @@ public class BlockingCache extends EhcacheDecoratorAdapter {
         throw new CacheException("This method is not appropriate for a Blocking Cache");
     }
 
+    /**
+     * This method is not appropriate to use with BlockingCache.
+     *
+     * @throws CacheException if this method is called
+     */
+    @Override
+    public CompletableFuture<Element> getWithLoaderAsync(Object key, CacheLoader loader, Object loaderArgument) throws CacheException {
+        throw new CacheException("This method is not appropriate for a Blocking Cache");
+    }
+
     /**
      * This method is not appropriate to use with BlockingCache.
      *
@@ -443,6 +515,10 @@ public class BlockingCache extends EhcacheDecoratorAdapter {
             this.element = element;
         }
 
+        private PutAction() {
+            this(null);
+        }
+
         /**
          * implement method with the put*
          * @return the return value of the put*
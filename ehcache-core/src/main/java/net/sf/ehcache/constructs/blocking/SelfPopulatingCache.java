@@ -16,14 +16,20 @@
 
 package net.sf.ehcache.constructs.blocking;
 
+import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.concurrent.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -37,6 +43,11 @@ import java.util.Iterator;
  * <p>
  * Thread safety depends on the factory being used. The UpdatingCacheEntryFactory should be made
  * thread safe. In addition users of returned values should not modify their contents.
+ * <p>
+ * Concurrent gets missing the same key share a single call to the factory, while gets of other keys proceed
+ * without waiting for it. The created entry is only put if the key is still absent, so that a put made during the
+ * factory call is not overwritten. Clustered caches still create entries under the {@link BlockingCache} locks, so
+ * that the entries are created once across the cluster.
  *
  * @author Greg Luck
  * @version $Id$
@@ -50,6 +61,8 @@ public class SelfPopulatingCache extends BlockingCache {
      */
     protected final CacheEntryFactory factory;
 
+    private final SingleFlight<Object, Element> entriesInFlight = new SingleFlight<Object, Element>();
+
     /**
      * Creates a SelfPopulatingCache.
      */
@@ -72,13 +85,77 @@ public class SelfPopulatingCache extends BlockingCache {
      */
     @Override
     public Element get(final Object key) throws LockTimeoutException {
+        if (underlyingCache.getCacheConfiguration().isTerracottaClustered()) {
+            return getUnderLock(key);
+        }
+
+        Element element = underlyingCache.get(key);
+        if (element != null) {
+            return element;
+        }
+
+        try {
+            if (timeoutMillis > 0) {
+                return entriesInFlight.get(key, createEntry(key), timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                return entriesInFlight.get(key, createEntry(key));
+            }
+        } catch (TimeoutException e) {
+            throw new LockTimeoutException("Timeout. Waited more than " + timeoutMillis + "ms for the entry with key "
+                    + key + " to be created on blocking cache " + underlyingCache.getName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LockTimeoutException("Got interrupted while waiting for the entry with key " + key + " to be created", e);
+        } catch (ExecutionException e) {
+            throw new CacheException("Could not fetch object for cache entry with key \"" + key + "\".", e.getCause());
+        }
+    }
+
+    /**
+     * Creates the task fetching a missing entry and putting it in the backing cache.
+     */
+    private Callable<Element> createEntry(final Object key) {
+        return new Callable<Element>() {
+            public Element call() throws Exception {
+                // it may have been created since the get missed
+                Element element = underlyingCache.getQuiet(key);
+                if (element != null) {
+                    return element;
+                }
+
+                long start = System.nanoTime();
+                Object value = factory.createEntry(key);
+                recordMissCost(System.nanoTime() - start);
+                element = makeAndCheckElement(key, value);
+                if (element.getObjectValue() != null) {
+                    // a put or refresh that landed during the factory call is newer than what it returned
+                    Element current = underlyingCache.putIfAbsent(element);
+                    if (current != null) {
+                        return current;
+                    }
+                }
+                return element;
+            }
+        };
+    }
+
+    /**
+     * Looks up an entry, creating it under the lock the {@link BlockingCache} holds for it if not found.
+     *
+     * @param key the key of the entry
+     * @return the entry, found or created
+     * @throws LockTimeoutException if the lock could not be acquired in time
+     */
+    protected Element getUnderLock(final Object key) throws LockTimeoutException {
 
         Element element = super.get(key);
 
         if (element == null) {
             try {
                 // Value not cached - fetch it
+                long start = System.nanoTime();
                 Object value = factory.createEntry(key);
+                recordMissCost(System.nanoTime() - start);
                 element = makeAndCheckElement(key, value);
             } catch (final Throwable throwable) {
                 // Could not fetch - Ditch the entry from the cache and rethrow
@@ -283,6 +360,15 @@ public class SelfPopulatingCache extends BlockingCache {
         return replacementElement;
     }
 
+    /**
+     * Records the time taken to create a missing entry against the backing cache, when it measures what its misses cost.
+     */
+    private void recordMissCost(long nanos) {
+        if (underlyingCache instanceof Cache) {
+            ((Cache) underlyingCache).getMissCostMeter().record(nanos);
+        }
+    }
+
     /**
      * Both CacheEntryFactory can return an Element rather than just a regular value
      * this method test this, making a fresh Element otherwise.  It also enforces
@@ -75,7 +75,8 @@ public class UpdatingSelfPopulatingCache extends SelfPopulatingCache {
             Element element = backingCache.get(key);
 
             if (element == null) {
-                element = super.get(key);
+                // created under the key lock, as updates are
+                element = getUnderLock(key);
             } else {
                 Sync lock = getLockForKey(key);
                 try {
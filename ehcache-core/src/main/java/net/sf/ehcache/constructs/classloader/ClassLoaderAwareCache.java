@@ -27,12 +27,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.Status;
+import net.sf.ehcache.ValueMerger;
+import net.sf.ehcache.ValueRemapper;
 import net.sf.ehcache.bootstrap.BootstrapCacheLoader;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
@@ -858,6 +861,21 @@ public class ClassLoaderAwareCache implements Ehcache {
         }
     }
 
+    /**
+    * {@inheritDoc}
+    */
+    public CompletableFuture<Element> getWithLoaderAsync(Object arg0, CacheLoader arg1, Object arg2) throws CacheException {
+        // THIS IS GENERATED CODE -- DO NOT HAND MODIFY!
+        Thread t = Thread.currentThread();
+        ClassLoader prev = t.getContextClassLoader();
+        t.setContextClassLoader(this.classLoader);
+        try {
+            return this.cache.getWithLoaderAsync(arg0, arg1, arg2);
+        } finally {
+            t.setContextClassLoader(prev);
+        }
+    }
+
     /**
     * {@inheritDoc}
     */
@@ -1398,6 +1416,66 @@ public class ClassLoaderAwareCache implements Ehcache {
         }
     }
 
+    /**
+    * {@inheritDoc}
+    */
+    public Element compute(Object arg0, ValueRemapper arg1) throws NullPointerException, IllegalStateException, CacheException {
+        // THIS IS GENERATED CODE -- DO NOT HAND MODIFY!
+        Thread t = Thread.currentThread();
+        ClassLoader prev = t.getContextClassLoader();
+        t.setContextClassLoader(this.classLoader);
+        try {
+            return this.cache.compute(arg0, arg1);
+        } finally {
+            t.setContextClassLoader(prev);
+        }
+    }
+
+    /**
+    * {@inheritDoc}
+    */
+    public Element computeIfAbsent(Object arg0, ValueRemapper arg1) throws NullPointerException, IllegalStateException, CacheException {
+        // THIS IS GENERATED CODE -- DO NOT HAND MODIFY!
+        Thread t = Thread.currentThread();
+        ClassLoader prev = t.getContextClassLoader();
+        t.setContextClassLoader(this.classLoader);
+        try {
+            return this.cache.computeIfAbsent(arg0, arg1);
+        } finally {
+            t.setContextClassLoader(prev);
+        }
+    }
+
+    /**
+    * {@inheritDoc}
+    */
+    public Element computeIfPresent(Object arg0, ValueRemapper arg1) throws NullPointerException, IllegalStateException, CacheException {
+        // THIS IS GENERATED CODE -- DO NOT HAND MODIFY!
+        Thread t = Thread.currentThread();
+        ClassLoader prev = t.getContextClassLoader();
+        t.setContextClassLoader(this.classLoader);
+        try {
+            return this.cache.computeIfPresent(arg0, arg1);
+        } finally {
+            t.setContextClassLoader(prev);
+        }
+    }
+
+    /**
+    * {@inheritDoc}
+    */
+    public Element merge(Object arg0, Object arg1, ValueMerger arg2) throws NullPointerException, IllegalStateException, CacheException {
+        // THIS IS GENERATED CODE -- DO NOT HAND MODIFY!
+        Thread t = Thread.currentThread();
+        ClassLoader prev = t.getContextClassLoader();
+        t.setContextClassLoader(this.classLoader);
+        try {
+            return this.cache.merge(arg0, arg1, arg2);
+        } finally {
+            t.setContextClassLoader(prev);
+        }
+    }
+
     /**
     * {@inheritDoc}
     */
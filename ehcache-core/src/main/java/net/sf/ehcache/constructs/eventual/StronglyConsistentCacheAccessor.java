@@ -19,6 +19,8 @@ package net.sf.ehcache.constructs.eventual;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.ValueMerger;
+import net.sf.ehcache.ValueRemapper;
 import net.sf.ehcache.config.TerracottaConfiguration;
 import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
 import net.sf.ehcache.loader.CacheLoader;
@@ -28,6 +30,8 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * StronglyConsistentCacheAccessor is a decorator that accepts distributed caches configured with eventual consistency.
@@ -131,6 +135,62 @@ public class StronglyConsistentCacheAccessor extends EhcacheDecoratorAdapter {
         }
     }
 
+    @Override
+    public Element compute(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException, CacheException {
+        return compute(key, remapper, false, false);
+    }
+
+    @Override
+    public Element computeIfAbsent(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        return compute(key, remapper, true, false);
+    }
+
+    @Override
+    public Element computeIfPresent(Object key, ValueRemapper remapper) throws NullPointerException, IllegalStateException,
+            CacheException {
+        return compute(key, remapper, false, true);
+    }
+
+    @Override
+    public Element merge(Object key, final Object value, final ValueMerger merger) throws NullPointerException, IllegalStateException,
+            CacheException {
+        if (value == null || merger == null) {
+            throw new NullPointerException();
+        }
+        return compute(key, new ValueRemapper() {
+            public Object remap(Object key, Object currentValue) {
+                return currentValue == null ? value : merger.merge(currentValue, value);
+            }
+        }, false, false);
+    }
+
+    private Element compute(Object key, ValueRemapper remapper, boolean ifAbsent, boolean ifPresent) {
+        if (key == null || remapper == null) {
+            throw new NullPointerException();
+        }
+
+        acquireWriteLockOnKey(key);
+        try {
+            Element current = getQuiet(key);
+            if ((ifAbsent && current != null) || (ifPresent && current == null)) {
+                return current;
+            }
+            Object value = remapper.remap(key, current == null ? null : current.getObjectValue());
+            if (value == null) {
+                if (current != null) {
+                    super.remove(key);
+                }
+                return null;
+            }
+            Element element = new Element(key, value);
+            super.put(element);
+            return element;
+        } finally {
+            releaseWriteLockOnKey(key);
+        }
+    }
+
     @Override
     public boolean removeElement(Element element) throws NullPointerException {
         Object objectKey = element.getObjectKey();
@@ -330,6 +390,22 @@ public class StronglyConsistentCacheAccessor extends EhcacheDecoratorAdapter {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is read locked as by {@link #getWithLoader(Object, CacheLoader, Object)}, from the thread of the common
+     * fork-join pool running the load, since the lock is held by the thread taking it.
+     */
+    @Override
+    public CompletableFuture<Element> getWithLoaderAsync(final Object key, final CacheLoader loader, final Object loaderArgument)
+            throws CacheException {
+        return CompletableFuture.supplyAsync(new Supplier<Element>() {
+            public Element get() {
+                return getWithLoader(key, loader, loaderArgument);
+            }
+        });
+    }
+
     @Override
     public Map getAllWithLoader(Collection keys, Object loaderArgument) throws CacheException {
         HashMap<Object, Object> result = new HashMap<Object, Object>(keys.size());
@@ -28,8 +28,8 @@ import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
  * This class implements the simplest of all possible read through cache
  * behaviors, where a call the get() will delegate to a call to getWithLoader().
  * This means that a get() call can take a long time; beware. It also does no more
- * locking than {@link Cache} implements; each separate cache may try to load
- * a key at the same time.
+ * locking than {@link Cache} implements: concurrent gets missing the same key
+ * share a single load, and gets of other keys never wait for it.
  *
  * @author cschanck
  *
@@ -0,0 +1,167 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.event;
+
+/**
+ * Configures the asynchronous delivery of events to a single {@link CacheEventListener}.
+ * <p>
+ * Events are queued into one of a number of stripes, chosen by the hash of the element key, each drained in order by
+ * its own thread. Events for a given key are therefore always delivered in the order they occurred, and a
+ * {@code removeAll} is delivered once all events queued before it were, and before any queued after it.
+ *
+ * @see RegisteredEventListeners#registerListener(CacheEventListener, NotificationScope, AsynchronousDispatchConfiguration)
+ */
+public class AsynchronousDispatchConfiguration {
+
+    /**
+     * Default number of stripes, which keeps all events in a single order
+     */
+    public static final int DEFAULT_STRIPES = 1;
+
+    /**
+     * Default capacity of each stripe's queue
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+    /**
+     * Default maximum number of events handed to a {@link BatchingCacheEventListener} at once
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    /**
+     * Default policy applied when a stripe's queue is full
+     */
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+
+    /**
+     * What to do with an event when the queue of its stripe is full.
+     */
+    public static enum OverflowPolicy {
+        /**
+         * The thread emitting the event waits for room in the queue.
+         * <p>
+         * Listeners emitting events from a dispatching thread, by operating on a cache, do not wait: their events are
+         * dropped if the queue is full, as waiting could deadlock the dispatching threads.
+         */
+        BLOCK,
+        /**
+         * The event being emitted is discarded.
+         */
+        DROP_NEWEST,
+        /**
+         * The oldest queued event is discarded to make room.
+         */
+        DROP_OLDEST;
+    }
+
+    private int stripes = DEFAULT_STRIPES;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private OverflowPolicy overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+
+    /**
+     * Sets the number of stripes, and so of dispatching threads.
+     *
+     * @param stripes the number of stripes
+     * @return this configuration instance
+     */
+    public AsynchronousDispatchConfiguration stripes(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripes must be at least 1");
+        }
+        this.stripes = stripes;
+        return this;
+    }
+
+    /**
+     * Sets the capacity of each stripe's queue.
+     *
+     * @param queueCapacity the number of events a stripe can hold
+     * @return this configuration instance
+     */
+    public AsynchronousDispatchConfiguration queueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of events handed to a {@link BatchingCacheEventListener} at once.
+     *
+     * @param maxBatchSize the maximum batch size
+     * @return this configuration instance
+     */
+    public AsynchronousDispatchConfiguration maxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Sets the policy applied when a stripe's queue is full.
+     *
+     * @param overflowPolicy the overflow policy
+     * @return this configuration instance
+     */
+    public AsynchronousDispatchConfiguration overflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy can't be null");
+        }
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    /**
+     * Gets the number of stripes.
+     *
+     * @return the number of stripes
+     */
+    public int getStripes() {
+        return stripes;
+    }
+
+    /**
+     * Gets the capacity of each stripe's queue.
+     *
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Gets the maximum number of events handed to a {@link BatchingCacheEventListener} at once.
+     *
+     * @return the maximum batch size
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Gets the policy applied when a stripe's queue is full.
+     *
+     * @return the overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+}
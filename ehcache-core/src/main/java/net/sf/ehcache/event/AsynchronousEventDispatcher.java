@@ -0,0 +1,412 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.AsynchronousDispatchConfiguration.OverflowPolicy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the events of a cache to one listener from dedicated threads, so that a slow listener does not add to the
+ * latency of the operations emitting them.
+ * <p>
+ * Events are queued into bounded stripes chosen by element key, each drained in order by its own thread, which
+ * preserves the order of the events of any given key. A {@code removeAll} is queued into every stripe and only
+ * delivered, once, when all stripes have reached it. {@link BatchingCacheEventListener}s receive the events drained
+ * from a stripe in a single call.
+ * <p>
+ * Events emitted by a listener from a dispatching thread, of this dispatcher or any other, are never waited for:
+ * the stripe they target may itself be waiting on that thread, so they are dropped if it is full whatever the
+ * overflow policy.
+ *
+ * @see AsynchronousDispatchConfiguration
+ */
+public class AsynchronousEventDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsynchronousEventDispatcher.class.getName());
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+
+    private static final CacheEventNotification SHUTDOWN = new CacheEventNotification(CacheEventNotification.Type.REMOVE_ALL, null);
+
+    private final Ehcache cache;
+    private final CacheEventListener listener;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxBatchSize;
+    private final Stripe[] stripes;
+
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+    private boolean shutdown;
+
+    private final AtomicLong dispatchedEvents = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+
+    /**
+     * Creates a dispatcher and starts its threads.
+     *
+     * @param cache         the cache emitting the events
+     * @param listener      the listener to deliver them to
+     * @param configuration the dispatch configuration
+     */
+    AsynchronousEventDispatcher(Ehcache cache, CacheEventListener listener, AsynchronousDispatchConfiguration configuration) {
+        this.cache = cache;
+        this.listener = listener;
+        this.overflowPolicy = configuration.getOverflowPolicy();
+        this.maxBatchSize = configuration.getMaxBatchSize();
+        this.stripes = new Stripe[configuration.getStripes()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(i, configuration.getQueueCapacity());
+        }
+        for (Stripe stripe : stripes) {
+            stripe.start();
+        }
+    }
+
+    /**
+     * Queues an event for delivery, applying the overflow policy if its stripe is full.
+     *
+     * @param type    the event type
+     * @param element the element concerned, or {@code null} for {@link CacheEventNotification.Type#REMOVE_ALL}
+     */
+    void dispatch(CacheEventNotification.Type type, Element element) {
+        shutdownLock.readLock().lock();
+        try {
+            if (shutdown) {
+                droppedEvents.incrementAndGet();
+            } else if (type == CacheEventNotification.Type.REMOVE_ALL) {
+                RemoveAllBarrier barrier = new RemoveAllBarrier(stripes.length);
+                for (Stripe stripe : stripes) {
+                    if (!stripe.enqueue(barrier)) {
+                        discard(barrier);
+                    }
+                }
+            } else {
+                CacheEventNotification event = new CacheEventNotification(type, element);
+                if (!stripeFor(element).enqueue(event)) {
+                    discard(event);
+                }
+            }
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops accepting events, delivers the ones already queued and waits for the dispatching threads to terminate.
+     * <p>
+     * When called from a dispatching thread, typically by a listener disposing of its cache, that thread's stripe
+     * stops once done with its current batch, the events still queued behind it being dropped.
+     */
+    void shutdown() {
+        shutdownLock.writeLock().lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        boolean interrupted = false;
+        for (Stripe stripe : stripes) {
+            if (stripe == Thread.currentThread()) {
+                // this thread drains the stripe, so its queue may be full with no one left to make room
+                stripe.stopping = true;
+                continue;
+            }
+            boolean stopped = false;
+            while (!stopped) {
+                try {
+                    stopped = stripe.queue.offer(SHUTDOWN, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (!stopped) {
+                        LOG.warn("Timed out stopping " + stripe.getName() + " with " + stripe.queue.size() + " events still queued");
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (Stripe stripe : stripes) {
+            if (stripe == Thread.currentThread()) {
+                continue;
+            }
+            try {
+                stripe.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            if (stripe.isAlive()) {
+                LOG.warn("Timed out waiting for " + stripe.getName() + " to deliver its remaining events");
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the number of events delivered to the listener so far.
+     *
+     * @return the number of delivered events
+     */
+    public long getDispatchedEventCount() {
+        return dispatchedEvents.get();
+    }
+
+    /**
+     * Gets the number of events discarded because their stripe was full or the dispatcher was shut down.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Gets the number of events whose delivery threw.
+     *
+     * @return the number of failed events
+     */
+    public long getFailedEventCount() {
+        return failedEvents.get();
+    }
+
+    /**
+     * Gets the number of events currently waiting for delivery.
+     *
+     * @return the number of queued events
+     */
+    public int getQueuedEventCount() {
+        int queued = 0;
+        for (Stripe stripe : stripes) {
+            queued += stripe.queue.size();
+        }
+        return queued;
+    }
+
+    private Stripe stripeFor(Element element) {
+        if (stripes.length == 1 || element == null || element.getObjectKey() == null) {
+            return stripes[0];
+        }
+        int hash = element.getObjectKey().hashCode();
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private void discard(CacheEventNotification event) {
+        if (event instanceof RemoveAllBarrier) {
+            RemoveAllBarrier barrier = (RemoveAllBarrier) event;
+            if (barrier.discards.incrementAndGet() == stripes.length) {
+                droppedEvents.incrementAndGet();
+            }
+            barrier.arrived.countDown();
+        } else {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * Delivers a batch drained from a stripe, stopping at removeAll barriers until every stripe reached them.
+     *
+     * @return false if the batch ended with the shutdown marker
+     */
+    private boolean process(List<CacheEventNotification> batch) {
+        int from = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            CacheEventNotification event = batch.get(i);
+            if (event == SHUTDOWN) {
+                deliver(batch.subList(from, i));
+                return false;
+            } else if (event instanceof RemoveAllBarrier) {
+                deliver(batch.subList(from, i));
+                pass((RemoveAllBarrier) event);
+                from = i + 1;
+            }
+        }
+        deliver(batch.subList(from, batch.size()));
+        return true;
+    }
+
+    private void pass(RemoveAllBarrier barrier) {
+        barrier.arrived.countDown();
+        awaitUninterruptibly(barrier.arrived);
+        if (barrier.claimed.compareAndSet(false, true)) {
+            try {
+                deliver(Collections.<CacheEventNotification>singletonList(barrier));
+            } finally {
+                barrier.delivered.countDown();
+            }
+        } else {
+            awaitUninterruptibly(barrier.delivered);
+        }
+    }
+
+    private void deliver(List<CacheEventNotification> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (listener instanceof BatchingCacheEventListener) {
+            try {
+                ((BatchingCacheEventListener) listener).notifyEvents(cache, Collections.unmodifiableList(events));
+                dispatchedEvents.addAndGet(events.size());
+            } catch (Throwable t) {
+                failed(events.size(), t);
+            }
+        } else {
+            for (CacheEventNotification event : events) {
+                try {
+                    event.deliverTo(cache, listener);
+                    dispatchedEvents.incrementAndGet();
+                } catch (Throwable t) {
+                    failed(1, t);
+                }
+            }
+        }
+    }
+
+    private void failed(int events, Throwable t) {
+        failedEvents.addAndGet(events);
+        LOG.error("Exception delivering " + events + " event(s) of cache " + cache.getName() + " to " + listener
+                  + ": " + t.getMessage() + ". Continuing...", t);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsynchronousEventDispatcher[" + listener + ", stripes=" + stripes.length + ", policy=" + overflowPolicy
+               + ", dispatched=" + getDispatchedEventCount() + ", dropped=" + getDroppedEventCount()
+               + ", failed=" + getFailedEventCount() + ", queued=" + getQueuedEventCount() + "]";
+    }
+
+    /**
+     * A removeAll queued into every stripe, delivered once all of them reached or discarded it.
+     */
+    private static final class RemoveAllBarrier extends CacheEventNotification {
+
+        private final CountDownLatch arrived;
+        private final CountDownLatch delivered = new CountDownLatch(1);
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final AtomicInteger discards = new AtomicInteger();
+
+        private RemoveAllBarrier(int stripes) {
+            super(Type.REMOVE_ALL, null);
+            this.arrived = new CountDownLatch(stripes);
+        }
+    }
+
+    /**
+     * A bounded queue of events and the thread draining it.
+     */
+    private final class Stripe extends Thread {
+
+        private final BlockingQueue<CacheEventNotification> queue;
+        private volatile boolean stopping;
+
+        private Stripe(int index, int capacity) {
+            super("Cache Event Dispatcher [" + cache.getName() + "]-" + index);
+            setDaemon(true);
+            this.queue = new ArrayBlockingQueue<CacheEventNotification>(capacity);
+        }
+
+        private boolean enqueue(CacheEventNotification event) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    if (Thread.currentThread() instanceof Stripe) {
+                        // the full stripe may be this thread's, or waiting on it at a removeAll barrier
+                        return queue.offer(event);
+                    }
+                    try {
+                        queue.put(event);
+                        return true;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                case DROP_NEWEST:
+                    return queue.offer(event);
+                case DROP_OLDEST:
+                    while (!queue.offer(event)) {
+                        CacheEventNotification oldest = queue.poll();
+                        if (oldest != null) {
+                            discard(oldest);
+                        }
+                    }
+                    return true;
+                default:
+                    throw new AssertionError(overflowPolicy);
+            }
+        }
+
+        @Override
+        public void run() {
+            List<CacheEventNotification> batch = new ArrayList<CacheEventNotification>(maxBatchSize);
+            boolean running = true;
+            while (running) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    LOG.debug(getName() + " interrupted, still delivering");
+                    continue;
+                }
+                queue.drainTo(batch, maxBatchSize - 1);
+                running = process(batch) && !stopping;
+                batch.clear();
+            }
+            if (stopping) {
+                CacheEventNotification event;
+                while ((event = queue.poll()) != null) {
+                    discard(event);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.event;
+
+import java.util.List;
+
+import net.sf.ehcache.Ehcache;
+
+/**
+ * A {@link CacheEventListener} able to consume several events in one call.
+ * <p>
+ * When such a listener is registered for asynchronous dispatch, queued events are handed over in batches through
+ * {@link #notifyEvents(Ehcache, List)} instead of the individual callbacks. Listeners registered for synchronous
+ * dispatch keep receiving the individual callbacks.
+ *
+ * @see RegisteredEventListeners#registerListener(CacheEventListener, NotificationScope, AsynchronousDispatchConfiguration)
+ */
+public interface BatchingCacheEventListener extends CacheEventListener {
+
+    /**
+     * Called with a batch of events, in the order they occurred for any given key.
+     * <p>
+     * The list is only valid for the duration of the call.
+     *
+     * @param cache  the cache emitting the notifications
+     * @param events the events, never empty
+     */
+    void notifyEvents(Ehcache cache, List<CacheEventNotification> events);
+}
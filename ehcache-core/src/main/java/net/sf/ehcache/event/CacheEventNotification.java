@@ -0,0 +1,127 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.event;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+/**
+ * A cache event queued for asynchronous delivery to a {@link CacheEventListener}.
+ *
+ * @see BatchingCacheEventListener
+ * @see AsynchronousEventDispatcher
+ */
+public class CacheEventNotification {
+
+    /**
+     * The kinds of cache event that can be delivered.
+     */
+    public static enum Type {
+        /**
+         * An element was put into the cache.
+         */
+        PUT,
+        /**
+         * An element already in the cache was updated.
+         */
+        UPDATED,
+        /**
+         * An element was removed from the cache.
+         */
+        REMOVED,
+        /**
+         * An element expired.
+         */
+        EXPIRED,
+        /**
+         * An element was evicted.
+         */
+        EVICTED,
+        /**
+         * All elements were removed from the cache.
+         */
+        REMOVE_ALL;
+    }
+
+    private final Type type;
+    private final Element element;
+
+    /**
+     * Creates a notification of the given type.
+     *
+     * @param type    the event type
+     * @param element the element concerned, or {@code null} for {@link Type#REMOVE_ALL}
+     */
+    CacheEventNotification(Type type, Element element) {
+        this.type = type;
+        this.element = element;
+    }
+
+    /**
+     * Gets the event type.
+     *
+     * @return the event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the element concerned by this event.
+     *
+     * @return the element, or {@code null} for {@link Type#REMOVE_ALL}
+     */
+    public Element getElement() {
+        return element;
+    }
+
+    /**
+     * Invokes the listener callback matching this event's type.
+     *
+     * @param cache    the cache emitting the notification
+     * @param listener the listener to notify
+     */
+    void deliverTo(Ehcache cache, CacheEventListener listener) {
+        switch (type) {
+            case PUT:
+                listener.notifyElementPut(cache, element);
+                break;
+            case UPDATED:
+                listener.notifyElementUpdated(cache, element);
+                break;
+            case REMOVED:
+                listener.notifyElementRemoved(cache, element);
+                break;
+            case EXPIRED:
+                listener.notifyElementExpired(cache, element);
+                break;
+            case EVICTED:
+                listener.notifyElementEvicted(cache, element);
+                break;
+            case REMOVE_ALL:
+                listener.notifyRemoveAll(cache);
+                break;
+            default:
+                throw new AssertionError(type);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + (element == null ? "" : " " + element.getObjectKey());
+    }
+}
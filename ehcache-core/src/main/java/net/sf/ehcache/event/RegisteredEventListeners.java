@@ -153,7 +153,12 @@ public class RegisteredEventListeners {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
                         && !isCircularNotification(remoteEvent, listenerWrapper.getListener())) {
                     CacheEventListener listener = listenerWrapper.getListener();
-                    listener.notifyElementRemoved(cache, resolveElement(listener, element, callback));
+                    AsynchronousEventDispatcher dispatcher = listenerWrapper.getDispatcher();
+                    if (dispatcher != null) {
+                        dispatcher.dispatch(CacheEventNotification.Type.REMOVED, resolveElement(listener, element, callback));
+                    } else {
+                        listener.notifyElementRemoved(cache, resolveElement(listener, element, callback));
+                    }
                 }
             }
         }
@@ -188,8 +193,12 @@ public class RegisteredEventListeners {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
                         && !isCircularNotification(remoteEvent, listenerWrapper.getListener())) {
                     CacheEventListener listener = listenerWrapper.getListener();
-
-                    listener.notifyElementPut(cache, resolveElement(listener, element, callback));
+                    AsynchronousEventDispatcher dispatcher = listenerWrapper.getDispatcher();
+                    if (dispatcher != null) {
+                        dispatcher.dispatch(CacheEventNotification.Type.PUT, resolveElement(listener, element, callback));
+                    } else {
+                        listener.notifyElementPut(cache, resolveElement(listener, element, callback));
+                    }
                 }
             }
         }
@@ -224,8 +233,12 @@ public class RegisteredEventListeners {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
                         && !isCircularNotification(remoteEvent, listenerWrapper.getListener())) {
                     CacheEventListener listener = listenerWrapper.getListener();
-
-                    listener.notifyElementUpdated(cache, resolveElement(listener, element, callback));
+                    AsynchronousEventDispatcher dispatcher = listenerWrapper.getDispatcher();
+                    if (dispatcher != null) {
+                        dispatcher.dispatch(CacheEventNotification.Type.UPDATED, resolveElement(listener, element, callback));
+                    } else {
+                        listener.notifyElementUpdated(cache, resolveElement(listener, element, callback));
+                    }
                 }
             }
         }
@@ -264,8 +277,12 @@ public class RegisteredEventListeners {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
                         && !isCircularNotification(remoteEvent, listenerWrapper.getListener())) {
                     CacheEventListener listener = listenerWrapper.getListener();
-
-                    listener.notifyElementExpired(cache, resolveElement(listener, element, callback));
+                    AsynchronousEventDispatcher dispatcher = listenerWrapper.getDispatcher();
+                    if (dispatcher != null) {
+                        dispatcher.dispatch(CacheEventNotification.Type.EXPIRED, resolveElement(listener, element, callback));
+                    } else {
+                        listener.notifyElementExpired(cache, resolveElement(listener, element, callback));
+                    }
                 }
             }
         }
@@ -311,8 +328,12 @@ public class RegisteredEventListeners {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
                     && !isCircularNotification(remoteEvent, listenerWrapper.getListener())) {
                     CacheEventListener listener = listenerWrapper.getListener();
-
-                    listener.notifyElementEvicted(cache, resolveElement(listener, element, callback));
+                    AsynchronousEventDispatcher dispatcher = listenerWrapper.getDispatcher();
+                    if (dispatcher != null) {
+                        dispatcher.dispatch(CacheEventNotification.Type.EVICTED, resolveElement(listener, element, callback));
+                    } else {
+                        listener.notifyElementEvicted(cache, resolveElement(listener, element, callback));
+                    }
                 }
             }
         }
@@ -338,7 +359,12 @@ public class RegisteredEventListeners {
             for (ListenerWrapper listenerWrapper : cacheEventListeners) {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
                         && !isCircularNotification(remoteEvent, listenerWrapper.getListener())) {
-                    listenerWrapper.getListener().notifyRemoveAll(cache);
+                    AsynchronousEventDispatcher dispatcher = listenerWrapper.getDispatcher();
+                    if (dispatcher != null) {
+                        dispatcher.dispatch(CacheEventNotification.Type.REMOVE_ALL, null);
+                    } else {
+                        listenerWrapper.getListener().notifyRemoveAll(cache);
+                    }
                 }
             }
         }
@@ -385,8 +411,47 @@ public class RegisteredEventListeners {
         if (cacheEventListener == null) {
             return false;
         }
-        boolean result = cacheEventListeners.add(new ListenerWrapper(cacheEventListener, scope));
-        if (result && cacheEventListener instanceof CacheReplicator) {
+        return registerListener(new ListenerWrapper(cacheEventListener, scope, null));
+    }
+
+    /**
+     * Adds a listener to the notification service, delivering its events from dedicated threads rather than from
+     * the thread performing the cache operation. No guarantee is made that listeners will be notified in the order
+     * they were added.
+     * <p>
+     * Events for any given key are delivered in the order they occurred. Events that cannot be queued because
+     * of the configured overflow policy are counted by the listener's {@link AsynchronousEventDispatcher}, see
+     * {@link #getAsynchronousDispatcher(CacheEventListener)}.
+     *
+     * @param cacheEventListener The listener to add
+     * @param scope              The notification scope
+     * @param configuration      The asynchronous dispatch configuration, or {@code null} for synchronous delivery
+     * @return true if the listener is being added and was not already added
+     */
+    public final boolean registerListener(CacheEventListener cacheEventListener, NotificationScope scope,
+                                          AsynchronousDispatchConfiguration configuration) {
+        if (cacheEventListener == null) {
+            return false;
+        }
+        if (configuration == null) {
+            return registerListener(cacheEventListener, scope);
+        }
+        for (ListenerWrapper listenerWrapper : cacheEventListeners) {
+            if (listenerWrapper.getListener().equals(cacheEventListener)) {
+                return false;
+            }
+        }
+        AsynchronousEventDispatcher dispatcher = new AsynchronousEventDispatcher(cache, cacheEventListener, configuration);
+        boolean result = registerListener(new ListenerWrapper(cacheEventListener, scope, dispatcher));
+        if (!result) {
+            dispatcher.shutdown();
+        }
+        return result;
+    }
+
+    private boolean registerListener(ListenerWrapper listenerWrapper) {
+        boolean result = cacheEventListeners.add(listenerWrapper);
+        if (result && listenerWrapper.getListener() instanceof CacheReplicator) {
             this.hasReplicator.set(true);
         }
         if (result) {
@@ -425,6 +490,9 @@ public class RegisteredEventListeners {
             ListenerWrapper listenerWrapper = it.next();
             if (listenerWrapper.getListener().equals(cacheEventListener)) {
                 cacheEventListeners.remove(listenerWrapper);
+                if (listenerWrapper.getDispatcher() != null) {
+                    listenerWrapper.getDispatcher().shutdown();
+                }
                 result = true;
             } else {
                 if (listenerWrapper.getListener() instanceof CacheReplicator) {
@@ -463,6 +531,21 @@ public class RegisteredEventListeners {
         return hasReplicator.get();
     }
 
+    /**
+     * Gets the dispatcher delivering the events of a listener registered for asynchronous dispatch.
+     *
+     * @param cacheEventListener the listener
+     * @return the listener's dispatcher, or {@code null} if it isn't registered or is notified synchronously
+     */
+    public final AsynchronousEventDispatcher getAsynchronousDispatcher(CacheEventListener cacheEventListener) {
+        for (ListenerWrapper listenerWrapper : cacheEventListeners) {
+            if (listenerWrapper.getListener().equals(cacheEventListener)) {
+                return listenerWrapper.getDispatcher();
+            }
+        }
+        return null;
+    }
+
     /**
      * Gets a copy of the set of the listeners registered to this class
      *
@@ -483,6 +566,9 @@ public class RegisteredEventListeners {
      */
     public final void dispose() {
         for (ListenerWrapper listenerWrapper : cacheEventListeners) {
+            if (listenerWrapper.getDispatcher() != null) {
+                listenerWrapper.getDispatcher().shutdown();
+            }
             listenerWrapper.getListener().dispose();
         }
         cacheEventListeners.clear();
@@ -518,7 +604,8 @@ public class RegisteredEventListeners {
     }
 
   /**
-     * Combine a Listener and its NotificationScope.  Equality and hashcode are based purely on the listener.
+     * Combine a Listener, its NotificationScope and its optional asynchronous dispatcher.  Equality and hashcode
+     * are based purely on the listener.
      * This implies that the same listener cannot be added to the set of registered listeners more than
      * once with different notification scopes.
      *
@@ -527,10 +614,12 @@ public class RegisteredEventListeners {
     private static final class ListenerWrapper {
         private final CacheEventListener listener;
         private final NotificationScope scope;
+        private final AsynchronousEventDispatcher dispatcher;
 
-        private ListenerWrapper(CacheEventListener listener, NotificationScope scope) {
+        private ListenerWrapper(CacheEventListener listener, NotificationScope scope, AsynchronousEventDispatcher dispatcher) {
             this.listener = listener;
             this.scope = scope;
+            this.dispatcher = dispatcher;
         }
 
         private CacheEventListener getListener() {
@@ -541,6 +630,10 @@ public class RegisteredEventListeners {
             return this.scope;
         }
 
+        private AsynchronousEventDispatcher getDispatcher() {
+            return this.dispatcher;
+        }
+
         /**
          * Hash code based on listener
          *
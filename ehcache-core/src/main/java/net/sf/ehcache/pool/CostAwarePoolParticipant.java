@@ -0,0 +1,47 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool;
+
+/**
+ * A pool participant able to tell what giving up some of its bytes would cost.
+ * <p>
+ * Pool evictors use this to take bytes from the participants whose entries are the cheapest to lose: the ones whose
+ * least valuable entries are rarely asked for again, or cheap to load back when they are.
+ */
+public interface CostAwarePoolParticipant extends PoolParticipant {
+
+    /**
+     * Return the approximate cost of a miss, as the average time spent loading a missing entry
+     *
+     * @return the approximate cost of a miss in nanoseconds, or 0 if it is not known
+     */
+    float getApproximateMissCost();
+
+    /**
+     * Return the approximate rate of the hits that the last evicted entries would have served, had they been kept
+     *
+     * @return the approximate marginal hit rate, per second
+     */
+    float getApproximateMarginalHitRate();
+
+    /**
+     * Return the approximate number of last evicted entries the marginal hit rate is measured over
+     *
+     * @return the approximate marginal count size
+     */
+    long getApproximateMarginalCountSize();
+}
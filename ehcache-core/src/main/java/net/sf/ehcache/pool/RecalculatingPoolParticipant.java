@@ -0,0 +1,39 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool;
+
+/**
+ * A pool participant able to measure one of its entries again.
+ * <p>
+ * Pools that admit entries with an estimated size rely on this to have the store replace the estimate it recorded
+ * with an exact size, through {@link PoolAccessor#replace(long, Object, Object, Object, boolean)}.
+ */
+public interface RecalculatingPoolParticipant extends PoolParticipant {
+
+    /**
+     * Recalculates the size of the entry mapped to the given key, provided it is the entry that was added with the
+     * given value and container.
+     * <p>
+     * An entry is handed to its pool before the participant installs it, so the mapping may not hold it yet.
+     *
+     * @param key the key of the entry
+     * @param value the value the entry was added with
+     * @param container the container the entry was added with
+     * @return false if the key is not mapped to that entry, either not yet or not anymore
+     */
+    boolean recalculateSize(Object key, Object value, Object container);
+}
@@ -60,7 +60,7 @@ public abstract class AbstractPoolAccessor implements PoolAccessor<PoolParticipa
      */
     public final long add(Object key, Object value, Object container, boolean force) {
         checkLinked();
-        Size sizeOf = sizeOfEngine.sizeOf(key, value, container);
+        Size sizeOf = sizeOf(key, value, container, true);
         if (!sizeOf.isExact()) {
             abortedSizeOf = true;
         }
@@ -71,10 +71,23 @@ public abstract class AbstractPoolAccessor implements PoolAccessor<PoolParticipa
      * {@inheritDoc}
      */
     public final boolean canAddWithoutEvicting(Object key, Object value, Object container) {
-        Size sizeOf = sizeOfEngine.sizeOf(key, value, container);
+        Size sizeOf = sizeOf(key, value, container, false);
         return canAddWithoutEvicting(sizeOf.getCalculated());
     }
 
+    /**
+     * Sizes an element on behalf of this accessor, using the {@link SizeOfEngine}.
+     *
+     * @param key the key of the element
+     * @param value the value of the element
+     * @param container the element-container object
+     * @param adding true if the element is being added, in which case its exact size may be settled later
+     * @return the size of the element
+     */
+    protected Size sizeOf(Object key, Object value, Object container, boolean adding) {
+        return sizeOfEngine.sizeOf(key, value, container);
+    }
+
     /**
      * Add a specific number of bytes to the pool.
      *
@@ -97,7 +110,7 @@ public abstract class AbstractPoolAccessor implements PoolAccessor<PoolParticipa
      * {@inheritDoc}
      */
     public final long replace(long currentSize, Object key, Object value, Object container, boolean force) {
-        Size sizeOf = sizeOfEngine.sizeOf(key, value, container);
+        Size sizeOf = sizeOf(key, value, container, false);
 
         long delta = sizeOf.getCalculated() - currentSize;
         if (delta == 0L) {
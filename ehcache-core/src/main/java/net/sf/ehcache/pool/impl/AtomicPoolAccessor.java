@@ -16,21 +16,24 @@
 
 package net.sf.ehcache.pool.impl;
 
-import java.util.concurrent.atomic.AtomicLong;
-
-import net.sf.ehcache.pool.Pool;
 import net.sf.ehcache.pool.PoolParticipant;
 import net.sf.ehcache.pool.SizeOfEngine;
+import net.sf.ehcache.util.concurrent.LongAdder;
 
 /**
  * The PoolAccessor class of the BoundedPool
+ * <p>
+ * The size is kept in a striped counter so that concurrent adds and deletes to the same accessor do not all
+ * contend on a single variable. The pool size remains the sum of its live accessors' sizes, which adds only compute
+ * once the room the pool knows to be left below its bound has run out.
  *
  * @author Chris Dennis
  * @author Ludovic Orban
  */
 final class AtomicPoolAccessor extends AbstractPoolAccessor {
 
-    private final AtomicLong size;
+    private final BoundedPool boundedPool;
+    private final LongAdder size = new LongAdder();
 
     /**
      * Creates an atomic pool accessor with the specified properties.
@@ -40,9 +43,10 @@ final class AtomicPoolAccessor extends AbstractPoolAccessor {
      * @param sizeOfEngine engine used to size objects
      * @param currentSize initial size of the poolParticipant
      */
-    AtomicPoolAccessor(Pool pool, PoolParticipant poolParticipant, SizeOfEngine sizeOfEngine, long currentSize) {
+    AtomicPoolAccessor(BoundedPool pool, PoolParticipant poolParticipant, SizeOfEngine sizeOfEngine, long currentSize) {
         super(pool, poolParticipant, sizeOfEngine);
-        this.size = new AtomicLong(currentSize);
+        this.boundedPool = pool;
+        size.add(currentSize);
     }
 
     /**
@@ -52,11 +56,18 @@ final class AtomicPoolAccessor extends AbstractPoolAccessor {
         if (sizeOf < 0L) {
             throw new IllegalArgumentException("cannot add negative size");
         }
+        if (boundedPool.takeRoom(sizeOf)) {
+            // known room left below the bound => add & approve
+            size.add(sizeOf);
+            return sizeOf;
+        }
+
         long newSize = getPool().getSize() + sizeOf;
 
         if (newSize <= getPool().getMaxSize()) {
             // there is enough room => add & approve
-            size.addAndGet(sizeOf);
+            size.add(sizeOf);
+            boundedPool.refillRoom(newSize);
             return sizeOf;
         } else {
             // check that the element isn't too big
@@ -69,7 +80,7 @@ final class AtomicPoolAccessor extends AbstractPoolAccessor {
             long missingSize = newSize - getPool().getMaxSize();
 
             if (getPool().getEvictor().freeSpace(getPool().getPoolAccessors(), missingSize) || force) {
-                size.addAndGet(sizeOf);
+                size.add(sizeOf);
                 return sizeOf;
             } else {
                 // cannot free enough bytes
@@ -82,6 +93,9 @@ final class AtomicPoolAccessor extends AbstractPoolAccessor {
      * {@inheritDoc}
      */
     protected boolean canAddWithoutEvicting(long sizeOf) {
+        if (boundedPool.hasRoom(sizeOf)) {
+            return true;
+        }
         long newSize = getPool().getSize() + sizeOf;
         return newSize <= getPool().getMaxSize();
     }
@@ -95,7 +109,7 @@ final class AtomicPoolAccessor extends AbstractPoolAccessor {
 //            throw new IllegalArgumentException("cannot delete negative size");
 //        }
 
-        size.addAndGet(-sizeOf);
+        size.add(-sizeOf);
 
         return sizeOf;
     }
@@ -104,13 +118,14 @@ final class AtomicPoolAccessor extends AbstractPoolAccessor {
      * {@inheritDoc}
      */
     public long getSize() {
-        return size.get();
+        return size.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     protected void doClear() {
-        size.set(0);
+        // subtract what was counted rather than reset, which would lose adds and deletes racing with the clear
+        size.add(-size.sum());
     }
 }
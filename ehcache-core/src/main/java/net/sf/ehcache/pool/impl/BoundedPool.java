@@ -16,6 +16,8 @@
 
 package net.sf.ehcache.pool.impl;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import net.sf.ehcache.pool.PoolParticipant;
 import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.PoolAccessor;
@@ -24,12 +26,23 @@ import net.sf.ehcache.pool.PoolEvictor;
 /**
  * A pool which loosely obeys to its bound: it can allow the accessors to consume more bytes than what
  * has been configured if that helps concurrency.
+ * <p>
+ * Whenever an add is checked against the exact pool size, the room left below the bound minus a small margin is
+ * recorded. Following adds take from that room without summing the accessors, until it runs out. Deletes do not give
+ * room back, so close to the bound every add is checked against the exact size.
 
  * @author Ludovic Orban
  * @author Chris Dennis
  */
 public class BoundedPool extends AbstractPool {
 
+    /**
+     * Fraction of the bound, as a shift, kept out of the room that accessors may take without summing the pool size.
+     */
+    private static final int ROOM_MARGIN_SHIFT = 6;
+
+    private final AtomicLong room = new AtomicLong();
+
     /**
      * Create a BoundedPool instance
      *
@@ -49,4 +62,51 @@ public class BoundedPool extends AbstractPool {
         registerPoolAccessor(accessor);
         return accessor;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxSize(long newSize) {
+        room.set(0L);
+        super.setMaxSize(newSize);
+    }
+
+    /**
+     * Takes bytes from the room known to be left below the bound, without summing the accessors.
+     *
+     * @param sizeOf the number of bytes to take
+     * @return true if the bytes were taken, false if the caller must check against the exact pool size
+     */
+    boolean takeRoom(long sizeOf) {
+        while (true) {
+            long left = room.get();
+            if (left < sizeOf) {
+                return false;
+            } else if (room.compareAndSet(left, left - sizeOf)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether there is room left below the bound for the given bytes, without summing the accessors.
+     *
+     * @param sizeOf the number of bytes
+     * @return true if there is room, false if the caller must check against the exact pool size
+     */
+    boolean hasRoom(long sizeOf) {
+        return room.get() >= sizeOf;
+    }
+
+    /**
+     * Resets the room left below the bound from an exact pool size, keeping a margin of the bound back to absorb
+     * adds racing with the reset.
+     *
+     * @param exactSize the exact size of the pool
+     */
+    void refillRoom(long exactSize) {
+        long maxSize = getMaxSize();
+        room.set(Math.max(0L, maxSize - exactSize - (maxSize >>> ROOM_MARGIN_SHIFT)));
+    }
 }
@@ -0,0 +1,159 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.ehcache.pool.CostAwarePoolParticipant;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.PoolEvictor;
+import net.sf.ehcache.pool.PoolParticipant;
+
+/**
+ * Pool evictor taking bytes from the participants whose misses cost the least.
+ * <p>
+ * Each participant is ranked by the expected miss cost, per second, that freeing a byte of it would add: the rate
+ * at which its least valuable entries would have been hit, times the time it takes to load one of them back, over
+ * the size of an entry. Participants which are not {@link CostAwarePoolParticipant cost aware} are ranked with their
+ * overall hit rate and the average miss cost of the other participants.
+ *
+ * @see BalancedAccessEvictor
+ */
+public class CostAwarePoolEvictor implements PoolEvictor<PoolParticipant> {
+
+    /**
+     * The system property enabling this evictor for the pools of the cache managers
+     */
+    public static final String COST_AWARE_EVICTION = "net.sf.ehcache.pool.costAwareEviction";
+
+    /**
+     * Comparator used to rank the participants by the cost of evicting from them.
+     */
+    private static final class EvictionCostComparator implements Comparator<PoolAccessor> {
+
+        private final Map<PoolAccessor, Float> evictionCosts;
+
+        private EvictionCostComparator(Map<PoolAccessor, Float> evictionCosts) {
+            this.evictionCosts = evictionCosts;
+        }
+
+        public int compare(PoolAccessor a1, PoolAccessor a2) {
+            return Float.compare(evictionCosts.get(a1), evictionCosts.get(a2));
+        }
+    }
+
+    /**
+     * Checks whether cache managers should use this evictor for their pools.
+     *
+     * @return true if the {@value #COST_AWARE_EVICTION} system property is set to true
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(COST_AWARE_EVICTION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean freeSpace(Collection<PoolAccessor<PoolParticipant>> from, long bytes) {
+        if (from == null || from.isEmpty()) {
+            return false;
+        }
+
+        List<PoolAccessor> sorted = new ArrayList<PoolAccessor>(from);
+        float defaultMissCost = getAverageKnownMissCost(sorted);
+        Map<PoolAccessor, Float> evictionCosts = new IdentityHashMap<PoolAccessor, Float>(sorted.size() + 1);
+        for (PoolAccessor accessor : sorted) {
+            evictionCosts.put(accessor, evictionCost(accessor, defaultMissCost));
+        }
+        Collections.sort(sorted, new EvictionCostComparator(evictionCosts));
+
+        for (PoolAccessor accessor : sorted) {
+            int count;
+            long byteSize = accessor.getSize();
+            long countSize = accessor.getParticipant().getApproximateCountSize();
+            if (countSize == 0 || byteSize == 0) {
+                count = 1;
+            } else {
+                count = (int) Math.max((bytes * countSize) / byteSize, 1L);
+            }
+            if (accessor.getParticipant().evict(count, bytes)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Computes the expected miss cost per second added by freeing a byte of the given accessor.
+     *
+     * @param accessor the accessor to evict from
+     * @param defaultMissCost the miss cost to assume if the participant does not measure its own
+     * @return the eviction cost, the lower the better
+     */
+    static float evictionCost(PoolAccessor accessor, float defaultMissCost) {
+        PoolParticipant participant = accessor.getParticipant();
+        long byteSize = accessor.getSize();
+        long countSize = participant.getApproximateCountSize();
+        if (byteSize <= 0 || countSize <= 0) {
+            return Float.MAX_VALUE;
+        }
+
+        float entryHitRate = participant.getApproximateHitRate() / countSize;
+        float missCost = defaultMissCost;
+        if (participant instanceof CostAwarePoolParticipant) {
+            CostAwarePoolParticipant costAware = (CostAwarePoolParticipant) participant;
+            long marginalCountSize = costAware.getApproximateMarginalCountSize();
+            if (marginalCountSize > 0) {
+                entryHitRate = costAware.getApproximateMarginalHitRate() / marginalCountSize;
+            }
+            float ownMissCost = costAware.getApproximateMissCost();
+            if (ownMissCost > 0) {
+                missCost = ownMissCost;
+            }
+        }
+
+        float cost = entryHitRate * missCost / ((float) byteSize / countSize);
+        if (Float.isNaN(cost)) {
+            throw new AssertionError(String.format("NaN Eviction Cost [hitRate:%f missCost:%f bytes:%d count:%d]",
+                entryHitRate, missCost, byteSize, countSize));
+        }
+        return cost;
+    }
+
+    private static float getAverageKnownMissCost(Collection<PoolAccessor> from) {
+        float total = 0;
+        int known = 0;
+        for (PoolAccessor accessor : from) {
+            PoolParticipant participant = accessor.getParticipant();
+            if (participant instanceof CostAwarePoolParticipant) {
+                float missCost = ((CostAwarePoolParticipant) participant).getApproximateMissCost();
+                if (missCost > 0) {
+                    total += missCost;
+                    known++;
+                }
+            }
+        }
+        return known == 0 ? 1 : total / known;
+    }
+}
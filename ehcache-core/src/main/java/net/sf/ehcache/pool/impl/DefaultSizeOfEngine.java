@@ -30,6 +30,7 @@ import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.sizeof.AgentSizeOf;
 import net.sf.ehcache.pool.sizeof.ReflectionSizeOf;
 import net.sf.ehcache.pool.sizeof.SizeOf;
+import net.sf.ehcache.pool.sizeof.Sizers;
 import net.sf.ehcache.pool.sizeof.UnsafeSizeOf;
 import net.sf.ehcache.pool.sizeof.MaxDepthExceededException;
 import net.sf.ehcache.pool.sizeof.filter.AnnotationSizeOfFilter;
@@ -144,6 +145,15 @@ public class DefaultSizeOfEngine implements SizeOfEngine {
         return new DefaultSizeOfEngine(this, maxDepth, abortWhenMaxDepthExceeded);
     }
 
+    /**
+     * Returns the registry of the sizers used by this engine, and by the engines copied from it.
+     *
+     * @return the sizers
+     */
+    public Sizers getSizers() {
+        return sizeOf.getSizers();
+    }
+
     private static SizeOfFilter getUserFilter() {
         String userFilterProperty = System.getProperty(USER_FILTER_RESOURCE);
 
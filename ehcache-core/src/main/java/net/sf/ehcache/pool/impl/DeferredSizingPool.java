@@ -0,0 +1,254 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.PoolEvictor;
+import net.sf.ehcache.pool.PoolParticipant;
+import net.sf.ehcache.pool.SizeOfEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool which admits elements with an estimated size and settles their exact size in the background.
+ * <p>
+ * Accessors of participants implementing {@link net.sf.ehcache.pool.RecalculatingPoolParticipant} estimate the size
+ * of added elements from the sizes previously measured for their value type. A background thread then has the
+ * participant recalculate each of those elements, which replaces the estimate by an exact size, and frees space
+ * through the evictor whenever the pool ends up over its bound. The pool lets adds go up to an over-commit margin
+ * above its maximum size before evicting on the adding thread, as a {@link BoundedPool} does.
+ * <p>
+ * Elements are queued as they are added, which happens before the participant installs them. An element the
+ * participant does not map yet is retried a few times, a short while later each time, and given up on once it has
+ * been replaced or removed.
+ * <p>
+ * Elements of a type not sized yet, and all elements once too many are waiting to be settled, are sized right away.
+ */
+public class DeferredSizingPool extends AbstractPool {
+
+    /**
+     * System property enabling deferred sizing for the byte-bounded heap pools created by caches and cache managers.
+     */
+    public static final String DEFERRED_SIZING = "net.sf.ehcache.sizeof.deferred";
+
+    /**
+     * The default over-commit margin, as a fraction of the maximum pool size.
+     */
+    public static final float DEFAULT_OVER_COMMIT = 0.05f;
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeferredSizingPool.class.getName());
+
+    private static final int MAX_PENDING = 10000;
+    private static final long IDLE_TIMEOUT_MILLIS = 1000L;
+    private static final long RETRY_DELAY_MILLIS = 10L;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final PendingSizing EVICTION_REQUEST = new PendingSizing(null, null, null, null);
+
+    private final float overCommit;
+    private final BlockingQueue<PendingSizing> pending = new LinkedBlockingQueue<PendingSizing>(MAX_PENDING);
+    private final AtomicBoolean sizerRunning = new AtomicBoolean();
+
+    /**
+     * Create a DeferredSizingPool instance with the default over-commit margin
+     *
+     * @param maximumPoolSize the maximum size of the pool, in bytes.
+     * @param evictor the pool evictor, for cross-store eviction.
+     * @param defaultSizeOfEngine the default SizeOf engine used by the accessors.
+     */
+    public DeferredSizingPool(long maximumPoolSize, PoolEvictor evictor, SizeOfEngine defaultSizeOfEngine) {
+        this(maximumPoolSize, evictor, defaultSizeOfEngine, DEFAULT_OVER_COMMIT);
+    }
+
+    /**
+     * Create a DeferredSizingPool instance
+     *
+     * @param maximumPoolSize the maximum size of the pool, in bytes.
+     * @param evictor the pool evictor, for cross-store eviction.
+     * @param defaultSizeOfEngine the default SizeOf engine used by the accessors.
+     * @param overCommit how far above its maximum size adds may take the pool before evicting inline, as a fraction
+     *                   of the maximum size.
+     */
+    public DeferredSizingPool(long maximumPoolSize, PoolEvictor evictor, SizeOfEngine defaultSizeOfEngine, float overCommit) {
+        super(maximumPoolSize, evictor, defaultSizeOfEngine);
+        if (overCommit < 0) {
+            throw new IllegalArgumentException("over-commit margin cannot be negative: " + overCommit);
+        }
+        this.overCommit = overCommit;
+    }
+
+    /**
+     * Whether deferred sizing was enabled through the {@value #DEFERRED_SIZING} system property.
+     *
+     * @return true if byte-bounded heap pools should defer sizing
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(DEFERRED_SIZING);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PoolAccessor createPoolAccessor(PoolParticipant participant, SizeOfEngine sizeOfEngine) {
+        DeferredSizingPoolAccessor accessor = new DeferredSizingPoolAccessor(this, participant, sizeOfEngine);
+        registerPoolAccessor(accessor);
+        return accessor;
+    }
+
+    /**
+     * The number of bytes adds may take this pool over its maximum size.
+     *
+     * @return the over-commit margin in bytes
+     */
+    long getOverCommitSize() {
+        return (long) (getMaxSize() * overCommit);
+    }
+
+    /**
+     * Queues the recalculation of an element admitted with an estimated size.
+     *
+     * @param accessor the accessor the element was added through
+     * @param key the element key
+     * @param value the element value
+     * @param container the element container
+     * @return false if too many elements are already waiting, in which case the element should be sized right away
+     */
+    boolean defer(DeferredSizingPoolAccessor accessor, Object key, Object value, Object container) {
+        if (pending.offer(new PendingSizing(accessor, key, value, container))) {
+            startSizer();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Has the background thread bring the pool back under its maximum size.
+     */
+    void requestEviction() {
+        pending.offer(EVICTION_REQUEST);
+        startSizer();
+    }
+
+    private void startSizer() {
+        if (sizerRunning.compareAndSet(false, true)) {
+            Thread sizer = new Thread(new Sizer(), "Deferred SizeOf Thread");
+            sizer.setDaemon(true);
+            sizer.start();
+        }
+    }
+
+    private void evictOverflow() {
+        long overflow = getSize() - getMaxSize();
+        if (overflow > 0) {
+            getEvictor().freeSpace(getPoolAccessors(), overflow);
+        }
+    }
+
+    /**
+     * Settles pending elements, and stops once it has been idle for a while so that unused pools do not keep a thread.
+     */
+    private final class Sizer implements Runnable {
+
+        private final List<PendingSizing> retries = new ArrayList<PendingSizing>();
+
+        public void run() {
+            try {
+                while (true) {
+                    long timeout = retries.isEmpty() ? IDLE_TIMEOUT_MILLIS : RETRY_DELAY_MILLIS;
+                    PendingSizing next = pending.poll(timeout, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        if (!retries.isEmpty()) {
+                            requeueRetries();
+                            continue;
+                        }
+                        sizerRunning.set(false);
+                        if (pending.isEmpty() || !sizerRunning.compareAndSet(false, true)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    do {
+                        settle(next);
+                    } while ((next = pending.poll()) != null);
+                    evictOverflow();
+                    requeueRetries();
+                }
+            } catch (InterruptedException e) {
+                sizerRunning.set(false);
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                sizerRunning.set(false);
+                LOG.warn("Deferred sizing stopped", e);
+            }
+        }
+
+        private void settle(PendingSizing sizing) {
+            if (sizing != EVICTION_REQUEST) {
+                try {
+                    if (!sizing.accessor.settle(sizing.key, sizing.value, sizing.container) && ++sizing.attempts < MAX_ATTEMPTS) {
+                        // not installed yet, or already replaced or removed
+                        sizing.retryAt = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                        retries.add(sizing);
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("Caught exception while recalculating the size of " + sizing.key, e);
+                }
+            }
+        }
+
+        private void requeueRetries() {
+            long now = System.currentTimeMillis();
+            for (Iterator<PendingSizing> it = retries.iterator(); it.hasNext();) {
+                PendingSizing retry = it.next();
+                if (retry.retryAt <= now) {
+                    it.remove();
+                    if (!pending.offer(retry)) {
+                        LOG.debug("Dropped the deferred sizing of {}, too many elements are waiting", retry.key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * An element waiting for its exact size.
+     */
+    private static final class PendingSizing {
+        private final DeferredSizingPoolAccessor accessor;
+        private final Object key;
+        private final Object value;
+        private final Object container;
+        private int attempts;
+        private long retryAt;
+
+        private PendingSizing(DeferredSizingPoolAccessor accessor, Object key, Object value, Object container) {
+            this.accessor = accessor;
+            this.key = key;
+            this.value = value;
+            this.container = container;
+        }
+    }
+}
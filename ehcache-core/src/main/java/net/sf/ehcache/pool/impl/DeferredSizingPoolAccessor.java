@@ -0,0 +1,166 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.pool.PoolParticipant;
+import net.sf.ehcache.pool.RecalculatingPoolParticipant;
+import net.sf.ehcache.pool.Size;
+import net.sf.ehcache.pool.SizeOfEngine;
+import net.sf.ehcache.util.WeakIdentityConcurrentMap;
+
+/**
+ * The PoolAccessor class of the DeferredSizingPool
+ */
+final class DeferredSizingPoolAccessor extends AbstractPoolAccessor {
+
+    /**
+     * Estimates move by one eighth of the difference with each new measure.
+     */
+    private static final int ESTIMATE_SMOOTHING_SHIFT = 3;
+
+    private final DeferredSizingPool pool;
+    private final AtomicLong size = new AtomicLong();
+    private final WeakIdentityConcurrentMap<Class<?>, AtomicLong> estimates = new WeakIdentityConcurrentMap<Class<?>, AtomicLong>();
+
+    /**
+     * Creates a deferred sizing pool accessor with the specified properties.
+     *
+     * @param pool pool to be accessed
+     * @param poolParticipant accessing poolParticipant
+     * @param sizeOfEngine engine used to size objects
+     */
+    DeferredSizingPoolAccessor(DeferredSizingPool pool, PoolParticipant poolParticipant, SizeOfEngine sizeOfEngine) {
+        super(pool, poolParticipant, sizeOfEngine);
+        this.pool = pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Size sizeOf(Object key, Object value, Object container, boolean adding) {
+        Class<?> type = value == null ? key.getClass() : value.getClass();
+        if (adding && getParticipant() instanceof RecalculatingPoolParticipant) {
+            AtomicLong estimate = estimates.get(type);
+            if (estimate != null && pool.defer(this, key, value, container)) {
+                return new Size(estimate.get(), true);
+            }
+        }
+
+        Size size = sizeOfEngine.sizeOf(key, value, container);
+        if (size.isExact()) {
+            learn(type, size.getCalculated());
+        }
+        return size;
+    }
+
+    private void learn(Class<?> type, long measured) {
+        AtomicLong estimate = estimates.get(type);
+        if (estimate == null) {
+            estimate = estimates.putIfAbsent(type, new AtomicLong(measured));
+        }
+        if (estimate != null) {
+            long current = estimate.get();
+            // racing updates may be lost, the estimate only needs to stay close
+            estimate.set(current + ((measured - current) >> ESTIMATE_SMOOTHING_SHIFT));
+        }
+    }
+
+    /**
+     * Has the participant replace the estimated size of an element by its exact size.
+     *
+     * @param key the element key
+     * @param value the element value
+     * @param container the element container
+     * @return false if the participant does not map the key to that element
+     */
+    boolean settle(Object key, Object value, Object container) {
+        return ((RecalculatingPoolParticipant) getParticipant()).recalculateSize(key, value, container);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected long add(long sizeOf, boolean force) throws IllegalArgumentException {
+        if (sizeOf < 0L) {
+            throw new IllegalArgumentException("cannot add negative size");
+        }
+        long newSize = pool.getSize() + sizeOf;
+        long maxSize = pool.getMaxSize();
+
+        if (newSize <= maxSize) {
+            // there is enough room => add & approve
+            size.addAndGet(sizeOf);
+            return sizeOf;
+        } else if (newSize <= maxSize + pool.getOverCommitSize()) {
+            // within the margin => add & leave eviction to the background
+            size.addAndGet(sizeOf);
+            pool.requestEviction();
+            return sizeOf;
+        } else {
+            // check that the element isn't too big
+            if (!force && sizeOf > maxSize) {
+                // this is too big to fit in the pool
+                return -1;
+            }
+
+            // if there is not enough room => evict
+            long missingSize = newSize - maxSize;
+
+            if (pool.getEvictor().freeSpace(pool.getPoolAccessors(), missingSize) || force) {
+                size.addAndGet(sizeOf);
+                return sizeOf;
+            } else {
+                // cannot free enough bytes
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean canAddWithoutEvicting(long sizeOf) {
+        long newSize = pool.getSize() + sizeOf;
+        return newSize <= pool.getMaxSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long delete(long sizeOf) throws IllegalArgumentException {
+        checkLinked();
+        size.addAndGet(-sizeOf);
+        return sizeOf;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doClear() {
+        size.set(0);
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+/**
+ * Measures what the misses of a cache cost, as the time spent loading the missing entries.
+ * <p>
+ * The average is an exponentially weighted moving one, so that it follows the latency of the system of record as it
+ * changes. Concurrent samples may be lost, which only makes the average a little less reactive.
+ */
+public final class MissCostMeter {
+
+    /**
+     * Each sample weighs 1/16th of the average.
+     */
+    private static final int WEIGHT_SHIFT = 4;
+
+    private volatile long averageNanos = -1;
+
+    /**
+     * Records the time a load took.
+     *
+     * @param nanos the duration of the load, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long average = averageNanos;
+        if (average < 0) {
+            averageNanos = nanos;
+        } else {
+            averageNanos = average + ((nanos - average) >> WEIGHT_SHIFT);
+        }
+    }
+
+    /**
+     * Returns the average time loads took.
+     *
+     * @return the average duration of a load in nanoseconds, or 0 if none was recorded
+     */
+    public float getAverageNanos() {
+        return Math.max(averageNanos, 0L);
+    }
+}
@@ -21,10 +21,11 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.IdentityHashMap;
-import java.util.Stack;
 
 import net.sf.ehcache.pool.sizeof.filter.SizeOfFilter;
 import net.sf.ehcache.util.WeakIdentityConcurrentMap;
@@ -34,6 +35,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * This will walk an object graph and let you execute some "function" along the way
+ * <p>
+ * Objects of a type with a registered {@link Sizer} are not walked, the sizer's measure is used instead.
+ * Classes whose only references are final fields of final types holding no references themselves (boxed
+ * primitives, small immutable value types) have their shape learned once, so that their instances are
+ * measured in place rather than by pushing each of their fields through the walk.
  *
  * @author Alex Snaps
  */
@@ -60,15 +66,26 @@ final class ObjectGraphWalker {
 
     private static final boolean USE_VERBOSE_DEBUG_LOGGING;
 
+    /**
+     * Walk state grown past this many visited objects is dropped rather than kept for the thread's next walk.
+     */
+    private static final int MAX_RETAINED_VISITED = 1024;
+
+    private static final Collection<Field> NOT_FIXED = Collections.unmodifiableList(new ArrayList<Field>(0));
+
     // Todo this is probably not what we want...
     private final WeakIdentityConcurrentMap<Class<?>, SoftReference<Collection<Field>>> fieldCache =
             new WeakIdentityConcurrentMap<Class<?>, SoftReference<Collection<Field>>>();
     private final WeakIdentityConcurrentMap<Class<?>, Boolean> classCache =
             new WeakIdentityConcurrentMap<Class<?>, Boolean>();
+    private final WeakIdentityConcurrentMap<Class<?>, Collection<Field>> fixedShapeCache =
+            new WeakIdentityConcurrentMap<Class<?>, Collection<Field>>();
+    private final ThreadLocal<WalkState> walkState = new ThreadLocal<WalkState>();
 
     private final SizeOfFilter sizeOfFilter;
 
     private final Visitor visitor;
+    private final Sizers sizers;
 
     static {
         USE_VERBOSE_DEBUG_LOGGING = getVerboseSizeOfDebugLogging();
@@ -83,8 +100,22 @@ final class ObjectGraphWalker {
      * @see SizeOfFilter
      */
     ObjectGraphWalker(Visitor visitor, SizeOfFilter filter) {
+        this(visitor, filter, new Sizers());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param visitor the visitor to use
+     * @param filter the filtering
+     * @param sizers the sizers replacing the walk of their types
+     * @see Visitor
+     * @see SizeOfFilter
+     */
+    ObjectGraphWalker(Visitor visitor, SizeOfFilter filter, Sizers sizers) {
         this.visitor = visitor;
         this.sizeOfFilter = filter;
+        this.sizers = sizers;
     }
 
     private static boolean getVerboseSizeOfDebugLogging() {
@@ -120,10 +151,14 @@ final class ObjectGraphWalker {
         StringBuilder traversalDebugMessage = null;
         long result = 0;
         boolean warned = false;
+        WalkState state = walkState.get();
+        if (state == null || state.inUse) {
+            state = new WalkState();
+        }
+        state.inUse = true;
+        final ArrayDeque<Object> toVisit = state.toVisit;
+        final IdentityHashMap<Object, Object> visited = state.visited;
         try {
-            Stack<Object> toVisit = new Stack<Object>();
-            IdentityHashMap<Object, Object> visited = new IdentityHashMap<Object, Object>();
-
             if (root != null) {
                 if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
                     traversalDebugMessage = new StringBuilder();
@@ -152,21 +187,39 @@ final class ObjectGraphWalker {
 
                 Class<?> refClass = ref.getClass();
                 if (!isSharedFlyweight(ref) && shouldWalkClass(refClass)) {
-                    if (refClass.isArray() && !refClass.getComponentType().isPrimitive()) {
-                        for (int i = 0; i < Array.getLength(ref); i++) {
-                            nullSafeAdd(toVisit, Array.get(ref, i));
+                    long visitSize = sizers.sizeOf(ref);
+                    if (visitSize >= 0) {
+                        // measured by the type's sizer
+                    } else if (refClass.isArray()) {
+                        if (!refClass.getComponentType().isPrimitive()) {
+                            for (int i = 0; i < Array.getLength(ref); i++) {
+                                nullSafeAdd(toVisit, Array.get(ref, i));
+                            }
                         }
+                        visitSize = calculateSize(ref);
                     } else {
-                        for (Field field : getFilteredFields(refClass)) {
-                            try {
-                                nullSafeAdd(toVisit, field.get(ref));
-                            } catch (IllegalAccessException ex) {
-                                throw new RuntimeException(ex);
+                        Collection<Field> fixedFields = getFixedShape(refClass);
+                        if (fixedFields == NOT_FIXED) {
+                            for (Field field : getFilteredFields(refClass)) {
+                                nullSafeAdd(toVisit, readField(field, ref));
+                            }
+                            visitSize = calculateSize(ref);
+                        } else {
+                            visitSize = calculateSize(ref);
+                            for (Field field : fixedFields) {
+                                Object leaf = readField(field, ref);
+                                if (leaf != null && !visited.containsKey(leaf)) {
+                                    warned = checkMaxDepth(maxDepth, abortWhenMaxDepthExceeded, warned, visited);
+                                    visited.put(leaf, null);
+                                    if (!isSharedFlyweight(leaf)) {
+                                        long leafSize = sizers.sizeOf(leaf);
+                                        visitSize += leafSize >= 0 ? leafSize : calculateSize(leaf);
+                                    }
+                                }
                             }
                         }
                     }
 
-                    long visitSize = calculateSize(ref);
                     if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
                         traversalDebugMessage.append("  ").append(visitSize).append("b\t\t")
                             .append(ref.getClass().getName()).append("@").append(System.identityHashCode(ref)).append("\n");
@@ -187,9 +240,55 @@ final class ObjectGraphWalker {
         } catch (MaxDepthExceededException we) {
             we.addToMeasuredSize(result);
             throw we;
+        } finally {
+            if (visited.size() > MAX_RETAINED_VISITED) {
+                walkState.remove();
+            } else {
+                toVisit.clear();
+                visited.clear();
+                state.inUse = false;
+                walkState.set(state);
+            }
         }
     }
 
+    private static Object readField(Field field, Object ref) {
+        try {
+            return field.get(ref);
+        } catch (IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Returns the fields of a class whose instances can be measured in place, or {@code NOT_FIXED}.
+     * <p>
+     * A class has a fixed shape when every field the walk would follow is final and of a final, non array type
+     * that itself has nothing left to walk.
+     *
+     * @param refClass the type
+     * @return the leaf fields of the type, or {@code NOT_FIXED}
+     */
+    private Collection<Field> getFixedShape(Class<?> refClass) {
+        Collection<Field> shape = fixedShapeCache.get(refClass);
+        if (shape == null) {
+            shape = learnShape(refClass);
+            fixedShapeCache.put(refClass, shape);
+        }
+        return shape;
+    }
+
+    private Collection<Field> learnShape(Class<?> refClass) {
+        Collection<Field> fields = getFilteredFields(refClass);
+        for (Field field : fields) {
+            Class<?> type = field.getType();
+            if (!Modifier.isFinal(field.getModifiers()) || !Modifier.isFinal(type.getModifiers()) || type.isArray()
+                || !shouldWalkClass(type) || !getFilteredFields(type).isEmpty()) {
+                return NOT_FIXED;
+            }
+        }
+        return fields;
+    }
     private long calculateSize(Object ref) {
         long visitSize = 0;
         if (ref == null) {
@@ -248,7 +347,7 @@ final class ObjectGraphWalker {
         return cached.booleanValue();
     }
 
-    private static void nullSafeAdd(final Stack<Object> toVisit, final Object o) {
+    private static void nullSafeAdd(final ArrayDeque<Object> toVisit, final Object o) {
         if (o != null) {
             toVisit.push(o);
         }
@@ -281,6 +380,15 @@ final class ObjectGraphWalker {
         return fields;
     }
 
+    /**
+     * The stack and visited set of a walk, kept per thread so that sizing does not allocate them for every element.
+     */
+    private static final class WalkState {
+        private final ArrayDeque<Object> toVisit = new ArrayDeque<Object>();
+        private final IdentityHashMap<Object, Object> visited = new IdentityHashMap<Object, Object>();
+        private boolean inUse;
+    }
+
     private static boolean isSharedFlyweight(Object obj) {
         FlyweightType type = FlyweightType.getFlyweightType(obj.getClass());
         return type != null && type.isShared(obj);
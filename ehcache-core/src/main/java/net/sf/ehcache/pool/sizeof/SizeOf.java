@@ -32,6 +32,7 @@ public abstract class SizeOf {
 
     private static final Logger LOG = LoggerFactory.getLogger(SizeOf.class.getName());
 
+    private final Sizers sizers;
     private final ObjectGraphWalker walker;
 
     /**
@@ -47,7 +48,17 @@ public abstract class SizeOf {
         } else {
             visitor = new SizeOfVisitor();
         }
-        this.walker = new ObjectGraphWalker(visitor, fieldFilter);
+        this.sizers = Sizers.load(SizeOf.class.getClassLoader());
+        this.walker = new ObjectGraphWalker(visitor, fieldFilter, sizers);
+    }
+
+    /**
+     * Returns the registry of the sizers used by this SizeOf.
+     *
+     * @return the sizers
+     */
+    public Sizers getSizers() {
+        return sizers;
     }
 
     /**
@@ -0,0 +1,48 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.sizeof;
+
+/**
+ * Sizes instances of a single type without walking their object graph.
+ * <p>
+ * A sizer is used for objects whose runtime class is exactly {@link #getType()}: the walker counts the size it
+ * returns and does not look at the object's fields. It should therefore account for everything the instance
+ * holds on to, the way the walker would have.
+ * <p>
+ * Sizers are discovered through the {@link java.util.ServiceLoader} mechanism, listing them in
+ * {@code META-INF/services/net.sf.ehcache.pool.sizeof.Sizer}, or registered with the {@link Sizers} of a
+ * SizeOf engine, such as {@link net.sf.ehcache.pool.impl.DefaultSizeOfEngine#getSizers()}.
+ *
+ * @param <T> the sized type
+ */
+public interface Sizer<T> {
+
+    /**
+     * The class this sizer sizes.
+     *
+     * @return the sized class
+     */
+    Class<T> getType();
+
+    /**
+     * Measures the deep size of an instance, in bytes.
+     *
+     * @param instance the instance to size
+     * @return the size in memory of the instance and what it references
+     */
+    long sizeOf(T instance);
+}
@@ -0,0 +1,102 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.sizeof;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import net.sf.ehcache.util.WeakIdentityConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A registry of {@link Sizer}s, consulted by the walker of a {@link SizeOf}.
+ * <p>
+ * Each SizeOf, and hence each SizeOf engine, has its own registry, initially holding the sizers found by the
+ * {@link ServiceLoader}. Sizers registered with one engine do not affect the others. The registry does not keep the
+ * sized classes from being unloaded.
+ */
+public final class Sizers {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Sizers.class);
+
+    private final WeakIdentityConcurrentMap<Class<?>, Sizer<?>> sizers = new WeakIdentityConcurrentMap<Class<?>, Sizer<?>>();
+    private volatile boolean used;
+
+    /**
+     * Creates an empty registry.
+     */
+    public Sizers() {
+        // empty registry
+    }
+
+    /**
+     * Creates a registry holding the sizers found by the {@link ServiceLoader} of the given class loader.
+     *
+     * @param classLoader the class loader to look the sizers up with
+     * @return the registry
+     */
+    public static Sizers load(ClassLoader classLoader) {
+        Sizers loaded = new Sizers();
+        try {
+            for (Sizer<?> sizer : ServiceLoader.load(Sizer.class, classLoader)) {
+                loaded.register(sizer);
+                LOG.debug("Using sizer {} for {}", sizer.getClass().getName(), sizer.getType().getName());
+            }
+        } catch (ServiceConfigurationError e) {
+            LOG.warn("Sizers could not be loaded", e);
+        }
+        return loaded;
+    }
+
+    /**
+     * Registers a sizer, replacing any sizer already registered for its type.
+     *
+     * @param sizer the sizer
+     * @return the replaced sizer, or null
+     */
+    public Sizer<?> register(Sizer<?> sizer) {
+        used = true;
+        return sizers.put(sizer.getType(), sizer);
+    }
+
+    /**
+     * Unregisters the sizer of a type.
+     *
+     * @param type the sized type
+     * @return the removed sizer, or null
+     */
+    public Sizer<?> unregister(Class<?> type) {
+        return sizers.remove(type);
+    }
+
+    /**
+     * Measures an object with the sizer registered for its exact class.
+     *
+     * @param object the object to size
+     * @return the size in bytes, or -1 if no sizer is registered for its class
+     */
+    @SuppressWarnings("unchecked")
+    long sizeOf(Object object) {
+        if (!used) {
+            return -1;
+        }
+        Sizer<Object> sizer = (Sizer<Object>) sizers.get(object.getClass());
+        return sizer == null ? -1 : sizer.sizeOf(object);
+    }
+}
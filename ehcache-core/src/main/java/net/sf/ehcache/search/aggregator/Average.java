@@ -23,7 +23,7 @@ import net.sf.ehcache.search.Attribute;
  *
  * @author teck
  */
-public class Average implements AggregatorInstance<Double> {
+public class Average implements MergeableAggregatorInstance<Double> {
 
     private final Attribute<?> attribute;
 
@@ -64,6 +64,26 @@ public class Average implements AggregatorInstance<Double> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<Double> partial) throws AggregatorException {
+        Engine other = ((Average) partial).engine;
+        if (other == null) {
+            return;
+        }
+
+        if (engine == null) {
+            engine = other;
+        } else if (other.rank() > engine.rank()) {
+            // fold into the wider engine so that fractional sums are not truncated
+            other.merge(engine.count(), engine.sum());
+            engine = other;
+        } else {
+            engine.merge(other.count(), other.sum());
+        }
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -114,6 +134,35 @@ public class Average implements AggregatorInstance<Double> {
          */
         abstract void accept(Number input) throws AggregatorException;
 
+        /**
+         * Update the engine with the inputs summarized by another engine.
+         *
+         * @param inputCount number of inputs
+         * @param inputSum sum of the inputs
+         */
+        abstract void merge(int inputCount, Number inputSum);
+
+        /**
+         * Get the number of inputs accepted by this engine.
+         *
+         * @return input count
+         */
+        abstract int count();
+
+        /**
+         * Get the sum of the inputs accepted by this engine.
+         *
+         * @return input sum
+         */
+        abstract Number sum();
+
+        /**
+         * Get the rank of the arithmetic of this engine. Merging into an engine of a lower rank would truncate.
+         *
+         * @return arithmetic rank
+         */
+        abstract int rank();
+
         /**
          * Get the (current) result of this engine.
          *
@@ -145,6 +194,27 @@ public class Average implements AggregatorInstance<Double> {
                 sum += input.intValue();
             }
 
+            @Override
+            void merge(int inputCount, Number inputSum) {
+                count += inputCount;
+                sum += inputSum.longValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return Long.valueOf(sum);
+            }
+
+            @Override
+            int rank() {
+                return 0;
+            }
+
             @Override
             Number result() {
                 return Float.valueOf(((float) sum) / count);
@@ -175,6 +245,27 @@ public class Average implements AggregatorInstance<Double> {
                 sum += input.longValue();
             }
 
+            @Override
+            void merge(int inputCount, Number inputSum) {
+                count += inputCount;
+                sum += inputSum.longValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return Long.valueOf(sum);
+            }
+
+            @Override
+            int rank() {
+                return 1;
+            }
+
             @Override
             Number result() {
                 return Double.valueOf(((double) sum) / count);
@@ -205,6 +296,27 @@ public class Average implements AggregatorInstance<Double> {
                 sum += input.floatValue();
             }
 
+            @Override
+            void merge(int inputCount, Number inputSum) {
+                count += inputCount;
+                sum += inputSum.floatValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return Float.valueOf(sum);
+            }
+
+            @Override
+            int rank() {
+                return 2;
+            }
+
             @Override
             Number result() {
                 return Float.valueOf(sum / count);
@@ -235,6 +347,27 @@ public class Average implements AggregatorInstance<Double> {
                 sum += input.doubleValue();
             }
 
+            @Override
+            void merge(int inputCount, Number inputSum) {
+                count += inputCount;
+                sum += inputSum.doubleValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return Double.valueOf(sum);
+            }
+
+            @Override
+            int rank() {
+                return 3;
+            }
+
             @Override
             Number result() {
                 return Double.valueOf(sum / count);
@@ -24,7 +24,7 @@ import net.sf.ehcache.search.Attribute;
  *
  * @author Greg Luck
  */
-public class Count implements AggregatorInstance<Integer> {
+public class Count implements MergeableAggregatorInstance<Integer> {
 
     private int count;
 
@@ -41,6 +41,13 @@ public class Count implements AggregatorInstance<Integer> {
         count++;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<Integer> partial) throws AggregatorException {
+        count += ((Count) partial).count;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,41 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.aggregator;
+
+/**
+ * An {@link AggregatorInstance} whose partial results can be combined.
+ * <p>
+ * Local searches evaluating disjoint subsets of a cache concurrently aggregate each subset into its own
+ * {@link #createClone() clone}, and fold those partial aggregates into the original instance once every subset is done.
+ * Aggregators that do not implement this interface are always fed every input by a single thread.
+ *
+ * @param <T>
+ *            the runtime type of aggregation result
+ */
+public interface MergeableAggregatorInstance<T> extends AggregatorInstance<T> {
+
+    /**
+     * Fold the inputs accepted by the given partial aggregator into this one.
+     * <p>
+     * The partial aggregator must have been created by {@link #createClone()} on this instance (or one of its clones),
+     * and should not be used once merged.
+     *
+     * @param partial a partial aggregator of the same function
+     * @throws AggregatorException if the partial results cannot be combined
+     */
+    void merge(AggregatorInstance<T> partial) throws AggregatorException;
+}
@@ -24,7 +24,7 @@ import net.sf.ehcache.search.Attribute;
  * @author teck
  * @param <T>
  */
-public class Min<T> implements AggregatorInstance<T> {
+public class Min<T> implements MergeableAggregatorInstance<T> {
 
     private Comparable min;
     private final Attribute<?> attribute;
@@ -72,6 +72,13 @@ public class Min<T> implements AggregatorInstance<T> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<T> partial) throws AggregatorException {
+        accept(partial.aggregateResult());
+    }
+
     private static Comparable getComparable(Object o) {
         if (o instanceof Comparable) {
             return (Comparable) o;
@@ -25,7 +25,7 @@ import net.sf.ehcache.search.Attribute;
  *
  * @author Greg Luck
  */
-public class Sum implements AggregatorInstance<Long> {
+public class Sum implements MergeableAggregatorInstance<Long> {
 
     private final Attribute<?> attribute;
 
@@ -65,6 +65,26 @@ public class Sum implements AggregatorInstance<Long> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<Long> partial) throws AggregatorException {
+        Engine other = ((Sum) partial).engine;
+        if (other == null) {
+            return;
+        }
+
+        if (engine == null) {
+            engine = other;
+        } else if (other.rank() > engine.rank()) {
+            // fold into the wider engine so that fractional sums are not truncated
+            other.accept(engine.result());
+            engine = other;
+        } else {
+            engine.accept(other.result());
+        }
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -113,6 +133,13 @@ public class Sum implements AggregatorInstance<Long> {
          */
         abstract void accept(Number input) throws AggregatorException;
 
+        /**
+         * Get the rank of the arithmetic of this engine. Merging into an engine of a lower rank would truncate.
+         *
+         * @return arithmetic rank
+         */
+        abstract int rank();
+
         /**
          * Get the (current) result of this engine.
          *
@@ -141,6 +168,11 @@ public class Sum implements AggregatorInstance<Long> {
                 sum += input.longValue();
             }
 
+            @Override
+            int rank() {
+                return 0;
+            }
+
             @Override
             Number result() {
                 return Long.valueOf(sum);
@@ -168,6 +200,11 @@ public class Sum implements AggregatorInstance<Long> {
                 sum += input.floatValue();
             }
 
+            @Override
+            int rank() {
+                return 1;
+            }
+
             @Override
             Number result() {
                 return Float.valueOf(sum);
@@ -195,6 +232,11 @@ public class Sum implements AggregatorInstance<Long> {
                 sum += input.doubleValue();
             }
 
+            @Override
+            int rank() {
+                return 2;
+            }
+
             @Override
             Number result() {
                 return Double.valueOf(sum);
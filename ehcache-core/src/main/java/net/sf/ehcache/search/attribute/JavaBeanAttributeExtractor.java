@@ -17,7 +17,6 @@
 package net.sf.ehcache.search.attribute;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 import net.sf.ehcache.Element;
 
@@ -31,8 +30,8 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
 
     private static final Object NO_VALUE = new Object();
 
-    private transient volatile MethodRef lastKeyMethod;
-    private transient volatile MethodRef lastValueMethod;
+    private transient volatile MemberAccessorCache keyGetters;
+    private transient volatile MemberAccessorCache valueGetters;
 
     private final String beanProperty;
 
@@ -64,31 +63,32 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
         final Object key = element.getObjectKey();
 
         if (key != null) {
-            MethodRef keyMethod = lastKeyMethod;
-            if (keyMethod == null || keyMethod.targetClass != key.getClass()) {
-                keyMethod = findMethod(key);
-                lastKeyMethod = keyMethod;
+            MemberAccessorCache getters = keyGetters;
+            if (getters == null) {
+                getters = MemberAccessorCache.forBeanProperty(beanProperty);
+                keyGetters = getters;
             }
-            if (keyMethod.method != null) {
-                attribute = getValue(keyMethod.method, key);
+            MemberAccessorCache.Accessor keyGetter = getters.accessorFor(key.getClass());
+            if (keyGetter.isPresent()) {
+                attribute = getValue(keyGetter, key);
             }
         }
 
         final Object value = element.getObjectValue();
 
         if (value != null) {
-            MethodRef valueMethod = lastValueMethod;
-            if (valueMethod == null || valueMethod.targetClass != value.getClass()) {
-                valueMethod = findMethod(value);
-                lastValueMethod = valueMethod;
+            MemberAccessorCache getters = valueGetters;
+            if (getters == null) {
+                getters = MemberAccessorCache.forBeanProperty(beanProperty);
+                valueGetters = getters;
             }
-
-            if (valueMethod.method != null) {
+            MemberAccessorCache.Accessor valueGetter = getters.accessorFor(value.getClass());
+            if (valueGetter.isPresent()) {
                 if (attribute != NO_VALUE) {
                     throw new AttributeExtractorException("Bean property [" + beanProperty + "] present on both key and value");
                 }
 
-                return getValue(valueMethod.method, value);
+                return getValue(valueGetter, value);
             }
         }
 
@@ -99,40 +99,9 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
         throw new AttributeExtractorException("Bean property [" + beanProperty + "] not present on either key or value");
     }
 
-    private MethodRef findMethod(Object obj) {        
-        String upperFirstProp = "" + Character.toUpperCase(beanProperty.charAt(0));
-        if (beanProperty.length() > 1) {
-            upperFirstProp += beanProperty.substring(1);
-        }
-        
-        final Class target = obj.getClass();
-
-        try {
-            return new MethodRef(target, target.getMethod("get" + upperFirstProp));
-        } catch (SecurityException e) {
-            throw new AttributeExtractorException(e);
-        } catch (NoSuchMethodException e) {
-            // keep looking
-        }
-
+    private Object getValue(MemberAccessorCache.Accessor getter, Object key) {
         try {
-            Method m = target.getMethod("is" + upperFirstProp);
-            if (m.getReturnType().equals(Boolean.class) || m.getReturnType().equals(Boolean.TYPE)) {
-                return new MethodRef(target, m);
-            }
-        } catch (SecurityException e) {
-            throw new AttributeExtractorException(e);
-        } catch (NoSuchMethodException e) {
-            //
-        }
-
-        // no applicable method available
-        return new MethodRef(target, null);
-    }
-
-    private Object getValue(Method method, Object key) {
-        try {
-            return method.invoke(key);
+            return getter.get(key);
         } catch (Throwable t) {
             if (t instanceof InvocationTargetException) {
                 t = t.getCause();
@@ -147,17 +116,4 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
         }
     }
 
-    /**
-     * A cached method lookup. Method is null to indicate the method is not present/accessible
-     */
-    private static class MethodRef {
-        private final Class targetClass;
-        private final Method method;
-
-        MethodRef(Class target, Method method) {
-            this.targetClass = target;
-            this.method = method;
-        }
-    }
-
 }
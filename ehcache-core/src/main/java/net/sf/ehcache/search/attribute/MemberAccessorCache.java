@@ -0,0 +1,289 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.attribute;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves, and caches per target class, the accessors reading a named member for the attribute extractors.
+ * <p>
+ * The accessor for the class read last is checked first, and the accessors for the other classes seen are kept in a
+ * map, so that caches holding instances of several classes do not repeat the reflective lookups. Members found to be
+ * absent from a class are cached as well, so the lookup exceptions are only taken once per class.
+ * <p>
+ * Members are read through method handles adapted to {@code (Object)Object}, so that the access checks are done once
+ * when the accessor is resolved rather than on each read.
+ */
+abstract class MemberAccessorCache {
+
+    private static final int MAX_CACHED_CLASSES = 64;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final String memberName;
+
+    private final ConcurrentMap<Class<?>, Accessor> accessors = new ConcurrentHashMap<Class<?>, Accessor>();
+    private volatile Accessor last;
+
+    private MemberAccessorCache(String memberName) {
+        this.memberName = memberName;
+    }
+
+    /**
+     * Create a cache of accessors reading the named field, declared by the target class or any of its superclasses
+     *
+     * @param fieldName the field name
+     * @return the accessor cache
+     */
+    static MemberAccessorCache forField(String fieldName) {
+        return new FieldAccessorCache(fieldName);
+    }
+
+    /**
+     * Create a cache of accessors calling the named no-arg method, declared by the target class or any of its superclasses
+     *
+     * @param methodName the method name
+     * @return the accessor cache
+     */
+    static MemberAccessorCache forMethod(String methodName) {
+        return new MethodAccessorCache(methodName);
+    }
+
+    /**
+     * Create a cache of accessors calling the public getter of the named javabean property
+     *
+     * @param beanProperty the property name
+     * @return the accessor cache
+     */
+    static MemberAccessorCache forBeanProperty(String beanProperty) {
+        return new BeanPropertyAccessorCache(beanProperty);
+    }
+
+    /**
+     * The name of the member read by the accessors of this cache
+     *
+     * @return the member name
+     */
+    String getMemberName() {
+        return memberName;
+    }
+
+    /**
+     * Get the accessor reading the member on instances of the given class
+     *
+     * @param targetClass the class of the instances to read
+     * @return the accessor, possibly for an absent member
+     * @throws AttributeExtractorException if the member could not be resolved
+     */
+    Accessor accessorFor(Class<?> targetClass) throws AttributeExtractorException {
+        Accessor accessor = last;
+        if (accessor != null && accessor.targetClass == targetClass) {
+            return accessor;
+        }
+
+        accessor = accessors.get(targetClass);
+        if (accessor == null) {
+            accessor = resolve(targetClass);
+            if (accessors.size() < MAX_CACHED_CLASSES) {
+                accessors.put(targetClass, accessor);
+            }
+        }
+        last = accessor;
+        return accessor;
+    }
+
+    /**
+     * Look the member up on the given class
+     *
+     * @param targetClass the class of the instances to read
+     * @return the accessor, possibly for an absent member
+     * @throws AttributeExtractorException if the member could not be resolved
+     */
+    abstract Accessor resolve(Class<?> targetClass) throws AttributeExtractorException;
+
+    /**
+     * Adapt a handle reading a member to the {@code (Object)Object} type of the accessors
+     *
+     * @param handle the handle, taking the target as its only argument unless the member is static
+     * @param isStatic whether the member is static
+     * @return the adapted handle
+     */
+    private static MethodHandle adapt(MethodHandle handle, boolean isStatic) {
+        if (isStatic) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return handle.asType(ACCESSOR_TYPE);
+    }
+
+    /**
+     * A resolved read of a member on instances of a given class. The handle and method are both null if the member is absent.
+     * <p>
+     * The method is only used when no handle could be obtained for it, and is then invoked with the reflective access checks.
+     */
+    static final class Accessor {
+        private final Class<?> targetClass;
+        private final MethodHandle handle;
+        private final Method method;
+
+        private Accessor(Class<?> targetClass, MethodHandle handle, Method method) {
+            this.targetClass = targetClass;
+            this.handle = handle;
+            this.method = method;
+        }
+
+        /**
+         * Whether the member is present on the target class
+         *
+         * @return true if the member can be read
+         */
+        boolean isPresent() {
+            return handle != null || method != null;
+        }
+
+        /**
+         * Read the member
+         *
+         * @param target an instance of the target class
+         * @return the member value
+         * @throws IllegalAccessException if the member is not accessible
+         * @throws InvocationTargetException if the method threw
+         */
+        Object get(Object target) throws IllegalAccessException, InvocationTargetException {
+            if (handle == null) {
+                return method.invoke(target);
+            }
+            try {
+                return (Object) handle.invokeExact(target);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    /**
+     * Accessors reading a field
+     */
+    private static final class FieldAccessorCache extends MemberAccessorCache {
+
+        private FieldAccessorCache(String fieldName) {
+            super(fieldName);
+        }
+
+        @Override
+        Accessor resolve(Class<?> targetClass) throws AttributeExtractorException {
+            for (Class<?> c = targetClass; c != null; c = c.getSuperclass()) {
+                try {
+                    Field field = c.getDeclaredField(getMemberName());
+                    field.setAccessible(true);
+                    return new Accessor(targetClass, adapt(LOOKUP.unreflectGetter(field), Modifier.isStatic(field.getModifiers())), null);
+                } catch (NoSuchFieldException e) {
+                    // keep looking
+                } catch (Exception e) {
+                    throw new AttributeExtractorException(e);
+                }
+            }
+            return new Accessor(targetClass, null, null);
+        }
+    }
+
+    /**
+     * Accessors calling a no-arg method
+     */
+    private static final class MethodAccessorCache extends MemberAccessorCache {
+
+        private MethodAccessorCache(String methodName) {
+            super(methodName);
+        }
+
+        @Override
+        Accessor resolve(Class<?> targetClass) throws AttributeExtractorException {
+            for (Class<?> c = targetClass; c != null; c = c.getSuperclass()) {
+                try {
+                    Method method = c.getDeclaredMethod(getMemberName());
+                    method.setAccessible(true);
+                    return new Accessor(targetClass, adapt(LOOKUP.unreflect(method), Modifier.isStatic(method.getModifiers())), null);
+                } catch (NoSuchMethodException e) {
+                    // keep looking
+                } catch (Exception e) {
+                    throw new AttributeExtractorException(e);
+                }
+            }
+            return new Accessor(targetClass, null, null);
+        }
+    }
+
+    /**
+     * Accessors calling a public javabean getter
+     */
+    private static final class BeanPropertyAccessorCache extends MemberAccessorCache {
+
+        private BeanPropertyAccessorCache(String beanProperty) {
+            super(beanProperty);
+        }
+
+        @Override
+        Accessor resolve(Class<?> targetClass) throws AttributeExtractorException {
+            String beanProperty = getMemberName();
+            String upperFirstProp = Character.toUpperCase(beanProperty.charAt(0)) + beanProperty.substring(1);
+
+            Method getter;
+            try {
+                getter = targetClass.getMethod("get" + upperFirstProp);
+            } catch (SecurityException e) {
+                throw new AttributeExtractorException(e);
+            } catch (NoSuchMethodException e) {
+                getter = null;
+            }
+
+            if (getter == null) {
+                try {
+                    Method m = targetClass.getMethod("is" + upperFirstProp);
+                    if (m.getReturnType().equals(Boolean.class) || m.getReturnType().equals(Boolean.TYPE)) {
+                        getter = m;
+                    }
+                } catch (SecurityException e) {
+                    throw new AttributeExtractorException(e);
+                } catch (NoSuchMethodException e) {
+                    // no applicable method available
+                }
+            }
+
+            if (getter == null) {
+                return new Accessor(targetClass, null, null);
+            }
+            try {
+                // public methods of non-public classes can only be unreflected once made accessible
+                getter.setAccessible(true);
+                return new Accessor(targetClass, adapt(LOOKUP.unreflect(getter), Modifier.isStatic(getter.getModifiers())), null);
+            } catch (RuntimeException e) {
+                // a security manager or module boundary refused access, keep the checked invocation
+                return new Accessor(targetClass, null, getter);
+            } catch (IllegalAccessException e) {
+                return new Accessor(targetClass, null, getter);
+            }
+        }
+    }
+}
@@ -17,9 +17,7 @@
 package net.sf.ehcache.search.attribute;
 
 import java.io.Serializable;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.InvalidConfigurationException;
@@ -188,7 +186,7 @@ public class ReflectionAttributeExtractor implements AttributeExtractor {
 
         private final String fieldName;
 
-        private transient volatile FieldRef cache;
+        private transient volatile MemberAccessorCache cache;
 
         public FieldPart(String field) {
             this.fieldName = field;
@@ -199,31 +197,20 @@ public class ReflectionAttributeExtractor implements AttributeExtractor {
                 throw new AttributeExtractorException("null reference encountered trying to read field " + fieldName);
             }
 
-            Class c = target.getClass();
-            FieldRef ref = cache;
-
-            if (ref == null || ref.target != c) {
-                while (true) {
-                    try {
-                        Field field = c.getDeclaredField(fieldName);
-                        field.setAccessible(true);
-                        ref = new FieldRef(target.getClass(), field);
-                        cache = ref;
-                        break;
-                    } catch (NoSuchFieldException e) {
-                        c = c.getSuperclass();
-                        if (c == null) {
-                            throw new AttributeExtractorException("No such field named \"" + fieldName + "\" present in instance of "
-                                    + target.getClass());
-                        }
-                    } catch (Exception e) {
-                        throw new AttributeExtractorException(e);
-                    }
-                }
+            MemberAccessorCache fields = cache;
+            if (fields == null) {
+                fields = MemberAccessorCache.forField(fieldName);
+                cache = fields;
+            }
+
+            MemberAccessorCache.Accessor ref = fields.accessorFor(target.getClass());
+            if (!ref.isPresent()) {
+                throw new AttributeExtractorException("No such field named \"" + fieldName + "\" present in instance of "
+                        + target.getClass());
             }
 
             try {
-                return ref.field.get(target);
+                return ref.get(target);
             } catch (Exception e) {
                 throw new AttributeExtractorException(e);
             }
@@ -231,39 +218,13 @@ public class ReflectionAttributeExtractor implements AttributeExtractor {
 
     }
 
-    /**
-     * A reference to a resolved Field instance
-     */
-    private static class FieldRef {
-        private final Class target;
-        private final Field field;
-
-        FieldRef(Class target, Field field) {
-            this.target = target;
-            this.field = field;
-        }
-    }
-
-    /**
-     * A reference to a resolved Method instance
-     */
-    private static class MethodRef {
-        private final Method method;
-        private final Class target;
-
-        MethodRef(Class target, Method method) {
-            this.target = target;
-            this.method = method;
-        }
-    }
-
     /**
      * A method expression part
      */
     private static class MethodPart implements Part {
 
         private final String methodName;
-        private transient volatile MethodRef cache;
+        private transient volatile MemberAccessorCache cache;
 
         public MethodPart(String method) {
             this.methodName = method;
@@ -274,32 +235,20 @@ public class ReflectionAttributeExtractor implements AttributeExtractor {
                 throw new AttributeExtractorException("null reference encountered trying to call " + methodName + "()");
             }
 
-            Class c = target.getClass();
-
-            MethodRef ref = cache;
-
-            if (ref == null || ref.target != c) {
-                while (true) {
-                    try {
-                        Method method = c.getDeclaredMethod(methodName);
-                        method.setAccessible(true);
-                        ref = new MethodRef(target.getClass(), method);
-                        cache = ref;
-                        break;
-                    } catch (NoSuchMethodException e) {
-                        c = c.getSuperclass();
-                        if (c == null) {
-                            throw new AttributeExtractorException("No such method named \"" + methodName + "\" present on instance of "
-                                    + target.getClass());
-                        }
-                    } catch (Exception e) {
-                        throw new AttributeExtractorException(e);
-                    }
-                }
+            MemberAccessorCache methods = cache;
+            if (methods == null) {
+                methods = MemberAccessorCache.forMethod(methodName);
+                cache = methods;
+            }
+
+            MemberAccessorCache.Accessor ref = methods.accessorFor(target.getClass());
+            if (!ref.isPresent()) {
+                throw new AttributeExtractorException("No such method named \"" + methodName + "\" present on instance of "
+                        + target.getClass());
             }
 
             try {
-                return ref.method.invoke(target);
+                return ref.get(target);
             } catch (InvocationTargetException e) {
                 throw new AttributeExtractorException(e.getTargetException());
             } catch (Exception e) {
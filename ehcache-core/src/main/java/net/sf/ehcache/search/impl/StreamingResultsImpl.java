@@ -0,0 +1,160 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import net.sf.ehcache.search.Result;
+import net.sf.ehcache.search.Results;
+import net.sf.ehcache.search.SearchException;
+
+/**
+ * Results implementation pulling its results lazily from an iterator.
+ * <p>
+ * Results are only fetched from the iterator as far as the pages requested through {@link #range(int, int)} require, and
+ * are then retained so that any page read twice is the same. {@link #all()} and {@link #size()} fetch every remaining result.
+ */
+public class StreamingResultsImpl implements Results {
+
+    private final List<Result> fetched = new ArrayList<Result>();
+    private final boolean hasKeys;
+    private final boolean hasValues;
+    private final boolean hasAttributes;
+    private Iterator<? extends Result> pending;
+    private boolean discarded;
+
+    /**
+     * Constructor
+     *
+     * @param results iterator producing the results, in order, as they are requested
+     * @param hasKeys
+     * @param hasValues
+     * @param hasAttributes
+     */
+    public StreamingResultsImpl(Iterator<? extends Result> results, boolean hasKeys, boolean hasValues, boolean hasAttributes) {
+        this.pending = results;
+        this.hasKeys = hasKeys;
+        this.hasValues = hasValues;
+        this.hasAttributes = hasAttributes;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingResults(fetched=" + fetched.size() + ", hasKeys=" + hasKeys + ", hasValues=" + hasValues
+                + ", hasAttributes=" + hasAttributes + ")";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void discard() {
+        discarded = true;
+        pending = null;
+        fetched.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized List<Result> all() throws SearchException {
+        fetch(Integer.MAX_VALUE);
+        return Collections.unmodifiableList(new ArrayList<Result>(fetched));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized List<Result> range(int start, int length) throws SearchException {
+        if (start < 0) {
+            throw new IllegalArgumentException("start: " + start);
+        }
+
+        if (length < 0) {
+            throw new IllegalArgumentException("length: " + length);
+        }
+
+        if (length == 0) {
+            return Collections.emptyList();
+        }
+
+        int end = start + length < 0 ? Integer.MAX_VALUE : start + length;
+        fetch(end);
+
+        if (start >= fetched.size()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<Result>(fetched.subList(start, Math.min(end, fetched.size()))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int size() {
+        fetch(Integer.MAX_VALUE);
+        return fetched.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasKeys() {
+        return hasKeys && !isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasValues() {
+        return hasValues && !isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasAttributes() {
+        return hasAttributes && !isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasAggregators() {
+        return false;
+    }
+
+    private synchronized boolean isEmpty() {
+        fetch(1);
+        return fetched.isEmpty();
+    }
+
+    private void fetch(int count) {
+        if (discarded) {
+            throw new SearchException("Results have been discarded");
+        }
+
+        while (pending != null && fetched.size() < count) {
+            if (pending.hasNext()) {
+                fetched.add(pending.next());
+            } else {
+                pending = null;
+            }
+        }
+    }
+}
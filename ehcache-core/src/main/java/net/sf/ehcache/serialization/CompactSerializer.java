@@ -0,0 +1,221 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.ElementIdHelper;
+import net.sf.ehcache.util.PreferredLoaderObjectInputStream;
+
+/**
+ * A {@link Serializer} with a compact binary format for the types commonly found in caches.
+ * <p>
+ * Strings, byte arrays and boxed primitives are written as a one byte tag followed by their raw value, and
+ * {@link Element}s as a fixed header of their metadata followed by their key and value. Any other object is
+ * written using java.io object serialization, prefixed by its length.
+ * <p>
+ * This format is not readable by the {@link JavaSerializer}: persistent disk stores must be cleared when switching
+ * from one to the other.
+ */
+public class CompactSerializer implements Serializer {
+
+    private static final long serialVersionUID = 4960297591395716384L;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BYTES = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte SHORT = 5;
+    private static final byte BYTE = 6;
+    private static final byte CHARACTER = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte TRUE = 10;
+    private static final byte FALSE = 11;
+    private static final byte ELEMENT = 12;
+    private static final byte SERIALIZED = 13;
+
+    private static final int DEFAULT_LIFESPAN_FLAG = 1;
+    private static final int ID_FLAG = 2;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void serialize(Object object, OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        write(object, dout);
+        dout.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object deserialize(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        return read(new DataInputStream(in), loader);
+    }
+
+    private static void write(Object object, DataOutputStream out) throws IOException {
+        if (object == null) {
+            out.writeByte(NULL);
+        } else if (object instanceof String) {
+            byte[] bytes = ((String) object).getBytes(UTF8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (object instanceof byte[]) {
+            byte[] bytes = (byte[]) object;
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (object instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) object);
+        } else if (object instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) object);
+        } else if (object instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) object);
+        } else if (object instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) object);
+        } else if (object instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) object);
+        } else if (object instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) object);
+        } else if (object instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) object);
+        } else if (object instanceof Boolean) {
+            out.writeByte(((Boolean) object) ? TRUE : FALSE);
+        } else if (object.getClass() == Element.class) {
+            writeElement((Element) object, out);
+        } else {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bout);
+            oos.writeObject(object);
+            oos.close();
+            out.writeByte(SERIALIZED);
+            out.writeInt(bout.size());
+            bout.writeTo(out);
+        }
+    }
+
+    private static void writeElement(Element element, DataOutputStream out) throws IOException {
+        boolean hasId = ElementIdHelper.hasId(element);
+        int flags = (element.usesCacheDefaultLifespan() ? DEFAULT_LIFESPAN_FLAG : 0) | (hasId ? ID_FLAG : 0);
+        out.writeByte(ELEMENT);
+        out.writeByte(flags);
+        out.writeLong(element.getVersion());
+        out.writeLong(element.getCreationTime());
+        out.writeLong(element.getLastAccessTime());
+        out.writeLong(element.getLastUpdateTime());
+        out.writeLong(element.getHitCount());
+        if (!element.usesCacheDefaultLifespan()) {
+            out.writeInt(element.getTimeToLive());
+            out.writeInt(element.getTimeToIdle());
+        }
+        if (hasId) {
+            out.writeLong(ElementIdHelper.getId(element));
+        }
+        write(element.getObjectKey(), out);
+        write(element.getObjectValue(), out);
+    }
+
+    private static Object read(DataInputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), UTF8);
+            case BYTES:
+                return readBytes(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case ELEMENT:
+                return readElement(in, loader);
+            case SERIALIZED:
+                return new PreferredLoaderObjectInputStream(new ByteArrayInputStream(readBytes(in)), loader).readObject();
+            default:
+                throw new StreamCorruptedException("Unknown type tag " + tag);
+        }
+    }
+
+    private static Element readElement(DataInputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        int flags = in.readByte();
+        long version = in.readLong();
+        long creationTime = in.readLong();
+        long lastAccessTime = in.readLong();
+        long lastUpdateTime = in.readLong();
+        long hitCount = in.readLong();
+        boolean cacheDefaultLifespan = (flags & DEFAULT_LIFESPAN_FLAG) != 0;
+        int timeToLive = Integer.MIN_VALUE;
+        int timeToIdle = Integer.MIN_VALUE;
+        if (!cacheDefaultLifespan) {
+            timeToLive = in.readInt();
+            timeToIdle = in.readInt();
+        }
+        long id = (flags & ID_FLAG) != 0 ? in.readLong() : 0;
+        Object key = read(in, loader);
+        Object value = read(in, loader);
+
+        Element element = new Element(key, value, version, creationTime, lastAccessTime, hitCount, cacheDefaultLifespan,
+                timeToLive, timeToIdle, lastUpdateTime);
+        if ((flags & ID_FLAG) != 0) {
+            ElementIdHelper.setId(element, id);
+        }
+        return element;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import net.sf.ehcache.util.PreferredLoaderObjectInputStream;
+
+/**
+ * A {@link Serializer} relying on java.io object serialization.
+ * <p>
+ * This is the default serializer, its format is the one of the data files written by previous versions.
+ */
+public class JavaSerializer implements Serializer {
+
+    private static final long serialVersionUID = -2443018526862473227L;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void serialize(Object object, OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(object);
+        oos.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object deserialize(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new PreferredLoaderObjectInputStream(in, loader);
+        return ois.readObject();
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Turns the {@link net.sf.ehcache.Element}s of a cache, and their keys and values, into bytes and back.
+ * <p>
+ * A serializer is used by the disk and off-heap stores to store elements, and by the default
+ * {@link net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy} to copy values. Implementations must be
+ * thread safe and have a public no-arg constructor.
+ *
+ * @see net.sf.ehcache.config.SerializerConfiguration
+ */
+public interface Serializer extends Serializable {
+
+    /**
+     * Write the given object to the stream.
+     *
+     * @param object the object to write, may be {@code null}
+     * @param out the stream to write to
+     * @throws IOException if the object cannot be written
+     */
+    void serialize(Object object, OutputStream out) throws IOException;
+
+    /**
+     * Read back an object written by {@link #serialize(Object, OutputStream)}.
+     *
+     * @param in the stream to read from
+     * @param loader the class loader used to resolve classes of the object graph
+     * @return the object read
+     * @throws IOException if the object cannot be read
+     * @throws ClassNotFoundException if a class of the object graph cannot be found
+     */
+    Object deserialize(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException;
+}
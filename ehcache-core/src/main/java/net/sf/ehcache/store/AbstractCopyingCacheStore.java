@@ -42,7 +42,7 @@ import java.util.Set;
  *
  * @author Alex Snaps
  */
-abstract class AbstractCopyingCacheStore<T extends Store> implements Store {
+abstract class AbstractCopyingCacheStore<T extends Store> implements ComputingStore {
 
     @ContextChild
     private final T store;
@@ -151,6 +151,23 @@ abstract class AbstractCopyingCacheStore<T extends Store> implements Store {
         return copyStrategyHandler.copyElementForReadIfNeeded(store.replace(copyStrategyHandler.copyElementForWriteIfNeeded(element)));
     }
 
+    @Override
+    public Element compute(final Object key, final Computation computation) throws CacheException {
+        final Element[] computed = new Element[1];
+        Computations.compute(store, key, new Computation() {
+            @Override
+            public Element compute(final Object computedKey, final Element current) {
+                Element copy = copyStrategyHandler.copyElementForReadIfNeeded(current);
+                computed[0] = computation.compute(computedKey, copy);
+                if (computed[0] == copy) {
+                    return current;
+                }
+                return copyStrategyHandler.copyElementForWriteIfNeeded(computed[0]);
+            }
+        });
+        return computed[0];
+    }
+
     @Override
     public void dispose() {
         store.dispose();
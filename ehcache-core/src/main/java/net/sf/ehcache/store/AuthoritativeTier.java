@@ -17,6 +17,9 @@ package net.sf.ehcache.store;
 
 import net.sf.ehcache.Element;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Document me
  *
@@ -33,6 +36,16 @@ public interface AuthoritativeTier extends Store {
      */
     Element fault(Object key, boolean updateStats);
 
+    /**
+     * Marks the entries as not evictable and returns them atomically per entry, as {@link #fault(Object, boolean)} would
+     * for each of the keys
+     *
+     * @param keys
+     * @param updateStats
+     * @return the faulted elements, mapped by key, missing keys mapping to null
+     */
+    Map<Object, Element> faultAll(Collection<?> keys, boolean updateStats);
+
     /**
      * Stupid "implicit" contract in tests that dictates that entries put, will be in highest tier!
      *
@@ -23,9 +23,11 @@ import net.sf.ehcache.config.ConfigurationHelper;
 import net.sf.ehcache.config.SearchAttribute;
 import net.sf.ehcache.config.Searchable;
 import net.sf.ehcache.search.Attribute;
+import net.sf.ehcache.search.Result;
 import net.sf.ehcache.search.Results;
 import net.sf.ehcache.search.SearchException;
 import net.sf.ehcache.search.aggregator.AggregatorInstance;
+import net.sf.ehcache.search.aggregator.MergeableAggregatorInstance;
 import net.sf.ehcache.search.attribute.AttributeExtractor;
 import net.sf.ehcache.search.attribute.AttributeExtractorException;
 import net.sf.ehcache.search.attribute.AttributeType;
@@ -39,6 +41,7 @@ import net.sf.ehcache.search.impl.OrderComparator;
 import net.sf.ehcache.search.impl.ResultImpl;
 import net.sf.ehcache.search.impl.ResultsImpl;
 import net.sf.ehcache.search.impl.SearchManager;
+import net.sf.ehcache.search.impl.StreamingResultsImpl;
 import net.sf.ehcache.transaction.SoftLockID;
 
 import java.util.ArrayList;
@@ -46,28 +49,47 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static net.sf.ehcache.search.expression.BaseCriteria.getExtractor;
 
 /**
  * Brute force search implementation
+ * <p>
+ * Ordered queries with a maximum number of results only ever keep the best candidates seen so far. Setting the
+ * <code>parallelSearch</code> advanced store property evaluates queries over the segments of the store concurrently, and
+ * setting <code>streamingSearchResults</code> matches the elements of unordered, ungrouped and unaggregated queries only as
+ * their results are read.
  *
  * @author teck
  */
 public class BruteForceSearchManager implements SearchManager {
 
     private static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
+    private static final String PARALLEL_SEARCH_PROPERTY = "parallelSearch";
+    private static final String STREAMING_RESULTS_PROPERTY = "streamingSearchResults";
+    private static final int SEARCH_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final int TOP_RESULTS_INITIAL_CAPACITY = 1024;
 
     /**
      * account for all search attributes
      */
     private final Set<Attribute> searchAttributes = new CopyOnWriteArraySet<Attribute>();
     private final Ehcache cache;
+    private final boolean parallelSearch;
+    private final boolean streamingResults;
     private BruteForceSource bruteForceSource;
 
 
@@ -77,6 +99,9 @@ public class BruteForceSearchManager implements SearchManager {
      */
     public BruteForceSearchManager(Ehcache cache) {
         this.cache = cache;
+        this.parallelSearch = SEARCH_PARALLELISM > 1
+                && MemoryStore.getAdvancedBooleanConfigProperty(PARALLEL_SEARCH_PROPERTY, cache.getName(), false);
+        this.streamingResults = MemoryStore.getAdvancedBooleanConfigProperty(STREAMING_RESULTS_PROPERTY, cache.getName(), false);
     }
 
     /**
@@ -98,109 +123,365 @@ public class BruteForceSearchManager implements SearchManager {
             return comp.compare(this.result, other.result);
         }
     }
-    
-    @Override
-    public Results executeQuery(StoreQuery query, Map<String, AttributeExtractor> extractors, DynamicAttributesExtractor
-            dynIndexer) {
-        Criteria c = query.getCriteria();
-
-        List<AggregatorInstance<?>> aggregators = query.getAggregatorInstances();
 
-        final Set<Attribute<?>> groupByAttributes = query.groupByAttributes();
-        final boolean isGroupBy = !groupByAttributes.isEmpty();
-        boolean includeResults = query.requestsKeys() || query.requestsValues() || !query.requestedAttributes().isEmpty() || isGroupBy;
+    /**
+     * Matches of a query among the partitions evaluated by a single thread
+     */
+    private static final class PartialResult {
+        private final Collection<ResultHolder> results;
+        private final Map<Set<?>, ResultHolder> groupByResults = new HashMap<Set<?>, ResultHolder>();
+        private final Map<Set, List<AggregatorInstance<?>>> groupByAggregators = new HashMap<Set, List<AggregatorInstance<?>>>();
+        private final List<AggregatorInstance<?>> aggregators;
+        private int matches;
+
+        private PartialResult(Collection<ResultHolder> results, List<AggregatorInstance<?>> aggregators) {
+            this.results = results;
+            this.aggregators = aggregators;
+        }
+    }
 
-        boolean hasOrder = !query.getOrdering().isEmpty();
+    /**
+     * A query being executed, and how its matches are to be collected
+     */
+    private final class QueryEvaluation {
+        private final StoreQuery query;
+        private final Map<String, AttributeExtractor> extractors;
+        private final DynamicAttributesExtractor dynIndexer;
+        private final Criteria criteria;
+        private final List<AggregatorInstance<?>> aggregators;
+        private final Set<Attribute<?>> groupByAttributes;
+        private final boolean isGroupBy;
+        private final boolean hasOrder;
+        private final boolean includeResults;
+        private final int maxResults;
+        private final boolean limitedScan;
+        private final boolean aggregateDirectly;
+        private final OrderComparator<BaseResult> comp;
 
-        final Map<Set<?>, ResultHolder> groupByResults = new HashMap<Set<?>, ResultHolder>();
-        final Map<Set, List<AggregatorInstance<?>>> groupByAggregators = new HashMap<Set, List<AggregatorInstance<?>>>();
+        private QueryEvaluation(StoreQuery query, Map<String, AttributeExtractor> extractors, DynamicAttributesExtractor dynIndexer) {
+            this.query = query;
+            this.extractors = extractors;
+            this.dynIndexer = dynIndexer;
+            this.criteria = query.getCriteria();
+            this.aggregators = query.getAggregatorInstances();
+            this.groupByAttributes = query.groupByAttributes();
+            this.isGroupBy = !groupByAttributes.isEmpty();
+            this.hasOrder = !query.getOrdering().isEmpty();
+            this.includeResults = query.requestsKeys() || query.requestsValues() || !query.requestedAttributes().isEmpty() || isGroupBy;
+            this.maxResults = query.maxResults();
+            // without ordering or grouping the first matches found are the results
+            this.limitedScan = !isGroupBy && !hasOrder && maxResults >= 0;
+            // when only aggregates are requested, and over every match, the inputs need not be kept
+            this.aggregateDirectly = !isGroupBy && !includeResults && !aggregators.isEmpty() && maxResults < 0;
+            this.comp = new OrderComparator<BaseResult>(query.getOrdering());
+        }
 
-        Collection<Element> matches = new LinkedList<Element>();
-        Map<Object, Map<String, AttributeExtractor>> eltExtractors = new HashMap<Object, Map<String, AttributeExtractor>>();
+        /**
+         * Whether the results can be produced one after the other as they are requested
+         */
+        private boolean isStreamable() {
+            return !isGroupBy && !hasOrder && aggregators.isEmpty();
+        }
 
-        for (Element element : bruteForceSource.elements()) {
+        /**
+         * Whether partial results evaluated concurrently can be combined
+         */
+        private boolean isMergeable() {
+            for (AggregatorInstance<?> aggregator : aggregators) {
+                if (!(aggregator instanceof MergeableAggregatorInstance)) {
+                    return false;
+                }
+            }
+            return true;
+        }
 
-            Map<String, AttributeExtractor> extractorSuperset = getCombinedExtractors(extractors, dynIndexer, element);
-            eltExtractors.put(element.getObjectKey(), extractorSuperset);
+        private PartialResult newPartialResult(boolean cloneAggregators) {
+            Collection<ResultHolder> results;
+            if (!isGroupBy && hasOrder && maxResults >= 0) {
+                // only the best maxResults matches are kept, the worst of them at the head
+                results = new PriorityQueue<ResultHolder>(Math.min(maxResults, TOP_RESULTS_INITIAL_CAPACITY) + 1,
+                        Collections.<ResultHolder>reverseOrder());
+            } else {
+                results = new ArrayList<ResultHolder>();
+            }
 
-            if (c.execute(element, extractorSuperset)) {
-                if (!isGroupBy && !hasOrder && query.maxResults() >= 0 && matches.size() == query.maxResults()) {
-                    break;
+            List<AggregatorInstance<?>> partialAggregators = aggregators;
+            if (cloneAggregators && aggregateDirectly) {
+                partialAggregators = new ArrayList<AggregatorInstance<?>>(aggregators.size());
+                for (AggregatorInstance<?> aggregator : aggregators) {
+                    partialAggregators.add(aggregator.createClone());
                 }
-
-                matches.add(element);
             }
+            return new PartialResult(results, partialAggregators);
         }
 
-        Collection<ResultHolder> results = isGroupBy ? groupByResults.values() : new ArrayList<ResultHolder>();
-
-        boolean anyMatches = !matches.isEmpty();
-        OrderComparator<BaseResult> comp = new OrderComparator<BaseResult>(query.getOrdering());
-        
-        for (Element element : matches) {
-            Map<String, AttributeExtractor> extractorSuperset = eltExtractors.get(element.getObjectKey());
+        /**
+         * Collect the matches among the given elements
+         *
+         * @return false if the partial result cannot take any more matches
+         */
+        private boolean evaluate(Iterable<Element> elements, PartialResult partial) {
+            for (Element element : elements) {
+                Map<String, AttributeExtractor> extractorSuperset = getCombinedExtractors(extractors, dynIndexer, element);
+
+                if (criteria.execute(element, extractorSuperset)) {
+                    if (limitedScan && partial.matches == maxResults) {
+                        return false;
+                    }
+                    partial.matches++;
+                    collect(element, extractorSuperset, partial);
+                }
+            }
+            return true;
+        }
 
+        private void collect(Element element, Map<String, AttributeExtractor> extractorSuperset, PartialResult partial) {
             List<Object> resultAggs = new ArrayList<Object>(aggregators.size());
             for (AggregatorInstance<?> agg: aggregators) {
                 Attribute aggrAttr = agg.getAttribute();
                 // placeholder input for count
-                Object val = aggrAttr != null ? 
+                Object val = aggrAttr != null ?
                     getExtractor(aggrAttr.getAttributeName(), extractorSuperset).attributeFor(element, aggrAttr.getAttributeName()) : null;
                 resultAggs.add(val);
             }
-            
+
+            if (aggregateDirectly) {
+                int i = 0;
+                for (AggregatorInstance<?> inst : partial.aggregators) {
+                    inst.accept(resultAggs.get(i++));
+                }
+                return;
+            }
+
             Map<String, Object> attributes = getAttributeValues(query.requestedAttributes(), extractorSuperset, element);
             Object[] sortAttributes = getSortAttributes(query, extractorSuperset, element);
 
             if (!isGroupBy) {
-                results.add(new ResultHolder(new ResultImpl(element.getObjectKey(), element.getObjectValue(), query, attributes, sortAttributes), 
-                            resultAggs, comp));
+                ResultHolder holder = new ResultHolder(new ResultImpl(element.getObjectKey(), element.getObjectValue(), query, attributes,
+                        sortAttributes), resultAggs, comp);
+                if (partial.results instanceof PriorityQueue) {
+                    PriorityQueue<ResultHolder> top = (PriorityQueue<ResultHolder>) partial.results;
+                    if (top.size() < maxResults) {
+                        top.add(holder);
+                    } else if (maxResults > 0 && holder.compareTo(top.peek()) < 0) {
+                        top.poll();
+                        top.add(holder);
+                    }
+                } else {
+                    partial.results.add(holder);
+                }
             } else {
                 Map<String, Object> groupByValues = getAttributeValues(groupByAttributes, extractorSuperset, element);
                 Set<?> groupId = new HashSet<Object>(groupByValues.values());
-                List<AggregatorInstance<?>> groupAggrs = groupByAggregators.get(groupId);
+                List<AggregatorInstance<?>> groupAggrs = partial.groupByAggregators.get(groupId);
                 if (groupAggrs == null) {
                     groupAggrs = new ArrayList<AggregatorInstance<?>>(aggregators.size());
                     for (AggregatorInstance<?> aggr : aggregators) {
                         groupAggrs.add(aggr.createClone());
                     }
-                    groupByAggregators.put(groupId, groupAggrs);
+                    partial.groupByAggregators.put(groupId, groupAggrs);
                 }
                 int i = 0;
                 for (AggregatorInstance<?> inst: groupAggrs) {
                     inst.accept(resultAggs.get(i++));
                 }
-                ResultHolder group = groupByResults.get(groupId);
+                ResultHolder group = partial.groupByResults.get(groupId);
                 if (group == null) {
                     group = new ResultHolder(new GroupedResultImpl(query, attributes, sortAttributes, Collections.emptyList(),
                             groupByValues), Collections.emptyList(), comp);
-                    groupByResults.put(groupId, group);
+                    partial.groupByResults.put(groupId, group);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates partitions, as handed out by a shared counter, into a partial result of its own
+     */
+    private static final class PartitionWorker implements Callable<PartialResult> {
+        private final QueryEvaluation evaluation;
+        private final List<Iterable<Element>> partitions;
+        private final AtomicInteger nextPartition;
+        private final ClassLoader contextClassLoader;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private PartitionWorker(QueryEvaluation evaluation, List<Iterable<Element>> partitions, AtomicInteger nextPartition,
+                ClassLoader contextClassLoader) {
+            this.evaluation = evaluation;
+            this.partitions = partitions;
+            this.nextPartition = nextPartition;
+            this.contextClassLoader = contextClassLoader;
+        }
+
+        /**
+         * Prevents this worker from evaluating anything, unless it already started
+         *
+         * @return true if the worker had not started
+         */
+        private boolean preempt() {
+            return started.compareAndSet(false, true);
+        }
+
+        @Override
+        public PartialResult call() {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+            Thread thread = Thread.currentThread();
+            ClassLoader previous = thread.getContextClassLoader();
+            thread.setContextClassLoader(contextClassLoader);
+            try {
+                PartialResult partial = evaluation.newPartialResult(true);
+                int i;
+                while ((i = nextPartition.getAndIncrement()) < partitions.size()) {
+                    if (!evaluation.evaluate(partitions.get(i), partial)) {
+                        break;
+                    }
+                }
+                return partial;
+            } catch (RuntimeException e) {
+                nextPartition.set(partitions.size());
+                throw e;
+            } catch (Error e) {
+                nextPartition.set(partitions.size());
+                throw e;
+            } finally {
+                thread.setContextClassLoader(previous);
+            }
+        }
+    }
+
+    /**
+     * Lazily matches elements against the criteria of a streamable query
+     */
+    private final class MatchingResultIterator implements Iterator<Result> {
+        private final QueryEvaluation evaluation;
+        private final Iterator<Element> elements;
+        private Result next;
+        private int matches;
+
+        private MatchingResultIterator(QueryEvaluation evaluation, Iterator<Element> elements) {
+            this.evaluation = evaluation;
+            this.elements = elements;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && elements.hasNext() && (evaluation.maxResults < 0 || matches < evaluation.maxResults)) {
+                Element element = elements.next();
+                Map<String, AttributeExtractor> extractorSuperset = getCombinedExtractors(evaluation.extractors, evaluation.dynIndexer,
+                        element);
+                if (evaluation.criteria.execute(element, extractorSuperset)) {
+                    matches++;
+                    next = new ResultImpl(element.getObjectKey(), element.getObjectValue(), evaluation.query,
+                            getAttributeValues(evaluation.query.requestedAttributes(), extractorSuperset, element), EMPTY_OBJECT_ARRAY);
                 }
             }
+            return next != null;
         }
 
-        if (hasOrder || isGroupBy) {
-            if (isGroupBy) {
-                results = new ArrayList<ResultHolder>(results);
+        @Override
+        public Result next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            Result result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    public Results executeQuery(StoreQuery query, Map<String, AttributeExtractor> extractors, DynamicAttributesExtractor
+            dynIndexer) {
+        QueryEvaluation evaluation = new QueryEvaluation(query, extractors, dynIndexer);
+        if (parallelSearch && !(streamingResults && evaluation.isStreamable()) && evaluation.isMergeable()) {
+            return executeQuery(evaluation, bruteForceSource.partitions());
+        }
+        return executeQuery(evaluation, Collections.singletonList(bruteForceSource.elements()));
+    }
+
+    /**
+     * Execute a query against the given elements
+     *
+     * @param query query to execute
+     * @param extractors defined attribute extractors for the cache
+     * @param dynIndexer dynamic attribute extractor (if any)
+     * @param elements the elements to match against the criteria of the query
+     * @return search results
+     */
+    Results executeQuery(StoreQuery query, Map<String, AttributeExtractor> extractors, DynamicAttributesExtractor dynIndexer,
+            Iterable<Element> elements) {
+        return executeQuery(new QueryEvaluation(query, extractors, dynIndexer), Collections.singletonList(elements));
+    }
+
+    private Results executeQuery(QueryEvaluation evaluation, List<Iterable<Element>> partitions) {
+        StoreQuery query = evaluation.query;
+
+        if (streamingResults && evaluation.isStreamable() && partitions.size() == 1) {
+            return new StreamingResultsImpl(new MatchingResultIterator(evaluation, partitions.get(0).iterator()), query.requestsKeys(),
+                    query.requestsValues(), !query.requestedAttributes().isEmpty());
+        }
+
+        List<PartialResult> partials;
+        if (partitions.size() == 1) {
+            PartialResult partial = evaluation.newPartialResult(false);
+            evaluation.evaluate(partitions.get(0), partial);
+            partials = Collections.singletonList(partial);
+        } else {
+            partials = evaluateConcurrently(evaluation, partitions);
+        }
 
-            if (hasOrder) {
-                Collections.sort((List<ResultHolder>)results);
+        List<AggregatorInstance<?>> aggregators = evaluation.aggregators;
+        final boolean isGroupBy = evaluation.isGroupBy;
+        boolean includeResults = evaluation.includeResults;
+
+        boolean anyMatches = false;
+        List<ResultHolder> results = new ArrayList<ResultHolder>();
+        final Map<Set<?>, ResultHolder> groupByResults = new HashMap<Set<?>, ResultHolder>();
+        final Map<Set, List<AggregatorInstance<?>>> groupByAggregators = new HashMap<Set, List<AggregatorInstance<?>>>();
+
+        for (PartialResult partial : partials) {
+            anyMatches |= partial.matches > 0;
+            results.addAll(partial.results);
+            if (evaluation.aggregateDirectly && partial.aggregators != aggregators) {
+                mergeAggregators(aggregators, partial.aggregators);
             }
-            // trim results to max length if necessary
-            int max = query.maxResults();
-            if (max >= 0 && (results.size() > max)) {
-                results = ((List<ResultHolder>)results).subList(0, max);
+            for (Map.Entry<Set<?>, ResultHolder> group : partial.groupByResults.entrySet()) {
+                List<AggregatorInstance<?>> groupAggrs = groupByAggregators.get(group.getKey());
+                if (groupAggrs == null) {
+                    groupByResults.put(group.getKey(), group.getValue());
+                    groupByAggregators.put(group.getKey(), partial.groupByAggregators.get(group.getKey()));
+                } else {
+                    mergeAggregators(groupAggrs, partial.groupByAggregators.get(group.getKey()));
+                }
             }
         }
 
-        if (!aggregators.isEmpty()) {
+        if (isGroupBy) {
+            results = new ArrayList<ResultHolder>(groupByResults.values());
+        }
+
+        if (evaluation.hasOrder) {
+            Collections.sort(results);
+        }
+        // trim results to max length if necessary
+        int max = query.maxResults();
+        if (max >= 0 && (results.size() > max)) {
+            results = results.subList(0, max);
+        }
+
+        if (!aggregators.isEmpty() && !evaluation.aggregateDirectly) {
             for (ResultHolder rh : results) {
                 if (isGroupBy) {
                     GroupedResultImpl group = (GroupedResultImpl)rh.result;
                     Set<?> groupId = new HashSet<Object>(group.getGroupByValues().values());
-                    aggregators = groupByAggregators.get(groupId);
-                    setResultAggregators(aggregators, group);
+                    setResultAggregators(groupByAggregators.get(groupId), group);
                 } else {
                     int i = 0;
                     for (Object val: rh.aggregatorInputs) {
@@ -234,6 +515,72 @@ public class BruteForceSearchManager implements SearchManager {
                 && !aggregators.isEmpty());
     }
 
+    /**
+     * Evaluates the partitions on the search threads, the calling thread taking its share of the partitions
+     */
+    private List<PartialResult> evaluateConcurrently(QueryEvaluation evaluation, List<Iterable<Element>> partitions) {
+        AtomicInteger nextPartition = new AtomicInteger();
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ForkJoinPool executor = SearchPool.INSTANCE;
+        int workers = Math.min(SEARCH_PARALLELISM, partitions.size());
+        List<PartitionWorker> submitted = new ArrayList<PartitionWorker>(workers - 1);
+        List<Future<PartialResult>> futures = new ArrayList<Future<PartialResult>>(workers - 1);
+        for (int i = 1; i < workers; i++) {
+            PartitionWorker worker = new PartitionWorker(evaluation, partitions, nextPartition, contextClassLoader);
+            submitted.add(worker);
+            futures.add(executor.submit(worker));
+        }
+
+        List<PartialResult> partials = new ArrayList<PartialResult>(workers);
+        partials.add(new PartitionWorker(evaluation, partitions, nextPartition, contextClassLoader).call());
+        boolean interrupted = false;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<PartialResult> future = futures.get(i);
+                // workers that did not start before the partitions ran out have nothing to contribute
+                if (submitted.get(i).preempt()) {
+                    future.cancel(false);
+                    continue;
+                }
+                while (true) {
+                    try {
+                        partials.add(future.get());
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        } else if (cause instanceof Error) {
+                            throw (Error) cause;
+                        } else {
+                            throw new SearchException(cause);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return partials;
+    }
+
+    /**
+     * Holds the fork/join pool running the partition workers, created on the first parallel search
+     */
+    private static final class SearchPool {
+        private static final ForkJoinPool INSTANCE = new ForkJoinPool(SEARCH_PARALLELISM);
+    }
+
+    private static void mergeAggregators(List<AggregatorInstance<?>> aggregators, List<AggregatorInstance<?>> partials) {
+        for (int i = 0; i < aggregators.size(); i++) {
+            ((MergeableAggregatorInstance) aggregators.get(i)).merge(partials.get(i));
+        }
+    }
+
     private void setResultAggregators(List<AggregatorInstance<?>> aggregators, BaseResult result)
     {
         List<Object> aggregateResults = new ArrayList<Object>();
@@ -387,6 +734,15 @@ public class BruteForceSearchManager implements SearchManager {
         this.bruteForceSource = bruteForceSource;
     }
 
+    /**
+     * Returns the BruteForceSource used for search
+     *
+     * @return the source
+     */
+    BruteForceSource getBruteForceSource() {
+        return bruteForceSource;
+    }
+
     /**
      * Add search attributes
      *
@@ -19,6 +19,8 @@ package net.sf.ehcache.store;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.Searchable;
 
+import java.util.List;
+
 /**
  * This interface exposes what is required by the {@link BruteForceSearchManager}
  *
@@ -34,6 +36,22 @@ interface BruteForceSource {
      */
     Iterable<Element> elements();
 
+    /**
+     * The elements from the source split into disjoint partitions that can be traversed concurrently.
+     * The elements returned are in the form expected by the {@link BruteForceSearchManager}.
+     *
+     * @return a List of Iterables of Element
+     */
+    List<Iterable<Element>> partitions();
+
+    /**
+     * Returns the element mapped to the given key, in the form returned by {@link #elements()}.
+     *
+     * @param key the key
+     * @return the element, or null if there is none
+     */
+    Element get(Object key);
+
     /**
      * Returns the {@link Searchable} configuration of the source.
      *
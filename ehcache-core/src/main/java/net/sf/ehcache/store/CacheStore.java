@@ -30,8 +30,8 @@ import net.sf.ehcache.terracotta.TerracottaNotRunningException;
 import net.sf.ehcache.writer.CacheWriterManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -49,7 +49,7 @@ import org.terracotta.context.annotations.ContextChild;
  *
  * @author Alex Snaps
  */
-public class CacheStore implements Store {
+public class CacheStore implements ComputingStore {
 
     private static final Logger LOG = LoggerFactory.getLogger(CacheStore.class);
 
@@ -170,8 +170,29 @@ public class CacheStore implements Store {
 
     @Override
     public void putAll(final Collection<Element> elements) throws CacheException {
+        final List<Element> uncached = new ArrayList<Element>(elements.size());
         for (Element element : elements) {
-            put(element);
+            if (cachingTier.loadOnPut() || cachingTier.contains(element.getObjectKey())) {
+                put(element);
+            } else {
+                uncached.add(element);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return;
+        }
+
+        try {
+            authoritativeTier.putAll(uncached);
+        } catch (RuntimeException e) {
+            for (Element element : uncached) {
+                authoritativeTier.flush(element);
+            }
+            throw e;
+        } finally {
+            for (Element element : uncached) {
+                cachingTier.remove(element.getObjectKey());
+            }
         }
     }
 
@@ -241,8 +262,14 @@ public class CacheStore implements Store {
 
     @Override
     public void removeAll(final Collection<?> keys) {
-        for (Object key : keys) {
-            remove(key);
+        try {
+            authoritativeTier.removeAll(keys);
+        } finally {
+            for (Object key : keys) {
+                if (key != null) {
+                    cachingTier.remove(key);
+                }
+            }
         }
     }
 
@@ -255,6 +282,24 @@ public class CacheStore implements Store {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The computation is pushed down to the authority when it is a {@link ComputingStore}, the key being evicted from
+     * the caching tier afterwards.
+     */
+    @Override
+    public Element compute(final Object key, final Computation computation) throws CacheException {
+        if (!(authoritativeTier instanceof ComputingStore)) {
+            return Computations.lockAndCompute(this, key, computation);
+        }
+        try {
+            return ((ComputingStore)authoritativeTier).compute(key, computation);
+        } finally {
+            cachingTier.remove(key);
+        }
+    }
+
     @Override
     public void removeAll() throws CacheException {
         final Lock lock = daLock.writeLock();
@@ -513,22 +558,37 @@ public class CacheStore implements Store {
         return authoritativeTier.getSearchAttributes();
     }
 
-    // TODO this is probably not optimum
     @Override
     public Map<Object, Element> getAllQuiet(final Collection<?> keys) {
-        final Map<Object, Element> result = new HashMap<Object, Element>();
-        for (Object key : keys) {
-            result.put(key, getQuiet(key));
-        }
-        return result;
+        return getAll(keys, false);
     }
 
-    // TODO this is probably not optimum
     @Override
     public Map<Object, Element> getAll(final Collection<?> keys) {
-        final Map<Object, Element> result = new HashMap<Object, Element>();
+        return getAll(keys, true);
+    }
+
+    private Map<Object, Element> getAll(final Collection<?> keys, final boolean updateStats) {
+        final List<Object> nonNullKeys = new ArrayList<Object>(keys.size());
         for (Object key : keys) {
-            result.put(key, get(key));
+            if (key != null) {
+                nonNullKeys.add(key);
+            }
+        }
+        final Map<Object, Element> result = cachingTier.getAll(nonNullKeys, new CachingTier.BulkLoader<Object, Element>() {
+            @Override
+            public Map<Object, Element> load(final Collection<Object> missing) throws Exception {
+                final Lock lock = daLock.readLock();
+                lock.lock();
+                try {
+                    return authoritativeTier.faultAll(missing, updateStats);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }, updateStats);
+        if (nonNullKeys.size() != keys.size()) {
+            result.put(null, null);
         }
         return result;
     }
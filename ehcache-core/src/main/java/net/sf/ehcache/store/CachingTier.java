@@ -15,6 +15,8 @@
  */
 package net.sf.ehcache.store;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -47,6 +49,18 @@ public interface CachingTier<K, V> {
      */
     V get(K key, Callable<V> source, boolean updateStats);
 
+    /**
+     * Returns the values associated with the keys, populating the missing mappings with a single call to the loader.
+     * <p>
+     * Keys being faulted in by other threads are waited upon rather than loaded again.
+     *
+     * @param keys the keys to look up
+     * @param loader the loader used to populate all mappings missing from this cache at once
+     * @param updateStats true to update the stats, false otherwise
+     * @return a map of the keys to their values, keys without value mapping to {@code null}
+     */
+    Map<K, V> getAll(Collection<? extends K> keys, BulkLoader<K, V> loader, boolean updateStats);
+
     /**
      * Removes the mapping associated to the key passed in
      *
@@ -147,6 +161,24 @@ public interface CachingTier<K, V> {
     @Deprecated
     void setEvictionPolicy(Policy policy);
 
+    /**
+     * Source of the values of the mappings missing from the cache, in bulk
+     *
+     * @param <K>
+     * @param <V>
+     */
+    public interface BulkLoader<K, V> {
+
+        /**
+         * Loads the values of the given keys.
+         *
+         * @param keys the keys to load
+         * @return the loaded values, keys without value may be absent or mapped to {@code null}
+         * @throws Exception if loading fails
+         */
+        Map<K, V> load(Collection<K> keys) throws Exception;
+    }
+
     /**
      * A listener that will be notified when eviction of a mapping happens
      *
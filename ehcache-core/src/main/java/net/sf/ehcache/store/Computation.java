@@ -0,0 +1,39 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Element;
+
+/**
+ * A function computing the new mapping of a key from its current one, as applied by {@link ComputingStore#compute(Object, Computation)}.
+ *
+ * @see ComputingStore
+ */
+public interface Computation {
+
+    /**
+     * Computes the element to map the key to.
+     * <p>
+     * Returning {@code current} leaves the mapping untouched, returning {@code null} removes it and returning any other
+     * element replaces it. The returned element must have {@code key} as its key.
+     *
+     * @param key the key being computed
+     * @param current the element currently mapped to the key, or null if there is none
+     * @return the element to map the key to, or null to remove the mapping
+     */
+    Element compute(Object key, Element current);
+}
@@ -0,0 +1,97 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.concurrent.CacheLockProvider;
+import net.sf.ehcache.concurrent.LockType;
+import net.sf.ehcache.concurrent.Sync;
+
+/**
+ * Static helpers applying {@link Computation}s to any {@link Store}.
+ */
+public final class Computations {
+
+    private Computations() {
+        // static helpers only
+    }
+
+    /**
+     * Computes the mapping of the key in the given store.
+     * <p>
+     * {@link ComputingStore}s compute the mapping themselves. Other stores are computed through
+     * {@link #lockAndCompute(Store, Object, Computation)}, which only excludes concurrent writers going through the same lock.
+     *
+     * @param store the store
+     * @param key the key to compute
+     * @param computation the computation
+     * @return the element now mapped to the key, or null if there is none
+     * @throws CacheException if the store cannot lock the key
+     */
+    public static Element compute(Store store, Object key, Computation computation) throws CacheException {
+        if (store instanceof ComputingStore) {
+            return ((ComputingStore) store).compute(key, computation);
+        }
+        return lockAndCompute(store, key, computation);
+    }
+
+    /**
+     * Computes the mapping of the key in the given store while holding the write lock for the key handed out by the
+     * store's {@link CacheLockProvider}.
+     *
+     * @param store the store
+     * @param key the key to compute
+     * @param computation the computation
+     * @return the element now mapped to the key, or null if there is none
+     * @throws CacheException if the store cannot lock the key
+     */
+    public static Element lockAndCompute(Store store, Object key, Computation computation) throws CacheException {
+        Object context = store.getInternalContext();
+        if (!(context instanceof CacheLockProvider)) {
+            throw new CacheException("Store " + store.getClass().getName() + " cannot lock keys for computation");
+        }
+        Sync sync = ((CacheLockProvider) context).getSyncForKey(key);
+        sync.lock(LockType.WRITE);
+        try {
+            return computeUnderLock(store, key, computation);
+        } finally {
+            sync.unlock(LockType.WRITE);
+        }
+    }
+
+    /**
+     * Computes the mapping of the key in the given store, assuming writes to the key are already excluded.
+     *
+     * @param store the store
+     * @param key the key to compute
+     * @param computation the computation
+     * @return the element now mapped to the key, or null if there is none
+     */
+    public static Element computeUnderLock(Store store, Object key, Computation computation) {
+        Element current = store.getQuiet(key);
+        Element computed = computation.compute(key, current);
+        if (computed == null) {
+            if (current != null) {
+                store.remove(key);
+            }
+        } else if (computed != current) {
+            store.put(computed);
+        }
+        return computed;
+    }
+}
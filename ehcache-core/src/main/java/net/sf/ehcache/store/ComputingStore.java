@@ -0,0 +1,39 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Element;
+
+/**
+ * A {@link Store} able to compute the mapping of a key atomically, from within the lock guarding that key.
+ * <p>
+ * Stores that do not implement this interface are computed by {@link Computations#compute(Store, Object, Computation)}
+ * under the key's lock as exposed through the store's {@link net.sf.ehcache.concurrent.CacheLockProvider}.
+ */
+public interface ComputingStore extends Store {
+
+    /**
+     * Computes the mapping of the key, invoking the computation exactly once while no other write to the key can happen.
+     *
+     * @param key the key to compute
+     * @param computation the computation
+     * @return the element now mapped to the key, or null if there is none
+     * @throws CacheException if the resulting mapping could not be stored
+     */
+    Element compute(Object key, Computation computation) throws CacheException;
+}
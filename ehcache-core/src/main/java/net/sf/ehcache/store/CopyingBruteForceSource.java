@@ -19,7 +19,9 @@ package net.sf.ehcache.store;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.Searchable;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * A {@link BruteForceSource} that wraps another one and deals with copy for read of {@link Element}s.
@@ -47,6 +49,20 @@ class CopyingBruteForceSource implements BruteForceSource {
         return new CopyingIterable(delegate.elements(), copyStrategyHandler);
     }
 
+    @Override
+    public List<Iterable<Element>> partitions() {
+        List<Iterable<Element>> partitions = new ArrayList<Iterable<Element>>();
+        for (Iterable<Element> partition : delegate.partitions()) {
+            partitions.add(new CopyingIterable(partition, copyStrategyHandler));
+        }
+        return partitions;
+    }
+
+    @Override
+    public Element get(Object key) {
+        return copyStrategyHandler.copyElementForReadIfNeeded(delegate.get(key));
+    }
+
     @Override
     public Searchable getSearchable() {
         return delegate.getSearchable();
@@ -63,8 +63,7 @@ public final class CopyingCacheStore<T extends Store> extends AbstractCopyingCac
      * @return the wrapped store
      */
     private static <T extends Store> CopyingCacheStore<T> wrap(final T cacheStore, final CacheConfiguration cacheConfiguration) {
-        final ReadWriteCopyStrategy<Element> copyStrategyInstance = cacheConfiguration.getCopyStrategyConfiguration()
-            .getCopyStrategyInstance(cacheConfiguration.getClassLoader());
+        final ReadWriteCopyStrategy<Element> copyStrategyInstance = cacheConfiguration.getCopyStrategy();
         return new CopyingCacheStore<T>(cacheStore, cacheConfiguration.isCopyOnRead(), cacheConfiguration.isCopyOnWrite(), copyStrategyInstance, cacheConfiguration.getClassLoader());
     }
 
@@ -91,8 +90,7 @@ public final class CopyingCacheStore<T extends Store> extends AbstractCopyingCac
      */
     public static ElementValueComparator wrapIfCopy(final ElementValueComparator comparator, final CacheConfiguration cacheConfiguration) {
         if (isCopyOnReadAndCopyOnWrite(cacheConfiguration)) {
-            final ReadWriteCopyStrategy<Element> copyStrategyInstance = cacheConfiguration.getCopyStrategyConfiguration()
-                .getCopyStrategyInstance(cacheConfiguration.getClassLoader());
+            final ReadWriteCopyStrategy<Element> copyStrategyInstance = cacheConfiguration.getCopyStrategy();
             CopyStrategyHandler copyStrategyHandler = new CopyStrategyHandler(cacheConfiguration.isCopyOnRead(),
                     cacheConfiguration.isCopyOnWrite(),
                     copyStrategyInstance, cacheConfiguration.getClassLoader());
@@ -39,7 +39,7 @@ import org.terracotta.context.annotations.ContextChild;
  *
  * @author teck
  */
-public class ElementIdAssigningStore implements Store {
+public class ElementIdAssigningStore implements ComputingStore {
 
     @ContextChild
     private final Store delegate;
@@ -110,6 +110,23 @@ public class ElementIdAssigningStore implements Store {
         return delegate.putWithWriter(element, writerManager);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element compute(Object key, final Computation computation) throws CacheException {
+        return Computations.compute(delegate, key, new Computation() {
+            @Override
+            public Element compute(Object computedKey, Element current) {
+                Element computed = computation.compute(computedKey, current);
+                if (computed != null && computed != current) {
+                    setId(computed);
+                }
+                return computed;
+            }
+        });
+    }
+
     /**
      * {@inheritDoc}
      */
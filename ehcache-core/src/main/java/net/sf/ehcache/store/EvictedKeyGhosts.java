@@ -0,0 +1,134 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the hashes of the last keys a store evicted, to measure the hit rate its next bytes would have.
+ * <p>
+ * A miss on a key still remembered here would have been a hit, had the store been a little larger. The rate of such
+ * ghost hits, over the number of keys remembered, is the marginal hit rate of the store: what it loses per entry as
+ * it is made to shrink.
+ * <p>
+ * Hashes are kept in a direct mapped table, where a newly evicted key replaces whatever key shared its slot. Distinct
+ * keys with equal hashes, as well as concurrent updates of a slot, make the measure approximate.
+ */
+final class EvictedKeyGhosts {
+
+    private static final int SPREAD = 0x45d9f3b;
+    private static final int EMPTY = 0;
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicIntegerArray hashes;
+    private final int mask;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+
+    private volatile long windowStart = System.nanoTime();
+    private volatile long windowHits;
+    private volatile float hitRate;
+
+    /**
+     * Creates a ghost table remembering up to the given number of keys.
+     *
+     * @param capacity the number of keys to remember, rounded up to a power of two
+     */
+    EvictedKeyGhosts(int capacity) {
+        int length = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.hashes = new AtomicIntegerArray(length);
+        this.mask = length - 1;
+    }
+
+    /**
+     * Remembers an evicted key.
+     *
+     * @param key the evicted key
+     */
+    void evicted(Object key) {
+        int hash = hash(key);
+        if (hashes.getAndSet(hash & mask, hash) == EMPTY) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a miss, counting a ghost hit if the key was evicted recently.
+     *
+     * @param key the missing key
+     */
+    void missed(Object key) {
+        int hash = hash(key);
+        int slot = hash & mask;
+        if (hashes.get(slot) == hash && hashes.compareAndSet(slot, hash, EMPTY)) {
+            size.decrementAndGet();
+            hits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of evicted keys currently remembered.
+     *
+     * @return the number of ghosts
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the rate of ghost hits, as measured over the last complete window of a second.
+     *
+     * @return the ghost hits per second
+     */
+    float hitRate() {
+        long now = System.nanoTime();
+        long start = windowStart;
+        long elapsed = now - start;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            synchronized (this) {
+                if (windowStart == start) {
+                    long currentHits = hits.get();
+                    hitRate = (float) (currentHits - windowHits) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+                    windowHits = currentHits;
+                    windowStart = now;
+                }
+            }
+        }
+        return hitRate;
+    }
+
+    /**
+     * Forgets all remembered keys.
+     */
+    void clear() {
+        for (int i = 0; i < hashes.length(); i++) {
+            if (hashes.getAndSet(i, EMPTY) != EMPTY) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * SPREAD;
+        h ^= h >>> (Integer.SIZE / 2);
+        // 0 marks an empty slot
+        return h == EMPTY ? 1 : h;
+    }
+}
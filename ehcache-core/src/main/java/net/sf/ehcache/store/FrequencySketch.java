@@ -0,0 +1,164 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch estimating the popularity of keys within a time window, as used by the {@link TinyLfuPolicy}.
+ * <p>
+ * Each key maps to four 4-bit counters, picked using four different hash functions, packed sixteen to a long. The
+ * estimated frequency of a key is the minimum of its counters. Once the number of increments reaches ten times the
+ * capacity, all counters are halved so that the sketch ages out keys that are no longer popular.
+ * <p>
+ * Counters are updated with CAS operations; the table is resized, losing its content, should the capacity grow past
+ * the one the sketch was sized for.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = new long[] {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L,
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long COUNTER_MASK = 0xfL;
+    private static final int SPREAD = 0x45d9f3b;
+    private static final int HALF_WORD = 16;
+    private static final int MIN_TABLE_SIZE = 64;
+    private static final int SAMPLE_FACTOR = 10;
+    private static final int DEPTH = 4;
+
+    private volatile AtomicLongArray table;
+    private volatile int tableMask;
+    private volatile int sampleSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a sketch sized for the given capacity.
+     *
+     * @param capacity the expected number of distinct keys, 0 if unknown
+     */
+    FrequencySketch(long capacity) {
+        resize(capacity);
+    }
+
+    /**
+     * Grows the sketch, if needed, so that it is sized for the given capacity.
+     *
+     * @param capacity the expected number of distinct keys
+     */
+    void ensureCapacity(long capacity) {
+        if (capacity > table.length()) {
+            synchronized (this) {
+                if (capacity > table.length()) {
+                    resize(capacity);
+                }
+            }
+        }
+    }
+
+    private void resize(long capacity) {
+        int length = (int) Math.min(1 << (Integer.SIZE - 2), Math.max(MIN_TABLE_SIZE, capacity));
+        length = Integer.highestOneBit(length - 1) << 1;
+        sampleSize = (int) Math.min(Integer.MAX_VALUE, (long) length * SAMPLE_FACTOR);
+        tableMask = length - 1;
+        size.set(0);
+        table = new AtomicLongArray(length);
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the key within the current time window, up to 15.
+     *
+     * @param key the key
+     * @return the estimated frequency
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & (DEPTH - 1)) << 2;
+        AtomicLongArray counters = table;
+        int mask = tableMask;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i, mask);
+            int offset = (start + i) << 2;
+            int count = (int) ((counters.get(index) >>> offset) & COUNTER_MASK);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an occurrence of the key, aging the sketch if the time window is over.
+     *
+     * @param key the key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & (DEPTH - 1)) << 2;
+        AtomicLongArray counters = table;
+        int mask = tableMask;
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            added |= incrementAt(counters, indexOf(hash, i, mask), start + i);
+        }
+        if (added && size.incrementAndGet() >= sampleSize) {
+            reset(counters);
+        }
+    }
+
+    private static boolean incrementAt(AtomicLongArray counters, int index, int counter) {
+        int offset = counter << 2;
+        long mask = COUNTER_MASK << offset;
+        while (true) {
+            long value = counters.get(index);
+            if ((value & mask) == mask) {
+                return false;
+            } else if (counters.compareAndSet(index, value, value + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    private void reset(AtomicLongArray counters) {
+        synchronized (this) {
+            if (counters != table || size.get() < sampleSize) {
+                return;
+            }
+            for (int i = 0; i < counters.length(); i++) {
+                while (true) {
+                    long value = counters.get(i);
+                    if (counters.compareAndSet(i, value, (value >>> 1) & RESET_MASK)) {
+                        break;
+                    }
+                }
+            }
+            size.set(sampleSize / 2);
+        }
+    }
+
+    private static int indexOf(int item, int i, int mask) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> Integer.SIZE;
+        return ((int) hash) & mask;
+    }
+
+    private static int spread(int x) {
+        int h = ((x >>> HALF_WORD) ^ x) * SPREAD;
+        h = ((h >>> HALF_WORD) ^ h) * SPREAD;
+        return (h >>> HALF_WORD) ^ h;
+    }
+}
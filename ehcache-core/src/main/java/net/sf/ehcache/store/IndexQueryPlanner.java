@@ -0,0 +1,329 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.search.ExecutionHints;
+import net.sf.ehcache.search.SearchException;
+import net.sf.ehcache.search.attribute.AttributeType;
+import net.sf.ehcache.search.expression.AlwaysMatch;
+import net.sf.ehcache.search.expression.And;
+import net.sf.ehcache.search.expression.Between;
+import net.sf.ehcache.search.expression.Criteria;
+import net.sf.ehcache.search.expression.EqualTo;
+import net.sf.ehcache.search.expression.GreaterThan;
+import net.sf.ehcache.search.expression.GreaterThanOrEqual;
+import net.sf.ehcache.search.expression.ILike;
+import net.sf.ehcache.search.expression.InCollection;
+import net.sf.ehcache.search.expression.IsNull;
+import net.sf.ehcache.search.expression.LessThan;
+import net.sf.ehcache.search.expression.LessThanOrEqual;
+import net.sf.ehcache.search.expression.Not;
+import net.sf.ehcache.search.expression.NotEqualTo;
+import net.sf.ehcache.search.expression.NotILike;
+import net.sf.ehcache.search.expression.NotNull;
+import net.sf.ehcache.search.expression.Or;
+import net.sf.ehcache.search.impl.BaseQueryInterpreter;
+import net.sf.ehcache.store.IndexedSearchManager.AttributeIndex;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plans the index lookups of a query against the indexes of an {@link IndexedSearchManager}.
+ * <p>
+ * Each criteria yields the set of keys it may match, or null when the indexes cannot tell and all keys have to be
+ * considered: conjunctions intersect the sets of their criteria, disjunctions join them. The resulting keys are only
+ * candidates; their elements still have to be matched against the criteria.
+ */
+class IndexQueryPlanner extends BaseQueryInterpreter {
+
+    private final Map<String, AttributeIndex> indexes;
+    private Set<Object> candidates;
+
+    /**
+     * Creates a planner for the given indexes
+     *
+     * @param indexes the attribute indexes, by attribute name
+     */
+    IndexQueryPlanner(Map<String, AttributeIndex> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Plans the lookups for the given criteria
+     *
+     * @param criteria the criteria of the query
+     * @return the keys of the candidate elements, or null if all elements are candidates
+     */
+    Set<Object> plan(Criteria criteria) {
+        processCriteria(criteria);
+        return candidates;
+    }
+
+    @Override
+    protected void processCriteria(Criteria criteria) {
+        if (criteria instanceof Not && !isNegatable(((Not) criteria).getCriteria())) {
+            candidates = null;
+            return;
+        }
+        try {
+            super.processCriteria(criteria);
+        } catch (SearchException e) {
+            // custom criteria type
+            candidates = null;
+        }
+    }
+
+    private static boolean isNegatable(Criteria criteria) {
+        if (criteria instanceof And) {
+            return isNegatable(((And) criteria).getCriterion());
+        } else if (criteria instanceof Or) {
+            return isNegatable(((Or) criteria).getCriterion());
+        } else {
+            return criteria instanceof Not || criteria instanceof EqualTo || criteria instanceof NotEqualTo
+                   || criteria instanceof Between || criteria instanceof GreaterThan || criteria instanceof GreaterThanOrEqual
+                   || criteria instanceof LessThan || criteria instanceof LessThanOrEqual || criteria instanceof ILike
+                   || criteria instanceof NotILike || criteria instanceof InCollection || criteria instanceof IsNull
+                   || criteria instanceof NotNull;
+        }
+    }
+
+    private static boolean isNegatable(Criteria[] criterion) {
+        for (Criteria c : criterion) {
+            if (!isNegatable(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AttributeIndex indexFor(String attributeName, AttributeType type) {
+        AttributeIndex index = indexes.get(attributeName);
+        return index != null && index.getType().equals(type) ? index : null;
+    }
+
+    private void range(String attributeName, AttributeType type, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        AttributeIndex index = indexFor(attributeName, type);
+        if (index != null && index.isOrdered()) {
+            candidates = index.range(from, fromInclusive, to, toInclusive);
+        } else {
+            candidates = null;
+        }
+    }
+
+    @Override
+    protected void and(And criteria) {
+        Set<Object> intersection = null;
+        for (Criteria c : criteria.getCriterion()) {
+            processCriteria(c);
+            if (candidates != null) {
+                if (intersection == null) {
+                    intersection = candidates;
+                } else if (candidates.size() < intersection.size()) {
+                    candidates.retainAll(intersection);
+                    intersection = candidates;
+                } else {
+                    intersection.retainAll(candidates);
+                }
+            }
+        }
+        candidates = intersection;
+    }
+
+    @Override
+    protected void or(Or criteria) {
+        Set<Object> union = new HashSet<Object>();
+        for (Criteria c : criteria.getCriterion()) {
+            processCriteria(c);
+            if (candidates == null) {
+                return;
+            }
+            union.addAll(candidates);
+        }
+        candidates = union;
+    }
+
+    @Override
+    protected void equalTo(EqualTo criteria) {
+        AttributeIndex index = indexFor(criteria.getAttributeName(), criteria.getType());
+        candidates = index == null ? null : index.equalTo(criteria.getValue());
+    }
+
+    @Override
+    protected void in(InCollection criteria) {
+        if (criteria.values().isEmpty()) {
+            candidates = new HashSet<Object>();
+            return;
+        }
+        String name = criteria.getAttributeName();
+        AttributeIndex index = indexFor(name, AttributeType.typeFor(name, criteria.values().iterator().next()));
+        if (index == null) {
+            candidates = null;
+        } else {
+            Set<Object> union = new HashSet<Object>();
+            for (Object value : criteria.values()) {
+                union.addAll(index.equalTo(value));
+            }
+            candidates = union;
+        }
+    }
+
+    @Override
+    protected void greaterThan(GreaterThan criteria) {
+        range(criteria.getAttributeName(), criteria.getType(), criteria.getComparableValue(), false, null, false);
+    }
+
+    @Override
+    protected void greaterThanEqual(GreaterThanOrEqual criteria) {
+        range(criteria.getAttributeName(), criteria.getType(), criteria.getComparableValue(), true, null, false);
+    }
+
+    @Override
+    protected void lessThan(LessThan criteria) {
+        range(criteria.getAttributeName(), criteria.getType(), null, false, criteria.getComparableValue(), false);
+    }
+
+    @Override
+    protected void lessThanEqual(LessThanOrEqual criteria) {
+        range(criteria.getAttributeName(), criteria.getType(), null, false, criteria.getComparableValue(), true);
+    }
+
+    @Override
+    protected void between(Between criteria) {
+        range(criteria.getAttributeName(), criteria.getType(), criteria.getMin(), criteria.isMinInclusive(), criteria.getMax(),
+            criteria.isMaxInclusive());
+    }
+
+    @Override
+    protected void ilike(ILike criteria) {
+        AttributeIndex index = indexFor(criteria.getAttributeName(), AttributeType.STRING);
+        String prefix = literalPrefix(criteria.getRegex().trim());
+        candidates = index == null || prefix.length() == 0 ? null : index.startingWith(prefix);
+    }
+
+    /**
+     * Returns the lower cased literal characters an {@code ILike} expression starts with.
+     */
+    private static String literalPrefix(String expression) {
+        StringBuilder prefix = new StringBuilder();
+        boolean escape = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char ch = expression.charAt(i);
+            if (escape) {
+                escape = false;
+            } else if (ch == '\\') {
+                escape = true;
+                continue;
+            } else if (ch == '*' || ch == '?') {
+                break;
+            }
+            prefix.append(Character.toString(ch).toLowerCase());
+        }
+        return prefix.toString();
+    }
+
+    @Override
+    protected void all() {
+        candidates = null;
+    }
+
+    @Override
+    protected void notEqualTerm(NotEqualTo term) {
+        candidates = null;
+    }
+
+    @Override
+    protected void notIlike(NotILike criteria) {
+        candidates = null;
+    }
+
+    @Override
+    protected void isNull(IsNull criteria) {
+        candidates = null;
+    }
+
+    @Override
+    protected void notNull(NotNull criteria) {
+        candidates = null;
+    }
+
+    @Override
+    protected void maxResults(int maxResults) {
+        // not planned
+    }
+
+    @Override
+    protected void includeKeys(boolean include) {
+        // not planned
+    }
+
+    @Override
+    protected void includeValues(boolean include) {
+        // not planned
+    }
+
+    @Override
+    protected void max(String name) {
+        // not planned
+    }
+
+    @Override
+    protected void min(String name) {
+        // not planned
+    }
+
+    @Override
+    protected void sum(String name) {
+        // not planned
+    }
+
+    @Override
+    protected void average(String name) {
+        // not planned
+    }
+
+    @Override
+    protected void count() {
+        // not planned
+    }
+
+    @Override
+    protected void attribute(String name) {
+        // not planned
+    }
+
+    @Override
+    protected void attributeAscending(String name) {
+        // not planned
+    }
+
+    @Override
+    protected void attributeDescending(String name) {
+        // not planned
+    }
+
+    @Override
+    protected void groupBy(String name) {
+        // not planned
+    }
+
+    @Override
+    protected void setHints(ExecutionHints hints) {
+        // not planned
+    }
+}
@@ -0,0 +1,455 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.ConfigurationHelper;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Results;
+import net.sf.ehcache.search.attribute.AttributeExtractor;
+import net.sf.ehcache.search.attribute.AttributeType;
+import net.sf.ehcache.search.attribute.DynamicAttributesExtractor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A search manager maintaining indexes on the typed search attributes of a cache, so that queries need not scan the
+ * whole store.
+ * <p>
+ * Each search attribute configured with a type gets an index mapping its values to the keys of the elements holding
+ * them: a hash index for boolean and enum attributes, a sorted one for the other types, serving both equality and
+ * range criteria. String attributes get both, the hash index matching values regardless of case as {@code EqualTo}
+ * does, the sorted one holding lower case values for {@code ILike} prefixes.
+ * <p>
+ * The {@link IndexQueryPlanner} narrows down the keys a query may match using these indexes; the elements of these keys
+ * are then matched against the criteria as by the {@link BruteForceSearchManager}, which also runs the queries the
+ * indexes cannot help with.
+ * <p>
+ * The owning store calls {@link #update(Object, Map)} after each change to a key, which brings the indexes in line
+ * with the element the key then maps to.
+ */
+public class IndexedSearchManager extends BruteForceSearchManager {
+
+    /**
+     * The advanced store property enabling search indexes for a cache.
+     */
+    public static final String INDEXES_PROPERTY = "searchIndexes";
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedSearchManager.class.getName());
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final AttributeIndex[] indexes;
+    private final Map<String, AttributeIndex> indexesByName;
+    private final ConcurrentMap<Object, Object[]> indexedValues = new ConcurrentHashMap<Object, Object[]>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Create an IndexedSearchManager
+     *
+     * @param cache the cache whose typed search attributes are to be indexed
+     */
+    public IndexedSearchManager(Ehcache cache) {
+        super(cache);
+        CacheConfiguration configuration = cache.getCacheConfiguration();
+        List<AttributeIndex> attributeIndexes = new ArrayList<AttributeIndex>();
+        Searchable searchable = configuration.getSearchable();
+        if (searchable != null) {
+            for (SearchAttribute searchAttribute : searchable.getSearchAttributes().values()) {
+                Class<?> c = ConfigurationHelper.getSearchAttributeType(searchAttribute, configuration.getClassLoader());
+                AttributeType type = c == null ? null : AttributeType.typeFor(c);
+                if (type != null) {
+                    attributeIndexes.add(new AttributeIndex(searchAttribute.getName(), type));
+                }
+            }
+        }
+        this.indexes = attributeIndexes.toArray(new AttributeIndex[attributeIndexes.size()]);
+        Map<String, AttributeIndex> byName = new HashMap<String, AttributeIndex>();
+        for (AttributeIndex index : indexes) {
+            byName.put(index.getName(), index);
+        }
+        this.indexesByName = Collections.unmodifiableMap(byName);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Whether the given cache is to index its search attributes, as requested by the {@value #INDEXES_PROPERTY}
+     * advanced store property, and can.
+     * <p>
+     * Indexes are maintained by the memory store, which does not see the evictions the backing map performs on its
+     * own: caches using the {@code CLOCK} policy, or access ordered eviction, keep searching by brute force.
+     *
+     * @param cache the cache
+     * @return true if the cache should use an {@code IndexedSearchManager}
+     */
+    public static boolean isEnabled(Ehcache cache) {
+        CacheConfiguration configuration = cache.getCacheConfiguration();
+        if (!configuration.isSearchable()
+            || !MemoryStore.getAdvancedBooleanConfigProperty(INDEXES_PROPERTY, cache.getName(), false)) {
+            return false;
+        }
+        MemoryStoreEvictionPolicy policy = configuration.getMemoryStoreEvictionPolicy();
+        if (MemoryStoreEvictionPolicy.CLOCK.equals(policy) || (MemoryStoreEvictionPolicy.LRU.equals(policy)
+            && Boolean.getBoolean(MemoryStore.class.getName() + ".accessOrderedEviction"))) {
+            LOG.warn("Cache " + cache.getName() + " leaves evictions to its backing map and cannot index its search attributes,"
+                     + " searching by brute force");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Results executeQuery(StoreQuery query, Map<String, AttributeExtractor> extractors, DynamicAttributesExtractor
+            dynIndexer) {
+        Set<Object> candidates = new IndexQueryPlanner(indexesByName).plan(query.getCriteria());
+        if (candidates == null) {
+            return super.executeQuery(query, extractors, dynIndexer);
+        }
+
+        List<Element> elements = new ArrayList<Element>(candidates.size());
+        for (Object key : candidates) {
+            Element element = getBruteForceSource().get(key);
+            if (element == null) {
+                update(key, extractors);
+            } else {
+                elements.add(element);
+            }
+        }
+        return executeQuery(query, extractors, dynIndexer, elements);
+    }
+
+    /**
+     * Brings the indexes in line with the element the key currently maps to, if any.
+     * <p>
+     * Concurrent updates of a key may read its element in one order and apply their changes in another, so the indexes
+     * are checked against the element once more after each change: the last update applied always reflects the last
+     * state of the key.
+     *
+     * @param key the key whose mapping changed
+     * @param extractors the attribute extractors for the cache
+     */
+    void update(Object key, Map<String, AttributeExtractor> extractors) {
+        if (indexes.length == 0) {
+            return;
+        }
+        Object lock = locks[(key.hashCode() >>> 1) & (LOCK_STRIPES - 1)];
+        Object[] values = attributeValues(key, extractors);
+        synchronized (lock) {
+            apply(key, values);
+        }
+        while (true) {
+            Object[] latest = attributeValues(key, extractors);
+            synchronized (lock) {
+                if (Arrays.equals(latest, values) || indexedValues.get(key) != values) {
+                    // either up to date, or a later update applied its own values and will check them
+                    return;
+                }
+                apply(key, latest);
+            }
+            values = latest;
+        }
+    }
+
+    private void apply(Object key, Object[] values) {
+        Object[] previous = values == null ? indexedValues.remove(key) : indexedValues.put(key, values);
+        for (int i = 0; i < indexes.length; i++) {
+            Object oldValue = previous == null ? null : previous[i];
+            Object newValue = values == null ? null : values[i];
+            if (oldValue == null ? newValue != null : !oldValue.equals(newValue)) {
+                if (oldValue != null) {
+                    indexes[i].remove(oldValue, key);
+                }
+                if (newValue != null) {
+                    indexes[i].add(newValue, key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extracts the values of the indexed attributes of the element mapped to the key.
+     *
+     * @return the values, or null if the key is not mapped or none of its attributes are indexed
+     */
+    private Object[] attributeValues(Object key, Map<String, AttributeExtractor> extractors) {
+        Element element = getBruteForceSource().get(key);
+        if (element == null) {
+            return null;
+        }
+        Object[] values = null;
+        for (int i = 0; i < indexes.length; i++) {
+            String name = indexes[i].getName();
+            AttributeExtractor extractor = extractors.get(name);
+            Object value = extractor == null ? null : extractor.attributeFor(element, name);
+            if (value != null && AttributeType.isSupportedType(value) && AttributeType.typeFor(name, value) == indexes[i].getType()) {
+                if (values == null) {
+                    values = new Object[indexes.length];
+                }
+                values[i] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The indexes of one search attribute.
+     */
+    static final class AttributeIndex {
+
+        private final String name;
+        private final AttributeType type;
+        private final KeyIndex hashed;
+        private final KeyIndex sorted;
+
+        private AttributeIndex(String name, AttributeType type) {
+            this.name = name;
+            this.type = type;
+            if (AttributeType.BOOLEAN.equals(type) || AttributeType.ENUM.equals(type)) {
+                this.hashed = new KeyIndex(new ConcurrentHashMap<Object, Object>());
+                this.sorted = null;
+            } else if (AttributeType.STRING.equals(type)) {
+                this.hashed = new KeyIndex(new ConcurrentHashMap<Object, Object>());
+                this.sorted = new KeyIndex(new ConcurrentSkipListMap<Object, Object>());
+            } else {
+                this.hashed = null;
+                this.sorted = new KeyIndex(new ConcurrentSkipListMap<Object, Object>());
+            }
+        }
+
+        /**
+         * Returns the name of the indexed attribute
+         *
+         * @return the attribute name
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the type of the indexed attribute
+         *
+         * @return the attribute type
+         */
+        AttributeType getType() {
+            return type;
+        }
+
+        /**
+         * Whether the index can serve range criteria, which excludes strings as their index is meant for {@code ILike}
+         *
+         * @return true if range lookups are supported
+         */
+        boolean isOrdered() {
+            return hashed == null;
+        }
+
+        /**
+         * Returns the keys of the elements whose attribute equals the value, ignoring case for strings
+         *
+         * @param value the value, of the type of the attribute
+         * @return the matching keys
+         */
+        Set<Object> equalTo(Object value) {
+            Set<Object> keys = new HashSet<Object>();
+            if (hashed != null) {
+                hashed.collect(hashKey(value), keys);
+            } else {
+                sorted.collect(value, keys);
+            }
+            return keys;
+        }
+
+        /**
+         * Returns the keys of the elements whose attribute lies in the given range
+         *
+         * @param from the lower bound, or null if unbounded
+         * @param fromInclusive whether the lower bound is included
+         * @param to the upper bound, or null if unbounded
+         * @param toInclusive whether the upper bound is included
+         * @return the matching keys
+         */
+        Set<Object> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+            ConcurrentNavigableMap<Object, Object> map = (ConcurrentNavigableMap<Object, Object>) sorted.map;
+            if (from != null && to != null) {
+                int comparison = ((Comparable) from).compareTo(to);
+                if (comparison > 0 || (comparison == 0 && !(fromInclusive && toInclusive))) {
+                    return new HashSet<Object>();
+                }
+            }
+            if (from != null) {
+                map = map.tailMap(from, fromInclusive);
+            }
+            if (to != null) {
+                map = map.headMap(to, toInclusive);
+            }
+            Set<Object> keys = new HashSet<Object>();
+            for (Object value : map.keySet()) {
+                sorted.collect(value, keys);
+            }
+            return keys;
+        }
+
+        /**
+         * Returns the keys of the elements whose lower cased string attribute starts with the prefix
+         *
+         * @param lowerCasePrefix the prefix, in lower case
+         * @return the matching keys
+         */
+        Set<Object> startingWith(String lowerCasePrefix) {
+            ConcurrentNavigableMap<Object, Object> map = (ConcurrentNavigableMap<Object, Object>) sorted.map;
+            Set<Object> keys = new HashSet<Object>();
+            for (Object value : map.tailMap(lowerCasePrefix, true).keySet()) {
+                if (!((String) value).startsWith(lowerCasePrefix)) {
+                    break;
+                }
+                sorted.collect(value, keys);
+            }
+            return keys;
+        }
+
+        private void add(Object value, Object key) {
+            if (hashed != null) {
+                hashed.add(hashKey(value), key);
+            }
+            if (sorted != null) {
+                sorted.add(sortKey(value), key);
+            }
+        }
+
+        private void remove(Object value, Object key) {
+            if (hashed != null) {
+                hashed.remove(hashKey(value), key);
+            }
+            if (sorted != null) {
+                sorted.remove(sortKey(value), key);
+            }
+        }
+
+        private Object hashKey(Object value) {
+            if (AttributeType.STRING.equals(type)) {
+                // characters equal ignoring case as per String.equalsIgnoreCase() fold to the same one
+                char[] chars = ((String) value).toCharArray();
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+                }
+                return new String(chars);
+            } else {
+                return value;
+            }
+        }
+
+        private Object sortKey(Object value) {
+            if (AttributeType.STRING.equals(type)) {
+                return value.toString().toLowerCase();
+            } else {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Maps index values to the key, or set of keys, of the elements holding them.
+     * <p>
+     * Values held by a single element map to its key directly. Changes to, and reads of, the keys of a value are
+     * guarded by a lock striped on the value.
+     */
+    private static final class KeyIndex {
+
+        private final ConcurrentMap<Object, Object> map;
+        private final Object[] locks = new Object[LOCK_STRIPES];
+
+        private KeyIndex(ConcurrentMap<Object, Object> map) {
+            this.map = map;
+            for (int i = 0; i < locks.length; i++) {
+                locks[i] = new Object();
+            }
+        }
+
+        private Object lockFor(Object value) {
+            return locks[(value.hashCode() >>> 1) & (LOCK_STRIPES - 1)];
+        }
+
+        void add(Object value, Object key) {
+            synchronized (lockFor(value)) {
+                Object current = map.get(value);
+                if (current == null) {
+                    map.put(value, key);
+                } else if (current instanceof Keys) {
+                    ((Keys) current).add(key);
+                } else if (!current.equals(key)) {
+                    Keys keys = new Keys();
+                    keys.add(current);
+                    keys.add(key);
+                    map.put(value, keys);
+                }
+            }
+        }
+
+        void remove(Object value, Object key) {
+            synchronized (lockFor(value)) {
+                Object current = map.get(value);
+                if (current instanceof Keys) {
+                    Keys keys = (Keys) current;
+                    keys.remove(key);
+                    if (keys.size() == 1) {
+                        map.put(value, keys.iterator().next());
+                    }
+                } else if (current != null && current.equals(key)) {
+                    map.remove(value);
+                }
+            }
+        }
+
+        void collect(Object value, Collection<Object> keys) {
+            synchronized (lockFor(value)) {
+                Object current = map.get(value);
+                if (current instanceof Keys) {
+                    keys.addAll((Keys) current);
+                } else if (current != null) {
+                    keys.add(current);
+                }
+            }
+        }
+    }
+
+    /**
+     * The keys of the elements sharing an index value.
+     */
+    private static final class Keys extends HashSet<Object> {
+        private static final long serialVersionUID = 1L;
+    }
+}
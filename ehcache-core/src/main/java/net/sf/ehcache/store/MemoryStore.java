@@ -16,6 +16,7 @@
 
 package net.sf.ehcache.store;
 
+import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheEntry;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
@@ -32,7 +33,8 @@ import net.sf.ehcache.config.SizeOfPolicyConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
 import net.sf.ehcache.pool.Pool;
 import net.sf.ehcache.pool.PoolAccessor;
-import net.sf.ehcache.pool.PoolParticipant;
+import net.sf.ehcache.pool.CostAwarePoolParticipant;
+import net.sf.ehcache.pool.RecalculatingPoolParticipant;
 import net.sf.ehcache.pool.Size;
 import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.SizeOfEngineLoader;
@@ -60,6 +62,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -76,7 +79,7 @@ import static net.sf.ehcache.statistics.StatisticBuilder.operation;
  * @author Terracotta
  * @version $Id$
  */
-public class MemoryStore extends AbstractStore implements CacheConfigurationListener, Store {
+public class MemoryStore extends AbstractStore implements CacheConfigurationListener, ComputingStore {
 
     /**
      * This is the default from {@link java.util.concurrent.ConcurrentHashMap}. It should never be used, because we size
@@ -91,6 +94,11 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
 
     private static final int MAX_EVICTION_RATIO = 5;
 
+    /**
+     * Number of evicted keys remembered to measure the marginal hit rate of a pooled store.
+     */
+    private static final int GHOST_CAPACITY = 1024;
+
     private static final Logger LOG = LoggerFactory.getLogger(MemoryStore.class.getName());
 
     private static final CopyStrategyHandler NO_COPY_STRATEGY_HANDLER = new CopyStrategyHandler(false, false, null, null);
@@ -111,6 +119,11 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
     private final SelectableConcurrentHashMap map;
     private final PoolAccessor poolAccessor;
 
+    /**
+     * The last keys evicted, to measure what the store loses by shrinking (null when not pooled)
+     */
+    private final EvictedKeyGhosts ghosts;
+
     private final OperationObserver<GetOutcome> getObserver = operation(GetOutcome.class).named("get").of(this).tag("local-heap").build();
     private final OperationObserver<PutOutcome> putObserver = operation(PutOutcome.class).named("put").of(this).tag("local-heap").build();
     private final OperationObserver<RemoveOutcome> removeObserver = operation(RemoveOutcome.class).named("remove").of(this).tag("local-heap").build();
@@ -133,6 +146,11 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     private volatile Policy policy;
 
+    /**
+     * Whether the backing map orders its segments by access and evicts on its own instead of sampling for the policy
+     */
+    private volatile boolean accessOrderedEviction;
+
     /**
      * The pool accessor
      */
@@ -153,8 +171,10 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         this.maximumSize = (int) cache.getCacheConfiguration().getMaxEntriesLocalHeap();
         this.policy = determineEvictionPolicy(cache);
         if (pool instanceof UnboundedPool) {
+            this.ghosts = null;
             this.poolAccessor = pool.createPoolAccessor(null, null);
         } else {
+            this.ghosts = new EvictedKeyGhosts(GHOST_CAPACITY);
             this.poolAccessor = pool.createPoolAccessor(new Participant(),
                 SizeOfPolicyConfiguration.resolveMaxDepth(cache),
                 SizeOfPolicyConfiguration.resolveBehavior(cache).equals(SizeOfPolicyConfiguration.MaxDepthExceededBehavior.ABORT));
@@ -162,9 +182,14 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
 
         this.storePinned = determineStorePinned(cache.getCacheConfiguration());
 
-        int maximumCapacity = isClockEviction() && !storePinned ? maximumSize : 0;
+        this.accessOrderedEviction = policy instanceof LruPolicy && !storePinned
+            && Boolean.getBoolean(MemoryStore.class.getName() + ".accessOrderedEviction");
+
+        int maximumCapacity = isMapEviction() && !storePinned ? maximumSize : 0;
         RegisteredEventListeners eventListener = cache.getCacheEventNotificationService();
-        if (Boolean.getBoolean(MemoryStore.class.getName() + ".presize")) {
+        if (accessOrderedEviction) {
+            this.map = factory.newBackingMap(poolAccessor, CONCURRENCY_LEVEL, maximumCapacity, eventListener, true);
+        } else if (Boolean.getBoolean(MemoryStore.class.getName() + ".presize")) {
             // create the CHM with initialCapacity sufficient to hold maximumSize
             final float loadFactor = maximumSize == 1 ? 1 : DEFAULT_LOAD_FACTOR;
             int initialCapacity = getInitialCapacityForLoadFactor(maximumSize, loadFactor);
@@ -237,7 +262,8 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     public static Store create(final Ehcache cache, Pool pool) {
         CacheConfiguration cacheConfiguration = cache.getCacheConfiguration();
-        final BruteForceSearchManager searchManager = new BruteForceSearchManager(cache);
+        final BruteForceSearchManager searchManager = IndexedSearchManager.isEnabled(cache) ? new IndexedSearchManager(cache)
+            : new BruteForceSearchManager(cache);
         MemoryStore memoryStore = new MemoryStore(cache, pool, new BasicBackingFactory(), searchManager);
         cacheConfiguration.addConfigurationListener(memoryStore);
         searchManager.setBruteForceSource(createBruteForceSource(memoryStore, cache.getCacheConfiguration()));
@@ -281,7 +307,8 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         long delta = poolAccessor.add(element.getObjectKey(), element.getObjectValue(), map.storedObject(element), storePinned);
         if (delta > -1) {
             Element old = map.put(element.getObjectKey(), element, delta);
-            checkCapacity(element);
+            updateSearchIndexes(element.getObjectKey());
+            checkCapacity(element, old == null);
             if (old == null) {
                 putObserver.end(PutOutcome.ADDED);
                 return true;
@@ -320,7 +347,8 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
             } finally {
                 lock.writeLock().unlock();
             }
-            checkCapacity(element);
+            updateSearchIndexes(element.getObjectKey());
+            checkCapacity(element, old == null);
             return old == null;
         } else {
             notifyDirectEviction(element);
@@ -342,8 +370,15 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
             getObserver.end(GetOutcome.MISS);
             return null;
         } else {
+            final Policy p = policy;
+            if (p instanceof TinyLfuPolicy) {
+                ((TinyLfuPolicy) p).recordAccess(key);
+            }
             final Element e = map.get(key);
             if (e == null) {
+                if (ghosts != null) {
+                    ghosts.missed(key);
+                }
                 getObserver.end(GetOutcome.MISS);
                 return null;
             } else {
@@ -377,6 +412,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         try {
             return map.remove(key);
         } finally {
+            updateSearchIndexes(key);
             removeObserver.end(RemoveOutcome.SUCCESS);
         }
     }
@@ -400,6 +436,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
             }
         } finally {
             writeLock.unlock();
+            updateSearchIndexes(key);
         }
         if (element == null && LOG.isDebugEnabled()) {
             LOG.debug(cache.getName() + "Cache: Cannot remove entry as key " + key + " was not found");
@@ -407,6 +444,146 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         return element;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are grouped by segment. Each group is added to the pool without holding the segment lock, as that may
+     * evict from other segments, then installed under a single acquisition of the segment write lock.
+     */
+    @Override
+    public void putAll(Collection<Element> elements) throws CacheException {
+        for (List<Element> partition : partitionBySegment(elements)) {
+            long[] deltas = new long[partition.size()];
+            for (int i = 0; i < deltas.length; i++) {
+                Element element = partition.get(i);
+                if (searchManager != null) {
+                    searchManager.put(cache.getName(), -1, element, null, attributeExtractors, cache.getCacheConfiguration().getDynamicExtractor());
+                }
+                deltas[i] = poolAccessor.add(element.getObjectKey(), element.getObjectValue(), map.storedObject(element), storePinned);
+                if (deltas[i] < 0) {
+                    notifyDirectEviction(element);
+                }
+            }
+
+            Element[] oldElements = new Element[deltas.length];
+            Lock lock = getWriteLock(partition.get(0).getObjectKey());
+            lock.lock();
+            try {
+                for (int i = 0; i < deltas.length; i++) {
+                    if (deltas[i] > -1) {
+                        Element element = partition.get(i);
+                        oldElements[i] = map.put(element.getObjectKey(), element, deltas[i]);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            for (int i = 0; i < deltas.length; i++) {
+                Element element = partition.get(i);
+                putObserver.begin();
+                if (deltas[i] > -1) {
+                    updateSearchIndexes(element.getObjectKey());
+                    checkCapacity(element, oldElements[i] == null);
+                }
+                putObserver.end(oldElements[i] == null ? PutOutcome.ADDED : PutOutcome.UPDATED);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each group being removed under a single acquisition of the segment write lock.
+     */
+    @Override
+    public void removeAll(Collection<?> keys) {
+        Map<ReentrantReadWriteLock, List<Object>> partitions = new IdentityHashMap<ReentrantReadWriteLock, List<Object>>();
+        for (Object key : keys) {
+            if (key != null) {
+                ReentrantReadWriteLock segment = map.lockFor(key);
+                List<Object> partition = partitions.get(segment);
+                if (partition == null) {
+                    partition = new ArrayList<Object>();
+                    partitions.put(segment, partition);
+                }
+                partition.add(key);
+            }
+        }
+
+        for (Map.Entry<ReentrantReadWriteLock, List<Object>> partition : partitions.entrySet()) {
+            Lock lock = partition.getKey().writeLock();
+            lock.lock();
+            try {
+                for (Object key : partition.getValue()) {
+                    map.remove(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Object key : partition.getValue()) {
+                removeObserver.begin();
+                updateSearchIndexes(key);
+                removeObserver.end(RemoveOutcome.SUCCESS);
+            }
+        }
+    }
+
+    private Collection<List<Element>> partitionBySegment(Collection<Element> elements) {
+        Map<ReentrantReadWriteLock, List<Element>> partitions = new IdentityHashMap<ReentrantReadWriteLock, List<Element>>();
+        for (Element element : elements) {
+            if (element != null) {
+                ReentrantReadWriteLock segment = map.lockFor(element.getObjectKey());
+                List<Element> partition = partitions.get(segment);
+                if (partition == null) {
+                    partition = new ArrayList<Element>();
+                    partitions.put(segment, partition);
+                }
+                partition.add(element);
+            }
+        }
+        return partitions.values();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The computation runs and its result is installed while holding the write lock of the key's segment. The computed
+     * element is only sized and added to the pool once that lock is released, as adding to the pool may evict from
+     * other segments. Like a resized element, a computed element is never refused by the pool.
+     */
+    public Element compute(Object key, Computation computation) throws CacheException {
+        Element current;
+        Element computed;
+        Lock lock = getWriteLock(key);
+        lock.lock();
+        try {
+            current = map.get(key);
+            computed = computation.compute(key, current);
+            if (computed == current) {
+                return computed;
+            } else if (computed == null) {
+                map.remove(key);
+            } else {
+                map.put(key, computed, 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (computed != null) {
+            if (searchManager != null) {
+                searchManager.put(cache.getName(), -1, computed, null, attributeExtractors, cache.getCacheConfiguration().getDynamicExtractor());
+            }
+            map.recalculateSize(key, computed);
+        }
+        updateSearchIndexes(key);
+        if (computed != null) {
+            checkCapacity(computed, current == null);
+        }
+        return computed;
+    }
+
     /**
      * Memory stores are never backed up and always return false
      */
@@ -436,7 +613,11 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     protected Element expireElement(final Object key) {
         Element value = get(key);
-        return value != null && value.isExpired() && map.remove(key, value) ? value : null;
+        if (value != null && value.isExpired() && map.remove(key, value)) {
+            updateSearchIndexes(key);
+            return value;
+        }
+        return null;
     }
 
     /**
@@ -455,6 +636,8 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
             return new LfuPolicy();
         } else if (policySelection.equals(MemoryStoreEvictionPolicy.CLOCK)) {
             return null;
+        } else if (policySelection.equals(MemoryStoreEvictionPolicy.TINYLFU)) {
+            return new TinyLfuPolicy(cache.getCacheConfiguration().getMaxEntriesLocalHeap());
         }
 
         throw new IllegalArgumentException(policySelection + " isn't a valid eviction policy");
@@ -586,9 +769,14 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      * If the store is over capacity, evict elements until capacity is reached
      *
      * @param elementJustAdded the element added by the action calling this check
+     * @param newMapping whether the element was added under a key that had no mapping, rather than replacing one
      */
-    private void checkCapacity(final Element elementJustAdded) {
-        if (maximumSize > 0 && !isClockEviction()) {
+    private void checkCapacity(final Element elementJustAdded, final boolean newMapping) {
+        final Policy p = policy;
+        if (newMapping && p instanceof TinyLfuPolicy) {
+            ((TinyLfuPolicy) p).recordInsertion(elementJustAdded.getObjectKey(), map.quickSize());
+        }
+        if (maximumSize > 0 && !isMapEviction()) {
             int evict = Math.min(map.quickSize() - maximumSize, MAX_EVICTION_RATIO);
             for (int i = 0; i < evict; i++) {
                 removeElementChosenByEvictionPolicy(elementJustAdded);
@@ -604,7 +792,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     private boolean removeElementChosenByEvictionPolicy(final Element elementJustAdded) {
 
-        if (policy == null) {
+        if (isMapEviction()) {
             return map.evict();
         }
 
@@ -635,8 +823,14 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
     private Element findEvictionCandidate(final Element elementJustAdded) {
         Object objectKey = elementJustAdded != null ? elementJustAdded.getObjectKey() : null;
         Element[] elements = sampleElements(objectKey);
+        final Policy p = policy;
+        if (p instanceof TinyLfuPolicy) {
+            Object candidateKey = ((TinyLfuPolicy) p).pollCandidate();
+            Element candidate = candidateKey == null ? null : map.get(candidateKey);
+            return ((TinyLfuPolicy) p).selectedBasedOnPolicy(elements, elementJustAdded, candidate);
+        }
         // this can return null. Let the cache get bigger by one.
-        return policy.selectedBasedOnPolicy(elements, elementJustAdded);
+        return p.selectedBasedOnPolicy(elements, elementJustAdded);
     }
 
     /**
@@ -704,13 +898,16 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     public void memoryCapacityChanged(int oldCapacity, int newCapacity) {
         maximumSize = newCapacity;
-        if (isClockEviction() && !storePinned) {
+        if (isMapEviction() && !storePinned) {
             map.setMaxSize(maximumSize);
         }
     }
 
-    private boolean isClockEviction() {
-        return policy == null;
+    /**
+     * Whether evictions are left to the backing map, either by clock or in access order.
+     */
+    private boolean isMapEviction() {
+        return policy == null || accessOrderedEviction;
     }
 
     /**
@@ -847,6 +1044,11 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      * {@inheritDoc}
      */
     public void setInMemoryEvictionPolicy(Policy policy) {
+        if (accessOrderedEviction && !(policy instanceof LruPolicy)) {
+            // the map's order only serves LRU, fall back to sampling for the new policy
+            accessOrderedEviction = false;
+            map.setMaxSize(0);
+        }
         this.policy = policy;
     }
 
@@ -875,7 +1077,8 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         if (delta > -1) {
             Element old = map.putIfAbsent(element.getObjectKey(), element, delta);
             if (old == null) {
-              checkCapacity(element);
+              updateSearchIndexes(element.getObjectKey());
+              checkCapacity(element, true);
             } else {
               poolAccessor.delete(delta);
             }
@@ -902,6 +1105,9 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
                 lock.unlock();
             }
             if (remove != null) {
+                if (ghosts != null) {
+                    ghosts.evicted(remove.getObjectKey());
+                }
                 evictionObserver.end(EvictionOutcome.SUCCESS);
                 cache.getCacheEventNotificationService().notifyElementEvicted(copyStrategyHandler.copyElementForReadIfNeeded(remove), false);
             }
@@ -960,6 +1166,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
             }
         } finally {
             lock.unlock();
+            updateSearchIndexes(key);
         }
     }
 
@@ -992,6 +1199,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
                 }
             } finally {
                 lock.unlock();
+                updateSearchIndexes(key);
             }
         } else {
             notifyDirectEviction(element);
@@ -1026,6 +1234,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
                 }
             } finally {
                 lock.unlock();
+                updateSearchIndexes(key);
             }
         } else {
             notifyDirectEviction(element);
@@ -1040,6 +1249,17 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         return null;
     }
 
+    /**
+     * Brings the search indexes, if any, in line with the current mapping of the key
+     *
+     * @param key the key whose mapping changed
+     */
+    private void updateSearchIndexes(Object key) {
+        if (searchManager instanceof IndexedSearchManager) {
+            ((IndexedSearchManager) searchManager).update(key, attributeExtractors);
+        }
+    }
+
     private Lock getWriteLock(Object key) {
         return map.lockFor(key).writeLock();
     }
@@ -1053,6 +1273,15 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         return map.values();
     }
 
+    /**
+     * Get the elements in this store split into disjoint partitions that can be traversed concurrently
+     *
+     * @return element partitions
+     */
+    List<Iterable<Element>> elementPartitions() {
+        return map.segmentValues();
+    }
+
     /**
      * LockProvider implementation that uses the segment locks.
      */
@@ -1066,7 +1295,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         }
     }
 
-    private static boolean getAdvancedBooleanConfigProperty(String property, String cacheName, boolean defaultValue) {
+    static boolean getAdvancedBooleanConfigProperty(String property, String cacheName, boolean defaultValue) {
         String globalPropertyKey = "net.sf.ehcache.store.config." + property;
         String cachePropertyKey = "net.sf.ehcache.store." + cacheName + ".config." + property;
         return Boolean.parseBoolean(System.getProperty(cachePropertyKey, System.getProperty(globalPropertyKey, Boolean.toString(defaultValue))));
@@ -1083,7 +1312,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
     /**
      * PoolParticipant that is used with the HeapPool.
      */
-    private final class Participant implements PoolParticipant {
+    private final class Participant implements RecalculatingPoolParticipant, CostAwarePoolParticipant {
 
         private final EventRateSimpleMovingAverage hitRate = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
         private final EventRateSimpleMovingAverage missRate = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
@@ -1123,6 +1352,30 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         public long getApproximateCountSize() {
             return map.quickSize();
         }
+
+        @Override
+        public boolean recalculateSize(Object key, Object value, Object container) {
+            if (container instanceof SelectableConcurrentHashMap.HashEntry) {
+                return map.recalculateSize(key, ((SelectableConcurrentHashMap.HashEntry) container).value);
+            }
+            MemoryStore.this.recalculateSize(key);
+            return true;
+        }
+
+        @Override
+        public float getApproximateMissCost() {
+            return cache instanceof Cache ? ((Cache) cache).getMissCostMeter().getAverageNanos() : 0;
+        }
+
+        @Override
+        public float getApproximateMarginalHitRate() {
+            return ghosts.hitRate();
+        }
+
+        @Override
+        public long getApproximateMarginalCountSize() {
+            return ghosts.size();
+        }
     }
 
     /**
@@ -1155,6 +1408,19 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
          */
         SelectableConcurrentHashMap newBackingMap(PoolAccessor poolAccessor, int concurrency,
                 int maximumCapacity, RegisteredEventListeners eventListener);
+
+        /**
+         * Create a MemoryStore backing map, optionally evicting in access order.
+         *
+         * @param poolAccessor on-heap pool accessor
+         * @param concurrency map concurrency
+         * @param maximumCapacity maximum store capacity
+         * @param eventListener event listener (or {@code null} for no notifications)
+         * @param accessOrdered true for a map evicting its least recently used entries
+         * @return a backing map
+         */
+        SelectableConcurrentHashMap newBackingMap(PoolAccessor poolAccessor, int concurrency,
+                int maximumCapacity, RegisteredEventListeners eventListener, boolean accessOrdered);
     }
 
     /**
@@ -1174,6 +1440,12 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
             return new SelectableConcurrentHashMap(poolAccessor, initialCapacity,
                     loadFactor, concurrency, maximumCapacity, eventListener);
         }
+
+        @Override
+        public SelectableConcurrentHashMap newBackingMap(PoolAccessor poolAccessor, int concurrency,
+                int maximumCapacity, RegisteredEventListeners eventListener, boolean accessOrdered) {
+            return new SelectableConcurrentHashMap(poolAccessor, concurrency, maximumCapacity, eventListener, accessOrdered);
+        }
     }
 }
 
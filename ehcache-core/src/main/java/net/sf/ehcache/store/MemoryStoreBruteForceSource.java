@@ -19,6 +19,8 @@ package net.sf.ehcache.store;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.Searchable;
 
+import java.util.List;
+
 /**
  * Implementation of a {@link BruteForceSource} to integrate with a {@link MemoryStore}
  *
@@ -47,6 +49,16 @@ class MemoryStoreBruteForceSource implements BruteForceSource {
         return memoryStore.elementSet();
     }
 
+    @Override
+    public List<Iterable<Element>> partitions() {
+        return memoryStore.elementPartitions();
+    }
+
+    @Override
+    public Element get(Object key) {
+        return memoryStore.getQuiet(key);
+    }
+
     @Override
     public Searchable getSearchable() {
         return searchable;
@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
  * <li>LRU - least recently used
  * <li>LFU - least frequently used
  * <li>FIFO - first in first out, the oldest element by creation time
+ * <li>TINYLFU - least frequently used lately, with an admission filter for newly added elements
  * </ol>
  * The default value is LRU
  *
@@ -60,6 +61,11 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
      */
     public static final MemoryStoreEvictionPolicy CLOCK = new MemoryStoreEvictionPolicy("CLOCK");
 
+    /**
+     * TINYLFU - least frequently used lately, newcomers only being admitted if more popular than the entry they would replace.
+     */
+    public static final MemoryStoreEvictionPolicy TINYLFU = new MemoryStoreEvictionPolicy("TINYLFU");
+
     private static final Logger LOG = LoggerFactory.getLogger(MemoryStoreEvictionPolicy.class.getName());
 
     private final String myName;
@@ -83,7 +89,7 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
     /**
      * Converts a string representation of the policy into a policy.
      *
-     * @param policy either LRU, LFU or FIFO
+     * @param policy either LRU, LFU, FIFO, CLOCK or TINYLFU
      * @return one of the static instances
      */
     public static MemoryStoreEvictionPolicy fromString(String policy) {
@@ -96,6 +102,8 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
                 return FIFO;
             } else if (policy.equalsIgnoreCase("CLOCK")) {
                 return CLOCK;
+            } else if (policy.equalsIgnoreCase("TINYLFU")) {
+                return TINYLFU;
             }
         }
             LOG.warn("The memoryStoreEvictionPolicy of {} cannot be resolved. The policy will be set to LRU", policy);
@@ -118,6 +126,10 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
         /**
          * Value for {@link MemoryStoreEvictionPolicy#FIFO}
          */
-        FIFO;
+        FIFO,
+        /**
+         * Value for {@link MemoryStoreEvictionPolicy#TINYLFU}
+         */
+        TINYLFU;
     }
 }
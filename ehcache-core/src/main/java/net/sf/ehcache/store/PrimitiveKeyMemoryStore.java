@@ -0,0 +1,1092 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.concurrent.CacheLockProvider;
+import net.sf.ehcache.concurrent.ReadWriteLockSync;
+import net.sf.ehcache.concurrent.Sync;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfigurationListener;
+import net.sf.ehcache.config.SizeOfPolicyConfiguration;
+import net.sf.ehcache.pool.Pool;
+import net.sf.ehcache.pool.SizeOfEngine;
+import net.sf.ehcache.pool.SizeOfEngineLoader;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+import net.sf.ehcache.pool.sizeof.JvmInformation;
+import net.sf.ehcache.store.StoreOperationOutcomes.GetOutcome;
+import net.sf.ehcache.store.StoreOperationOutcomes.PutOutcome;
+import net.sf.ehcache.store.StoreOperationOutcomes.RemoveOutcome;
+import net.sf.ehcache.store.disk.StoreUpdateException;
+import net.sf.ehcache.writer.CacheWriterManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.statistics.Statistic;
+import org.terracotta.statistics.observer.OperationObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static net.sf.ehcache.statistics.StatisticBuilder.operation;
+
+/**
+ * A memory store for caches keyed by {@link Long} or {@link Integer}, holding its entries in primitive arrays.
+ * <p>
+ * Each segment keeps its keys in an open-addressed {@code long[]} table probed linearly, the values in a parallel
+ * {@code Object[]} and the element metadata (version, timestamps, hit count and lifespan) packed in a parallel
+ * {@code long[]}. Entries hence cost neither a boxed key, an {@link Element} nor a hash entry: elements are
+ * materialized when handed out, and their state copied in when stored. Changes made to an element after it was stored
+ * or returned are not seen by the store, with the exception of the access statistics: gets record the access on the
+ * stored metadata and return the element as it was prior to that access, so that the cache updating the access
+ * statistics of the returned element leaves both in sync.
+ * <p>
+ * This store is bounded by entry count only, and supports neither search, pinning nor overflowing to another tier.
+ * Caches use it in place of the {@link MemoryStore} when the {@code net.sf.ehcache.store.<cacheName>.config.primitiveKeys}
+ * or {@code net.sf.ehcache.store.config.primitiveKeys} system property is set to {@code true}, see
+ * {@link #isEnabled(Ehcache, Pool)}. Puts of elements with any other type of key fail with a {@link CacheException}.
+ */
+public final class PrimitiveKeyMemoryStore extends AbstractStore implements CacheConfigurationListener, ComputingStore {
+
+    /**
+     * The advanced store property enabling this store for a cache.
+     */
+    public static final String PRIMITIVE_KEYS_PROPERTY = "primitiveKeys";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrimitiveKeyMemoryStore.class.getName());
+
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MIN_SEGMENT_SIZE = 256;
+    private static final int SEGMENT_SHIFT = 26;
+    private static final int MAX_EVICTION_RATIO = 5;
+
+    private final OperationObserver<EvictionOutcome> evictionObserver = operation(EvictionOutcome.class).named("eviction").of(this).build();
+    private final OperationObserver<GetOutcome> getObserver = operation(GetOutcome.class).named("get").of(this).tag("local-heap").build();
+    private final OperationObserver<PutOutcome> putObserver = operation(PutOutcome.class).named("put").of(this).tag("local-heap").build();
+    private final OperationObserver<RemoveOutcome> removeObserver = operation(RemoveOutcome.class).named("remove").of(this).tag("local-heap").build();
+
+    private final Ehcache cache;
+    private final Segment[] segments;
+    private final CacheLockProvider lockProvider = new LockProvider();
+
+    /**
+     * The maximum size of the store (0 == no limit)
+     */
+    private volatile int maximumSize;
+    private volatile Policy policy;
+    private volatile Status status;
+
+    private PrimitiveKeyMemoryStore(Ehcache cache) {
+        this.cache = cache;
+        this.maximumSize = (int) cache.getCacheConfiguration().getMaxEntriesLocalHeap();
+        Policy configured = MemoryStore.determineEvictionPolicy(cache);
+        this.policy = configured == null ? new LruPolicy() : configured;
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && (maximumSize == 0 || segmentCount * MIN_SEGMENT_SIZE * 2 <= maximumSize)) {
+            segmentCount <<= 1;
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+        this.status = Status.STATUS_ALIVE;
+    }
+
+    /**
+     * Whether the given cache is to use a primitive key store, as requested by the
+     * {@value #PRIMITIVE_KEYS_PROPERTY} advanced store property, and can.
+     *
+     * @param cache the cache
+     * @param pool the pool tracking the on-heap usage of the cache
+     * @return true if the cache should use a {@code PrimitiveKeyMemoryStore}
+     */
+    public static boolean isEnabled(Ehcache cache, Pool pool) {
+        if (!MemoryStore.getAdvancedBooleanConfigProperty(PRIMITIVE_KEYS_PROPERTY, cache.getName(), false)) {
+            return false;
+        }
+        CacheConfiguration configuration = cache.getCacheConfiguration();
+        if (!(pool instanceof UnboundedPool) || configuration.isSearchable() || configuration.getPinningConfiguration() != null) {
+            LOG.warn("Cache " + cache.getName() + " is sized in bytes, searchable or pinned and cannot use primitive keys,"
+                     + " using a regular memory store");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A factory method to create a PrimitiveKeyMemoryStore.
+     *
+     * @param cache the cache
+     * @return the store
+     */
+    public static PrimitiveKeyMemoryStore create(Ehcache cache) {
+        PrimitiveKeyMemoryStore store = new PrimitiveKeyMemoryStore(cache);
+        cache.getCacheConfiguration().addConfigurationListener(store);
+        return store;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean put(Element element) throws CacheException {
+        if (element == null) {
+            return false;
+        }
+        putObserver.begin();
+        boolean added = store(element, false);
+        checkCapacity(element, added);
+        putObserver.end(added ? PutOutcome.ADDED : PutOutcome.UPDATED);
+        return added;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean putWithWriter(Element element, CacheWriterManager writerManager) throws CacheException {
+        Object key = element.getObjectKey();
+        final ReentrantReadWriteLock.WriteLock writeLock = segmentFor(key).writeLock();
+        boolean added;
+        writeLock.lock();
+        try {
+            added = store(element, false);
+            if (writerManager != null) {
+                try {
+                    writerManager.put(element);
+                } catch (RuntimeException e) {
+                    throw new StoreUpdateException(e, !added);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        checkCapacity(element, added);
+        return added;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element putIfAbsent(Element element) throws NullPointerException {
+        Object key = element.getObjectKey();
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        segment.writeLock().lock();
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            if (index >= 0) {
+                return segment.element(index);
+            }
+            segment.write(segment.insert(primitiveKey, hash), primitiveKey, key instanceof Integer, element);
+        } finally {
+            segment.writeLock().unlock();
+        }
+        checkCapacity(element, true);
+        return null;
+    }
+
+    /**
+     * Stores the element, replacing any element mapped to its key.
+     *
+     * @param element the element
+     * @param onlyIfPresent whether to store it only if its key is already mapped
+     * @return true if the key was not mapped before
+     */
+    private boolean store(Element element, boolean onlyIfPresent) {
+        Object key = element.getObjectKey();
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        segment.writeLock().lock();
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            if (index >= 0) {
+                segment.write(index, primitiveKey, key instanceof Integer, element);
+                return false;
+            } else if (!onlyIfPresent) {
+                segment.write(segment.insert(primitiveKey, hash), primitiveKey, key instanceof Integer, element);
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            segment.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets an element from the store, recording the access.
+     *
+     * @param key the key of the element
+     * @return the element as it was before this access, or null if there was no match for the key
+     */
+    public Element get(Object key) {
+        getObserver.begin();
+        if (!isPrimitive(key)) {
+            getObserver.end(GetOutcome.MISS);
+            return null;
+        }
+        final Policy p = policy;
+        if (p instanceof TinyLfuPolicy) {
+            ((TinyLfuPolicy) p).recordAccess(key);
+        }
+
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        Element element = null;
+        segment.readLock().lock();
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            if (index >= 0) {
+                element = segment.element(index);
+                segment.recordAccess(index, System.currentTimeMillis());
+            }
+        } finally {
+            segment.readLock().unlock();
+        }
+        getObserver.end(element == null ? GetOutcome.MISS : GetOutcome.HIT);
+        return element;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element getQuiet(Object key) {
+        if (!isPrimitive(key)) {
+            return null;
+        }
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        segment.readLock().lock();
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            return index < 0 ? null : segment.element(index);
+        } finally {
+            segment.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element remove(Object key) {
+        if (!isPrimitive(key)) {
+            return null;
+        }
+        removeObserver.begin();
+        try {
+            long primitiveKey = primitiveKey(key);
+            int hash = hash(primitiveKey);
+            Segment segment = segmentFor(hash);
+            segment.writeLock().lock();
+            try {
+                int index = segment.find(primitiveKey, key instanceof Integer, hash);
+                if (index < 0) {
+                    return null;
+                }
+                Element removed = segment.element(index);
+                segment.delete(index);
+                return removed;
+            } finally {
+                segment.writeLock().unlock();
+            }
+        } finally {
+            removeObserver.end(RemoveOutcome.SUCCESS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element removeWithWriter(Object key, CacheWriterManager writerManager) throws CacheException {
+        if (key == null) {
+            return null;
+        }
+        final ReentrantReadWriteLock.WriteLock writeLock = segmentFor(key).writeLock();
+        writeLock.lock();
+        try {
+            Element removed = remove(key);
+            if (writerManager != null) {
+                writerManager.remove(new CacheEntry(key, removed));
+            }
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element removeElement(Element element, ElementValueComparator comparator) throws NullPointerException {
+        Object key = element.getObjectKey();
+        if (!isPrimitive(key)) {
+            return null;
+        }
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        segment.writeLock().lock();
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            if (index < 0) {
+                return null;
+            }
+            Element current = segment.element(index);
+            if (comparator.equals(element, current)) {
+                segment.delete(index);
+                return current;
+            } else {
+                return null;
+            }
+        } finally {
+            segment.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean replace(Element old, Element element, ElementValueComparator comparator) throws NullPointerException,
+            IllegalArgumentException {
+        Object key = element.getObjectKey();
+        if (!isPrimitive(key)) {
+            return false;
+        }
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        segment.writeLock().lock();
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            if (index >= 0 && comparator.equals(old, segment.element(index))) {
+                segment.write(index, primitiveKey, key instanceof Integer, element);
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            segment.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element replace(Element element) throws NullPointerException {
+        Object key = element.getObjectKey();
+        if (!isPrimitive(key)) {
+            return null;
+        }
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        segment.writeLock().lock();
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            if (index < 0) {
+                return null;
+            }
+            Element replaced = segment.element(index);
+            segment.write(index, primitiveKey, key instanceof Integer, element);
+            return replaced;
+        } finally {
+            segment.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The computation runs while holding the write lock of the key's segment.
+     */
+    public Element compute(Object key, Computation computation) throws CacheException {
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        Element computed;
+        boolean added = false;
+        segment.writeLock().lock();
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            Element current = index < 0 ? null : segment.element(index);
+            computed = computation.compute(key, current);
+            if (computed == null) {
+                if (index >= 0) {
+                    segment.delete(index);
+                }
+            } else if (computed != current) {
+                if (index < 0) {
+                    index = segment.insert(primitiveKey, hash);
+                    added = true;
+                }
+                segment.write(index, primitiveKey, key instanceof Integer, computed);
+            }
+        } finally {
+            segment.writeLock().unlock();
+        }
+        if (added) {
+            checkCapacity(computed, true);
+        }
+        return computed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List getKeys() {
+        List<Object> keys = new ArrayList<Object>(getSize());
+        for (Segment segment : segments) {
+            segment.readLock().lock();
+            try {
+                segment.addKeysTo(keys);
+            } finally {
+                segment.readLock().unlock();
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKey(Object key) {
+        if (!isPrimitive(key)) {
+            return false;
+        }
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        segment.readLock().lock();
+        try {
+            return segment.find(primitiveKey, key instanceof Integer, hash) >= 0;
+        } finally {
+            segment.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAll() throws CacheException {
+        for (Segment segment : segments) {
+            segment.writeLock().lock();
+            try {
+                segment.clear();
+            } finally {
+                segment.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void expireElements() {
+        for (Segment segment : segments) {
+            List<Element> expired = new ArrayList<Element>();
+            segment.readLock().lock();
+            try {
+                segment.addExpiredTo(expired);
+            } finally {
+                segment.readLock().unlock();
+            }
+            for (Element element : expired) {
+                remove(element, true);
+            }
+        }
+    }
+
+    /**
+     * If the store is over capacity, evict elements until capacity is reached
+     *
+     * @param elementJustAdded the element added by the action calling this check
+     * @param newMapping whether the element was added under a key that had no mapping, rather than replacing one
+     */
+    private void checkCapacity(Element elementJustAdded, boolean newMapping) {
+        final Policy p = policy;
+        if (newMapping && p instanceof TinyLfuPolicy) {
+            ((TinyLfuPolicy) p).recordInsertion(elementJustAdded.getObjectKey(), getSize());
+        }
+        if (maximumSize > 0) {
+            int evict = Math.min(getSize() - maximumSize, MAX_EVICTION_RATIO);
+            for (int i = 0; i < evict; i++) {
+                Element element = findEvictionCandidate(elementJustAdded);
+                if (element == null) {
+                    LOG.debug("Eviction selection miss. Selected element is null");
+                    return;
+                }
+                remove(element, element.isExpired());
+            }
+        }
+    }
+
+    /**
+     * Find a "relatively" unused element, sampling the segments starting with the one holding the element just added.
+     *
+     * @param elementJustAdded the element added by the action calling this check
+     * @return the element chosen as candidate for eviction
+     */
+    private Element findEvictionCandidate(Element elementJustAdded) {
+        int sampleSize = AbstractPolicy.calculateSampleSize(getSize());
+        List<Element> sampled = new ArrayList<Element>(sampleSize);
+        int hash = hash(primitiveKey(elementJustAdded.getObjectKey()));
+        for (int i = 0; i < segments.length && sampled.size() < sampleSize; i++) {
+            Segment segment = segments[((hash >>> SEGMENT_SHIFT) + i) & (segments.length - 1)];
+            segment.readLock().lock();
+            try {
+                segment.addSampleTo(sampled, sampleSize, hash);
+            } finally {
+                segment.readLock().unlock();
+            }
+        }
+        Element[] elements = sampled.toArray(new Element[sampled.size()]);
+
+        final Policy p = policy;
+        if (p instanceof TinyLfuPolicy) {
+            Object candidateKey = ((TinyLfuPolicy) p).pollCandidate();
+            Element candidate = candidateKey == null ? null : getQuiet(candidateKey);
+            return ((TinyLfuPolicy) p).selectedBasedOnPolicy(elements, elementJustAdded, candidate);
+        }
+        // this can return null. Let the cache get bigger by one.
+        return p.selectedBasedOnPolicy(elements, elementJustAdded);
+    }
+
+    /**
+     * Evicts or expires the element from the store, unless its segment is contended.
+     *
+     * @param element the element to remove
+     * @param expiry whether the element is removed because it expired
+     */
+    private void remove(Element element, boolean expiry) {
+        Object key = element.getObjectKey();
+        long primitiveKey = primitiveKey(key);
+        int hash = hash(primitiveKey);
+        Segment segment = segmentFor(hash);
+        if (!segment.writeLock().tryLock()) {
+            return;
+        }
+        Element removed = null;
+        try {
+            int index = segment.find(primitiveKey, key instanceof Integer, hash);
+            if (index >= 0) {
+                removed = segment.element(index);
+                if (!expiry || removed.isExpired()) {
+                    segment.delete(index);
+                } else {
+                    removed = null;
+                }
+            }
+        } finally {
+            segment.writeLock().unlock();
+        }
+
+        if (removed != null) {
+            if (expiry) {
+                cache.getCacheEventNotificationService().notifyElementExpiry(removed, false);
+            } else {
+                evictionObserver.begin();
+                evictionObserver.end(EvictionOutcome.SUCCESS);
+                cache.getCacheEventNotificationService().notifyElementEvicted(removed, false);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void dispose() {
+        if (status.equals(Status.STATUS_SHUTDOWN)) {
+            return;
+        }
+        status = Status.STATUS_SHUTDOWN;
+        flush();
+    }
+
+    /**
+     * Memory stores are not persistent: flushing only clears the store if the cache is configured to clear on flush.
+     */
+    public void flush() {
+        if (cache.getCacheConfiguration().isClearOnFlush()) {
+            removeAll();
+        }
+    }
+
+    /**
+     * Memory stores are never backed up and always return false
+     */
+    public boolean bufferFull() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getTerracottaClusteredSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Statistic(name = "size", tags = "local-heap")
+    public int getInMemorySize() {
+        return getSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the size of the tables of the store, plus the size of the values it holds.
+     */
+    @Statistic(name = "size-in-bytes", tags = "local-heap")
+    public long getInMemorySizeInBytes() {
+        SizeOfEngine sizeOfEngine = SizeOfEngineLoader.newSizeOfEngine(SizeOfPolicyConfiguration.resolveMaxDepth(cache),
+            SizeOfPolicyConfiguration.resolveBehavior(cache).equals(SizeOfPolicyConfiguration.MaxDepthExceededBehavior.ABORT),
+            true);
+        long size = 0;
+        for (Segment segment : segments) {
+            segment.readLock().lock();
+            try {
+                size += segment.sizeInBytes(sizeOfEngine);
+            } finally {
+                segment.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getOffHeapSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getOffHeapSizeInBytes() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getOnDiskSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getOnDiskSizeInBytes() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyInMemory(Object key) {
+        return containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyOffHeap(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyOnDisk(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Policy getInMemoryEvictionPolicy() {
+        return policy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setInMemoryEvictionPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getInternalContext() {
+        return lockProvider;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getMBean() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void timeToIdleChanged(long oldTti, long newTti) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void timeToLiveChanged(long oldTtl, long newTtl) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void diskCapacityChanged(int oldCapacity, int newCapacity) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void memoryCapacityChanged(int oldCapacity, int newCapacity) {
+        maximumSize = newCapacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void loggingChanged(boolean oldValue, boolean newValue) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void registered(CacheConfiguration config) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void deregistered(CacheConfiguration config) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void maxBytesLocalHeapChanged(long oldValue, long newValue) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void maxBytesLocalDiskChanged(long oldValue, long newValue) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void maxEntriesInCacheChanged(long oldValue, long newValue) {
+        // no-op
+    }
+
+    private static boolean isPrimitive(Object key) {
+        return key instanceof Long || key instanceof Integer;
+    }
+
+    private static long primitiveKey(Object key) throws CacheException {
+        if (key instanceof Long) {
+            return (Long) key;
+        } else if (key instanceof Integer) {
+            return (Integer) key;
+        } else if (key == null) {
+            throw new NullPointerException();
+        } else {
+            throw new CacheException("Primitive key stores only hold Long and Integer keys, not " + key.getClass().getName());
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h >>> Integer.SIZE) ^ (int) h;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> SEGMENT_SHIFT) & (segments.length - 1)];
+    }
+
+    private Segment segmentFor(Object key) {
+        return segmentFor(isPrimitive(key) ? hash(primitiveKey(key)) : key.hashCode());
+    }
+
+    /**
+     * Hands out the segment locks.
+     */
+    private class LockProvider implements CacheLockProvider {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Sync getSyncForKey(Object key) {
+            return new ReadWriteLockSync(segmentFor(key));
+        }
+    }
+
+    /**
+     * An open-addressed table of entries, guarded by its own lock.
+     * <p>
+     * Slots are probed linearly from the hash of the key. Removals shift the following entries of the probe sequence
+     * back, so that the table never holds tombstones.
+     */
+    private static final class Segment extends ReentrantReadWriteLock {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private static final int VERSION = 0;
+        private static final int CREATION_TIME = 1;
+        private static final int LAST_ACCESS_TIME = 2;
+        private static final int LAST_UPDATE_TIME = 3;
+        private static final int HIT_COUNT = 4;
+        private static final int LIFESPAN = 5;
+        private static final int FIELDS = 6;
+
+        private static final byte USED = 1;
+        private static final byte INTEGER_KEY = 1 << 1;
+        private static final byte DEFAULT_LIFESPAN = 1 << 2;
+        private static final byte LIFESPAN_SET = 1 << 3;
+
+        private static final long INT_MASK = 0xffffffffL;
+
+        private long[] keys;
+        private Object[] values;
+        private long[] metadata;
+        private byte[] flags;
+        private int mask;
+        private volatile int count;
+
+        Segment() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            metadata = new long[capacity * FIELDS];
+            flags = new byte[capacity];
+            mask = capacity - 1;
+        }
+
+        int find(long key, boolean integerKey, int hash) {
+            for (int i = hash & mask; flags[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key && ((flags[i] & INTEGER_KEY) != 0) == integerKey) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Claims a free slot for a key known not to be in the table, growing the table if needed.
+         */
+        int insert(long key, int hash) {
+            if ((count + 1) * 4L > (mask + 1) * 3L) {
+                resize((mask + 1) << 1);
+            }
+            int i = hash & mask;
+            while (flags[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            flags[i] = USED;
+            count++;
+            return i;
+        }
+
+        void delete(int index) {
+            int hole = index;
+            for (int i = (index + 1) & mask; flags[i] != 0; i = (i + 1) & mask) {
+                int home = hash(keys[i]) & mask;
+                // the entry can fill the hole if the hole lies between its home slot and its slot
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    move(i, hole);
+                    hole = i;
+                }
+            }
+            flags[hole] = 0;
+            values[hole] = null;
+            count--;
+        }
+
+        void clear() {
+            allocate(INITIAL_CAPACITY);
+            count = 0;
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            values[to] = values[from];
+            flags[to] = flags[from];
+            System.arraycopy(metadata, from * FIELDS, metadata, to * FIELDS, FIELDS);
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] oldMetadata = metadata;
+            byte[] oldFlags = flags;
+            allocate(capacity);
+            for (int from = 0; from < oldFlags.length; from++) {
+                if (oldFlags[from] != 0) {
+                    int to = hash(oldKeys[from]) & mask;
+                    while (flags[to] != 0) {
+                        to = (to + 1) & mask;
+                    }
+                    keys[to] = oldKeys[from];
+                    values[to] = oldValues[from];
+                    flags[to] = oldFlags[from];
+                    System.arraycopy(oldMetadata, from * FIELDS, metadata, to * FIELDS, FIELDS);
+                }
+            }
+        }
+
+        void write(int index, long key, boolean integerKey, Element element) {
+            int base = index * FIELDS;
+            values[index] = element.getObjectValue();
+            metadata[base + VERSION] = element.getVersion();
+            metadata[base + CREATION_TIME] = element.getCreationTime();
+            metadata[base + LAST_ACCESS_TIME] = element.getLastAccessTime();
+            metadata[base + LAST_UPDATE_TIME] = element.getLastUpdateTime();
+            metadata[base + HIT_COUNT] = element.getHitCount();
+            metadata[base + LIFESPAN] = ((long) element.getTimeToLive() << Integer.SIZE) | (element.getTimeToIdle() & INT_MASK);
+            flags[index] = (byte) (USED | (integerKey ? INTEGER_KEY : 0)
+                | (element.usesCacheDefaultLifespan() ? DEFAULT_LIFESPAN : 0) | (element.isLifespanSet() ? LIFESPAN_SET : 0));
+        }
+
+        Element element(int index) {
+            int base = index * FIELDS;
+            byte flag = flags[index];
+            long lifespan = metadata[base + LIFESPAN];
+            boolean lifespanSet = (flag & LIFESPAN_SET) != 0;
+            return new Element(key(index), values[index], metadata[base + VERSION], metadata[base + CREATION_TIME],
+                metadata[base + LAST_ACCESS_TIME], metadata[base + HIT_COUNT], (flag & DEFAULT_LIFESPAN) != 0,
+                lifespanSet ? (int) (lifespan >>> Integer.SIZE) : Integer.MIN_VALUE,
+                lifespanSet ? (int) lifespan : Integer.MIN_VALUE, metadata[base + LAST_UPDATE_TIME]);
+        }
+
+        private Object key(int index) {
+            if ((flags[index] & INTEGER_KEY) != 0) {
+                return Integer.valueOf((int) keys[index]);
+            } else {
+                return Long.valueOf(keys[index]);
+            }
+        }
+
+        /**
+         * Stamps an access on the slot. Called under the read lock, which keeps the slot in place, so racing
+         * accesses may overwrite each other's stamps and hit count increments, as the access statistics of the
+         * other memory stores do.
+         */
+        void recordAccess(int index, long now) {
+            int base = index * FIELDS;
+            metadata[base + LAST_ACCESS_TIME] = now;
+            metadata[base + HIT_COUNT]++;
+        }
+
+        void addKeysTo(List<Object> list) {
+            for (int i = 0; i < flags.length; i++) {
+                if (flags[i] != 0) {
+                    list.add(key(i));
+                }
+            }
+        }
+
+        void addExpiredTo(List<Element> list) {
+            for (int i = 0; i < flags.length; i++) {
+                if (flags[i] != 0) {
+                    Element element = element(i);
+                    if (element.isExpired()) {
+                        list.add(element);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the elements held in the slots following the hinted one, until the sample is complete.
+         */
+        void addSampleTo(List<Element> sample, int sampleSize, int hint) {
+            int start = hint & mask;
+            for (int i = 0; i <= mask && sample.size() < sampleSize; i++) {
+                int index = (start + i) & mask;
+                if (flags[index] != 0) {
+                    sample.add(element(index));
+                }
+            }
+        }
+
+        long sizeInBytes(SizeOfEngine sizeOfEngine) {
+            long size = sizeOfEngine.sizeOf(keys, metadata, flags).getCalculated()
+                + (long) values.length * JvmInformation.CURRENT_JVM_INFORMATION.getJavaPointerSize();
+            for (int i = 0; i < flags.length; i++) {
+                if (flags[i] != 0 && values[i] != null) {
+                    size += sizeOfEngine.sizeOf(null, values[i], null).getCalculated();
+                }
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Element;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * W-TinyLFU policy: frequency based eviction with an admission window.
+ * <p>
+ * Rather than relying on the hit counts held by the elements, this policy estimates how often each key was accessed
+ * lately, whether it was in the store or not, using a {@link FrequencySketch}. Stores using this policy report their
+ * accesses with {@link #recordAccess(Object)} and their insertions with {@link #recordInsertion(Object, long)}.
+ * <p>
+ * Newly inserted keys first go through a small admission window, holding about one percent of the entries, during
+ * which they cannot be evicted. The keys leaving the window queue up as admission candidates, retrieved by the store
+ * with {@link #pollCandidate()}: a candidate is only admitted if it is more popular than the victim sampled from the
+ * rest of the store, and is evicted in its place otherwise. Keys accessed only once, such as the ones read by a scan,
+ * hence do not flush the frequently used ones out of the store.
+ * <p>
+ * The window and the candidates are held in concurrent queues, so that insertions do not contend on a lock.
+ *
+ * @see <a href="http://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+public class TinyLfuPolicy extends AbstractPolicy {
+
+    /**
+     * The name of this policy as a string literal
+     */
+    public static final String NAME = "TINYLFU";
+
+    private static final int WINDOW_RATIO = 100;
+
+    private final FrequencySketch sketch;
+    private final ConcurrentMap<Object, Boolean> windowKeys = new ConcurrentHashMap<Object, Boolean>();
+    private final Queue<Object> window = new ConcurrentLinkedQueue<Object>();
+    private final AtomicInteger windowCount = new AtomicInteger();
+    private final Queue<Object> candidates = new ConcurrentLinkedQueue<Object>();
+    private final AtomicInteger candidateCount = new AtomicInteger();
+
+    /**
+     * Creates a policy for a store of unknown capacity, its frequency sketch growing along with the store.
+     */
+    public TinyLfuPolicy() {
+        this(0);
+    }
+
+    /**
+     * Creates a policy for a store holding up to the given number of entries.
+     *
+     * @param maximumSize the maximum number of entries of the store, 0 if unknown
+     */
+    public TinyLfuPolicy(long maximumSize) {
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * @return the name of the Policy. Inbuilt examples are LRU, LFU and FIFO.
+     */
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Records an access to the key, whether it was found in the store or not.
+     *
+     * @param key the key accessed
+     */
+    public void recordAccess(Object key) {
+        sketch.increment(key);
+    }
+
+    /**
+     * Records the insertion of a new mapping for the key in the store, the key entering the admission window.
+     * <p>
+     * Replacing the element of an existing mapping is not an insertion: the key is already in the store.
+     *
+     * @param key the key inserted
+     * @param storeSize the number of entries in the store
+     */
+    public void recordInsertion(Object key, long storeSize) {
+        sketch.ensureCapacity(storeSize);
+        sketch.increment(key);
+        int windowSize = (int) Math.min(Integer.MAX_VALUE, Math.max(1, storeSize / WINDOW_RATIO));
+        if (windowKeys.putIfAbsent(key, Boolean.TRUE) == null) {
+            window.offer(key);
+            windowCount.incrementAndGet();
+        }
+        while (true) {
+            int count = windowCount.get();
+            if (count <= windowSize) {
+                break;
+            } else if (windowCount.compareAndSet(count, count - 1)) {
+                Object eldest = window.poll();
+                if (eldest != null) {
+                    windowKeys.remove(eldest);
+                    offerCandidate(eldest, windowSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues a key that left the admission window, dropping the eldest candidates beyond the given bound.
+     * <p>
+     * Stores poll a candidate for each eviction, so the queue only fills up while the store is not full, in which case
+     * the dropped candidates do deserve their place in the store.
+     */
+    private void offerCandidate(Object key, int maxCandidates) {
+        candidates.offer(key);
+        candidateCount.incrementAndGet();
+        while (true) {
+            int count = candidateCount.get();
+            if (count <= maxCandidates) {
+                break;
+            } else if (candidateCount.compareAndSet(count, count - 1)) {
+                candidates.poll();
+            }
+        }
+    }
+
+    /**
+     * Returns the eldest key that left the admission window, if it is yet to be admitted.
+     * <p>
+     * Only a bounded number of keys are queued: the eldest ones, overflowing the queue while no eviction polled them,
+     * are considered admitted.
+     *
+     * @return a candidate key, or null if none
+     */
+    public Object pollCandidate() {
+        Object polled = candidates.poll();
+        if (polled != null) {
+            candidateCount.decrementAndGet();
+        }
+        return polled;
+    }
+
+    /**
+     * Returns the estimated number of recent accesses to the key.
+     *
+     * @param key the key
+     * @return the estimated frequency, from 0 to 15
+     */
+    public int frequency(Object key) {
+        return sketch.frequency(key);
+    }
+
+    /**
+     * Selects the element to evict between the admission candidate and the victim sampled from the store.
+     *
+     * @param sampledElements this should be a random subset of the population
+     * @param justAdded we never want to select the element just added. May be null.
+     * @param candidate the element of the key returned by {@link #pollCandidate()}. May be null.
+     * @return the candidate if it is not more popular than the sampled victim, the victim otherwise
+     */
+    public Element selectedBasedOnPolicy(Element[] sampledElements, Element justAdded, Element candidate) {
+        Element victim = selectedBasedOnPolicy(sampledElements, justAdded);
+        if (candidate == null || (justAdded != null && candidate.equals(justAdded))) {
+            return victim;
+        } else if (victim == null || victim.equals(candidate)) {
+            return candidate;
+        } else {
+            return frequency(candidate.getObjectKey()) > frequency(victim.getObjectKey()) ? victim : candidate;
+        }
+    }
+
+    /**
+     * Finds the least frequently accessed of the sampled elements, ignoring the ones in the admission window unless
+     * none of the sampled elements is out of it.
+     *
+     * @param sampledElements this should be a random subset of the population
+     * @param justAdded we never want to select the element just added. May be null.
+     * @return the selected element
+     */
+    @Override
+    public Element selectedBasedOnPolicy(Element[] sampledElements, Element justAdded) {
+        Element lowestElement = null;
+        int lowestFrequency = Integer.MAX_VALUE;
+        for (Element element : sampledElements) {
+            if (element == null || element.equals(justAdded) || windowKeys.containsKey(element.getObjectKey())) {
+                continue;
+            }
+            int frequency = frequency(element.getObjectKey());
+            if (lowestElement == null || frequency < lowestFrequency
+                || (frequency == lowestFrequency && element.getLastAccessTime() < lowestElement.getLastAccessTime())) {
+                lowestElement = element;
+                lowestFrequency = frequency;
+            }
+        }
+        return lowestElement == null ? super.selectedBasedOnPolicy(sampledElements, justAdded) : lowestElement;
+    }
+
+    /**
+     * Compares the desirableness for eviction of two elements
+     *
+     * Compares the estimated access frequencies of their keys, the least recently accessed element being preferred
+     * on a tie.
+     *
+     * @param element1 the element to compare against
+     * @param element2 the element to compare
+     * @return true if the second element is preferable to the first element for ths policy
+     */
+    public boolean compare(Element element1, Element element2) {
+        int frequency1 = frequency(element1.getObjectKey());
+        int frequency2 = frequency(element2.getObjectKey());
+        return frequency2 < frequency1 || (frequency2 == frequency1 && element2.getLastAccessTime() < element1.getLastAccessTime());
+    }
+}
@@ -20,7 +20,9 @@ import net.sf.ehcache.Element;
 import net.sf.ehcache.config.Searchable;
 import net.sf.ehcache.transaction.SoftLockID;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * A {@link BruteForceSource} that wraps another one and deals with transactional {@link Element}s.
@@ -47,6 +49,24 @@ class TransactionalBruteForceSource implements BruteForceSource {
         return new TransactionalIterable(delegate.elements(), copyStrategyHandler);
     }
 
+    @Override
+    public List<Iterable<Element>> partitions() {
+        List<Iterable<Element>> partitions = new ArrayList<Iterable<Element>>();
+        for (Iterable<Element> partition : delegate.partitions()) {
+            partitions.add(new TransactionalIterable(partition, copyStrategyHandler));
+        }
+        return partitions;
+    }
+
+    @Override
+    public Element get(Object key) {
+        Element element = delegate.get(key);
+        if (element != null && element.getObjectValue() instanceof SoftLockID) {
+            element = ((SoftLockID) element.getObjectValue()).getOldElement();
+        }
+        return copyStrategyHandler.copyElementForReadIfNeeded(element);
+    }
+
     @Override
     public Searchable getSearchable() {
         return delegate.getSearchable();
@@ -80,8 +80,7 @@ public final class TxCopyingCacheStore<T extends Store> extends AbstractCopyingC
      * @return the wrapped store
      */
     private static <T extends Store> TxCopyingCacheStore<T> wrap(final T cacheStore, final CacheConfiguration cacheConfiguration) {
-        final ReadWriteCopyStrategy<Element> copyStrategyInstance = cacheConfiguration.getCopyStrategyConfiguration()
-            .getCopyStrategyInstance(cacheConfiguration.getClassLoader());
+        final ReadWriteCopyStrategy<Element> copyStrategyInstance = cacheConfiguration.getCopyStrategy();
         return new TxCopyingCacheStore<T>(cacheStore, cacheConfiguration.isCopyOnRead(), cacheConfiguration.isCopyOnWrite(), copyStrategyInstance, cacheConfiguration.getClassLoader());
     }
 
@@ -93,8 +92,7 @@ public final class TxCopyingCacheStore<T extends Store> extends AbstractCopyingC
      * @return the comparator passed if no copy needed, a wrapped comparator otherwise
      */
     public static ElementValueComparator wrap(final ElementValueComparator comparator, final CacheConfiguration cacheConfiguration) {
-        final ReadWriteCopyStrategy<Element> copyStrategyInstance = cacheConfiguration.getCopyStrategyConfiguration()
-                .getCopyStrategyInstance(cacheConfiguration.getClassLoader());
+        final ReadWriteCopyStrategy<Element> copyStrategyInstance = cacheConfiguration.getCopyStrategy();
         CopyStrategyHandler copyStrategyHandler = new CopyStrategyHandler(cacheConfiguration.isCopyOnRead(),
                 cacheConfiguration.isCopyOnWrite(),
                 copyStrategyInstance, cacheConfiguration.getClassLoader());
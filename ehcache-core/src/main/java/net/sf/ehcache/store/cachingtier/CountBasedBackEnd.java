@@ -18,6 +18,7 @@ package net.sf.ehcache.store.cachingtier;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.store.LruPolicy;
 import net.sf.ehcache.store.Policy;
+import net.sf.ehcache.store.TinyLfuPolicy;
 import net.sf.ehcache.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
@@ -83,6 +84,10 @@ public class CountBasedBackEnd<K, V> extends ConcurrentHashMap<K, V> implements
     public V putIfAbsent(final K key, final V value) {
         final V v = super.putIfAbsent(key, value);
         if (v == null) {
+            final Policy p = policy;
+            if (p instanceof TinyLfuPolicy) {
+                ((TinyLfuPolicy) p).recordInsertion(key, mappingCount());
+            }
             try {
                 evictIfRequired(key, value);
             } catch (Throwable e) {
@@ -160,8 +165,15 @@ public class CountBasedBackEnd<K, V> extends ConcurrentHashMap<K, V> implements
                 elements.add((Element)v);
             }
         }
-        return policy.selectedBasedOnPolicy(elements.toArray(new Element[elements.size()]),
-            value instanceof Element ? (Element)value : null);
+        final Policy p = policy;
+        final Element justAdded = value instanceof Element ? (Element)value : null;
+        if (p instanceof TinyLfuPolicy) {
+            final Object candidateKey = ((TinyLfuPolicy) p).pollCandidate();
+            final Object candidate = candidateKey == null || candidateKey.equals(key) ? null : get(candidateKey);
+            return ((TinyLfuPolicy) p).selectedBasedOnPolicy(elements.toArray(new Element[elements.size()]), justAdded,
+                candidate instanceof Element ? (Element)candidate : null);
+        }
+        return p.selectedBasedOnPolicy(elements.toArray(new Element[elements.size()]), justAdded);
     }
 
     /**
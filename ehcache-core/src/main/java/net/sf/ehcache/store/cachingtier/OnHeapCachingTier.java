@@ -32,9 +32,16 @@ import net.sf.ehcache.store.LfuPolicy;
 import net.sf.ehcache.store.LruPolicy;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 import net.sf.ehcache.store.Policy;
+import net.sf.ehcache.store.TinyLfuPolicy;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import net.sf.ehcache.store.StoreOperationOutcomes.GetOutcome;
@@ -144,6 +151,8 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
             return new LfuPolicy();
         } else if (policySelection.equals(MemoryStoreEvictionPolicy.CLOCK)) {
             return new LruPolicy();
+        } else if (policySelection.equals(MemoryStoreEvictionPolicy.TINYLFU)) {
+            return new TinyLfuPolicy(cache.getCacheConfiguration().getMaxEntriesLocalHeap());
         }
 
         throw new IllegalArgumentException(policySelection + " isn't a valid eviction policy");
@@ -165,7 +174,10 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
 
     @Override
     public V get(final K key, final Callable<V> source, final boolean updateStats) {
-        if (updateStats) { getObserver.begin(); }
+        if (updateStats) {
+            getObserver.begin();
+            recordAccess(key);
+        }
         Object cachedValue = backEnd.get(key);
         if (cachedValue == null) {
             if (updateStats) { getObserver.end(GetOutcome.MISS); }
@@ -173,24 +185,10 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
             cachedValue = backEnd.putIfAbsent(key, f);
             if (cachedValue == null) {
                 try {
-                    V value = f.get();
-                    putObserver.begin();
-                    if (value == null) {
-                        backEnd.remove(key, f);
-                    } else if (backEnd.replace(key, f, value)) {
-                        putObserver.end(PutOutcome.ADDED);
-                    } else {
-                        V p =  getValue(backEnd.remove(key));
-                        return p == null ? value : p;
-                    }
-                    return value;
+                    return install(key, f);
                 } catch (Throwable e) {
                     backEnd.remove(key, f);
-                    if (e instanceof RuntimeException) {
-                        throw (RuntimeException)e;
-                    } else {
-                      throw new CacheException(e);
-                    }
+                    throw rethrow(e);
                 }
             }
         } else {
@@ -200,6 +198,84 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
         return getValue(cachedValue);
     }
 
+    @Override
+    public Map<K, V> getAll(final Collection<? extends K> keys, final BulkLoader<K, V> loader, final boolean updateStats) {
+        final BulkFault<K, V> bulk = new BulkFault<K, V>(loader);
+        final Map<K, Fault<V>> faults = new LinkedHashMap<K, Fault<V>>();
+        final Map<K, Object> cached = new HashMap<K, Object>();
+        for (final K key : keys) {
+            if (updateStats) {
+                getObserver.begin();
+                recordAccess(key);
+            }
+            Object cachedValue = backEnd.get(key);
+            if (cachedValue == null) {
+                if (updateStats) { getObserver.end(GetOutcome.MISS); }
+                Fault<V> f = new Fault<V>(new Callable<V>() {
+                    @Override
+                    public V call() throws Exception {
+                        return bulk.get(key);
+                    }
+                });
+                bulk.add(key);
+                cachedValue = backEnd.putIfAbsent(key, f);
+                if (cachedValue == null) {
+                    faults.put(key, f);
+                    continue;
+                }
+                bulk.discard(key);
+            } else {
+                if (updateStats) { getObserver.end(GetOutcome.HIT); }
+            }
+            cached.put(key, cachedValue);
+        }
+
+        final Map<K, V> result = new HashMap<K, V>(keys.size() * 2);
+        try {
+            for (Map.Entry<K, Fault<V>> fault : faults.entrySet()) {
+                result.put(fault.getKey(), install(fault.getKey(), fault.getValue()));
+            }
+        } catch (Throwable e) {
+            for (Map.Entry<K, Fault<V>> fault : faults.entrySet()) {
+                backEnd.remove(fault.getKey(), fault.getValue());
+            }
+            throw rethrow(e);
+        }
+        for (Map.Entry<K, Object> entry : cached.entrySet()) {
+            result.put(entry.getKey(), getValue(entry.getValue()));
+        }
+        return result;
+    }
+
+    private void recordAccess(final K key) {
+        final Policy policy = backEnd.getPolicy();
+        if (policy instanceof TinyLfuPolicy) {
+            ((TinyLfuPolicy)policy).recordAccess(key);
+        }
+    }
+
+    private V install(final K key, final Fault<V> f) {
+        V value = f.get();
+        putObserver.begin();
+        if (value == null) {
+            backEnd.remove(key, f);
+        } else if (backEnd.replace(key, f, value)) {
+            putObserver.end(PutOutcome.ADDED);
+        } else {
+            V p =  getValue(backEnd.remove(key));
+            return p == null ? value : p;
+        }
+        return value;
+    }
+
+    private static RuntimeException rethrow(final Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException)e;
+        } else {
+            throw new CacheException(e);
+        }
+    }
+
     @Override
     public V remove(final K key) {
         removeObserver.begin();
@@ -303,6 +379,61 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
         }
     }
 
+    /**
+     * Loads the keys faulted in by a single getAll call with as few calls to the loader as possible.
+     * <p>
+     * Keys are normally all loaded at once, when the first of their faults is resolved. Should another thread resolve
+     * one of the faults while keys are still being added, the keys added so far are loaded and the remaining ones will
+     * form a later batch.
+     *
+     * @param <K>
+     * @param <V>
+     */
+    @IgnoreSizeOf
+    private static class BulkFault<K, V> {
+
+        private final BulkLoader<K, V> loader;
+        private final Set<K> pending = new LinkedHashSet<K>();
+        private final Map<K, V> values = new HashMap<K, V>();
+        private final Map<K, Throwable> failures = new HashMap<K, Throwable>();
+
+        BulkFault(final BulkLoader<K, V> loader) {
+            this.loader = loader;
+        }
+
+        private synchronized void add(final K key) {
+            pending.add(key);
+        }
+
+        private synchronized void discard(final K key) {
+            pending.remove(key);
+        }
+
+        private synchronized V get(final K key) throws Exception {
+            if (pending.contains(key)) {
+                final List<K> batch = new ArrayList<K>(pending);
+                pending.clear();
+                try {
+                    final Map<K, V> loaded = loader.load(batch);
+                    for (K k : batch) {
+                        values.put(k, loaded == null ? null : loaded.get(k));
+                    }
+                } catch (Throwable t) {
+                    for (K k : batch) {
+                        failures.put(k, t);
+                    }
+                }
+            }
+            final Throwable failure = failures.get(key);
+            if (failure instanceof Exception) {
+                throw (Exception)failure;
+            } else if (failure != null) {
+                throw (Error)failure;
+            }
+            return values.get(key);
+        }
+    }
+
     /**
      * Document me
      *
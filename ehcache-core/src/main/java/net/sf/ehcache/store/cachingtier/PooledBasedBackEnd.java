@@ -17,7 +17,9 @@ package net.sf.ehcache.store.cachingtier;
 
 import net.sf.ehcache.Element;
 import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.RecalculatingPoolParticipant;
 import net.sf.ehcache.store.Policy;
+import net.sf.ehcache.store.TinyLfuPolicy;
 import net.sf.ehcache.util.concurrent.ConcurrentHashMap;
 
 import java.util.ArrayList;
@@ -75,6 +77,11 @@ public class PooledBasedBackEnd<K, V> extends ConcurrentHashMap<K, V> implements
             final V previous = (V)super.internalPutIfAbsent(key, value, delta > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)delta);
             if (previous != null) {
                 poolAccessor.get().delete(delta);
+            } else {
+                final Policy p = policy;
+                if (p instanceof TinyLfuPolicy) {
+                    ((TinyLfuPolicy) p).recordInsertion(key, mappingCount());
+                }
             }
             return previous;
         } else {
@@ -173,7 +180,14 @@ public class PooledBasedBackEnd<K, V> extends ConcurrentHashMap<K, V> implements
                 elements.add((Element)v);
             }
         }
-        return policy.selectedBasedOnPolicy(elements.toArray(new Element[elements.size()]), null);
+        final Policy p = policy;
+        if (p instanceof TinyLfuPolicy) {
+            final Object candidateKey = ((TinyLfuPolicy) p).pollCandidate();
+            final Object candidate = candidateKey == null ? null : super.get(candidateKey);
+            return ((TinyLfuPolicy) p).selectedBasedOnPolicy(elements.toArray(new Element[elements.size()]), null,
+                candidate instanceof Element ? (Element)candidate : null);
+        }
+        return p.selectedBasedOnPolicy(elements.toArray(new Element[elements.size()]), null);
     }
 
     /**
@@ -225,10 +239,25 @@ public class PooledBasedBackEnd<K, V> extends ConcurrentHashMap<K, V> implements
         return poolAccessor.get().getSize();
     }
 
+    /**
+     * Recalculates the size of the given value, if the key is still mapped to it.
+     *
+     * @param key the key
+     * @param expected the value
+     * @return false if the key is not mapped to that value
+     */
+    boolean recalculateSize(final Object key, final Object expected) {
+        if (super.get(key) != expected) {
+            return false;
+        }
+        recalculateSize((K) key);
+        return true;
+    }
+
     /**
      * A pool participant to use with this Backend
      */
-    public static class PoolParticipant implements net.sf.ehcache.pool.PoolParticipant {
+    public static class PoolParticipant implements RecalculatingPoolParticipant {
 
         private final EventRateSimpleMovingAverage hitRate = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
         private final EventRateSimpleMovingAverage missRate = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
@@ -269,5 +298,10 @@ public class PooledBasedBackEnd<K, V> extends ConcurrentHashMap<K, V> implements
         public long getApproximateCountSize() {
             return pooledBasedBackEnd.mappingCount();
         }
+
+        @Override
+        public boolean recalculateSize(final Object key, final Object value, final Object container) {
+            return pooledBasedBackEnd.recalculateSize(key, value);
+        }
     }
 }
@@ -28,6 +28,8 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
@@ -44,6 +46,18 @@ import static net.sf.ehcache.statistics.StatisticBuilder.operation;
  * <p>
  * The random sampling technique involves randomly selecting a map Segment, and then
  * selecting a number of random entry chains from that segment.
+ * <p>
+ * Reads take no lock: as in the original ConcurrentHashMap design, entry chains are immutable
+ * but for their values, and every structural change is published by a volatile write to the
+ * segment's <code>count</code> or <code>table</code>, which readers read first. A hit only writes
+ * the entry's clock bit when the evictor cleared it, so hot keys do not keep invalidating
+ * shared cache lines.
+ * <p>
+ * An access ordered map keeps each segment's entries in least recently used order instead of
+ * relying on the clock bits. Reads do not touch that order directly: they offer the entry to a
+ * small per-segment buffer, dropping it when the buffer is full, and the buffer is replayed
+ * under the segment lock by the next write, eviction or uncontended read that finds it filling
+ * up. Choosing a victim is then a matter of taking the head of the segment's order.
  *
  * @author Chris Dennis
  */
@@ -104,6 +118,7 @@ public class SelectableConcurrentHashMap {
     private final PoolAccessor poolAccessor;
     private volatile long maxSize;
     private final RegisteredEventListeners cacheEventNotificationService;
+    private final boolean accessOrdered;
 
     private Set<Object> keySet;
     private Set<Map.Entry<Object,Element>> entrySet;
@@ -114,8 +129,27 @@ public class SelectableConcurrentHashMap {
     public SelectableConcurrentHashMap(PoolAccessor poolAccessor, int concurrency, final long maximumSize, final RegisteredEventListeners cacheEventNotificationService) {
       this(poolAccessor, DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, concurrency, maximumSize, cacheEventNotificationService);
     }
+
+    public SelectableConcurrentHashMap(PoolAccessor poolAccessor, int concurrency, final long maximumSize, final RegisteredEventListeners cacheEventNotificationService, final boolean accessOrdered) {
+      this(poolAccessor, DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, concurrency, maximumSize, cacheEventNotificationService, accessOrdered);
+    }
     
     public SelectableConcurrentHashMap(PoolAccessor poolAccessor, int initialCapacity, float loadFactor, int concurrency, final long maximumSize, final RegisteredEventListeners cacheEventNotificationService) {
+        this(poolAccessor, initialCapacity, loadFactor, concurrency, maximumSize, cacheEventNotificationService, false);
+    }
+
+    /**
+     * Creates a map, optionally keeping its segments in access order.
+     *
+     * @param poolAccessor the pool accessor entries are accounted against
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor
+     * @param concurrency the estimated number of concurrently updating threads
+     * @param maximumSize the maximum number of entries, 0 for unbounded
+     * @param cacheEventNotificationService the listeners to notify, or null
+     * @param accessOrdered true to evict least recently used entries rather than using the clock
+     */
+    public SelectableConcurrentHashMap(PoolAccessor poolAccessor, int initialCapacity, float loadFactor, int concurrency, final long maximumSize, final RegisteredEventListeners cacheEventNotificationService, final boolean accessOrdered) {
         if (!(loadFactor > 0) || initialCapacity < 0 || concurrency <= 0)
             throw new IllegalArgumentException();
 
@@ -131,6 +165,7 @@ public class SelectableConcurrentHashMap {
         }
         segmentShift = 32 - sshift;
         segmentMask = ssize - 1;
+        this.accessOrdered = accessOrdered;
         this.segments = new Segment[ssize];
 
         if (initialCapacity > MAXIMUM_CAPACITY)
@@ -150,6 +185,15 @@ public class SelectableConcurrentHashMap {
         this.cacheEventNotificationService = cacheEventNotificationService;
     }
 
+    /**
+     * Whether this map's segments evict in least recently used order.
+     *
+     * @return true if access ordered
+     */
+    public boolean isAccessOrdered() {
+        return accessOrdered;
+    }
+
     public void setMaxSize(final long maxSize) {
         this.maxSize = maxSize;
     }
@@ -415,6 +459,22 @@ public class SelectableConcurrentHashMap {
         return (vs != null) ? vs : (values = new Values());
     }
 
+    /**
+     * Returns the values of this map split by segment.
+     * <p>
+     * Each iterable walks a single segment, with the same weakly consistent guarantees as {@link #values()}, so that the
+     * segments can be traversed concurrently by different threads.
+     *
+     * @return one iterable of values per segment
+     */
+    public List<Iterable<Element>> segmentValues() {
+        List<Iterable<Element>> partitions = new ArrayList<Iterable<Element>>(segments.length);
+        for (Segment segment : segments) {
+            partitions.add(new SegmentValues(segment));
+        }
+        return partitions;
+    }
+
     public Set<Entry<Object, Element>> entrySet() {
         Set<Entry<Object, Element>> es = entrySet;
         return (es != null) ? es : (entrySet = new EntrySet());
@@ -435,7 +495,19 @@ public class SelectableConcurrentHashMap {
 
     public void recalculateSize(Object key) {
         int hash = hash(key.hashCode());
-        segmentFor(hash).recalculateSize(key, hash);
+        segmentFor(hash).recalculateSize(key, hash, null);
+    }
+
+    /**
+     * Recalculates the size of the given element, if the key is still mapped to it.
+     *
+     * @param key the key of the element
+     * @param expected the element
+     * @return false if the key is not mapped to that element
+     */
+    public boolean recalculateSize(Object key, Element expected) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).recalculateSize(key, hash, expected);
     }
 
     /**
@@ -492,8 +564,14 @@ public class SelectableConcurrentHashMap {
 
         private Iterator<HashEntry> evictionIterator;
 
+        /**
+         * The least recently used order of this segment's entries, null unless the map is access ordered.
+         */
+        private final AccessOrder accessOrder;
+
         protected Segment(int initialCapacity, float lf) {
             loadFactor = lf;
+            accessOrder = accessOrdered ? new AccessOrder() : null;
             setTable(new HashEntry[initialCapacity]);
         }
 
@@ -524,6 +602,9 @@ public class SelectableConcurrentHashMap {
 
         private HashEntry removeAndGetFirst(HashEntry e, HashEntry first) {
             preRemove(e);
+            if (accessOrder != null) {
+                accessOrder.unlink(e.accessNode);
+            }
             // All entries following removed node can stay
             // in list, but all preceding ones need to be
             // cloned.
@@ -538,7 +619,9 @@ public class SelectableConcurrentHashMap {
         }
 
         protected HashEntry relinkHashEntry(HashEntry e, HashEntry next) {
-            return new HashEntry(e.key, e.hash, next, e.value, e.sizeOf);
+            HashEntry relinked = new HashEntry(e.key, e.hash, next, e.value, e.sizeOf);
+            relinked.accessNode = e.accessNode;
+            return relinked;
         }
 
         protected void clear() {
@@ -552,6 +635,9 @@ public class SelectableConcurrentHashMap {
                     ++modCount;
                     count = 0; // write-volatile
                 }
+                if (accessOrder != null) {
+                    accessOrder.clear();
+                }
                 evictionIterator = null;
             } finally {
                 writeLock.unlock();
@@ -593,26 +679,22 @@ public class SelectableConcurrentHashMap {
             }
         }
 
-        public void recalculateSize(Object key, int hash) {
+        public boolean recalculateSize(Object key, int hash, Element expected) {
             Element value = null;
             long oldSize = 0;
-            final ReadLock readLock = readLock();
-            readLock.lock();
-            try {
-                HashEntry[] tab = table;
-                int index = hash & (tab.length - 1);
-                HashEntry first = tab[index];
-                HashEntry e = first;
+            if (count != 0) { // read-volatile
+                HashEntry e = getFirst(hash);
                 while (e != null && (e.hash != hash || !key.equals(e.key))) {
                     e = e.next;
                 }
                 if (e != null) {
                     key = e.key;
-                    value = e.value;
+                    value = readValue(e);
                     oldSize = e.sizeOf;
                 }
-            } finally {
-                readLock.unlock();
+            }
+            if (expected != null && value != expected) {
+                return false;
             }
             if (value != null) {
                 long delta = poolAccessor.replace(oldSize, key, value, storedObject(value), true);
@@ -633,6 +715,7 @@ public class SelectableConcurrentHashMap {
                     writeLock.unlock();
                 }
             }
+            return value != null;
         }
 
         protected Element put(Object key, int hash, Element value, long sizeOf, boolean onlyIfAbsent, boolean fire) {
@@ -650,10 +733,17 @@ public class SelectableConcurrentHashMap {
                 while (e != null && (e.hash != hash || !key.equals(e.key)))
                     e = e.next;
 
+                if (accessOrder != null) {
+                    accessOrder.drain();
+                }
+
                 Element oldValue;
                 if (e != null) {
                     oldValue = e.value;
                     if (!onlyIfAbsent) {
+                        if (accessOrder != null) {
+                            accessOrder.moveToTail(e.accessNode);
+                        }
                         poolAccessor.delete(e.sizeOf);
                         e.value = value;
                         e.sizeOf = sizeOf;
@@ -667,7 +757,11 @@ public class SelectableConcurrentHashMap {
                 } else {
                     oldValue = null;
                     ++modCount;
-                    tab[index] = createHashEntry(key, hash, first, value, sizeOf);
+                    HashEntry created = createHashEntry(key, hash, first, value, sizeOf);
+                    if (accessOrder != null) {
+                        created.accessNode = accessOrder.append(key, hash);
+                    }
+                    tab[index] = created;
                     count = c; // write-volatile
                     if (cacheEventNotificationService != null) {
                         cacheEventNotificationService.notifyElementPutOrdered(value);
@@ -716,66 +810,104 @@ public class SelectableConcurrentHashMap {
             }
         }
 
-        Element get(final Object key, final int hash) {
+        /**
+         * Reads the value field of an entry under lock. Called if the value field ever appears to be null.
+         * This is possible only if a compiler happens to reorder a HashEntry initialization with its table
+         * assignment, which is legal under the memory model but is not known to ever occur.
+         */
+        private Element readValueUnderLock(HashEntry e) {
             final ReadLock readLock = readLock();
             readLock.lock();
             try {
-                if (count != 0) { // read-volatile
-                    HashEntry e = getFirst(hash);
-                    while (e != null) {
-                        if (e.hash == hash && key.equals(e.key)) {
+                return e.value;
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        private Element readValue(HashEntry e) {
+            Element v = e.value;
+            return v != null ? v : readValueUnderLock(e);
+        }
+
+        Element get(final Object key, final int hash) {
+            if (count != 0) { // read-volatile
+                HashEntry e = getFirst(hash);
+                while (e != null) {
+                    if (e.hash == hash && key.equals(e.key)) {
+                        if (!e.accessed) {
                             e.accessed = true;
-                            return e.value;
                         }
-                        e = e.next;
+                        if (accessOrder != null && accessOrder.record(e.accessNode)) {
+                            tryDrain();
+                        }
+                        return readValue(e);
                     }
+                    e = e.next;
                 }
-                return null;
-            } finally {
-                readLock.unlock();
             }
+            return null;
         }
 
         boolean containsKey(final Object key, final int hash) {
-            final ReadLock readLock = readLock();
-            readLock.lock();
-            try {
-                if (count != 0) { // read-volatile
-                    HashEntry e = getFirst(hash);
-                    while (e != null) {
-                        if (e.hash == hash && key.equals(e.key))
-                            return true;
-                        e = e.next;
-                    }
+            if (count != 0) { // read-volatile
+                HashEntry e = getFirst(hash);
+                while (e != null) {
+                    if (e.hash == hash && key.equals(e.key))
+                        return true;
+                    e = e.next;
                 }
-                return false;
-            } finally {
-                readLock.unlock();
             }
+            return false;
         }
 
         boolean containsValue(Object value) {
-            final ReadLock readLock = readLock();
-            readLock.lock();
-            try {
-                if (count != 0) { // read-volatile
-                    HashEntry[] tab = table;
-                    int len = tab.length;
-                    for (int i = 0 ; i < len; i++) {
-                        for (HashEntry e = tab[i]; e != null; e = e.next) {
-                            Element v = e.value;
-                            if (value.equals(v))
-                                return true;
-                        }
+            if (count != 0) { // read-volatile
+                HashEntry[] tab = table;
+                int len = tab.length;
+                for (int i = 0 ; i < len; i++) {
+                    for (HashEntry e = tab[i]; e != null; e = e.next) {
+                        Element v = readValue(e);
+                        if (value.equals(v))
+                            return true;
                     }
                 }
-                return false;
-            } finally {
-                readLock.unlock();
             }
+            return false;
+        }
+
+        /**
+         * Replays the buffered reads if the segment lock is free, otherwise leaves them to the lock holder.
+         */
+        private void tryDrain() {
+            final WriteLock writeLock = writeLock();
+            if (writeLock.tryLock()) {
+                try {
+                    accessOrder.drain();
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+
+        private Element leastRecentlyUsed(final Element justAdded) {
+            accessOrder.drain();
+            for (AccessNode node = accessOrder.head(); node != null; node = accessOrder.after(node)) {
+                HashEntry e = getFirst(node.hash);
+                while (e != null && e.key != node.key) {
+                    e = e.next;
+                }
+                if (e != null && e.value != justAdded) {
+                    return e.value;
+                }
+            }
+            return null;
         }
 
         private Element nextExpiredOrToEvict(final Element justAdded) {
+            if (accessOrder != null) {
+                return leastRecentlyUsed(justAdded);
+            }
 
             Element lastUnpinned = null;
             int i = 0;
@@ -905,6 +1037,8 @@ public class SelectableConcurrentHashMap {
         public volatile long sizeOf;
         public volatile boolean accessed = true;
 
+        AccessNode accessNode;
+
         protected HashEntry(Object key, int hash, HashEntry next, Element value, long sizeOf) {
             this.key = key;
             this.hash = hash;
@@ -915,6 +1049,131 @@ public class SelectableConcurrentHashMap {
 
     }
 
+    /**
+     * A link in a segment's access order, shared by every copy of the entry it was created for.
+     */
+    static final class AccessNode {
+        final Object key;
+        final int hash;
+        AccessNode prev;
+        AccessNode next;
+
+        AccessNode(Object key, int hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * The least recently used order of a segment, fed by a lossy buffer of reads.
+     * <p>
+     * Only {@link #record(AccessNode)} may be called without holding the segment's write lock.
+     */
+    static final class AccessOrder {
+
+        private static final int READ_BUFFER_SIZE = 32;
+        private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+        private final AccessNode sentinel = new AccessNode(null, 0);
+        private final AtomicReferenceArray<AccessNode> readBuffer = new AtomicReferenceArray<AccessNode>(READ_BUFFER_SIZE);
+        private final AtomicLong readsRecorded = new AtomicLong();
+        private volatile long readsDrained;
+
+        AccessOrder() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        /**
+         * Buffers a read of the given node, or drops it if the buffer is full or another reader races for the slot.
+         *
+         * @return true if the buffer is worth draining
+         */
+        boolean record(AccessNode node) {
+            long recorded = readsRecorded.get();
+            long pending = recorded - readsDrained;
+            if (pending >= READ_BUFFER_SIZE) {
+                return true;
+            }
+            if (readsRecorded.compareAndSet(recorded, recorded + 1)) {
+                readBuffer.lazySet((int) recorded & READ_BUFFER_MASK, node);
+            }
+            return pending >= READ_BUFFER_SIZE / 2;
+        }
+
+        /**
+         * Moves the buffered reads to the tail of the order, stopping at the first slot whose reader has not published yet.
+         */
+        void drain() {
+            final long recorded = readsRecorded.get();
+            long drained = readsDrained;
+            while (drained < recorded) {
+                int index = (int) drained & READ_BUFFER_MASK;
+                AccessNode node = readBuffer.get(index);
+                if (node == null) {
+                    break;
+                }
+                readBuffer.lazySet(index, null);
+                moveToTail(node);
+                drained++;
+            }
+            readsDrained = drained;
+        }
+
+        AccessNode append(Object key, int hash) {
+            AccessNode node = new AccessNode(key, hash);
+            linkLast(node);
+            return node;
+        }
+
+        void moveToTail(AccessNode node) {
+            // nodes of removed entries may still sit in the read buffer
+            if (node != null && node.prev != null && node.next != sentinel) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+
+        void unlink(AccessNode node) {
+            if (node != null && node.prev != null) {
+                node.prev.next = node.next;
+                node.next.prev = node.prev;
+                node.prev = null;
+                node.next = null;
+            }
+        }
+
+        AccessNode head() {
+            return after(sentinel);
+        }
+
+        AccessNode after(AccessNode node) {
+            AccessNode next = node.next;
+            return next == sentinel ? null : next;
+        }
+
+        void clear() {
+            drain();
+            AccessNode node = sentinel.next;
+            while (node != sentinel) {
+                AccessNode next = node.next;
+                node.prev = null;
+                node.next = null;
+                node = next;
+            }
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        private void linkLast(AccessNode node) {
+            AccessNode last = sentinel.prev;
+            node.prev = last;
+            node.next = sentinel;
+            last.next = node;
+            sentinel.prev = node;
+        }
+    }
+
     static class SegmentIterator implements Iterator<HashEntry> {
 
         int nextTableIndex;
@@ -963,6 +1222,36 @@ public class SelectableConcurrentHashMap {
         }
     }
 
+    static final class SegmentValues implements Iterable<Element> {
+
+        private final Segment segment;
+
+        private SegmentValues(Segment segment) {
+            this.segment = segment;
+        }
+
+        public Iterator<Element> iterator() {
+            final SegmentIterator entries = new SegmentIterator(segment);
+            return new Iterator<Element>() {
+
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                public Element next() {
+                    if (!entries.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return entries.next().value;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("remove is not supported");
+                }
+            };
+        }
+    }
+
     final class KeySet extends AbstractSet<Object> {
 
         @Override
@@ -0,0 +1,415 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import net.sf.ehcache.concurrent.ConcurrencyUtil;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskAccessMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Engine used by the {@link DiskStorageFactory} to access its data file.
+ * <p>
+ * The engine is selected per cache using {@link CacheConfiguration#getDiskAccessMode()}:
+ * <ul>
+ * <li>{@link DiskAccessMode#STREAM} uses striped {@link RandomAccessFile}s, each access seeking under the monitor of its stripe</li>
+ * <li>{@link DiskAccessMode#CHANNEL} uses positional {@link FileChannel} reads and writes, which need no locking</li>
+ * <li>{@link DiskAccessMode#MAPPED} maps the file in fixed size regions, reads being lock-free and deserialized straight
+ * out of the mapping</li>
+ * </ul>
+ */
+abstract class DiskDataFile {
+
+    private static final int MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Opens the engine configured for the given cache on the given file.
+     *
+     * @param file the data file
+     * @param config the cache configuration
+     * @return the data file engine
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    static DiskDataFile open(File file, CacheConfiguration config) throws FileNotFoundException {
+        switch (config.getDiskAccessMode()) {
+            case STREAM:
+                return new StreamDataFile(file, config.getDiskAccessStripes());
+            case CHANNEL:
+                return new ChannelDataFile(file);
+            case MAPPED:
+                return new MappedDataFile(file, MAPPED_REGION_SIZE);
+            default:
+                throw new IllegalArgumentException("Unknown disk access mode " + config.getDiskAccessMode());
+        }
+    }
+
+    /**
+     * Returns a stream over the <code>size</code> bytes stored at the given position.
+     *
+     * @param key the key the data belongs to
+     * @param position the position of the data in the file
+     * @param size the size of the data
+     * @return a stream over the data
+     * @throws IOException on read error
+     */
+    abstract InputStream read(Object key, long position, int size) throws IOException;
+
+    /**
+     * Writes the remaining bytes of the given buffer at the given position.
+     *
+     * @param key the key the data belongs to
+     * @param position the position to write at
+     * @param data the data to write
+     * @throws IOException on write error
+     */
+    abstract void write(Object key, long position, ByteBuffer data) throws IOException;
+
+    /**
+     * Returns the length of the data file.
+     *
+     * @return the length in bytes
+     * @throws IOException on error
+     */
+    abstract long length() throws IOException;
+
+    /**
+     * Truncates the data file to the given size, if supported by this engine.
+     *
+     * @param size the new size
+     * @throws IOException on error
+     */
+    abstract void setLength(long size) throws IOException;
+
+    /**
+     * Returns the file the space allocator may truncate when the tail of the data file gets freed.
+     *
+     * @return the file to truncate, or <code>null</code> if the data file must not be truncated while open
+     */
+    abstract RandomAccessFile getTruncatableFile();
+
+    /**
+     * Forces all the written data out to the storage device.
+     *
+     * @throws IOException on error
+     */
+    abstract void force() throws IOException;
+
+    /**
+     * Closes the data file.
+     *
+     * @throws IOException on error
+     */
+    abstract void close() throws IOException;
+
+    /**
+     * Engine using striped random access files.
+     */
+    static final class StreamDataFile extends DiskDataFile {
+
+        private final RandomAccessFile[] dataAccess;
+
+        private StreamDataFile(File file, int stripes) throws FileNotFoundException {
+            int roundedStripes = stripes;
+            while ((roundedStripes & (roundedStripes - 1)) != 0) {
+                ++roundedStripes;
+            }
+
+            dataAccess = new RandomAccessFile[roundedStripes];
+            for (int i = 0; i < dataAccess.length; ++i) {
+                dataAccess[i] = new RandomAccessFile(file, "rw");
+            }
+        }
+
+        private RandomAccessFile getDataAccess(Object key) {
+            return this.dataAccess[ConcurrencyUtil.selectLock(key, dataAccess.length)];
+        }
+
+        @Override
+        InputStream read(Object key, long position, int size) throws IOException {
+            final byte[] buffer = new byte[size];
+            final RandomAccessFile data = getDataAccess(key);
+            synchronized (data) {
+                data.seek(position);
+                data.readFully(buffer);
+            }
+            return new ByteArrayInputStream(buffer);
+        }
+
+        @Override
+        void write(Object key, long position, ByteBuffer data) throws IOException {
+            final RandomAccessFile file = getDataAccess(key);
+            synchronized (file) {
+                file.seek(position);
+                file.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            }
+        }
+
+        @Override
+        long length() throws IOException {
+            synchronized (dataAccess[0]) {
+                return dataAccess[0].length();
+            }
+        }
+
+        @Override
+        void setLength(long size) throws IOException {
+            synchronized (dataAccess[0]) {
+                dataAccess[0].setLength(size);
+            }
+        }
+
+        @Override
+        RandomAccessFile getTruncatableFile() {
+            return dataAccess[0];
+        }
+
+        @Override
+        void force() throws IOException {
+            dataAccess[0].getFD().sync();
+        }
+
+        @Override
+        void close() throws IOException {
+            for (final RandomAccessFile raf : dataAccess) {
+                synchronized (raf) {
+                    raf.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Engine using positional file channel reads and writes.
+     */
+    static final class ChannelDataFile extends DiskDataFile {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+
+        private ChannelDataFile(File file) throws FileNotFoundException {
+            this.file = new RandomAccessFile(file, "rw");
+            this.channel = this.file.getChannel();
+        }
+
+        @Override
+        InputStream read(Object key, long position, int size) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of data file at position " + (position + buffer.position()));
+                }
+            }
+            return new ByteArrayInputStream(buffer.array());
+        }
+
+        @Override
+        void write(Object key, long position, ByteBuffer data) throws IOException {
+            long offset = position - data.position();
+            while (data.hasRemaining()) {
+                channel.write(data, offset + data.position());
+            }
+        }
+
+        @Override
+        long length() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        void setLength(long size) throws IOException {
+            synchronized (file) {
+                file.setLength(size);
+            }
+        }
+
+        @Override
+        RandomAccessFile getTruncatableFile() {
+            return file;
+        }
+
+        @Override
+        void force() throws IOException {
+            channel.force(false);
+        }
+
+        @Override
+        void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /**
+     * Engine mapping the data file in fixed size regions.
+     * <p>
+     * Regions are mapped lazily as the file grows and are never unmapped while the file is open, hence the file is
+     * never truncated by this engine.
+     */
+    static final class MappedDataFile extends DiskDataFile {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final int regionSize;
+        private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+        private MappedDataFile(File file, int regionSize) throws FileNotFoundException {
+            this.file = new RandomAccessFile(file, "rw");
+            this.channel = this.file.getChannel();
+            this.regionSize = regionSize;
+        }
+
+        @Override
+        InputStream read(Object key, long position, int size) throws IOException {
+            int region = (int) (position / regionSize);
+            int offset = (int) (position % regionSize);
+            if (offset + size <= regionSize) {
+                ByteBuffer view = region(region).duplicate();
+                view.limit(offset + size).position(offset);
+                return new ByteBufferInputStream(view);
+            } else {
+                byte[] buffer = new byte[size];
+                int copied = 0;
+                while (copied < size) {
+                    ByteBuffer view = region(region++).duplicate();
+                    view.position(offset);
+                    int length = Math.min(size - copied, view.remaining());
+                    view.get(buffer, copied, length);
+                    copied += length;
+                    offset = 0;
+                }
+                return new ByteArrayInputStream(buffer);
+            }
+        }
+
+        @Override
+        void write(Object key, long position, ByteBuffer data) throws IOException {
+            int region = (int) (position / regionSize);
+            int offset = (int) (position % regionSize);
+            ByteBuffer source = data.duplicate();
+            while (source.hasRemaining()) {
+                ByteBuffer view = region(region++).duplicate();
+                view.position(offset);
+                int length = Math.min(source.remaining(), view.remaining());
+                ByteBuffer chunk = source.duplicate();
+                chunk.limit(chunk.position() + length);
+                view.put(chunk);
+                source.position(source.position() + length);
+                offset = 0;
+            }
+        }
+
+        private MappedByteBuffer region(int index) throws IOException {
+            MappedByteBuffer[] current = regions;
+            if (index < current.length) {
+                return current[index];
+            }
+            synchronized (this) {
+                current = regions;
+                if (index >= current.length) {
+                    MappedByteBuffer[] grown = new MappedByteBuffer[index + 1];
+                    System.arraycopy(current, 0, grown, 0, current.length);
+                    for (int i = current.length; i < grown.length; i++) {
+                        grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * regionSize, regionSize);
+                    }
+                    regions = grown;
+                    current = grown;
+                }
+                return current[index];
+            }
+        }
+
+        @Override
+        long length() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        void setLength(long size) {
+            // mapped regions must stay backed by the file
+        }
+
+        @Override
+        RandomAccessFile getTruncatableFile() {
+            return null;
+        }
+
+        @Override
+        void force() {
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+        }
+
+        @Override
+        void close() throws IOException {
+            force();
+            regions = new MappedByteBuffer[0];
+            file.close();
+        }
+    }
+
+    /**
+     * Input stream reading out of a byte buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private static final int BYTE_MASK = 0xff;
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & BYTE_MASK : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
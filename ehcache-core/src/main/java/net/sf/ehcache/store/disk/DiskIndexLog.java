@@ -0,0 +1,570 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import net.sf.ehcache.serialization.Serializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only index of the elements stored in a persistent disk store data file.
+ * <p>
+ * Every element written to the data file is recorded by a put record and every freed element by a remove record, both
+ * identifying the element by its position in the data file. Records are checksummed so that a log torn by a crash is
+ * replayed up to its last complete record. Once the log has grown well beyond the size of the live index it is
+ * rewritten as a checkpoint holding one put record per element; records appended while the checkpoint is written are
+ * carried over to the new log.
+ */
+final class DiskIndexLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskIndexLog.class.getName());
+
+    private static final int MAGIC = 0x45484931;
+    private static final int HEADER_SIZE = 4;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int PUT_HEADER_SIZE = 8 + 4 + 8 + 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final int CHECKPOINT_BUFFER_SIZE = 64 * 1024;
+    private static final long MIN_CHECKPOINT_LENGTH = 8 * 1024 * 1024;
+
+    private final File file;
+    private final Serializer serializer;
+    private final ClassLoader classLoader;
+
+    private FileChannel channel;
+    private long length;
+    private long checkpointLength;
+    private List<ByteBuffer> backlog;
+    private boolean dirty;
+
+    /**
+     * Create an index log stored in the given file.
+     *
+     * @param file the log file
+     * @param serializer serializer used for the keys
+     * @param classLoader class loader used to deserialize the keys
+     */
+    DiskIndexLog(File file, Serializer serializer, ClassLoader classLoader) {
+        this.file = file;
+        this.serializer = serializer;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns <code>true</code> if the given file holds an index written by a previous version as a single
+     * serialized stream.
+     *
+     * @param file the index file
+     * @return <code>true</code> for a serialized index
+     * @throws IOException on read error
+     */
+    static boolean isLegacy(File file) throws IOException {
+        if (file.length() < 2) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return in.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Replay the log and open it for appending.
+     * <p>
+     * Records following the last valid one are truncated.
+     *
+     * @return the entries recorded as live, at most one per key
+     * @throws IOException if the log is not an index log or cannot be read
+     * @throws ClassNotFoundException if a key cannot be deserialized
+     */
+    synchronized Collection<Entry> open() throws IOException, ClassNotFoundException {
+        Collection<Entry> entries = file.length() == 0 ? new ArrayList<Entry>() : replay();
+        openForAppend();
+        return entries;
+    }
+
+    private void openForAppend() throws IOException {
+        openChannel();
+        if (length == 0) {
+            writeHeader();
+        } else {
+            channel.truncate(length);
+            channel.position(length);
+        }
+        checkpointLength = length;
+    }
+
+    private Collection<Entry> replay() throws IOException, ClassNotFoundException {
+        Map<Long, Entry> live = new LinkedHashMap<Long, Entry>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), CHECKPOINT_BUFFER_SIZE));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an index log: " + file);
+            }
+            length = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                byte[] data;
+                try {
+                    int size = in.readInt();
+                    int checksum = in.readInt();
+                    if (size < 0 || size > MAX_RECORD_SIZE) {
+                        LOG.warn("Index log {} holds a record of invalid size, ignoring it and what follows", file);
+                        dirty = true;
+                        break;
+                    }
+                    data = new byte[size];
+                    in.readFully(data);
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(data);
+                    if ((int) crc.getValue() != checksum) {
+                        LOG.warn("Index log {} holds a corrupt record, ignoring it and what follows", file);
+                        dirty = true;
+                        break;
+                    }
+                } catch (EOFException e) {
+                    LOG.info("Index log {} ends with an incomplete record, probably due to an unclean shutdown", file);
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(data));
+                long position = record.readLong();
+                if (type == PUT) {
+                    int size = record.readInt();
+                    long hitCount = record.readLong();
+                    long expiry = record.readLong();
+                    InputStream key = new ByteArrayInputStream(data, PUT_HEADER_SIZE, data.length - PUT_HEADER_SIZE);
+                    Entry entry = new Entry(serializer.deserialize(key, classLoader), position, size, hitCount, expiry);
+                    live.remove(position);
+                    live.put(position, entry);
+                } else if (type == REMOVE) {
+                    live.remove(position);
+                } else {
+                    throw new IOException("Unknown record type " + type + " in index log " + file);
+                }
+                length += 1 + 4 + 4 + data.length;
+            }
+        } finally {
+            in.close();
+        }
+
+        Map<Object, Entry> latest = new HashMap<Object, Entry>(live.size());
+        for (Entry entry : live.values()) {
+            if (latest.put(entry.getKey(), entry) != null) {
+                // a relocation was interrupted, the latest copy wins
+                dirty = true;
+            }
+        }
+        return latest.values();
+    }
+
+    /**
+     * Discard the content of this log and reopen it empty.
+     *
+     * @throws IOException on write error
+     */
+    synchronized void reset() throws IOException {
+        close();
+        DiskStorageFactory.deleteFile(file);
+        length = 0;
+        dirty = false;
+        openForAppend();
+    }
+
+    /**
+     * Returns a new buffer of records to append to this log.
+     *
+     * @return an empty record buffer
+     */
+    Records records() {
+        return new Records();
+    }
+
+    /**
+     * Append the given records to this log.
+     * <p>
+     * This is a no-op while the log is closed.
+     *
+     * @param records records to append
+     * @throws IOException on write error
+     */
+    synchronized void append(Records records) throws IOException {
+        if (channel == null || records.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = records.toByteBuffer();
+        if (backlog != null) {
+            backlog.add(buffer.duplicate());
+        }
+        writeFully(buffer);
+    }
+
+    /**
+     * Force the appended records to the storage device.
+     *
+     * @throws IOException on write error
+     */
+    synchronized void force() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this log should be rewritten as a checkpoint, either because it grew too large
+     * or because its replay found records that must not be replayed again.
+     *
+     * @return <code>true</code> if a checkpoint is due
+     */
+    synchronized boolean needsCheckpoint() {
+        return channel != null && backlog == null && (dirty || length > Math.max(MIN_CHECKPOINT_LENGTH, 2 * checkpointLength));
+    }
+
+    /**
+     * Returns <code>true</code> if the replay of this log found records that must not be replayed again.
+     *
+     * @return <code>true</code> if the log must be rewritten before being replayed again
+     */
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Returns the length of this log in bytes.
+     *
+     * @return the log length
+     */
+    synchronized long length() {
+        return length;
+    }
+
+    /**
+     * Start a checkpoint of this log.
+     * <p>
+     * The caller puts every live entry into the returned checkpoint and then commits or aborts it.
+     *
+     * @return the checkpoint
+     * @throws IOException if the checkpoint file cannot be created
+     */
+    Checkpoint checkpoint() throws IOException {
+        synchronized (this) {
+            if (channel == null) {
+                throw new IOException("Index log " + file + " is closed");
+            }
+            if (backlog != null) {
+                throw new IllegalStateException("A checkpoint of " + file + " is already running");
+            }
+            backlog = new ArrayList<ByteBuffer>();
+        }
+        try {
+            return new Checkpoint();
+        } catch (IOException e) {
+            synchronized (this) {
+                backlog = null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Close this log.
+     *
+     * @throws IOException on close error
+     */
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).flip();
+        writeFully(header);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            length += channel.write(buffer);
+        }
+    }
+
+    /**
+     * A live entry of the index.
+     */
+    static final class Entry {
+
+        private final Object key;
+        private final long position;
+        private final int size;
+        private final long hitCount;
+        private final long expiry;
+
+        private Entry(Object key, long position, int size, long hitCount, long expiry) {
+            this.key = key;
+            this.position = position;
+            this.size = size;
+            this.hitCount = hitCount;
+            this.expiry = expiry;
+        }
+
+        /**
+         * @return the element key
+         */
+        Object getKey() {
+            return key;
+        }
+
+        /**
+         * @return the position of the element in the data file
+         */
+        long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the size of the serialized element
+         */
+        int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the element hit count
+         */
+        long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return the element expiration time
+         */
+        long getExpiry() {
+            return expiry;
+        }
+    }
+
+    /**
+     * A buffer of encoded records.
+     */
+    final class Records {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        private final DataOutputStream payload = new DataOutputStream(payloadBytes);
+        private final CRC32 crc = new CRC32();
+
+        private Records() {
+            //
+        }
+
+        /**
+         * Record an element written to the data file.
+         *
+         * @param key the element key
+         * @param position the position of the element in the data file
+         * @param size the size of the serialized element
+         * @param hitCount the element hit count
+         * @param expiry the element expiration time
+         * @throws IOException if the key cannot be serialized
+         */
+        void put(Object key, long position, int size, long hitCount, long expiry) throws IOException {
+            payloadBytes.reset();
+            payload.writeLong(position);
+            payload.writeInt(size);
+            payload.writeLong(hitCount);
+            payload.writeLong(expiry);
+            serializer.serialize(key, payload);
+            payload.flush();
+            write(PUT);
+        }
+
+        /**
+         * Record an element freed from the data file.
+         *
+         * @param position the position of the element in the data file
+         * @throws IOException on encoding error
+         */
+        void remove(long position) throws IOException {
+            payloadBytes.reset();
+            payload.writeLong(position);
+            payload.flush();
+            write(REMOVE);
+        }
+
+        private void write(byte type) throws IOException {
+            byte[] data = payloadBytes.toByteArray();
+            crc.reset();
+            crc.update(type);
+            crc.update(data);
+            out.writeByte(type);
+            out.writeInt(data.length);
+            out.writeInt((int) crc.getValue());
+            out.write(data);
+        }
+
+        private boolean isEmpty() {
+            return bytes.size() == 0;
+        }
+
+        private int size() {
+            return bytes.size();
+        }
+
+        private void writeTo(OutputStream os) throws IOException {
+            bytes.writeTo(os);
+            bytes.reset();
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * A checkpoint being written, replacing the log once committed.
+     */
+    final class Checkpoint {
+
+        private final File tmp = new File(file.getPath() + ".tmp");
+        private final FileOutputStream fos;
+        private final OutputStream out;
+        private final Records records = new Records();
+
+        private Checkpoint() throws IOException {
+            fos = new FileOutputStream(tmp);
+            out = new BufferedOutputStream(fos, CHECKPOINT_BUFFER_SIZE);
+            new DataOutputStream(out).writeInt(MAGIC);
+        }
+
+        /**
+         * Record a live element.
+         *
+         * @param key the element key
+         * @param position the position of the element in the data file
+         * @param size the size of the serialized element
+         * @param hitCount the element hit count
+         * @param expiry the element expiration time
+         * @throws IOException on write error
+         */
+        void put(Object key, long position, int size, long hitCount, long expiry) throws IOException {
+            records.put(key, position, size, hitCount, expiry);
+            if (records.size() >= CHECKPOINT_BUFFER_SIZE) {
+                records.writeTo(out);
+            }
+        }
+
+        /**
+         * Append the records logged since this checkpoint started and replace the log by this checkpoint.
+         *
+         * @throws IOException on write error
+         */
+        void commit() throws IOException {
+            records.writeTo(out);
+            synchronized (DiskIndexLog.this) {
+                try {
+                    for (ByteBuffer buffer : backlog) {
+                        out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    }
+                    out.flush();
+                    fos.getChannel().force(false);
+                    out.close();
+                    close();
+                    if (!tmp.renameTo(file)) {
+                        DiskStorageFactory.deleteFile(file);
+                        if (!tmp.renameTo(file)) {
+                            throw new IOException("Failed to replace index log " + file + " by checkpoint " + tmp);
+                        }
+                    }
+                    dirty = false;
+                } finally {
+                    backlog = null;
+                    if (tmp.exists()) {
+                        DiskStorageFactory.deleteFile(tmp);
+                    }
+                    if (channel == null) {
+                        openChannel();
+                        length = channel.size();
+                        channel.position(length);
+                        if (length == 0) {
+                            writeHeader();
+                        }
+                    }
+                    checkpointLength = length;
+                }
+            }
+        }
+
+        /**
+         * Discard this checkpoint.
+         */
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close checkpoint {}", tmp);
+            }
+            DiskStorageFactory.deleteFile(tmp);
+            synchronized (DiskIndexLog.this) {
+                backlog = null;
+            }
+        }
+    }
+}
@@ -21,21 +21,32 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 
 import net.sf.ehcache.CacheException;
@@ -47,8 +58,9 @@ import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.PinningConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
 import net.sf.ehcache.pool.sizeof.annotations.IgnoreSizeOf;
-import net.sf.ehcache.store.disk.ods.FileAllocationTree;
+import net.sf.ehcache.serialization.Serializer;
 import net.sf.ehcache.store.disk.ods.Region;
+import net.sf.ehcache.store.disk.ods.SegregatedFileAllocator;
 import net.sf.ehcache.util.MemoryEfficientByteArrayOutputStream;
 import net.sf.ehcache.util.PreferredLoaderObjectInputStream;
 import net.sf.ehcache.util.TimeUtil;
@@ -73,6 +85,10 @@ public class DiskStorageFactory {
     private static final int MEGABYTE = 1024 * 1024;
     private static final int MAX_EVICT = 5;
     private static final int SAMPLE_SIZE = 30;
+    private static final int MAX_BATCH_BYTES = 16 * MEGABYTE;
+    private static final int MAX_COALESCED_READ = MEGABYTE;
+    private static final float COMPACTION_THRESHOLD = 0.5f;
+    private static final float COMPACTION_TARGET = 0.25f;
 
     private static final Logger LOG = LoggerFactory.getLogger(DiskStorageFactory.class.getName());
 
@@ -81,18 +97,39 @@ public class DiskStorageFactory {
      */
     protected volatile DiskStore                  store;
 
-    private final BlockingQueue<Runnable> diskQueue;
     /**
-     * Executor service used to write elements to disk
+     * Single threaded executors used to write elements to disk, a given key is always handled by the same writer
      */
-    private final ScheduledThreadPoolExecutor diskWriter;
+    private final ThreadPoolExecutor[] diskWriters;
+
+    /**
+     * Executor service used to periodically expire elements on disk
+     */
+    private final ScheduledThreadPoolExecutor diskExpiry;
+
+    /**
+     * Executor service used to write the index file
+     */
+    private final ThreadPoolExecutor indexWriter;
+
+    /**
+     * Per writer batches of elements waiting to be written, {@code null} when writes are not batched
+     */
+    private final WriteBatch[] writeBatches;
+
+    private final int writeBatchSize;
+
+    private final boolean writeBatchSync;
+
+    private final AtomicLong diskWriteCount = new AtomicLong();
+    private final AtomicLong diskWriteNanos = new AtomicLong();
 
     private final long queueCapacity;
 
     private final File             file;
-    private final RandomAccessFile[] dataAccess;
+    private final DiskDataFile dataAccess;
 
-    private final FileAllocationTree allocator;
+    private final SegregatedFileAllocator allocator;
 
     private final RegisteredEventListeners eventService;
 
@@ -104,6 +141,20 @@ public class DiskStorageFactory {
 
     private final File indexFile;
 
+    /**
+     * Incremental index of the data file, {@code null} when the store is not persistent
+     */
+    private final DiskIndexLog indexLog;
+
+    private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+
+    /**
+     * Frees waiting for their remove record to be appended to the index log by the index writer
+     */
+    private final Queue<DiskFreeTask> pendingFrees = new ConcurrentLinkedQueue<DiskFreeTask>();
+
+    private final AtomicBoolean removeLoggingScheduled = new AtomicBoolean();
+
     private final IndexWriteTask flushTask;
 
     private volatile int diskCapacity;
@@ -115,6 +166,8 @@ public class DiskStorageFactory {
     private final DiskStorePathManager diskStorePathManager;
     
     private final ClassLoader classLoader;
+
+    private final Serializer serializer;
    
     /**
      * Constructs an disk persistent factory for the given cache and disk path.
@@ -122,7 +175,8 @@ public class DiskStorageFactory {
      * @param cache cache that fronts this factory
      */
     public DiskStorageFactory(Ehcache cache, RegisteredEventListeners cacheEventNotificationService) {
-        this.classLoader = cache.getCacheConfiguration().getClassLoader();       
+        this.classLoader = cache.getCacheConfiguration().getClassLoader();
+        this.serializer = cache.getCacheConfiguration().getSerializer();
         this.diskStorePathManager = cache.getCacheManager().getDiskStorePathManager();
         this.file = diskStorePathManager.getFile(cache.getName(), ".data");
 
@@ -141,35 +195,49 @@ public class DiskStorageFactory {
         }
 
         try {
-            dataAccess = allocateRandomAccessFiles(file, cache.getCacheConfiguration().getDiskAccessStripes());
+            dataAccess = DiskDataFile.open(file, cache.getCacheConfiguration());
         } catch (FileNotFoundException e) {
             throw new CacheException(e);
         }
-        this.allocator = new FileAllocationTree(Long.MAX_VALUE, dataAccess[0]);
-
-        diskWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
-            public Thread newThread(Runnable r) {
-                Thread t = new Thread(r, file.getName());
-                t.setDaemon(false);
-                return t;
+        int writerThreads = cache.getCacheConfiguration().getDiskWriterThreads();
+        this.allocator = new SegregatedFileAllocator(Long.MAX_VALUE, dataAccess.getTruncatableFile(), writerThreads);
+
+        diskWriters = new ThreadPoolExecutor[writerThreads];
+        for (int i = 0; i < writerThreads; i++) {
+            String name = writerThreads == 1 ? file.getName() : file.getName() + " Writer-" + i;
+            diskWriters[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DiskThreadFactory(name));
+        }
+        writeBatchSize = cache.getCacheConfiguration().getDiskWriteBatchSize();
+        writeBatchSync = diskPersistent && cache.getCacheConfiguration().isDiskWriteBatchSync();
+        if (writeBatchSize > 1) {
+            writeBatches = new WriteBatch[writerThreads];
+            for (int i = 0; i < writerThreads; i++) {
+                writeBatches[i] = new WriteBatch(diskWriters[i]);
             }
-        });
-        this.diskQueue = diskWriter.getQueue();
+        } else {
+            writeBatches = null;
+        }
+        indexWriter = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new DiskThreadFactory(file.getName() + " Index Writer"));
+        diskExpiry = new ScheduledThreadPoolExecutor(1, new DiskThreadFactory(file.getName() + " Expiry"));
         this.eventService = cache.getCacheEventNotificationService();
         this.queueCapacity = cache.getCacheConfiguration().getDiskSpoolBufferSizeMB() * MEGABYTE;
         this.diskCapacity = cache.getCacheConfiguration().getMaxElementsOnDisk();
 
-        diskWriter.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
-        diskWriter.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        diskExpiry.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        diskExpiry.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
         long expiryInterval = cache.getCacheConfiguration().getDiskExpiryThreadIntervalSeconds();
-        diskWriter.scheduleWithFixedDelay(new DiskExpiryTask(), expiryInterval, expiryInterval, TimeUnit.SECONDS);
+        diskExpiry.scheduleWithFixedDelay(new DiskExpiryTask(), expiryInterval, expiryInterval, TimeUnit.SECONDS);
+        diskExpiry.scheduleWithFixedDelay(new DiskCompactionTask(), expiryInterval, expiryInterval, TimeUnit.SECONDS);
 
         flushTask = new IndexWriteTask(indexFile, cache.getCacheConfiguration().isClearOnFlush());
+        indexLog = diskPersistent ? new DiskIndexLog(indexFile, serializer, classLoader) : null;
 
         if (!getDataFile().exists() || (getDataFile().length() == 0)) {
             LOG.debug("Matching data file missing (or empty) for index file. Deleting index file " + indexFile);
             deleteFile(indexFile);
-        } else if (getDataFile().exists() && indexFile.exists()) {
+        } else if (getDataFile().exists() && indexFile.exists() && isLegacyIndex()) {
             if (getDataFile().lastModified() > (indexFile.lastModified() + TimeUnit.SECONDS.toMillis(1))) {
                 LOG.warn("The index for data file {} is out of date, probably due to an unclean shutdown. "
                         + "Deleting index file {}", getDataFile(), indexFile);
@@ -178,6 +246,14 @@ public class DiskStorageFactory {
         }
     }
 
+    private boolean isLegacyIndex() {
+        try {
+            return DiskIndexLog.isLegacy(indexFile);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     private boolean determineCachePinned(CacheConfiguration cacheConfiguration) {
         PinningConfiguration pinningConfiguration = cacheConfiguration.getPinningConfiguration();
         if (pinningConfiguration == null) {
@@ -196,38 +272,16 @@ public class DiskStorageFactory {
         }
     }
 
-    private static RandomAccessFile[] allocateRandomAccessFiles(File f, int stripes) throws FileNotFoundException {
-        int roundedStripes = stripes;
-        while ((roundedStripes & (roundedStripes - 1)) != 0) {
-            ++roundedStripes;
-        }
-
-        RandomAccessFile [] result = new RandomAccessFile[roundedStripes];
-        for (int i = 0; i < result.length; ++i) {
-            result[i] = new RandomAccessFile(f, "rw");
-        }
-
-        return result;
-    }
-
-    private RandomAccessFile getDataAccess(Object key) {
-        return this.dataAccess[ConcurrencyUtil.selectLock(key, dataAccess.length)];
-    }
-
     /**
      * Return this size in bytes of this factory
+     * <p>
+     * This is the extent of the data file in use by the allocator, which may be less than the length of the file
+     * when it is grown ahead of the writes.
      *
      * @return this size in bytes of this factory
      */
     public long getOnDiskSizeInBytes() {
-        synchronized (dataAccess[0]) {
-            try {
-                return dataAccess[0].length();
-            } catch (IOException e) {
-                LOG.warn("Exception trying to determine store size", e);
-                return 0;
-            }
-        }
+        return allocator.getFileSize();
     }
 
     /**
@@ -262,20 +316,31 @@ public class DiskStorageFactory {
             if (!faultFailure) {
                 onDisk.decrementAndGet();
             }
-            //free done asynchronously under the relevant segment lock...
             DiskFreeTask free = new DiskFreeTask(lock, (DiskMarker) substitute);
-            if (lock.tryLock()) {
-                try {
-                    free.call();
-                } finally {
-                    lock.unlock();
-                }
+            if (indexLog == null) {
+                release(free);
             } else {
-                schedule(free);
+                // logged by the index writer before the space can be reused, so that a replay never sees two
+                // elements in the same place
+                pendingFrees.add(free);
+                scheduleRemoveLogging();
             }
         }
     }
 
+    private void release(DiskFreeTask free) {
+        //free done asynchronously under the relevant segment lock...
+        if (free.lock.tryLock()) {
+            try {
+                free.call();
+            } finally {
+                free.lock.unlock();
+            }
+        } else {
+            schedule(free.marker.getKey(), free);
+        }
+    }
+
     /**
      * Mark this on-disk marker as used (hooks into the file space allocation structure).
      *
@@ -289,25 +354,46 @@ public class DiskStorageFactory {
      * Shrink this store's data file down to a minimal size for its contents.
      */
     protected void shrinkDataFile() {
-        synchronized (dataAccess[0]) {
-            try {
-                dataAccess[0].setLength(allocator.getFileSize());
-            } catch (IOException e) {
-                LOG.error("Exception trying to shrink data file to size", e);
-            }
+        try {
+            dataAccess.setLength(allocator.getFileSize());
+        } catch (IOException e) {
+            LOG.error("Exception trying to shrink data file to size", e);
         }
     }
     /**
      * Shuts down this disk factory.
      * <p>
-     * This shuts down the executor and then waits for its termination, before closing the data file.
+     * This shuts down the executors and then waits for their termination, before closing the data file.
      * @throws java.io.IOException if an IO error occurred
      */
     protected void shutdown() throws IOException {
-        diskWriter.shutdown();
+        diskExpiry.shutdown();
+        indexWriter.shutdown();
+        for (ExecutorService diskWriter : diskWriters) {
+            diskWriter.shutdown();
+        }
+        awaitTermination(diskExpiry);
+        awaitTermination(indexWriter);
+        for (ExecutorService diskWriter : diskWriters) {
+            awaitTermination(diskWriter);
+        }
+
+        dataAccess.close();
+        if (indexLog != null) {
+            logPendingRemoves();
+            indexLog.close();
+        }
+
+        if (!diskPersistent) {
+            deleteFile(file);
+            deleteFile(indexFile);
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
         for (int i = 0; i < SHUTDOWN_GRACE_PERIOD; i++) {
             try {
-                if (diskWriter.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
                     break;
                 } else {
                     LOG.info("Waited " + (i + 1) + " seconds for shutdown of [" + file.getName() + "]");
@@ -316,17 +402,6 @@ public class DiskStorageFactory {
                 LOG.warn("Received exception while waiting for shutdown", e);
             }
         }
-
-        for (final RandomAccessFile raf : dataAccess) {
-            synchronized (raf) {
-                raf.close();
-            }
-        }
-
-        if (!diskPersistent) {
-            deleteFile(file);
-            deleteFile(indexFile);
-        }
     }
 
     /**
@@ -338,14 +413,35 @@ public class DiskStorageFactory {
     }
 
     /**
-     * Schedule to given task on the disk writer executor service.
+     * Schedule to given task on the disk writer executor service responsible for the given key.
+     * <p>
+     * All tasks for a given key are run by the same writer thread, in the order they were scheduled.
      *
      * @param <U> return type of the callable
+     * @param key key the task operates on
      * @param call callable to call
      * @return Future representing the return of this call
      */
-    protected <U> Future<U> schedule(Callable<U> call) {
-        return diskWriter.submit(call);
+    protected <U> Future<U> schedule(Object key, Callable<U> call) {
+        return diskWriters[writerFor(key)].submit(call);
+    }
+
+    private int writerFor(Object key) {
+        return ConcurrencyUtil.hash(key) & (diskWriters.length - 1);
+    }
+
+    /**
+     * Schedule the write of the given placeholder, either as a task of its own or as part of the next batch
+     * of its writer.
+     *
+     * @param placeholder the placeholder to write
+     */
+    private void scheduleWrite(Placeholder placeholder) {
+        if (writeBatches == null) {
+            schedule(placeholder.getKey(), new PersistentDiskWriteTask(placeholder));
+        } else {
+            writeBatches[writerFor(placeholder.getKey())].add(placeholder);
+        }
     }
 
     /**
@@ -357,20 +453,11 @@ public class DiskStorageFactory {
      * @throws ClassNotFoundException on deserialization error
      */
     protected Element read(DiskMarker marker) throws IOException, ClassNotFoundException {
-        final byte[] buffer = new byte[marker.getSize()];
-        final RandomAccessFile data = getDataAccess(marker.getKey());
-        synchronized (data) {
-            // Load the element
-            data.seek(marker.getPosition());
-            data.readFully(buffer);
-        }
-
-        ObjectInputStream objstr = new PreferredLoaderObjectInputStream(new ByteArrayInputStream(buffer), classLoader);
-
+        InputStream data = dataAccess.read(marker.getKey(), marker.getPosition(), marker.getSize());
         try {
-            return (Element) objstr.readObject();
+            return (Element) serializer.deserialize(data, classLoader);
         } finally {
-            objstr.close();
+            data.close();
         }
     }
 
@@ -387,20 +474,97 @@ public class DiskStorageFactory {
         elementSize = bufferLength;
         DiskMarker marker = alloc(element, bufferLength);
         // Write the record
-        final RandomAccessFile data = getDataAccess(element.getObjectKey());
-        synchronized (data) {
-            data.seek(marker.getPosition());
-            data.write(buffer.toByteArray(), 0, bufferLength);
-        }
+        long start = System.nanoTime();
+        dataAccess.write(element.getObjectKey(), marker.getPosition(), buffer.toByteBuffer());
+        diskWriteNanos.addAndGet(System.nanoTime() - start);
+        diskWriteCount.incrementAndGet();
+        logWrite(Collections.singletonList(marker));
         return marker;
     }
 
+    /**
+     * Write the given placeholders to a single contiguous region of the data file, and fault in the resulting markers.
+     *
+     * @param placeholders placeholders to write
+     */
+    private void write(List<Placeholder> placeholders) {
+        List<Placeholder> batch = new ArrayList<Placeholder>(placeholders.size());
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(placeholders.size());
+        int batchLength = 0;
+        for (Placeholder placeholder : placeholders) {
+            try {
+                if (placeholder.claim() && store.containsKey(placeholder.getKey())) {
+                    ByteBuffer buffer = serializeElement(placeholder.getElement()).toByteBuffer();
+                    if (!batch.isEmpty() && batchLength + buffer.remaining() > MAX_BATCH_BYTES) {
+                        write(batch, buffers, batchLength);
+                        batch.clear();
+                        buffers.clear();
+                        batchLength = 0;
+                    }
+                    elementSize = buffer.remaining();
+                    batch.add(placeholder);
+                    buffers.add(buffer);
+                    batchLength += buffer.remaining();
+                }
+            } catch (Throwable e) {
+                LOG.error("Disk Write of " + placeholder.getKey() + " failed: ", e);
+                store.evict(placeholder.getKey(), placeholder);
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch, buffers, batchLength);
+        }
+    }
+
+    private void write(List<Placeholder> batch, List<ByteBuffer> buffers, int batchLength) {
+        Region region = allocator.allocExtent(batchLength);
+        ByteBuffer data = ByteBuffer.allocate(batchLength);
+        List<DiskMarker> markers = new ArrayList<DiskMarker>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            ByteBuffer buffer = buffers.get(i);
+            markers.add(createMarker(region.start() + data.position(), buffer.remaining(), batch.get(i).getElement()));
+            data.put(buffer);
+        }
+        data.flip();
+
+        try {
+            long start = System.nanoTime();
+            dataAccess.write(batch.get(0).getKey(), region.start(), data);
+            if (writeBatchSync) {
+                dataAccess.force();
+            }
+            diskWriteNanos.addAndGet(System.nanoTime() - start);
+            diskWriteCount.addAndGet(batch.size());
+        } catch (Throwable e) {
+            LOG.error("Disk Write of " + batch.size() + " elements failed: ", e);
+            allocator.free(region);
+            for (Placeholder placeholder : batch) {
+                store.evict(placeholder.getKey(), placeholder);
+            }
+            return;
+        }
+        logWrite(markers);
+
+        for (int i = 0; i < batch.size(); i++) {
+            Placeholder placeholder = batch.get(i);
+            try {
+                if (store.fault(placeholder.getKey(), placeholder, markers.get(i))) {
+                    int disk = onDisk.incrementAndGet();
+                    onDiskEvict(disk, placeholder.getKey());
+                }
+            } catch (Throwable e) {
+                LOG.error("Disk Write of " + placeholder.getKey() + " failed: ", e);
+                store.evict(placeholder.getKey(), placeholder);
+            }
+        }
+    }
+
     private MemoryEfficientByteArrayOutputStream serializeElement(Element element) throws IOException {
         // A ConcurrentModificationException can occur because Java's serialization
         // mechanism is not threadsafe and POJOs are seldom implemented in a threadsafe way.
         // e.g. we are serializing an ArrayList field while another thread somewhere in the application is appending to it.
         try {
-            return MemoryEfficientByteArrayOutputStream.serialize(element);
+            return MemoryEfficientByteArrayOutputStream.serialize(element, serializer);
         } catch (ConcurrentModificationException e) {
             throw new CacheException("Failed to serialize element due to ConcurrentModificationException. " +
                                      "This is frequently the result of inappropriately sharing thread unsafe object " +
@@ -423,13 +587,223 @@ public class DiskStorageFactory {
         allocator.free(new Region(marker.getPosition(), marker.getPosition() + marker.getSize() - 1));
     }
 
+    /**
+     * Record the given markers in the index log of a persistent store.
+     *
+     * @param markers markers of the elements just written to the data file
+     */
+    private void logWrite(List<DiskMarker> markers) {
+        if (indexLog != null) {
+            try {
+                DiskIndexLog.Records records = indexLog.records();
+                for (DiskMarker marker : markers) {
+                    records.put(marker.getKey(), marker.getPosition(), marker.getSize(), marker.getHitCount(),
+                            marker.getExpirationTime());
+                }
+                indexLog.append(records);
+                if (writeBatchSync) {
+                    indexLog.force();
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to log the write of " + markers.size() + " elements to index file " + indexFile.getName(), e);
+                scheduleCheckpoint();
+                return;
+            }
+            if (indexLog.needsCheckpoint()) {
+                scheduleCheckpoint();
+            }
+        }
+    }
+
+    /**
+     * Record the given marker as freed in the index log of a persistent store.
+     *
+     * @param marker marker of the element being freed
+     */
+    private void logRemove(DiskMarker marker) {
+        if (indexLog != null) {
+            try {
+                DiskIndexLog.Records records = indexLog.records();
+                records.remove(marker.getPosition());
+                indexLog.append(records);
+            } catch (IOException e) {
+                LOG.warn("Failed to log the removal of " + marker.getKey() + " to index file " + indexFile.getName(), e);
+                scheduleCheckpoint();
+            }
+        }
+    }
+
+    private void scheduleRemoveLogging() {
+        if (removeLoggingScheduled.compareAndSet(false, true)) {
+            try {
+                indexWriter.submit(new IndexRemoveTask());
+            } catch (RejectedExecutionException e) {
+                removeLoggingScheduled.set(false);
+                logPendingRemoves();
+            }
+        }
+    }
+
+    /**
+     * Append the remove records of the pending frees to the index log in one write, then free their space.
+     */
+    private void logPendingRemoves() {
+        List<DiskFreeTask> frees = new ArrayList<DiskFreeTask>();
+        DiskIndexLog.Records records = indexLog.records();
+        for (DiskFreeTask free = pendingFrees.poll(); free != null; free = pendingFrees.poll()) {
+            records.remove(free.marker.getPosition());
+            frees.add(free);
+        }
+        if (frees.isEmpty()) {
+            return;
+        }
+        try {
+            indexLog.append(records);
+        } catch (IOException e) {
+            LOG.warn("Failed to log the removal of " + frees.size() + " elements to index file " + indexFile.getName(), e);
+            scheduleCheckpoint();
+        }
+        for (DiskFreeTask free : frees) {
+            release(free);
+        }
+    }
+
+    private void scheduleCheckpoint() {
+        if (!indexWriter.isShutdown() && checkpointScheduled.compareAndSet(false, true)) {
+            try {
+                indexWriter.submit(new IndexCheckpointTask());
+            } catch (RejectedExecutionException e) {
+                checkpointScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Return the fraction of the data file that holds no element.
+     *
+     * @return the fragmentation ratio of the data file, between 0 and 1
+     */
+    public float getFragmentation() {
+        return allocator.getFragmentation();
+    }
+
+    /**
+     * Move elements stored towards the end of the data file into free space closer to its start.
+     * <p>
+     * Each element is copied to its new location before its marker is swapped under the segment lock; if the
+     * mapping changed in the meantime the copy is discarded.
+     *
+     * @param target fragmentation ratio at which to stop
+     * @return the number of elements moved
+     */
+    int compact(float target) {
+        int moved = 0;
+        for (Object key : store.keySet()) {
+            if (allocator.getFragmentation() <= target) {
+                break;
+            }
+            Object value = store.unretrievedGet(key);
+            if (created(value) && value instanceof DiskMarker) {
+                try {
+                    if (relocate((DiskMarker) value)) {
+                        moved++;
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Failed to move " + key + " while compacting data file " + file.getName(), e);
+                }
+            }
+        }
+        return moved;
+    }
+
+    private byte[] readBytes(Object key, long position, int size) throws IOException {
+        byte[] data = new byte[size];
+        InputStream in = dataAccess.read(key, position, size);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private boolean relocate(DiskMarker marker) throws IOException {
+        Region region = allocator.alloc(marker.getSize());
+        if (region.start() >= marker.getPosition()) {
+            allocator.free(region);
+            return false;
+        }
+
+        boolean relocated = false;
+        DiskMarker copy = null;
+        try {
+            byte[] data = readBytes(marker.getKey(), marker.getPosition(), marker.getSize());
+            dataAccess.write(marker.getKey(), region.start(), ByteBuffer.wrap(data));
+            copy = marker.relocate(region.start());
+            logWrite(Collections.singletonList(copy));
+            relocated = store.relocate(marker.getKey(), marker, copy);
+            return relocated;
+        } finally {
+            if (!relocated) {
+                if (copy != null) {
+                    logRemove(copy);
+                }
+                allocator.free(region);
+            }
+        }
+    }
+
     /**
      * Return {@code true} if the disk write queue is full.
      *
      * @return {@code true} if the disk write queue is full.
      */
     public boolean bufferFull() {
-        return (diskQueue.size() * elementSize) > queueCapacity;
+        return ((long) getWriteQueueSize() * elementSize) > queueCapacity;
+    }
+
+    /**
+     * Return the number of tasks waiting to be run by the disk writers.
+     *
+     * @return the number of tasks waiting to be run by the disk writers
+     */
+    public int getWriteQueueSize() {
+        int size = 0;
+        for (ThreadPoolExecutor diskWriter : diskWriters) {
+            size += diskWriter.getQueue().size();
+        }
+        if (writeBatches != null) {
+            for (WriteBatch writeBatch : writeBatches) {
+                size += writeBatch.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Return the number of records written to the data file.
+     *
+     * @return the number of records written to the data file
+     */
+    public long getWriteCount() {
+        return diskWriteCount.get();
+    }
+
+    /**
+     * Return the average time taken to write a record to the data file, in nanoseconds.
+     *
+     * @return the average write latency in nanoseconds, or 0 if nothing was written yet
+     */
+    public long getAverageWriteLatency() {
+        long count = diskWriteCount.get();
+        return count == 0 ? 0 : diskWriteNanos.get() / count;
     }
 
     /**
@@ -473,7 +847,7 @@ public class DiskStorageFactory {
          */
         public DiskMarker call() {
             try {
-                if (store.containsKey(placeholder.getKey())) {
+                if (placeholder.claim() && store.containsKey(placeholder.getKey())) {
                     DiskMarker marker = write(placeholder.getElement());
                     if (marker != null && store.fault(placeholder.getKey(), placeholder, marker)) {
                         return marker;
@@ -492,6 +866,27 @@ public class DiskStorageFactory {
         }
     }
 
+    /**
+     * Creates the non-daemon threads of the disk executors.
+     */
+    private static final class DiskThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        private DiskThreadFactory(String name) {
+            this.name = name;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(false);
+            return t;
+        }
+    }
+
     /**
      * Disk free tasks are used to asynchronously free DiskMarker instances under the correct
      * exclusive write lock.  This ensure markers are not free'd until no more readers can be
@@ -608,6 +1003,7 @@ public class DiskStorageFactory {
         private final Element element;
 
         private volatile boolean failedToFlush;
+        private final AtomicBoolean claimed = new AtomicBoolean();
 
         /**
          * Create a Placeholder wrapping the given element and key.
@@ -632,12 +1028,21 @@ public class DiskStorageFactory {
             this.failedToFlush = failedToFlush;
         }
 
+        /**
+         * Claims the write of this placeholder, so that a writer and a flush never both write it.
+         *
+         * @return true if the caller is the first to claim it, and should write it
+         */
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
         public void installed() {
-            DiskStorageFactory.this.schedule(new PersistentDiskWriteTask(this));
+            DiskStorageFactory.this.scheduleWrite(this);
         }
 
         /**
@@ -786,6 +1191,19 @@ public class DiskStorageFactory {
             expiry = e.getExpirationTime();
         }
 
+        /**
+         * Create a copy of this marker pointing at a different position of the data file.
+         *
+         * @param newPosition position of the copy
+         * @return a marker for the copy
+         */
+        DiskMarker relocate(long newPosition) {
+            DiskMarker copy = new DiskMarker(getFactory(), newPosition, size, key, hitCount);
+            copy.expiry = expiry;
+            copy.onHeapSize = onHeapSize;
+            return copy;
+        }
+
         /**
          * Updates the stats from memory
          * @param e
@@ -829,6 +1247,22 @@ public class DiskStorageFactory {
         }
     }
 
+    /**
+     * Compacts the data file once its fragmentation gets too high.
+     */
+    private final class DiskCompactionTask implements Runnable {
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run() {
+            if (allocator.getFragmentation() > COMPACTION_THRESHOLD) {
+                int moved = compact(COMPACTION_TARGET);
+                LOG.debug("Compacted data file {}: moved {} elements", file.getName(), moved);
+            }
+        }
+    }
+
     /**
      * Attempt to delete the corresponding file and log an error on failure.
      * @param f the file to delete
@@ -899,6 +1333,81 @@ public class DiskStorageFactory {
         }
     }
 
+    /**
+     * Decodes the supplied {@link DiskSubstitute}s, updating statistics.
+     * <p>
+     * Markers are read in data file order, runs of adjacent markers being fetched with a single read.
+     *
+     * @param substitutes ElementSubstitutes to decode
+     * @return the decoded elements, in the order of the supplied substitutes
+     */
+    public Element[] retrieveAll(List<DiskSubstitute> substitutes) {
+        Element[] elements = new Element[substitutes.size()];
+        List<Integer> markers = new ArrayList<Integer>();
+        for (int i = 0; i < elements.length; i++) {
+            DiskSubstitute substitute = substitutes.get(i);
+            if (substitute instanceof DiskMarker) {
+                markers.add(i);
+            } else if (substitute instanceof Placeholder) {
+                elements[i] = ((Placeholder) substitute).getElement();
+            }
+        }
+        if (markers.isEmpty()) {
+            return elements;
+        }
+
+        final DiskMarker[] byIndex = new DiskMarker[elements.length];
+        for (int index : markers) {
+            byIndex[index] = (DiskMarker) substitutes.get(index);
+        }
+        Collections.sort(markers, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long pa = byIndex[a].getPosition();
+                long pb = byIndex[b].getPosition();
+                return pa < pb ? -1 : (pa == pb ? 0 : 1);
+            }
+        });
+
+        try {
+            int start = 0;
+            while (start < markers.size()) {
+                DiskMarker first = byIndex[markers.get(start)];
+                long end = first.getPosition() + first.getSize();
+                int next = start + 1;
+                while (next < markers.size()) {
+                    DiskMarker marker = byIndex[markers.get(next)];
+                    if (marker.getPosition() != end || end + marker.getSize() - first.getPosition() > MAX_COALESCED_READ) {
+                        break;
+                    }
+                    end += marker.getSize();
+                    next++;
+                }
+
+                if (next - start == 1) {
+                    Element e = read(first);
+                    first.hit(e);
+                    elements[markers.get(start)] = e;
+                } else {
+                    byte[] data = readBytes(first.getKey(), first.getPosition(), (int) (end - first.getPosition()));
+                    for (int i = start; i < next; i++) {
+                        int index = markers.get(i);
+                        DiskMarker marker = byIndex[index];
+                        int offset = (int) (marker.getPosition() - first.getPosition());
+                        Element e = (Element) serializer.deserialize(new ByteArrayInputStream(data, offset, marker.getSize()), classLoader);
+                        marker.hit(e);
+                        elements[index] = e;
+                    }
+                }
+                start = next;
+            }
+        } catch (IOException e) {
+            throw new CacheException(e);
+        } catch (ClassNotFoundException e) {
+            throw new CacheException(e);
+        }
+        return elements;
+    }
+
     /**
      * Returns <code>true</code> if this factory created the given object.
      *
@@ -919,6 +1428,9 @@ public class DiskStorageFactory {
     public void unbind() {
         try {
             flushTask.call();
+            if (indexLog != null) {
+                flushTask.checkpoint();
+            }
         } catch (Throwable t) {
             LOG.error("Could not flush disk cache. Initial cause was " + t.getMessage(), t);
         }
@@ -939,7 +1451,7 @@ public class DiskStorageFactory {
      * @return a Future
      */
     public Future<Void> flush() {
-        return schedule(flushTask);
+        return indexWriter.submit(flushTask);
     }
 
     private DiskMarker createMarker(long position, int size, Element element) {
@@ -1049,6 +1561,62 @@ public class DiskStorageFactory {
         return target != null ? target : hintTarget;
     }
 
+    /**
+     * Placeholders waiting to be written by a writer thread in a single batch.
+     * <p>
+     * At most one drain task per writer is queued at any time, it writes up to {@code diskWriteBatchSize}
+     * placeholders and reschedules itself while placeholders remain.
+     */
+    private final class WriteBatch implements Callable<Void> {
+
+        private final BlockingQueue<Placeholder> pending = new LinkedBlockingQueue<Placeholder>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final ExecutorService writer;
+
+        private WriteBatch(ExecutorService writer) {
+            this.writer = writer;
+        }
+
+        private void add(Placeholder placeholder) {
+            pending.add(placeholder);
+            if (scheduled.compareAndSet(false, true)) {
+                writer.submit(this);
+            }
+        }
+
+        private int size() {
+            return pending.size();
+        }
+
+        /**
+         * Writes everything pending, in batches. Only to be called from the writer thread.
+         */
+        private void drain() {
+            List<Placeholder> batch = new ArrayList<Placeholder>(writeBatchSize);
+            while (pending.drainTo(batch, writeBatchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Void call() {
+            try {
+                List<Placeholder> batch = new ArrayList<Placeholder>(writeBatchSize);
+                pending.drainTo(batch, writeBatchSize);
+                write(batch);
+            } finally {
+                scheduled.set(false);
+                if (!pending.isEmpty() && !writer.isShutdown() && scheduled.compareAndSet(false, true)) {
+                    writer.submit(this);
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * Disk write task implementation for disk persistent stores.
      */
@@ -1078,7 +1646,7 @@ public class DiskStorageFactory {
     }
 
     /**
-     * Task that writes the index file for this factory.
+     * Task that writes pending elements to disk and syncs the index file for this factory.
      */
     class IndexWriteTask implements Callable<Void> {
 
@@ -1100,70 +1668,197 @@ public class DiskStorageFactory {
          * {@inheritDoc}
          */
         public synchronized Void call() throws IOException, InterruptedException {
-            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(index));
+            awaitPendingWrites();
+            for (Object key : store.keySet()) {
+                Object o = store.unretrievedGet(key);
+                if (o instanceof Placeholder && !((Placeholder)o).failedToFlush) {
+                    new PersistentDiskWriteTask((Placeholder) o).call();
+                }
+            }
+            dataAccess.force();
+            if (indexLog != null) {
+                logPendingRemoves();
+                if (indexLog.needsCheckpoint()) {
+                    checkpoint();
+                } else {
+                    indexLog.force();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Waits for every writer to run the writes scheduled before this flush.
+         * <p>
+         * Writers run their tasks in order, so a task queued behind those writes completes after them. It also writes
+         * what is still pending in its writer's batch.
+         *
+         * @throws InterruptedException if interrupted while waiting
+         */
+        private void awaitPendingWrites() throws InterruptedException {
+            List<Future<Void>> barriers = new ArrayList<Future<Void>>(diskWriters.length);
+            for (int i = 0; i < diskWriters.length; i++) {
+                final WriteBatch writeBatch = writeBatches == null ? null : writeBatches[i];
+                try {
+                    barriers.add(diskWriters[i].submit(new Callable<Void>() {
+                        public Void call() {
+                            if (writeBatch != null) {
+                                writeBatch.drain();
+                            }
+                            return null;
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    // shutting down: the writer runs what is queued before terminating
+                    LOG.debug("Disk writer shut down, not waiting for its pending writes", e);
+                }
+            }
+            for (Future<Void> barrier : barriers) {
+                try {
+                    barrier.get();
+                } catch (ExecutionException e) {
+                    LOG.warn("Failed to write pending elements before flushing", e.getCause());
+                }
+            }
+        }
+
+        /**
+         * Rewrite the index log with one record per element currently on disk.
+         *
+         * @throws IOException on write error
+         */
+        synchronized void checkpoint() throws IOException {
+            DiskIndexLog.Checkpoint checkpoint = indexLog.checkpoint();
+            boolean committed = false;
             try {
                 for (Object key : store.keySet()) {
                     Object o = store.unretrievedGet(key);
-                    if (o instanceof Placeholder && !((Placeholder)o).failedToFlush) {
-                        o = new PersistentDiskWriteTask((Placeholder) o).call();
-                        if (o == null) {
-                            o = store.unretrievedGet(key);
-                        }
-                    }
-
                     if (o instanceof DiskMarker) {
                         DiskMarker marker = (DiskMarker) o;
-                        oos.writeObject(key);
-                        oos.writeObject(marker);
+                        checkpoint.put(key, marker.getPosition(), marker.getSize(), marker.getHitCount(), marker.getExpirationTime());
                     }
                 }
+                dataAccess.force();
+                checkpoint.commit();
+                committed = true;
             } finally {
-                oos.close();
+                if (!committed) {
+                    checkpoint.abort();
+                }
             }
+            LOG.debug("Checkpointed index file {}: {} bytes", index.getName(), indexLog.length());
+        }
+    }
+
+    /**
+     * Task that logs the removes of the frees queued since it was scheduled.
+     */
+    private final class IndexRemoveTask implements Callable<Void> {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Void call() {
+            removeLoggingScheduled.set(false);
+            logPendingRemoves();
             return null;
         }
+    }
+
+    /**
+     * Task that rewrites the index log once it grew too large.
+     */
+    private final class IndexCheckpointTask implements Callable<Void> {
 
+        /**
+         * {@inheritDoc}
+         */
+        public Void call() {
+            try {
+                flushTask.checkpoint();
+            } catch (Throwable t) {
+                LOG.warn("Failed to checkpoint index file " + indexFile.getName(), t);
+            } finally {
+                checkpointScheduled.set(false);
+            }
+            return null;
+        }
     }
 
     private void loadIndex() {
-        if (!indexFile.exists()) {
+        if (indexLog == null) {
             return;
         }
 
         try {
-            ObjectInputStream ois = new PreferredLoaderObjectInputStream(new FileInputStream(indexFile), classLoader);
-            try {
-                Object key = ois.readObject();
-                Object value = ois.readObject();
-
-                DiskMarker marker = (DiskMarker) value;
-                while (true) {
-                    marker.bindFactory(this);
-                    markUsed(marker);
-                    if (store.putRawIfAbsent(key, marker)) {
+            if (isLegacyIndex()) {
+                loadLegacyIndex();
+                deleteFile(indexFile);
+                indexLog.open();
+                flushTask.checkpoint();
+            } else {
+                boolean complete = true;
+                for (DiskIndexLog.Entry entry : indexLog.open()) {
+                    DiskMarker marker = new DiskMarker(this, entry.getPosition(), entry.getSize(), entry.getKey(), entry.getHitCount());
+                    marker.expiry = entry.getExpiry();
+                    if (store.putRawIfAbsent(entry.getKey(), marker)) {
+                        markUsed(marker);
                         onDisk.incrementAndGet();
                     } else {
                         // the disk pool is full
-                        return;
+                        complete = false;
+                        break;
                     }
-                    key = ois.readObject();
-                    marker = (DiskMarker) ois.readObject();
                 }
-            } finally {
-                ois.close();
+                if (!complete || indexLog.isDirty()) {
+                    // records of elements not loaded must not be replayed on next restart
+                    flushTask.checkpoint();
+                } else if (indexLog.needsCheckpoint()) {
+                    scheduleCheckpoint();
+                }
             }
-        } catch (EOFException e) {
-            // end of file reached, stop processing
         } catch (Exception e) {
             LOG.warn("Index file {} is corrupt, deleting and ignoring it : {}", indexFile, e);
-            e.printStackTrace();
             store.removeAll();
-            deleteFile(indexFile);
+            try {
+                indexLog.reset();
+            } catch (Exception f) {
+                LOG.error("Failed to recreate index file " + indexFile, f);
+            }
         } finally {
             shrinkDataFile();
         }
     }
 
+    /**
+     * Load an index written as a single serialized stream by a previous version.
+     */
+    private void loadLegacyIndex() throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new PreferredLoaderObjectInputStream(new FileInputStream(indexFile), classLoader);
+        try {
+            while (true) {
+                Object key;
+                try {
+                    key = ois.readObject();
+                } catch (EOFException e) {
+                    // end of file reached, stop processing
+                    return;
+                }
+                DiskMarker marker = (DiskMarker) ois.readObject();
+                marker.bindFactory(this);
+                if (store.putRawIfAbsent(key, marker)) {
+                    markUsed(marker);
+                    onDisk.incrementAndGet();
+                } else {
+                    // the disk pool is full
+                    return;
+                }
+            }
+        } finally {
+            ois.close();
+        }
+    }
+
     /**
      * Return the index file for this store.
      * @return the index file
@@ -37,6 +37,8 @@ import net.sf.ehcache.pool.impl.UnboundedPool;
 import net.sf.ehcache.store.AbstractStore;
 import net.sf.ehcache.store.AuthoritativeTier;
 import net.sf.ehcache.store.CacheStore;
+import net.sf.ehcache.store.Computation;
+import net.sf.ehcache.store.ComputingStore;
 import net.sf.ehcache.store.ElementValueComparator;
 import net.sf.ehcache.store.Policy;
 import net.sf.ehcache.store.Store;
@@ -64,8 +66,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -83,7 +87,7 @@ import static net.sf.ehcache.statistics.StatisticBuilder.operation;
  * @author Chris Dennis
  * @author Ludovic Orban
  */
-public final class DiskStore extends AbstractStore implements StripedReadWriteLockProvider, AuthoritativeTier {
+public final class DiskStore extends AbstractStore implements StripedReadWriteLockProvider, AuthoritativeTier, ComputingStore {
 
     private static final int FFFFCD7D = 0xffffcd7d;
     private static final int FIFTEEN = 15;
@@ -217,6 +221,16 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being read under a single acquisition of its lock.
+     */
+    public Map<Object, Element> faultAll(final Collection<?> keys, final boolean updateStats) {
+        Map<Object, Element> elements = getAll(keys, true);
+        observeGets(keys, elements);
+        return elements;
+    }
 
     @Override
     public boolean putFaulted(final Element element) {
@@ -455,6 +469,36 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * Return the number of tasks waiting to be run by the disk writers.
+     *
+     * @return the number of tasks waiting to be run by the disk writers
+     */
+    @Statistic(name = "write-queue-size", tags = "local-disk")
+    public int getWriteQueueSize() {
+        return disk.getWriteQueueSize();
+    }
+
+    /**
+     * Return the average time taken to write an element to the data file, in nanoseconds.
+     *
+     * @return the average write latency in nanoseconds
+     */
+    @Statistic(name = "write-latency", tags = "local-disk")
+    public long getAverageWriteLatency() {
+        return disk.getAverageWriteLatency();
+    }
+
+    /**
+     * Return the fraction of the data file that holds no element.
+     *
+     * @return the fragmentation ratio of the data file, between 0 and 1
+     */
+    @Statistic(name = "fragmentation", tags = "local-disk")
+    public float getFragmentation() {
+        return disk.getFragmentation();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -514,6 +558,41 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are grouped by segment. Each segment admits its elements to the heap pool without holding its lock,
+     * then installs them under a single acquisition of its lock.
+     */
+    @Override
+    public void putAll(Collection<Element> elements) {
+        List<List<Element>> partitions = new ArrayList<List<Element>>(Collections.<List<Element>>nCopies(segments.length, null));
+        for (Element element : elements) {
+            if (element != null) {
+                int index = hash(element.getObjectKey().hashCode()) >>> segmentShift;
+                List<Element> partition = partitions.get(index);
+                if (partition == null) {
+                    partition = new ArrayList<Element>();
+                    partitions.set(index, partition);
+                }
+                partition.add(element);
+            }
+        }
+        for (int i = 0; i < segments.length; i++) {
+            List<Element> partition = partitions.get(i);
+            if (partition != null) {
+                int[] hashes = new int[partition.size()];
+                for (int j = 0; j < hashes.length; j++) {
+                    hashes[j] = hash(partition.get(j).getObjectKey().hashCode());
+                }
+                for (Element oldElement : segments[i].putAll(partition, hashes)) {
+                    putObserver.begin();
+                    putObserver.end(oldElement == null ? PutOutcome.ADDED : PutOutcome.UPDATED);
+                }
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -564,6 +643,26 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being read under a single acquisition of its lock.
+     */
+    @Override
+    public Map<Object, Element> getAll(Collection<?> keys) {
+        Map<Object, Element> elements = getAll(keys, false);
+        observeGets(keys, elements);
+        return elements;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, Element> getAllQuiet(Collection<?> keys) {
+        return getAll(keys, false);
+    }
+
     /**
      * Return the unretrieved (undecoded) value for this key
      *
@@ -629,6 +728,24 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, and removed one at a time so that the segment lock is never held for the
+     * whole batch.
+     */
+    @Override
+    public void removeAll(Collection<?> keys) {
+        List<List<Object>> partitions = keysBySegment(keys);
+        for (List<Object> partition : partitions) {
+            if (partition != null) {
+                for (Object key : partition) {
+                    remove(key);
+                }
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -647,6 +764,17 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The computation runs while holding the write lock of the key's segment, the computed element is only added to
+     * the heap pool once that lock is released.
+     */
+    public Element compute(Object key, Computation computation) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).compute(key, hash, computation);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -824,6 +952,19 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         return segmentFor(hash).fault(key, hash, expect, fault, status.get() == Status.STATUS_SHUTDOWN);
     }
 
+    /**
+     * Replace the marker mapped to the given key by a marker of the same element stored at another position.
+     *
+     * @param key key to match against
+     * @param expect marker currently mapped
+     * @param relocated marker to install
+     * @return <code>true</code> if <code>relocated</code> was installed
+     */
+    boolean relocate(Object key, DiskMarker expect, DiskMarker relocated) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).relocate(key, hash, expect, relocated);
+    }
+
     /**
      * Remove the matching mapping. The evict method does referential comparison
      * of the unretrieved substitute against the argument value.
@@ -884,7 +1025,7 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         return sampled;
     }
 
-    private static int hash(int hash) {
+    static int hash(int hash) {
         int spread = hash;
         spread += (spread << FIFTEEN ^ FFFFCD7D);
         spread ^= spread >>> TEN;
@@ -898,6 +1039,52 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         return segments[hash >>> segmentShift];
     }
 
+    /**
+     * Groups the given keys by the segment they belong to, null keys being dropped.
+     *
+     * @param keys the keys to group
+     * @return the keys of each segment, indexed as the segments, <code>null</code> for segments none of the keys belong to
+     */
+    private List<List<Object>> keysBySegment(Collection<?> keys) {
+        List<List<Object>> partitions = new ArrayList<List<Object>>(Collections.<List<Object>>nCopies(segments.length, null));
+        for (Object key : keys) {
+            if (key != null) {
+                int index = hash(key.hashCode()) >>> segmentShift;
+                List<Object> partition = partitions.get(index);
+                if (partition == null) {
+                    partition = new ArrayList<Object>();
+                    partitions.set(index, partition);
+                }
+                partition.add(key);
+            }
+        }
+        return partitions;
+    }
+
+    private Map<Object, Element> getAll(Collection<?> keys, boolean markFaulted) {
+        Map<Object, Element> elements = new HashMap<Object, Element>();
+        List<List<Object>> partitions = keysBySegment(keys);
+        for (int i = 0; i < segments.length; i++) {
+            List<Object> partition = partitions.get(i);
+            if (partition != null) {
+                segments[i].getAll(partition, markFaulted, elements);
+            }
+        }
+        for (Object key : keys) {
+            if (!elements.containsKey(key)) {
+                elements.put(key, null);
+            }
+        }
+        return elements;
+    }
+
+    private void observeGets(Collection<?> keys, Map<Object, Element> elements) {
+        for (Object key : keys) {
+            getObserver.begin();
+            getObserver.end(elements.get(key) == null ? GetOutcome.MISS : GetOutcome.HIT);
+        }
+    }
+
     /**
      * Key set implementation for the DiskStore
      */
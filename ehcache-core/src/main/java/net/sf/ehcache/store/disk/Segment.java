@@ -25,6 +25,7 @@ import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.PinningConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
 import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.store.Computation;
 import net.sf.ehcache.store.ElementValueComparator;
 import net.sf.ehcache.store.disk.DiskStorageFactory.DiskMarker;
 import net.sf.ehcache.store.disk.DiskStorageFactory.DiskSubstitute;
@@ -36,8 +37,12 @@ import org.slf4j.LoggerFactory;
 import org.terracotta.statistics.observer.OperationObserver;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -233,6 +238,47 @@ public class Segment extends ReentrantReadWriteLock {
         }
     }
 
+    /**
+     * Get the elements mapped to the given keys, decoding them under a single acquisition of the read lock.
+     * <p>
+     * Elements stored on disk are read in data file order, see {@link DiskStorageFactory#retrieveAll(List)}.
+     *
+     * @param keys keys to lookup, all belonging to this segment
+     * @param markFaulted whether the found entries should be marked as faulted
+     * @param result map the found elements are added to
+     */
+    void getAll(Collection<?> keys, final boolean markFaulted, Map<Object, Element> result) {
+        readLock().lock();
+        try {
+            // read-volatile
+            if (count != 0) {
+                List<Object> found = new ArrayList<Object>(keys.size());
+                List<DiskSubstitute> substitutes = new ArrayList<DiskSubstitute>(keys.size());
+                for (Object key : keys) {
+                    int hash = DiskStore.hash(key.hashCode());
+                    HashEntry e = getFirst(hash);
+                    while (e != null) {
+                        if (e.hash == hash && key.equals(e.key)) {
+                            if (markFaulted) {
+                                e.faulted.set(true);
+                            }
+                            found.add(key);
+                            substitutes.add(e.element);
+                            break;
+                        }
+                        e = e.next;
+                    }
+                }
+                Element[] elements = disk.retrieveAll(substitutes);
+                for (int i = 0; i < elements.length; i++) {
+                    result.put(found.get(i), elements[i]);
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+    }
+
     /**
      * Return the unretrieved (undecoded) value for this key
      *
@@ -422,7 +468,125 @@ public class Segment extends ReentrantReadWriteLock {
      * @return previous element mapped to this key
      */
     Element put(Object key, int hash, Element element, boolean onlyIfAbsent, boolean faulted) {
+        DiskSubstitute encoded = admit(key, element, faulted);
+        if (encoded == null) {
+            return null;
+        }
+
         boolean installed = false;
+        writeLock().lock();
+        try {
+            Element oldElement = install(key, hash, element, encoded, onlyIfAbsent, faulted);
+            installed = !onlyIfAbsent || oldElement == null;
+            return oldElement;
+        } finally {
+            writeLock().unlock();
+
+            if (installed) {
+                encoded.installed();
+            }
+        }
+    }
+
+    /**
+     * Add the supplied mappings, replacing existing ones.
+     * <p>
+     * The elements are all added to the heap pool first, which may evict and notify listeners, and only then
+     * installed under a single acquisition of the segment write lock.
+     *
+     * @param elements elements to store
+     * @param hashes spread-hashes for the keys of the elements
+     * @return the previous elements mapped to the keys, in the order of the supplied elements
+     */
+    List<Element> putAll(List<Element> elements, int[] hashes) {
+        DiskSubstitute[] encodings = new DiskSubstitute[elements.size()];
+        boolean admitted = false;
+        for (int i = 0; i < encodings.length; i++) {
+            Element element = elements.get(i);
+            encodings[i] = admit(element.getObjectKey(), element, false);
+            admitted |= encodings[i] != null;
+        }
+
+        List<Element> oldElements = new ArrayList<Element>(Collections.<Element>nCopies(encodings.length, null));
+        if (!admitted) {
+            return oldElements;
+        }
+        int installed = 0;
+        writeLock().lock();
+        try {
+            for (; installed < encodings.length; installed++) {
+                if (encodings[installed] != null) {
+                    Element element = elements.get(installed);
+                    oldElements.set(installed, install(element.getObjectKey(), hashes[installed], element, encodings[installed], false, false));
+                }
+            }
+            return oldElements;
+        } finally {
+            writeLock().unlock();
+
+            for (int i = 0; i < installed; i++) {
+                if (encodings[i] != null) {
+                    encodings[i].installed();
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the mapping of the supplied key.
+     * <p>
+     * The computation runs and its result is installed under the segment write lock. The computed element only
+     * joins the heap pool once the lock is released, as adding to the pool may evict from other segments.
+     *
+     * @param key key to compute
+     * @param hash spread-hash for the key
+     * @param computation the computation
+     * @return the element now mapped to the key, or null if there is none
+     */
+    Element compute(Object key, int hash, Computation computation) {
+        Element computed;
+        DiskSubstitute encoded;
+        writeLock().lock();
+        try {
+            Element current = get(key, hash, false);
+            computed = computation.compute(key, current);
+            if (computed == current) {
+                return computed;
+            } else if (computed == null) {
+                remove(key, hash, null, null);
+                return null;
+            }
+            encoded = disk.create(computed);
+            install(key, hash, computed, encoded, false, false);
+        } finally {
+            writeLock().unlock();
+        }
+        encoded.installed();
+
+        final long incomingHeapSize = onHeapPoolAccessor.add(key, encoded, NULL_HASH_ENTRY, true);
+        writeLock().lock();
+        try {
+            HashEntry e = getFirst(hash);
+            while (e != null && (e.hash != hash || !key.equals(e.key))) {
+                e = e.next;
+            }
+            if (e != null && e.element == encoded) {
+                encoded.onHeapSize = incomingHeapSize;
+            } else {
+                onHeapPoolAccessor.delete(incomingHeapSize);
+            }
+        } finally {
+            writeLock().unlock();
+        }
+        return computed;
+    }
+
+    /**
+     * Encode the element and add it to the heap pool, which may evict. Must be called without holding the lock.
+     *
+     * @return the encoded element, or null if the pool refused it, in which case it has been notified as evicted
+     */
+    private DiskSubstitute admit(Object key, Element element, boolean faulted) {
         DiskSubstitute encoded = disk.create(element);
         final long incomingHeapSize = onHeapPoolAccessor.add(key, encoded, NULL_HASH_ENTRY, cachePinned || faulted);
         if (incomingHeapSize < 0) {
@@ -433,65 +597,61 @@ public class Segment extends ReentrantReadWriteLock {
         } else {
             LOG.debug("put added {} on heap", incomingHeapSize);
             encoded.onHeapSize = incomingHeapSize;
+            return encoded;
         }
+    }
 
-        writeLock().lock();
-        try {
-            // ensure capacity
-            if (count + 1 > threshold) {
-                rehash();
-            }
-            HashEntry[] tab = table;
-            int index = hash & (tab.length - 1);
-            HashEntry first = tab[index];
-            HashEntry e = first;
-            while (e != null && (e.hash != hash || !key.equals(e.key))) {
-                e = e.next;
-            }
-
-            Element oldElement;
-            if (e != null) {
-                DiskSubstitute onDiskSubstitute = e.element;
-                if (!onlyIfAbsent) {
-                    e.element = encoded;
-                    installed = true;
-                    oldElement = decode(onDiskSubstitute);
+    /**
+     * Install an admitted element, must be called under the write lock.
+     *
+     * @return previous element mapped to this key
+     */
+    private Element install(Object key, int hash, Element element, DiskSubstitute encoded, boolean onlyIfAbsent, boolean faulted) {
+        // ensure capacity
+        if (count + 1 > threshold) {
+            rehash();
+        }
+        HashEntry[] tab = table;
+        int index = hash & (tab.length - 1);
+        HashEntry first = tab[index];
+        HashEntry e = first;
+        while (e != null && (e.hash != hash || !key.equals(e.key))) {
+            e = e.next;
+        }
 
-                    free(onDiskSubstitute);
-                    final long existingHeapSize = onHeapPoolAccessor.delete(onDiskSubstitute.onHeapSize);
-                    LOG.debug("put updated, deleted {} on heap", existingHeapSize);
+        Element oldElement;
+        if (e != null) {
+            DiskSubstitute onDiskSubstitute = e.element;
+            if (!onlyIfAbsent) {
+                e.element = encoded;
+                oldElement = decode(onDiskSubstitute);
 
-                    if (onDiskSubstitute instanceof DiskStorageFactory.DiskMarker) {
-                        final long existingDiskSize = onDiskPoolAccessor.delete(((DiskStorageFactory.DiskMarker) onDiskSubstitute).getSize());
-                        LOG.debug("put updated, deleted {} on disk", existingDiskSize);
-                    }
-                    e.faulted.set(faulted);
-                    cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, element);
-                } else {
-                    oldElement = decode(onDiskSubstitute);
+                free(onDiskSubstitute);
+                final long existingHeapSize = onHeapPoolAccessor.delete(onDiskSubstitute.onHeapSize);
+                LOG.debug("put updated, deleted {} on heap", existingHeapSize);
 
-                    free(encoded);
-                    final long outgoingHeapSize = onHeapPoolAccessor.delete(encoded.onHeapSize);
-                    LOG.debug("put if absent failed, deleted {} on heap", outgoingHeapSize);
+                if (onDiskSubstitute instanceof DiskStorageFactory.DiskMarker) {
+                    final long existingDiskSize = onDiskPoolAccessor.delete(((DiskStorageFactory.DiskMarker) onDiskSubstitute).getSize());
+                    LOG.debug("put updated, deleted {} on disk", existingDiskSize);
                 }
+                e.faulted.set(faulted);
+                cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, element);
             } else {
-                oldElement = null;
-                ++modCount;
-                tab[index] = new HashEntry(key, hash, first, encoded, new AtomicBoolean(faulted));
-                installed = true;
-                // write-volatile
-                count = count + 1;
-                cacheEventNotificationService.notifyElementPutOrdered(element);
-            }
-            return oldElement;
-
-        } finally {
-            writeLock().unlock();
+                oldElement = decode(onDiskSubstitute);
 
-            if (installed) {
-                encoded.installed();
+                free(encoded);
+                final long outgoingHeapSize = onHeapPoolAccessor.delete(encoded.onHeapSize);
+                LOG.debug("put if absent failed, deleted {} on heap", outgoingHeapSize);
             }
+        } else {
+            oldElement = null;
+            ++modCount;
+            tab[index] = new HashEntry(key, hash, first, encoded, new AtomicBoolean(faulted));
+            // write-volatile
+            count = count + 1;
+            cacheEventNotificationService.notifyElementPutOrdered(element);
         }
+        return oldElement;
     }
 
 
@@ -758,6 +918,7 @@ public class Segment extends ReentrantReadWriteLock {
             final long deltaHeapSize = onHeapPoolAccessor.replace(expect.onHeapSize, key, fault, NULL_HASH_ENTRY, faulted || cachePinned);
             if (deltaHeapSize == Long.MIN_VALUE) {
                 remove(key, hash, null, null);
+                free(fault, true);
                 return false;
             } else {
                 fault.onHeapSize = expect.onHeapSize + deltaHeapSize;
@@ -806,6 +967,33 @@ public class Segment extends ReentrantReadWriteLock {
         return false;
     }
 
+    /**
+     * Replace the marker mapped to the given key by a marker of the same element stored at another position,
+     * freeing the original marker.
+     *
+     * @param key key to match against
+     * @param hash spread-hash for the key
+     * @param expect marker currently mapped
+     * @param relocated marker to install
+     * @return <code>true</code> if <code>relocated</code> was installed
+     */
+    boolean relocate(Object key, int hash, DiskMarker expect, DiskMarker relocated) {
+        writeLock().lock();
+        try {
+            for (HashEntry e = getFirst(hash); e != null; e = e.next) {
+                if (e.hash == hash && key.equals(e.key) && e.element == expect) {
+                    e.element = relocated;
+                    // the element is still on disk: free the old location without touching the on-disk count
+                    free(expect, true);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
     @Deprecated
     private boolean returnSafeDeprecated(final Object key, final int hash, final Element element) {
         notifyEviction(remove(key, hash, null, null));
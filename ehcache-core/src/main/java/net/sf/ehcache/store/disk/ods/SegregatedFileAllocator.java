@@ -0,0 +1,346 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk.ods;
+
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A data file space allocator that segregates small records by size class.
+ * <p>
+ * Records up to {@link #MAX_SLOT_SIZE} bytes are rounded up to a size class and stored in fixed size slots
+ * of slabs, each size class being split in lock stripes. Slabs, larger records and extents are carved out
+ * of a {@link FileAllocationTree}, whose lock is only taken when a slab is created or released.
+ * <p>
+ * A region is freed to the slab that contains it, or else to the tree: a region need not be freed with the
+ * granularity it was allocated with as long as it does not lie in a slab.
+ */
+public final class SegregatedFileAllocator {
+
+    /**
+     * Largest record stored in a slab slot.
+     */
+    public static final int MAX_SLOT_SIZE = 64 * 1024;
+
+    private static final int MIN_SLOT_SIZE = 32;
+    private static final int SLOT_ALIGNMENT = 16;
+    private static final int SLOTS_PER_SLAB = 64;
+    private static final int MIN_SLAB_SIZE = 16 * 1024;
+    private static final int MAX_SLAB_SIZE = 1024 * 1024;
+
+    private final FileAllocationTree tree;
+    private final int[] slotSizes;
+    private final SizeClass[] sizeClasses;
+    private final ConcurrentSkipListMap<Long, Slab> slabs = new ConcurrentSkipListMap<Long, Slab>();
+    private final AtomicLong occupied = new AtomicLong();
+
+    /**
+     * Create an allocator for the given file, capping it's size at maxSize.
+     *
+     * @param maxSize maximum size of the file
+     * @param file file truncated as space is freed at its end, may be {@code null}
+     * @param stripes number of lock stripes per size class (must be a power of two)
+     */
+    public SegregatedFileAllocator(long maxSize, RandomAccessFile file, int stripes) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two: " + stripes);
+        }
+        this.tree = new FileAllocationTree(maxSize, file);
+        this.slotSizes = slotSizes();
+        this.sizeClasses = new SizeClass[slotSizes.length];
+        for (int i = 0; i < slotSizes.length; i++) {
+            sizeClasses[i] = new SizeClass(slotSizes[i], stripes);
+        }
+    }
+
+    private static int[] slotSizes() {
+        List<Integer> sizes = new ArrayList<Integer>();
+        int size = MIN_SLOT_SIZE;
+        while (size < MAX_SLOT_SIZE) {
+            sizes.add(size);
+            size = Math.max(size + SLOT_ALIGNMENT, ((size + (size >>> 2)) + SLOT_ALIGNMENT - 1) & ~(SLOT_ALIGNMENT - 1));
+        }
+        sizes.add(MAX_SLOT_SIZE);
+        int[] result = new int[sizes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sizes.get(i);
+        }
+        return result;
+    }
+
+    private int sizeClass(long size) {
+        int low = 0;
+        int high = slotSizes.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (slotSizes[mid] < size) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Allocate a new region of the given size.
+     *
+     * @param size the size of the region
+     * @return the allocated region
+     */
+    public Region alloc(long size) {
+        Region r;
+        if (size > MAX_SLOT_SIZE) {
+            r = tree.alloc(size);
+        } else {
+            r = sizeClasses[sizeClass(size)].alloc(size);
+        }
+        occupied.addAndGet(size);
+        return r;
+    }
+
+    /**
+     * Allocate a new region of the given size outside of any slab.
+     * <p>
+     * Extents can be freed piecewise, and are used to store several records contiguously.
+     *
+     * @param size the size of the region
+     * @return the allocated region
+     */
+    public Region allocExtent(long size) {
+        Region r = tree.alloc(size);
+        occupied.addAndGet(size);
+        return r;
+    }
+
+    /**
+     * Mark this region as used.
+     * <p>
+     * This is used while reloading a data file, before any slab was created.
+     *
+     * @param r the region to mark
+     */
+    public void mark(Region r) {
+        tree.mark(r);
+        occupied.addAndGet(r.size());
+    }
+
+    /**
+     * Mark this region as free.
+     *
+     * @param r the region to free
+     */
+    public void free(Region r) {
+        Map.Entry<Long, Slab> entry = slabs.floorEntry(r.start());
+        if (entry != null && entry.getValue().contains(r.start())) {
+            Slab slab = entry.getValue();
+            slab.stripe.free(slab, r);
+        } else {
+            tree.free(r);
+        }
+        occupied.addAndGet(-r.size());
+    }
+
+    /**
+     * Mark the whole file as free.
+     */
+    public void clear() {
+        for (SizeClass sizeClass : sizeClasses) {
+            sizeClass.clear();
+        }
+        slabs.clear();
+        tree.clear();
+        occupied.set(0);
+    }
+
+    /**
+     * Return the current size of the file.
+     *
+     * @return the current size of the file
+     */
+    public long getFileSize() {
+        return tree.getFileSize();
+    }
+
+    /**
+     * Return the number of bytes of the file holding allocated records.
+     *
+     * @return the occupied size of the file
+     */
+    public long getOccupiedSize() {
+        return occupied.get();
+    }
+
+    /**
+     * Return the fraction of the file that holds no record, either because it is free or because it is
+     * wasted rounding records up to their size class.
+     *
+     * @return the fragmentation ratio, between 0 and 1
+     */
+    public float getFragmentation() {
+        long fileSize = getFileSize();
+        if (fileSize == 0) {
+            return 0f;
+        } else {
+            return Math.max(0f, 1f - ((float) occupied.get() / fileSize));
+        }
+    }
+
+    /**
+     * The lock stripes of a size class.
+     */
+    private final class SizeClass {
+
+        private final Stripe[] stripes;
+
+        private SizeClass(int slotSize, int stripeCount) {
+            this.stripes = new Stripe[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new Stripe(slotSize);
+            }
+        }
+
+        private Region alloc(long size) {
+            Stripe stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+            return stripe.alloc(size);
+        }
+
+        private void clear() {
+            for (Stripe stripe : stripes) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * A set of slabs of a given slot size, guarded by the stripe monitor.
+     * <p>
+     * Slabs with free slots are kept ordered by position so that allocations favor the start of the file,
+     * empty slabs are given back to the tree so that the file can shrink.
+     */
+    private final class Stripe {
+
+        private final int slotSize;
+        private final int slabSize;
+        private final TreeSet<Slab> available = new TreeSet<Slab>();
+
+        private Stripe(int slotSize) {
+            this.slotSize = slotSize;
+            this.slabSize = Math.max(Math.min(slotSize * SLOTS_PER_SLAB, MAX_SLAB_SIZE), MIN_SLAB_SIZE) / slotSize * slotSize;
+        }
+
+        private synchronized Region alloc(long size) {
+            Slab slab;
+            if (available.isEmpty()) {
+                Region r = tree.alloc(slabSize);
+                slab = new Slab(this, r.start(), slotSize, slabSize / slotSize);
+                slabs.put(r.start(), slab);
+                available.add(slab);
+            } else {
+                slab = available.first();
+            }
+            long position = slab.allocate();
+            if (slab.isFull()) {
+                available.remove(slab);
+            }
+            return new Region(position, position + size - 1);
+        }
+
+        private synchronized void free(Slab slab, Region r) {
+            boolean wasFull = slab.isFull();
+            slab.free(r.start());
+            if (wasFull) {
+                available.add(slab);
+            }
+            if (slab.isEmpty()) {
+                available.remove(slab);
+                slabs.remove(slab.start);
+                tree.free(new Region(slab.start, slab.start + slabSize - 1));
+            }
+        }
+
+        private synchronized void clear() {
+            available.clear();
+        }
+    }
+
+    /**
+     * A region of the file split in equally sized slots.
+     */
+    private static final class Slab implements Comparable<Slab> {
+
+        private final Stripe stripe;
+        private final long start;
+        private final int slotSize;
+        private final int slotCount;
+        private final BitSet free;
+        private int used;
+
+        private Slab(Stripe stripe, long start, int slotSize, int slotCount) {
+            this.stripe = stripe;
+            this.start = start;
+            this.slotSize = slotSize;
+            this.slotCount = slotCount;
+            this.free = new BitSet(slotCount);
+            this.free.set(0, slotCount);
+        }
+
+        private boolean contains(long position) {
+            return position >= start && position < start + ((long) slotSize * slotCount);
+        }
+
+        private long allocate() {
+            int slot = free.nextSetBit(0);
+            free.clear(slot);
+            used++;
+            return start + ((long) slot * slotSize);
+        }
+
+        private void free(long position) {
+            long offset = position - start;
+            int slot = (int) (offset / slotSize);
+            if (offset % slotSize != 0 || free.get(slot)) {
+                throw new IllegalArgumentException("Region at " + position + " is not an allocated slot of " + this);
+            }
+            free.set(slot);
+            used--;
+        }
+
+        private boolean isFull() {
+            return used == slotCount;
+        }
+
+        private boolean isEmpty() {
+            return used == 0;
+        }
+
+        public int compareTo(Slab other) {
+            return start < other.start ? -1 : (start == other.start ? 0 : 1);
+        }
+
+        @Override
+        public String toString() {
+            return "Slab(" + start + "," + slotSize + "x" + slotCount + ")";
+        }
+    }
+}
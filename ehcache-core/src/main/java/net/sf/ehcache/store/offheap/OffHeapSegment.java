@@ -0,0 +1,1043 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.PinningConfiguration;
+import net.sf.ehcache.event.RegisteredEventListeners;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.serialization.Serializer;
+import net.sf.ehcache.store.ElementValueComparator;
+import net.sf.ehcache.util.MemoryEfficientByteArrayOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.statistics.observer.OperationObserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Segment of an {@link OffHeapStore}.
+ * <p>
+ * Elements are stored serialized in the direct buffers of the segment's {@link SlabAllocator}. The segment's hash
+ * index is made of primitive arrays only (open addressing with linear probing), so that the heap footprint of the
+ * segment does not depend on the number of entries it holds but only on its capacity, and the garbage collector has
+ * no object graph to walk.
+ * <p>
+ * Each record holds the serialized key and the expiration time ahead of the serialized element. Lookups compare
+ * the key bytes of colliding records with those of the probed key, and expiry only reads the expiration time, so
+ * that neither has to deserialize whole elements.
+ * <p>
+ * The segment extends ReentrantReadWriteLock to allow read locking on read operations. Per-entry faulted and
+ * accessed bits are kept in an atomic array so that they can be updated under the read lock.
+ * Eviction uses the CLOCK algorithm over the index: accessed entries get a second chance, faulted entries are never
+ * evicted.
+ */
+class OffHeapSegment extends ReentrantReadWriteLock {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapSegment.class.getName());
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MAXIMUM_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE);
+
+    private static final long EMPTY = 0L;
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private static final int KEY_LENGTH_SIZE = 4;
+    private static final int EXPIRY_SIZE = 8;
+    private static final int KEY_SIZE_GUESS = 64;
+
+    private static final int FAULTED = 1;
+    private static final int ACCESSED = 2;
+
+    /**
+     * Count of elements in the segment.
+     */
+    protected volatile int count;
+
+    /**
+     * Mod-count used to track concurrent modifications when doing size calculations.
+     */
+    protected int modCount;
+
+    private final OffHeapStore store;
+    private final SlabAllocator allocator;
+    private final ClassLoader classLoader;
+    private final Serializer serializer;
+    private final PoolAccessor offHeapPoolAccessor;
+    private final RegisteredEventListeners cacheEventNotificationService;
+    private final OperationObserver<EvictionOutcome> evictionObserver;
+    private final boolean cachePinned;
+
+    private int[] hashes;
+    private long[] addresses;
+    private AtomicIntegerArray flags;
+    private int tombstones;
+    private int threshold;
+    private int clockHand;
+
+    /**
+     * Create a segment.
+     *
+     * @param store the store this segment belongs to
+     * @param initialCapacity initial capacity of the index, must be a power of two
+     * @param allocator the allocator holding this segment's records
+     * @param cacheConfiguration the cache configuration
+     * @param offHeapPoolAccessor the pool tracking off-heap usage
+     * @param cacheEventNotificationService the event service to notify
+     * @param evictionObserver the observer of evictions
+     */
+    OffHeapSegment(OffHeapStore store, int initialCapacity, SlabAllocator allocator, CacheConfiguration cacheConfiguration,
+                   PoolAccessor offHeapPoolAccessor, RegisteredEventListeners cacheEventNotificationService,
+                   OperationObserver<EvictionOutcome> evictionObserver) {
+        this.store = store;
+        this.allocator = allocator;
+        this.classLoader = cacheConfiguration.getClassLoader();
+        this.serializer = cacheConfiguration.getSerializer();
+        this.offHeapPoolAccessor = offHeapPoolAccessor;
+        this.cacheEventNotificationService = cacheEventNotificationService;
+        this.evictionObserver = evictionObserver;
+        this.cachePinned = determineCachePinned(cacheConfiguration);
+        allocateIndex(initialCapacity);
+    }
+
+    private static boolean determineCachePinned(CacheConfiguration cacheConfiguration) {
+        PinningConfiguration pinningConfiguration = cacheConfiguration.getPinningConfiguration();
+        if (pinningConfiguration == null) {
+            return false;
+        }
+
+        switch (pinningConfiguration.getStore()) {
+            case LOCALMEMORY:
+                return false;
+
+            case INCACHE:
+                return cacheConfiguration.isOverflowToOffHeap();
+
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Get the element mapped to this key (or null if there is no mapping for this key)
+     *
+     * @param key key to lookup
+     * @param hash spread-hash for this key
+     * @param markFaulted whether to mark the mapping as faulted
+     * @return mapped element
+     */
+    Element get(Object key, int hash, boolean markFaulted) {
+        readLock().lock();
+        try {
+            if (count == 0) {
+                return null;
+            }
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            setFlag(slot, markFaulted ? FAULTED | ACCESSED : ACCESSED);
+            return decode(addresses[slot]);
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the elements mapped to the given keys under a single acquisition of the read lock
+     *
+     * @param keys keys to lookup, all belonging to this segment
+     * @param markFaulted whether to mark the found mappings as faulted
+     * @param result map the found elements are added to
+     */
+    void getAll(Collection<?> keys, boolean markFaulted, Map<Object, Element> result) {
+        readLock().lock();
+        try {
+            if (count == 0) {
+                return;
+            }
+            for (Object key : keys) {
+                int slot = find(key, OffHeapStore.hash(key.hashCode()));
+                if (slot >= 0) {
+                    setFlag(slot, markFaulted ? FAULTED | ACCESSED : ACCESSED);
+                    result.put(key, decode(addresses[slot]));
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Return true if this segment contains a mapping for this key
+     *
+     * @param key key to check for
+     * @param hash spread-hash for key
+     * @return <code>true</code> if there is a mapping for <code>key</code>
+     */
+    boolean containsKey(Object key, int hash) {
+        readLock().lock();
+        try {
+            return count != 0 && find(key, hash) >= 0;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Put the given mapping into the segment.
+     *
+     * @param key key to map the element to
+     * @param hash spread-hash for the key
+     * @param element element to store
+     * @param onlyIfAbsent if true does not replace existing mappings
+     * @param faulted whether the mapping is held by the caching tier
+     * @return previous element mapped to this key
+     */
+    Element put(Object key, int hash, Element element, boolean onlyIfAbsent, boolean faulted) {
+        byte[] record = admit(key, element, faulted);
+        if (record == null) {
+            return null;
+        }
+
+        List<Element> evicted = new ArrayList<Element>(0);
+        writeLock().lock();
+        try {
+            return install(key, hash, element, record, onlyIfAbsent, faulted, evicted);
+        } finally {
+            writeLock().unlock();
+            notifyEvictions(evicted);
+        }
+    }
+
+    /**
+     * Add the supplied mappings, replacing existing ones.
+     * <p>
+     * The elements are all serialized and added to the off-heap pool first, and only then installed under a single
+     * acquisition of the segment write lock. Evictions are notified once the lock is released.
+     *
+     * @param elements elements to store
+     * @param hashes spread-hashes for the keys of the elements
+     * @return the previous elements mapped to the keys, in the order of the supplied elements
+     */
+    List<Element> putAll(List<Element> elements, int[] hashes) {
+        byte[][] records = new byte[elements.size()][];
+        boolean admitted = false;
+        for (int i = 0; i < records.length; i++) {
+            Element element = elements.get(i);
+            records[i] = admit(element.getObjectKey(), element, false);
+            admitted |= records[i] != null;
+        }
+
+        List<Element> oldElements = new ArrayList<Element>(Collections.<Element>nCopies(records.length, null));
+        if (!admitted) {
+            return oldElements;
+        }
+        List<Element> evicted = new ArrayList<Element>(0);
+        writeLock().lock();
+        try {
+            for (int i = 0; i < records.length; i++) {
+                if (records[i] != null) {
+                    Element element = elements.get(i);
+                    oldElements.set(i, install(element.getObjectKey(), hashes[i], element, records[i], false, false, evicted));
+                }
+            }
+            return oldElements;
+        } finally {
+            writeLock().unlock();
+            notifyEvictions(evicted);
+        }
+    }
+
+    /**
+     * Serialize the element and add it to the off-heap pool, which may evict. Must be called without holding the lock.
+     *
+     * @return the serialized element, or null if it could not be added, in which case it has been notified as evicted
+     */
+    private byte[] admit(Object key, Element element, boolean faulted) {
+        byte[] record = serialize(element);
+        if (record == null || offHeapPoolAccessor.add(key, null, record, cachePinned || faulted) < 0) {
+            LOG.debug("put failed to add off-heap");
+            notifyEviction(element);
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Install an admitted element, must be called under the write lock. Elements evicted to make room, and the
+     * element itself if it could not be allocated, are collected for notification once the lock is released.
+     *
+     * @return previous element mapped to this key
+     */
+    private Element install(Object key, int hash, Element element, byte[] record, boolean onlyIfAbsent, boolean faulted,
+                            List<Element> evicted) {
+        ensureCapacity();
+        int slot = find(key, hash);
+        Element oldElement = slot < 0 ? null : decode(addresses[slot]);
+        if (oldElement != null && onlyIfAbsent) {
+            offHeapPoolAccessor.delete(allocator.recordSize(record.length));
+            return oldElement;
+        }
+
+        long address = store(record, slot, evicted);
+        if (address == SlabAllocator.FAILED) {
+            LOG.debug("put failed to allocate off-heap");
+            offHeapPoolAccessor.delete(allocator.recordSize(record.length));
+            if (oldElement != null) {
+                offHeapPoolAccessor.delete(removeAt(slot));
+                cacheEventNotificationService.notifyElementRemovedOrdered(oldElement);
+            }
+            evicted.add(element);
+            return oldElement;
+        }
+
+        if (oldElement == null) {
+            insert(hash, address, faulted);
+            cacheEventNotificationService.notifyElementPutOrdered(element);
+        } else {
+            overwrite(slot, address, faulted);
+            cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, element);
+        }
+        return oldElement;
+    }
+
+    /**
+     * Replace the element mapped to this key only if currently mapped to the given element.
+     *
+     * @param key key to map the element to
+     * @param hash spread-hash for the key
+     * @param oldElement expected element
+     * @param newElement element to add
+     * @param comparator the comparator to use to compare values
+     * @return <code>true</code> on a successful replace
+     */
+    boolean replace(Object key, int hash, Element oldElement, Element newElement, ElementValueComparator comparator) {
+        return replace(key, hash, oldElement, newElement, comparator, true) != null;
+    }
+
+    /**
+     * Replace the entry for this key only if currently mapped to some element.
+     *
+     * @param key key to map the element to
+     * @param hash spread-hash for the key
+     * @param newElement element to add
+     * @return previous element mapped to this key
+     */
+    Element replace(Object key, int hash, Element newElement) {
+        return replace(key, hash, null, newElement, null, false);
+    }
+
+    private Element replace(Object key, int hash, Element expected, Element newElement, ElementValueComparator comparator,
+                            boolean compare) {
+        byte[] record = serialize(newElement);
+        if (record == null || offHeapPoolAccessor.add(key, null, record, cachePinned) < 0) {
+            LOG.debug("replace failed to add off-heap");
+            Element removed = compare ? remove(key, hash, expected, comparator) : remove(key, hash, null, null);
+            notifyEviction(newElement);
+            return removed;
+        }
+
+        List<Element> evicted = new ArrayList<Element>(0);
+        boolean dropped = false;
+        writeLock().lock();
+        try {
+            int slot = count == 0 ? -1 : find(key, hash);
+            Element existing = slot < 0 ? null : decode(addresses[slot]);
+            if (existing == null || (compare && !comparator.equals(expected, existing))) {
+                offHeapPoolAccessor.delete(allocator.recordSize(record.length));
+                return null;
+            }
+
+            long address = store(record, slot, evicted);
+            if (address == SlabAllocator.FAILED) {
+                LOG.debug("replace failed to allocate off-heap");
+                offHeapPoolAccessor.delete(allocator.recordSize(record.length));
+                offHeapPoolAccessor.delete(removeAt(slot));
+                cacheEventNotificationService.notifyElementRemovedOrdered(existing);
+                dropped = true;
+            } else {
+                overwrite(slot, address, false);
+                cacheEventNotificationService.notifyElementUpdatedOrdered(existing, newElement);
+            }
+            return existing;
+        } finally {
+            writeLock().unlock();
+            notifyEvictions(evicted);
+            if (dropped) {
+                notifyEviction(newElement);
+            }
+        }
+    }
+
+    /**
+     * Remove the matching mapping.
+     * <p>
+     * If <code>value</code> is <code>null</code> then match on the key only,
+     * else match on both the key and the value.
+     *
+     * @param key key to match against
+     * @param hash spread-hash for the key
+     * @param value optional value to match against
+     * @param comparator the comparator to use to compare values
+     * @return removed element
+     */
+    Element remove(Object key, int hash, Element value, ElementValueComparator comparator) {
+        writeLock().lock();
+        try {
+            if (count == 0) {
+                return null;
+            }
+            int slot = find(key, hash);
+            Element oldValue = slot < 0 ? null : decode(addresses[slot]);
+            if (oldValue != null && (value == null || comparator.equals(value, oldValue))) {
+                final long outgoingSize = offHeapPoolAccessor.delete(removeAt(slot));
+                LOG.debug("remove deleted {} from off-heap", outgoingSize);
+                cacheEventNotificationService.notifyElementRemovedOrdered(oldValue);
+                return oldValue;
+            } else {
+                LOG.debug("remove deleted nothing");
+                return null;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all mappings from this segment.
+     */
+    void clear() {
+        writeLock().lock();
+        try {
+            allocator.clear();
+            allocateIndex(hashes.length);
+            ++modCount;
+            // write-volatile
+            count = 0;
+            offHeapPoolAccessor.clear();
+            LOG.debug("cleared off-heap usage");
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the mapping for the given key as no longer faulted, evicting it if the flushed element has expired.
+     *
+     * @param key the key
+     * @param hash the hash
+     * @param element the element flushed by the caching tier
+     * @return true if the mapping was faulted
+     */
+    boolean flush(Object key, int hash, Element element) {
+        boolean found = false;
+        boolean wasFaulted = false;
+        readLock().lock();
+        try {
+            if (count != 0) {
+                int slot = find(key, hash);
+                if (slot >= 0) {
+                    found = true;
+                    wasFaulted = clearFlag(slot, FAULTED);
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+        if (found && element.isExpired()) {
+            evict(key, hash);
+        }
+        return wasFaulted;
+    }
+
+    /**
+     * Evict the mapping for the given key, unless it is faulted.
+     * <p>
+     * The segment lock is only tried, so this method gives up rather than block.
+     *
+     * @param key key to match against
+     * @param hash spread-hash for the key
+     * @return the evicted element, or <code>null</code> if nothing was evicted
+     */
+    Element evict(Object key, int hash) {
+        if (!writeLock().tryLock()) {
+            return null;
+        }
+        Element evictedElement = null;
+        try {
+            if (count != 0) {
+                int slot = find(key, hash);
+                if (slot >= 0 && (flags.get(slot) & FAULTED) == 0) {
+                    Element element = decode(addresses[slot]);
+                    final long outgoingSize = offHeapPoolAccessor.delete(removeAt(slot));
+                    LOG.debug("evicted {} from off-heap", outgoingSize);
+                    cacheEventNotificationService.notifyElementRemovedOrdered(element);
+                    evictedElement = element;
+                }
+            }
+            return evictedElement;
+        } finally {
+            writeLock().unlock();
+            if (evictedElement != null) {
+                notifyEviction(evictedElement);
+            }
+        }
+    }
+
+    /**
+     * Evict up to <code>count</code> mappings, as selected by the clock.
+     * <p>
+     * The segment lock is only tried, so this method gives up rather than block.
+     *
+     * @param count the number of mappings to evict
+     * @return the number of mappings evicted
+     */
+    int evict(int count) {
+        List<Element> evicted = new ArrayList<Element>(count);
+        int evictedCount = evict(count, evicted);
+        notifyEvictions(evicted);
+        return evictedCount;
+    }
+
+    /**
+     * Evict up to <code>count</code> mappings, as selected by the clock, leaving their notification to the caller.
+     * <p>
+     * The segment lock is only tried, so this method gives up rather than block.
+     *
+     * @param count the number of mappings to evict
+     * @param evicted the list the evicted elements are added to
+     * @return the number of mappings evicted
+     */
+    int evict(int count, List<Element> evicted) {
+        if (!writeLock().tryLock()) {
+            return 0;
+        }
+        try {
+            int evictedCount = 0;
+            while (evictedCount < count) {
+                Element element = evictNext(-1);
+                if (element == null) {
+                    break;
+                }
+                evicted.add(element);
+                evictedCount++;
+            }
+            return evictedCount;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Evicts all the expired mappings of this segment that are not faulted.
+     */
+    void expireElements() {
+        List<Object> expiredKeys = new ArrayList<Object>();
+        List<Integer> expiredHashes = new ArrayList<Integer>();
+        readLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (int i = 0; count != 0 && i < addresses.length; i++) {
+                if (isOccupied(addresses[i]) && (flags.get(i) & FAULTED) == 0 && now > expirationTime(addresses[i])) {
+                    expiredKeys.add(decodeKey(addresses[i]));
+                    expiredHashes.add(hashes[i]);
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+        for (int i = 0; i < expiredKeys.size(); i++) {
+            evict(expiredKeys.get(i), expiredHashes.get(i));
+        }
+    }
+
+    /**
+     * Verifies if the mapping for a key is marked as faulted
+     *
+     * @param hash the spread-hash for the key
+     * @param key the key to check the mapping for
+     * @return true if faulted, false otherwise (including no mapping)
+     */
+    boolean isFaulted(int hash, Object key) {
+        readLock().lock();
+        try {
+            if (count == 0) {
+                return false;
+            }
+            int slot = find(key, hash);
+            return slot >= 0 && (flags.get(slot) & FAULTED) != 0;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Clears the faulted bit on all entries
+     */
+    void clearFaultedBit() {
+        writeLock().lock();
+        try {
+            for (int i = 0; i < addresses.length; i++) {
+                flags.set(i, flags.get(i) & ~FAULTED);
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the keys of all the mappings in this segment to the given collection.
+     *
+     * @param keys the collection to add the keys to
+     */
+    void addKeys(Collection<Object> keys) {
+        readLock().lock();
+        try {
+            for (int i = 0; count != 0 && i < addresses.length; i++) {
+                if (isOccupied(addresses[i])) {
+                    keys.add(decodeKey(addresses[i]));
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of off-heap bytes occupied by the records of this segment.
+     *
+     * @return occupied bytes
+     */
+    long getOccupiedSize() {
+        readLock().lock();
+        try {
+            return allocator.getOccupiedSize();
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of off-heap bytes of slab memory held by this segment.
+     *
+     * @return reserved bytes
+     */
+    long getReservedSize() {
+        readLock().lock();
+        try {
+            return allocator.getReservedSize();
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Release all the off-heap memory held by this segment.
+     */
+    void dispose() {
+        writeLock().lock();
+        try {
+            allocator.clear();
+            allocateIndex(1);
+            count = 0;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the slot of the mapping for the given key.
+     * <p>
+     * The key is serialized once, on the first colliding record, and compared to the key bytes of the records. Only
+     * records whose key bytes differ, that is keys which do not serialize canonically or actual hash collisions,
+     * have their key deserialized and compared with equals.
+     *
+     * @return the slot, or -1 if there is no mapping for the key
+     */
+    private int find(Object key, int hash) {
+        int mask = addresses.length - 1;
+        ByteBuffer keyBytes = null;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            long address = addresses[i];
+            if (address == EMPTY) {
+                return -1;
+            } else if (address != REMOVED && hashes[i] == hash) {
+                if (keyBytes == null) {
+                    keyBytes = serializeKey(key);
+                }
+                if (keyMatches(address, key, keyBytes)) {
+                    return i;
+                }
+            }
+        }
+    }
+
+    private boolean keyMatches(long address, Object key, ByteBuffer keyBytes) {
+        ByteBuffer storedKey = keyOf(allocator.payload(address));
+        if (storedKey.equals(keyBytes)) {
+            return true;
+        }
+        return key.equals(deserialize(storedKey));
+    }
+
+    private void insert(int hash, long address, boolean faulted) {
+        int mask = addresses.length - 1;
+        int i = hash & mask;
+        while (isOccupied(addresses[i])) {
+            i = (i + 1) & mask;
+        }
+        if (addresses[i] == REMOVED) {
+            tombstones--;
+        }
+        hashes[i] = hash;
+        addresses[i] = address;
+        flags.set(i, faulted ? FAULTED : 0);
+        ++modCount;
+        // write-volatile
+        count = count + 1;
+    }
+
+    private void overwrite(int slot, long address, boolean faulted) {
+        long oldAddress = addresses[slot];
+        int oldSize = allocator.sizeOf(oldAddress);
+        allocator.free(oldAddress);
+        addresses[slot] = address;
+        flags.set(slot, faulted ? FAULTED : 0);
+        final long existingSize = offHeapPoolAccessor.delete(oldSize);
+        LOG.debug("put updated, deleted {} off-heap", existingSize);
+    }
+
+    private int removeAt(int slot) {
+        long address = addresses[slot];
+        int size = allocator.sizeOf(address);
+        allocator.free(address);
+        addresses[slot] = REMOVED;
+        flags.set(slot, 0);
+        tombstones++;
+        ++modCount;
+        // write-volatile
+        count = count - 1;
+        return size;
+    }
+
+    /**
+     * Store the given record, evicting mappings if the allocator runs out of memory.
+     * <p>
+     * Freeing a single record only makes room for records of the same size class, as slabs only return to the page
+     * source once empty. Mappings of this segment held in chunks of the record size are evicted first, as selected by
+     * the clock. Failing that a whole slab of this segment is evicted, and once none is left the slabs are held by the
+     * other segments, which are then asked to evict one through the store.
+     */
+    private long store(byte[] record, int protectedSlot, List<Element> evicted) {
+        long address = allocator.store(record);
+        int recordSize = allocator.recordSize(record.length);
+        while (address == SlabAllocator.FAILED) {
+            Element victim = evictNext(protectedSlot, recordSize);
+            if (victim != null) {
+                evicted.add(victim);
+            } else if (evictSlab(protectedSlot, evicted) == 0 && store.evictFromOtherSegments(this, evicted) == 0) {
+                break;
+            }
+            address = allocator.store(record);
+        }
+        return address;
+    }
+
+    /**
+     * Evict the next unfaulted mapping selected by the clock, must be called under the write lock.
+     */
+    private Element evictNext(int protectedSlot) {
+        return evictNext(protectedSlot, 0);
+    }
+
+    /**
+     * Evict the next unfaulted mapping selected by the clock among those held in chunks of the given size, or among
+     * all mappings if the size is 0, must be called under the write lock.
+     */
+    private Element evictNext(int protectedSlot, int recordSize) {
+        if (count == 0) {
+            return null;
+        }
+        int mask = addresses.length - 1;
+        for (int scanned = 0; scanned < addresses.length * 2; scanned++) {
+            int i = clockHand;
+            clockHand = (clockHand + 1) & mask;
+            if (i == protectedSlot || !isOccupied(addresses[i])) {
+                continue;
+            }
+            if (recordSize != 0 && allocator.sizeOf(addresses[i]) != recordSize) {
+                continue;
+            }
+            int entryFlags = flags.get(i);
+            if ((entryFlags & FAULTED) != 0) {
+                continue;
+            } else if ((entryFlags & ACCESSED) != 0) {
+                flags.set(i, entryFlags & ~ACCESSED);
+            } else {
+                Element element = decode(addresses[i]);
+                final long outgoingSize = offHeapPoolAccessor.delete(removeAt(i));
+                LOG.debug("evicted {} from off-heap", outgoingSize);
+                cacheEventNotificationService.notifyElementRemovedOrdered(element);
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evict all the mappings of the least occupied slab of this segment, leaving their notification to the caller.
+     * <p>
+     * The segment lock is only tried, so this method gives up rather than block.
+     *
+     * @param evicted the list the evicted elements are added to
+     * @return the number of mappings evicted
+     */
+    int evictSlab(List<Element> evicted) {
+        if (!writeLock().tryLock()) {
+            return 0;
+        }
+        try {
+            return evictSlab(-1, evicted);
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Evict all the mappings of the least occupied slab whose mappings are all unfaulted, so that the slab returns
+     * to the page source, must be called under the write lock.
+     *
+     * @return the number of mappings evicted
+     */
+    private int evictSlab(int protectedSlot, List<Element> evicted) {
+        if (count == 0) {
+            return 0;
+        }
+        int[] evictable = new int[allocator.getSlabCount()];
+        for (int i = 0; i < addresses.length; i++) {
+            if (isEvictable(i, protectedSlot)) {
+                evictable[SlabAllocator.slabOf(addresses[i])]++;
+            }
+        }
+        int victim = -1;
+        for (int slab = 0; slab < evictable.length; slab++) {
+            if (evictable[slab] > 0 && evictable[slab] == allocator.getSlabUsage(slab)
+                && (victim < 0 || evictable[slab] < evictable[victim])) {
+                victim = slab;
+            }
+        }
+        if (victim < 0) {
+            return 0;
+        }
+
+        int evictedCount = 0;
+        for (int i = 0; evictedCount < evictable[victim] && i < addresses.length; i++) {
+            if (isEvictable(i, protectedSlot) && SlabAllocator.slabOf(addresses[i]) == victim) {
+                Element element = decode(addresses[i]);
+                offHeapPoolAccessor.delete(removeAt(i));
+                cacheEventNotificationService.notifyElementRemovedOrdered(element);
+                evicted.add(element);
+                evictedCount++;
+            }
+        }
+        LOG.debug("evicted slab {} holding {} mappings from off-heap", victim, evictedCount);
+        return evictedCount;
+    }
+
+    private boolean isEvictable(int slot, int protectedSlot) {
+        return slot != protectedSlot && isOccupied(addresses[slot]) && (flags.get(slot) & FAULTED) == 0;
+    }
+
+    private void ensureCapacity() {
+        if (count + tombstones + 1 > threshold) {
+            int capacity = addresses.length;
+            if (count + 1 > threshold / 2 && capacity < MAXIMUM_CAPACITY) {
+                capacity <<= 1;
+            }
+            rehash(capacity);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldHashes = hashes;
+        long[] oldAddresses = addresses;
+        AtomicIntegerArray oldFlags = flags;
+        allocateIndex(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldAddresses.length; j++) {
+            if (isOccupied(oldAddresses[j])) {
+                int i = oldHashes[j] & mask;
+                while (addresses[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                hashes[i] = oldHashes[j];
+                addresses[i] = oldAddresses[j];
+                flags.set(i, oldFlags.get(j));
+            }
+        }
+    }
+
+    private void allocateIndex(int capacity) {
+        hashes = new int[capacity];
+        addresses = new long[capacity];
+        flags = new AtomicIntegerArray(capacity);
+        tombstones = 0;
+        clockHand = 0;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static boolean isOccupied(long address) {
+        return address != EMPTY && address != REMOVED;
+    }
+
+    private void setFlag(int slot, int flag) {
+        while (true) {
+            int current = flags.get(slot);
+            if ((current & flag) == flag || flags.compareAndSet(slot, current, current | flag)) {
+                return;
+            }
+        }
+    }
+
+    private boolean clearFlag(int slot, int flag) {
+        while (true) {
+            int current = flags.get(slot);
+            if ((current & flag) == 0) {
+                return false;
+            } else if (flags.compareAndSet(slot, current, current & ~flag)) {
+                return true;
+            }
+        }
+    }
+
+    private Element decode(long address) {
+        ByteBuffer payload = allocator.payload(address);
+        int keyLength = payload.getInt(0);
+        payload.position(KEY_LENGTH_SIZE + keyLength + EXPIRY_SIZE);
+        return (Element) deserialize(payload);
+    }
+
+    private Object decodeKey(long address) {
+        return deserialize(keyOf(allocator.payload(address)));
+    }
+
+    private long expirationTime(long address) {
+        ByteBuffer payload = allocator.payload(address);
+        return payload.getLong(KEY_LENGTH_SIZE + payload.getInt(0));
+    }
+
+    private static ByteBuffer keyOf(ByteBuffer payload) {
+        int keyLength = payload.getInt(0);
+        payload.limit(KEY_LENGTH_SIZE + keyLength);
+        payload.position(KEY_LENGTH_SIZE);
+        return payload;
+    }
+
+    private Object deserialize(ByteBuffer bytes) {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        try {
+            return serializer.deserialize(new ByteArrayInputStream(copy), classLoader);
+        } catch (IOException e) {
+            throw new CacheException("Failed to read element from off-heap", e);
+        } catch (ClassNotFoundException e) {
+            throw new CacheException("Failed to read element from off-heap", e);
+        }
+    }
+
+    private ByteBuffer serializeKey(Object key) {
+        try {
+            return writeKey(key);
+        } catch (IOException e) {
+            // comparisons fall back to equals
+            return ByteBuffer.allocate(0);
+        } catch (RuntimeException e) {
+            return ByteBuffer.allocate(0);
+        }
+    }
+
+    private ByteBuffer writeKey(Object key) throws IOException {
+        MemoryEfficientByteArrayOutputStream out = new MemoryEfficientByteArrayOutputStream(KEY_SIZE_GUESS);
+        serializer.serialize(key, out);
+        return out.toByteBuffer();
+    }
+
+    /**
+     * Serialize the element into a record: the serialized key, the expiration time, then the serialized element.
+     */
+    private byte[] serialize(Element element) {
+        if (!element.isSerializable()) {
+            LOG.warn("Object with key {} is not Serializable and cannot be stored off-heap", element.getObjectKey());
+            return null;
+        }
+        // A ConcurrentModificationException can occur because Java's serialization
+        // mechanism is not threadsafe and POJOs are seldom implemented in a threadsafe way.
+        try {
+            ByteBuffer key = writeKey(element.getObjectKey());
+            ByteBuffer body = MemoryEfficientByteArrayOutputStream.serialize(element, serializer).toByteBuffer();
+            ByteBuffer record = ByteBuffer.allocate(KEY_LENGTH_SIZE + key.remaining() + EXPIRY_SIZE + body.remaining());
+            record.putInt(key.remaining());
+            record.put(key);
+            record.putLong(element.getExpirationTime());
+            record.put(body);
+            return record.array();
+        } catch (ConcurrentModificationException e) {
+            throw new CacheException("Failed to serialize element due to ConcurrentModificationException. " +
+                                     "This is frequently the result of inappropriately sharing thread unsafe object " +
+                                     "(eg. ArrayList, HashMap, etc) between threads", e);
+        } catch (IOException e) {
+            throw new CacheException("Failed to serialize element", e);
+        }
+    }
+
+    private void notifyEviction(Element evicted) {
+        if (evicted.isExpired()) {
+            cacheEventNotificationService.notifyElementExpiry(evicted, false);
+        } else {
+            evictionObserver.begin();
+            evictionObserver.end(EvictionOutcome.SUCCESS);
+            cacheEventNotificationService.notifyElementEvicted(evicted, false);
+        }
+    }
+
+    private void notifyEvictions(List<Element> evicted) {
+        for (Element element : evicted) {
+            notifyEviction(element);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + " count: " + count;
+    }
+}
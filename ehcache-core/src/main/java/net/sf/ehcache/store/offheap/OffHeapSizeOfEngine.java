@@ -0,0 +1,62 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.pool.Size;
+import net.sf.ehcache.pool.SizeOfEngine;
+
+/**
+ * SizeOf engine which calculates the exact off-heap usage of a serialized record.
+ * <p>
+ * The container passed in is expected to be the serialized form of the element, the returned size being the one
+ * of the chunk the {@link SlabAllocator} will store it in.
+ */
+public class OffHeapSizeOfEngine implements SizeOfEngine {
+
+    private final int[] sizeClasses;
+
+    /**
+     * Create an engine sizing records for the given size classes.
+     *
+     * @param sizeClasses the chunk sizes of the allocator
+     */
+    OffHeapSizeOfEngine(int[] sizeClasses) {
+        this.sizeClasses = sizeClasses;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Size sizeOf(Object key, Object value, Object container) {
+        if (container != null && !(container instanceof byte[])) {
+            throw new IllegalArgumentException("can only size serialized records");
+        }
+
+        if (container == null) {
+            return new Size(0, true);
+        }
+
+        return new Size(SlabAllocator.recordSize(sizeClasses, ((byte[]) container).length), true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SizeOfEngine copyWith(int maxDepth, boolean abortWhenMaxDepthExceeded) {
+        return new OffHeapSizeOfEngine(sizeClasses);
+    }
+}
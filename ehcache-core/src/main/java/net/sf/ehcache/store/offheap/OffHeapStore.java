@@ -0,0 +1,1031 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.concurrent.CacheLockProvider;
+import net.sf.ehcache.concurrent.LockType;
+import net.sf.ehcache.concurrent.ReadWriteLockSync;
+import net.sf.ehcache.concurrent.StripedReadWriteLock;
+import net.sf.ehcache.concurrent.Sync;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.pool.Pool;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.PoolParticipant;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+import net.sf.ehcache.store.AbstractStore;
+import net.sf.ehcache.store.AuthoritativeTier;
+import net.sf.ehcache.store.CacheStore;
+import net.sf.ehcache.store.ElementValueComparator;
+import net.sf.ehcache.store.Policy;
+import net.sf.ehcache.store.Store;
+import net.sf.ehcache.store.StoreOperationOutcomes.GetOutcome;
+import net.sf.ehcache.store.StoreOperationOutcomes.PutOutcome;
+import net.sf.ehcache.store.StoreOperationOutcomes.RemoveOutcome;
+import net.sf.ehcache.store.StripedReadWriteLockProvider;
+import net.sf.ehcache.store.cachingtier.OnHeapCachingTier;
+import net.sf.ehcache.store.disk.StoreUpdateException;
+import net.sf.ehcache.util.WeakIdentityConcurrentMap;
+import net.sf.ehcache.writer.CacheWriterManager;
+
+import org.terracotta.statistics.OperationStatistic;
+import org.terracotta.statistics.Statistic;
+import org.terracotta.statistics.StatisticsManager;
+import org.terracotta.statistics.derived.EventRateSimpleMovingAverage;
+import org.terracotta.statistics.derived.OperationResultFilter;
+import org.terracotta.statistics.observer.OperationObserver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static net.sf.ehcache.statistics.StatisticBuilder.operation;
+
+/**
+ * Implements a store holding its elements off-heap, in direct {@link java.nio.ByteBuffer}s.
+ * <p>
+ * Elements are serialized into buffers carved by a {@link SlabAllocator} and indexed by primitive-array hash
+ * segments, so that the elements held by this store are invisible to the garbage collector. The store is bounded by
+ * the off-heap pool it is given: when full, unfaulted mappings are evicted using the CLOCK algorithm.
+ */
+public final class OffHeapStore extends AbstractStore implements StripedReadWriteLockProvider, AuthoritativeTier {
+
+    private static final int FFFFCD7D = 0xffffcd7d;
+    private static final int FIFTEEN = 15;
+    private static final int TEN = 10;
+    private static final int THREE = 3;
+    private static final int SIX = 6;
+    private static final int FOURTEEN = 14;
+    private static final int SIXTEEN = 16;
+
+    private static final int RETRIES_BEFORE_LOCK = 2;
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int MAX_SEGMENT_COUNT = 64;
+    private static final int MIN_SLAB_SIZE = 4 * 1024;
+    private static final int MAX_SLAB_SIZE = 1024 * 1024;
+    private static final int SLABS_PER_CAPACITY_SHIFT = 8;
+    private static final int SLABS_PER_SEGMENT = 16;
+
+    /**
+     * The page sources of the bounded pools, shared by all the stores drawing from the same pool.
+     */
+    private static final WeakIdentityConcurrentMap<Pool, PageSource> PAGE_SOURCES = new WeakIdentityConcurrentMap<Pool, PageSource>();
+
+    private final OffHeapSegment[] segments;
+    private final int segmentShift;
+    private final AtomicInteger evictionCursor = new AtomicInteger();
+    private final AtomicReference<Status> status = new AtomicReference<Status>(Status.STATUS_UNINITIALISED);
+    private final OperationObserver<GetOutcome> getObserver = operation(GetOutcome.class).of(this).named("get").tag("local-offheap").build();
+    private final OperationObserver<PutOutcome> putObserver = operation(PutOutcome.class).of(this).named("put").tag("local-offheap").build();
+    private final OperationObserver<RemoveOutcome> removeObserver = operation(RemoveOutcome.class).of(this).named("remove").tag("local-offheap").build();
+    private final OperationObserver<EvictionOutcome> evictionObserver = operation(EvictionOutcome.class).named("eviction").of(this).build();
+    private final PoolAccessor offHeapPoolAccessor;
+
+    private volatile CacheLockProvider lockProvider;
+
+    private OffHeapStore(Ehcache cache, Pool offHeapPool, PageSource pageSource) {
+        int slabSize = pageSource.getSlabSize();
+        long segmentsForCapacity = pageSource.getCapacity() / ((long) slabSize * SLABS_PER_SEGMENT);
+        int segmentCount = (int) Math.max(1, Math.min(MAX_SEGMENT_COUNT, Long.highestOneBit(segmentsForCapacity)));
+        int[] sizeClasses = SlabAllocator.sizeClasses(slabSize);
+
+        this.segments = new OffHeapSegment[segmentCount];
+        this.segmentShift = Integer.numberOfLeadingZeros(segmentCount - 1);
+
+        EventRateSimpleMovingAverage hitRate = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+        EventRateSimpleMovingAverage missRate = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+        OperationStatistic<GetOutcome> getStatistic = StatisticsManager.getOperationStatisticFor(getObserver);
+        getStatistic.addDerivedStatistic(new OperationResultFilter<GetOutcome>(EnumSet.of(GetOutcome.HIT), hitRate));
+        getStatistic.addDerivedStatistic(new OperationResultFilter<GetOutcome>(EnumSet.of(GetOutcome.MISS), missRate));
+
+        this.offHeapPoolAccessor = offHeapPool.createPoolAccessor(new OffHeapStorePoolParticipant(hitRate, missRate),
+            new OffHeapSizeOfEngine(sizeClasses));
+
+        for (int i = 0; i < this.segments.length; ++i) {
+            this.segments[i] = new OffHeapSegment(this, DEFAULT_INITIAL_CAPACITY, new SlabAllocator(pageSource, sizeClasses),
+                    cache.getCacheConfiguration(), offHeapPoolAccessor, cache.getCacheEventNotificationService(), evictionObserver);
+        }
+
+        this.status.set(Status.STATUS_ALIVE);
+    }
+
+    /**
+     * Creates an off-heap store for the given cache.
+     * <p>
+     * The stores created against the same bounded pool all draw their memory from a single page source, so that
+     * together they allocate at most as much off-heap memory as the max size of the pool. Stores created against an
+     * unbounded pool get their own page source, sized according to the cache's <code>maxBytesLocalOffHeap</code>.
+     *
+     * @param cache cache that fronts this store
+     * @param offHeapPool pool to track off-heap usage
+     * @return a fully initialized store
+     */
+    public static OffHeapStore create(Ehcache cache, Pool offHeapPool) {
+        long capacity = offHeapPool.getMaxSize();
+        if (capacity > 0) {
+            return new OffHeapStore(cache, offHeapPool, pageSourceFor(offHeapPool, capacity));
+        }
+        capacity = cache.getCacheConfiguration().getMaxBytesLocalOffHeap();
+        if (capacity <= 0) {
+            throw new CacheException("Cache " + cache.getName() + " cannot be stored off-heap without maxBytesLocalOffHeap being set");
+        }
+        return new OffHeapStore(cache, offHeapPool, new PageSource(capacity, slabSizeFor(capacity)));
+    }
+
+    private static PageSource pageSourceFor(Pool pool, long capacity) {
+        PageSource pageSource = PAGE_SOURCES.get(pool);
+        if (pageSource == null) {
+            PageSource newPageSource = new PageSource(capacity, slabSizeFor(capacity));
+            pageSource = PAGE_SOURCES.putIfAbsent(pool, newPageSource);
+            if (pageSource == null) {
+                pageSource = newPageSource;
+            }
+        }
+        return pageSource;
+    }
+
+    private static int slabSizeFor(long capacity) {
+        return (int) Math.max(MIN_SLAB_SIZE, Math.min(MAX_SLAB_SIZE, Long.highestOneBit(capacity >> SLABS_PER_CAPACITY_SHIFT)));
+    }
+
+    /**
+     * Creates an off-heap store for the given cache, sized according to its <code>maxBytesLocalOffHeap</code>.
+     * Off-heap usage is not shared with other stores.
+     *
+     * @param cache cache that fronts this store
+     * @return a fully initialized store
+     */
+    public static OffHeapStore create(Ehcache cache) {
+        return create(cache, new UnboundedPool());
+    }
+
+    /**
+     * Create a tiered store with an on-heap caching tier in front of an off-heap store.
+     *
+     * @param cache the cache
+     * @param onHeapPool the pool tracking on-heap usage
+     * @param offHeapPool the pool tracking off-heap usage
+     * @return a tiered store instance
+     */
+    public static Store createCacheStore(Ehcache cache, Pool onHeapPool, Pool offHeapPool) {
+        CacheConfiguration config = cache.getCacheConfiguration();
+        if (!config.isOverflowToOffHeap()) {
+            throw new CacheException("OffHeapStore can only be used for cache overflowing to off-heap");
+        }
+        OffHeapStore offHeapStore = create(cache, offHeapPool);
+
+        final OnHeapCachingTier<Object, Element> onHeapCache = OnHeapCachingTier.createOnHeapCache(cache, onHeapPool);
+        return new CacheStore(
+            onHeapCache,
+            offHeapStore, cache.getCacheConfiguration()
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public StripedReadWriteLock createStripedReadWriteLock() {
+        return new OffHeapStoreStripedReadWriteLock();
+    }
+
+    @Override
+    public Element fault(final Object key, final boolean updateStats) {
+        getObserver.begin();
+        if (key == null) {
+            getObserver.end(GetOutcome.MISS);
+            return null;
+        } else {
+            int hash = hash(key.hashCode());
+            Element e = segmentFor(hash).get(key, hash, true);
+            if (e == null) {
+                getObserver.end(GetOutcome.MISS);
+            } else {
+                getObserver.end(GetOutcome.HIT);
+            }
+            return e;
+        }
+    }
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being read under a single acquisition of its lock.
+     */
+    public Map<Object, Element> faultAll(final Collection<?> keys, final boolean updateStats) {
+        Map<Object, Element> elements = getAll(keys, true);
+        observeGets(keys, elements);
+        return elements;
+    }
+
+    @Override
+    public boolean putFaulted(final Element element) {
+        if (element == null) {
+            return false;
+        } else {
+            putObserver.begin();
+            Object key = element.getObjectKey();
+            int hash = hash(key.hashCode());
+            Element oldElement = segmentFor(hash).put(key, hash, element, false, true);
+            if (oldElement == null) {
+                putObserver.end(PutOutcome.ADDED);
+                return true;
+            } else {
+                putObserver.end(PutOutcome.UPDATED);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void flush(final Element element) {
+        final Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        segmentFor(hash).flush(key, hash, element);
+    }
+
+    /**
+     * Verifies if the mapping for a key is marked as faulted
+     * @param key the key to check the mapping for
+     * @return true if faulted, false otherwise (including no mapping)
+     */
+    public boolean isFaulted(final Object key) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).isFaulted(hash, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean bufferFull() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyInMemory(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyOffHeap(Object key) {
+        return containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyOnDisk(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void expireElements() {
+        for (OffHeapSegment segment : segments) {
+            segment.expireElements();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void flush() {
+        // nothing to flush, off-heap memory is not persistent
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Policy getInMemoryEvictionPolicy() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getInMemorySize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getInMemorySizeInBytes() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Statistic(name = "size", tags = "local-offheap")
+    public int getOffHeapSize() {
+        return getSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Statistic(name = "size-in-bytes", tags = "local-offheap")
+    public long getOffHeapSizeInBytes() {
+        long size = offHeapPoolAccessor.getSize();
+        if (size < 0) {
+            size = 0;
+            for (OffHeapSegment segment : segments) {
+                size += segment.getOccupiedSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory currently allocated by this store.
+     * <p>
+     * This includes the slack of partially filled slabs, but not the slabs kept for reuse by the page source, which
+     * may be shared with the other stores of the pool.
+     *
+     * @return the allocated size in bytes
+     */
+    public long getOffHeapAllocatedSizeInBytes() {
+        long size = 0;
+        for (OffHeapSegment segment : segments) {
+            size += segment.getReservedSize();
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getOnDiskSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getOnDiskSizeInBytes() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getTerracottaClusteredSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setInMemoryEvictionPolicy(Policy policy) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getMBean() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean put(Element element) {
+        if (element == null) {
+            return false;
+        } else {
+            putObserver.begin();
+            Object key = element.getObjectKey();
+            int hash = hash(key.hashCode());
+            Element oldElement = segmentFor(hash).put(key, hash, element, false, false);
+            if (oldElement == null) {
+                putObserver.end(PutOutcome.ADDED);
+                return true;
+            } else {
+                putObserver.end(PutOutcome.UPDATED);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are grouped by segment. Each segment admits its elements to the off-heap pool without holding its lock,
+     * then installs them under a single acquisition of its lock.
+     */
+    @Override
+    public void putAll(Collection<Element> elements) {
+        List<List<Element>> partitions = new ArrayList<List<Element>>(Collections.<List<Element>>nCopies(segments.length, null));
+        for (Element element : elements) {
+            if (element != null) {
+                int index = segmentIndex(hash(element.getObjectKey().hashCode()));
+                List<Element> partition = partitions.get(index);
+                if (partition == null) {
+                    partition = new ArrayList<Element>();
+                    partitions.set(index, partition);
+                }
+                partition.add(element);
+            }
+        }
+        for (int i = 0; i < segments.length; i++) {
+            List<Element> partition = partitions.get(i);
+            if (partition != null) {
+                int[] hashes = new int[partition.size()];
+                for (int j = 0; j < hashes.length; j++) {
+                    hashes[j] = hash(partition.get(j).getObjectKey().hashCode());
+                }
+                for (Element oldElement : segments[i].putAll(partition, hashes)) {
+                    putObserver.begin();
+                    putObserver.end(oldElement == null ? PutOutcome.ADDED : PutOutcome.UPDATED);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean putWithWriter(Element element, CacheWriterManager writerManager) {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        final ReentrantReadWriteLock.WriteLock writeLock = segmentFor(hash).writeLock();
+        writeLock.lock();
+        try {
+            boolean newPut = put(element);
+            if (writerManager != null) {
+                try {
+                    writerManager.put(element);
+                } catch (RuntimeException e) {
+                    throw new StoreUpdateException(e, !newPut);
+                }
+            }
+            return newPut;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element get(Object key) {
+        getObserver.begin();
+        Element e = getQuiet(key);
+        if (e == null) {
+            getObserver.end(GetOutcome.MISS);
+            return null;
+        } else {
+            getObserver.end(GetOutcome.HIT);
+            return e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element getQuiet(Object key) {
+        if (key == null) {
+            return null;
+        } else {
+            int hash = hash(key.hashCode());
+            return segmentFor(hash).get(key, hash, false);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being read under a single acquisition of its lock.
+     */
+    @Override
+    public Map<Object, Element> getAll(Collection<?> keys) {
+        Map<Object, Element> elements = getAll(keys, false);
+        observeGets(keys, elements);
+        return elements;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, Element> getAllQuiet(Collection<?> keys) {
+        return getAll(keys, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List getKeys() {
+        List<Object> keys = new ArrayList<Object>(getSize());
+        for (OffHeapSegment segment : segments) {
+            segment.addKeys(keys);
+        }
+        return keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        removeObserver.begin();
+        try {
+            int hash = hash(key.hashCode());
+            return segmentFor(hash).remove(key, hash, null, null);
+        } finally {
+            removeObserver.end(RemoveOutcome.SUCCESS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, and removed one at a time so that the segment lock is never held for the
+     * whole batch.
+     */
+    @Override
+    public void removeAll(Collection<?> keys) {
+        List<List<Object>> partitions = keysBySegment(keys);
+        for (List<Object> partition : partitions) {
+            if (partition != null) {
+                for (Object key : partition) {
+                    remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element removeWithWriter(Object key, CacheWriterManager writerManager) {
+        int hash = hash(key.hashCode());
+        final ReentrantReadWriteLock.WriteLock writeLock = segmentFor(hash).writeLock();
+        writeLock.lock();
+        try {
+            Element removed = remove(key);
+            if (writerManager != null) {
+                writerManager.remove(new CacheEntry(key, removed));
+            }
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAll() {
+        for (OffHeapSegment s : segments) {
+            s.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void dispose() {
+        if (status.compareAndSet(Status.STATUS_ALIVE, Status.STATUS_SHUTDOWN)) {
+            for (OffHeapSegment segment : segments) {
+                segment.dispose();
+            }
+            offHeapPoolAccessor.unlink();
+        }
+    }
+
+    /**
+     * Marks all entries has flushed (i.e. not faulted)
+     */
+    public void clearFaultedBit() {
+        for (OffHeapSegment segment : segments) {
+            segment.clearFaultedBit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getSize() {
+        final OffHeapSegment[] segs = this.segments;
+        long size = -1;
+        // Try a few times to get accurate count. On failure due to
+        // continuous async changes in table, resort to locking.
+        for (int k = 0; k < RETRIES_BEFORE_LOCK; ++k) {
+            size = volatileSize(segs);
+            if (size >= 0) {
+                break;
+            }
+        }
+        if (size < 0) {
+            // Resort to locking all segments
+            size = lockedSize(segs);
+        }
+        if (size > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        } else {
+            return (int) size;
+        }
+    }
+
+    private static long volatileSize(OffHeapSegment[] segs) {
+        int[] mc = new int[segs.length];
+        long check = 0;
+        long sum = 0;
+        int mcsum = 0;
+        for (int i = 0; i < segs.length; ++i) {
+            sum += segs[i].count;
+            mc[i] = segs[i].modCount;
+            mcsum += mc[i];
+        }
+        if (mcsum != 0) {
+            for (int i = 0; i < segs.length; ++i) {
+                check += segs[i].count;
+                if (mc[i] != segs[i].modCount) {
+                    return -1;
+                }
+            }
+        }
+        if (check == sum) {
+            return sum;
+        } else {
+            return -1;
+        }
+    }
+
+    private static long lockedSize(OffHeapSegment[] segs) {
+        long size = 0;
+        for (OffHeapSegment seg : segs) {
+            seg.readLock().lock();
+        }
+        for (OffHeapSegment seg : segs) {
+            size += seg.count;
+        }
+        for (OffHeapSegment seg : segs) {
+            seg.readLock().unlock();
+        }
+
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Status getStatus() {
+        return status.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKey(Object key) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).containsKey(key, hash);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getInternalContext() {
+        if (lockProvider != null) {
+            return lockProvider;
+        } else {
+            lockProvider = new LockProvider();
+            return lockProvider;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element putIfAbsent(Element element) throws NullPointerException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).put(key, hash, element, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element removeElement(Element element, ElementValueComparator comparator) throws NullPointerException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).remove(key, hash, element, comparator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean replace(Element old, Element element, ElementValueComparator comparator)
+            throws NullPointerException, IllegalArgumentException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).replace(key, hash, old, element, comparator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element replace(Element element) throws NullPointerException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).replace(key, hash, element);
+    }
+
+    /**
+     * Evict up to <code>count</code> unfaulted mappings, visiting the segments in turn.
+     *
+     * @param count the number of mappings to evict
+     * @return the number of mappings evicted
+     */
+    int evict(int count) {
+        int evicted = 0;
+        int start = evictionCursor.getAndIncrement();
+        for (int i = 0; i < segments.length && evicted < count; i++) {
+            evicted += segments[(start + i) & (segments.length - 1)].evict(count - evicted);
+        }
+        return evicted;
+    }
+
+    /**
+     * Evict the least occupied slab of a segment other than the given one, so that it gives back memory.
+     * <p>
+     * Called by a segment that ran out of memory with nothing left to evict of its own, under its write lock. The
+     * other segments are only tried, so this never blocks. As slabs only return to the page source once emptied, the
+     * whole slab is evicted at once rather than one mapping per retry. Consecutive calls move on to the next segment,
+     * spreading the evictions.
+     *
+     * @param requester the segment needing memory
+     * @param evicted the list the evicted elements are added to, for the requester to notify
+     * @return the number of mappings evicted
+     */
+    int evictFromOtherSegments(OffHeapSegment requester, List<Element> evicted) {
+        int start = evictionCursor.get();
+        for (int i = 0; i < segments.length; i++) {
+            OffHeapSegment segment = segments[(start + i) & (segments.length - 1)];
+            if (segment != requester) {
+                int evictedCount = segment.evictSlab(evicted);
+                if (evictedCount > 0) {
+                    evictionCursor.compareAndSet(start, start + i + 1);
+                    return evictedCount;
+                }
+            }
+        }
+        return 0;
+    }
+
+    static int hash(int hash) {
+        int spread = hash;
+        spread += (spread << FIFTEEN ^ FFFFCD7D);
+        spread ^= spread >>> TEN;
+        spread += (spread << THREE);
+        spread ^= spread >>> SIX;
+        spread += (spread << 2) + (spread << FOURTEEN);
+        return (spread ^ spread >>> SIXTEEN);
+    }
+
+    private OffHeapSegment segmentFor(int hash) {
+        return segments[segmentIndex(hash)];
+    }
+
+    private int segmentIndex(int hash) {
+        return segments.length == 1 ? 0 : hash >>> segmentShift;
+    }
+
+    /**
+     * Groups the given keys by the segment they belong to, null keys being dropped.
+     *
+     * @param keys the keys to group
+     * @return the keys of each segment, indexed as the segments, <code>null</code> for segments none of the keys belong to
+     */
+    private List<List<Object>> keysBySegment(Collection<?> keys) {
+        List<List<Object>> partitions = new ArrayList<List<Object>>(Collections.<List<Object>>nCopies(segments.length, null));
+        for (Object key : keys) {
+            if (key != null) {
+                int index = segmentIndex(hash(key.hashCode()));
+                List<Object> partition = partitions.get(index);
+                if (partition == null) {
+                    partition = new ArrayList<Object>();
+                    partitions.set(index, partition);
+                }
+                partition.add(key);
+            }
+        }
+        return partitions;
+    }
+
+    private Map<Object, Element> getAll(Collection<?> keys, boolean markFaulted) {
+        Map<Object, Element> elements = new HashMap<Object, Element>();
+        List<List<Object>> partitions = keysBySegment(keys);
+        for (int i = 0; i < segments.length; i++) {
+            List<Object> partition = partitions.get(i);
+            if (partition != null) {
+                segments[i].getAll(partition, markFaulted, elements);
+            }
+        }
+        for (Object key : keys) {
+            if (!elements.containsKey(key)) {
+                elements.put(key, null);
+            }
+        }
+        return elements;
+    }
+
+    private void observeGets(Collection<?> keys, Map<Object, Element> elements) {
+        for (Object key : keys) {
+            getObserver.begin();
+            getObserver.end(elements.get(key) == null ? GetOutcome.MISS : GetOutcome.HIT);
+        }
+    }
+
+    /**
+     * LockProvider implementation that uses the segment locks.
+     */
+    private class LockProvider implements CacheLockProvider {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Sync getSyncForKey(Object key) {
+            int hash = key == null ? 0 : hash(key.hashCode());
+            return new SegmentSync(segmentFor(hash));
+        }
+    }
+
+    /**
+     * Sync exposing a segment lock.
+     */
+    private static final class SegmentSync implements Sync {
+
+        private final ReentrantReadWriteLock lock;
+
+        private SegmentSync(ReentrantReadWriteLock lock) {
+            this.lock = lock;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void lock(LockType type) {
+            switch (type) {
+            case READ:
+                lock.readLock().lock();
+                break;
+            case WRITE:
+                lock.writeLock().lock();
+                break;
+            default:
+                throw new IllegalArgumentException("We don't support any other lock type than READ or WRITE!");
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean tryLock(LockType type, long msec) throws InterruptedException {
+            switch (type) {
+            case READ:
+                return lock.readLock().tryLock(msec, TimeUnit.MILLISECONDS);
+            case WRITE:
+                return lock.writeLock().tryLock(msec, TimeUnit.MILLISECONDS);
+            default:
+                throw new IllegalArgumentException("We don't support any other lock type than READ or WRITE!");
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void unlock(LockType type) {
+            switch (type) {
+            case READ:
+                lock.readLock().unlock();
+                break;
+            case WRITE:
+                lock.writeLock().unlock();
+                break;
+            default:
+                throw new IllegalArgumentException("We don't support any other lock type than READ or WRITE!");
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean isHeldByCurrentThread(LockType type) {
+            switch (type) {
+            case READ:
+                throw new UnsupportedOperationException("Querying of read lock is not supported.");
+            case WRITE:
+                return lock.isWriteLockedByCurrentThread();
+            default:
+                throw new IllegalArgumentException("We don't support any other lock type than READ or WRITE!");
+            }
+        }
+    }
+
+    /**
+     * StripedReadWriteLock impl.
+     */
+    private final class OffHeapStoreStripedReadWriteLock implements StripedReadWriteLock {
+
+        private final ReadWriteLockSync[] locks = new ReadWriteLockSync[segments.length];
+
+        private OffHeapStoreStripedReadWriteLock() {
+            for (int i = 0; i < locks.length; i++) {
+                locks[i] = new ReadWriteLockSync();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public ReadWriteLock getLockForKey(final Object key) {
+            return getSyncForKey(key).getReadWriteLock();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public List<ReadWriteLockSync> getAllSyncs() {
+            ArrayList<ReadWriteLockSync> syncs = new ArrayList<ReadWriteLockSync>(locks.length);
+            Collections.addAll(syncs, locks);
+            return syncs;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public ReadWriteLockSync getSyncForKey(final Object key) {
+            return locks[segmentIndex(hash(key.hashCode()))];
+        }
+    }
+
+    /**
+     * PoolParticipant for the off-heap pool.
+     */
+    private final class OffHeapStorePoolParticipant implements PoolParticipant {
+
+        private final EventRateSimpleMovingAverage hitRate;
+        private final EventRateSimpleMovingAverage missRate;
+
+        private OffHeapStorePoolParticipant(final EventRateSimpleMovingAverage hitRate, final EventRateSimpleMovingAverage missRate) {
+            this.hitRate = hitRate;
+            this.missRate = missRate;
+        }
+
+        @Override
+        public boolean evict(int count, long size) {
+            return OffHeapStore.this.evict(count) == count;
+        }
+
+        @Override
+        public float getApproximateHitRate() {
+            return hitRate.rate(TimeUnit.SECONDS).floatValue();
+        }
+
+        @Override
+        public float getApproximateMissRate() {
+            return missRate.rate(TimeUnit.SECONDS).floatValue();
+        }
+
+        @Override
+        public long getApproximateCountSize() {
+            return getOffHeapSize();
+        }
+    }
+}
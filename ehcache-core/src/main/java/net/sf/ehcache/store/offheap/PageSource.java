@@ -0,0 +1,138 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of the direct buffers backing the {@link OffHeapStore}s of an off-heap pool.
+ * <p>
+ * The page source enforces the off-heap capacity of the pool: the sum of all the buffers it has handed out (and
+ * the standard slabs it keeps for reuse) never exceeds its capacity. Since direct memory is only returned to the
+ * operating system once the owning buffer is garbage collected, released standard slabs are recycled rather than
+ * dropped.
+ */
+final class PageSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PageSource.class.getName());
+
+    private final long capacity;
+    private final int slabSize;
+    private final AtomicLong reserved = new AtomicLong();
+    private final Queue<ByteBuffer> recycled = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * Create a page source handing out at most {@code capacity} bytes.
+     *
+     * @param capacity maximum number of bytes of direct memory to allocate
+     * @param slabSize size of the standard slabs
+     */
+    PageSource(long capacity, int slabSize) {
+        this.capacity = capacity;
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes of direct memory this source hands out.
+     *
+     * @return capacity in bytes
+     */
+    long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the size of the standard slabs handed out by this source.
+     *
+     * @return standard slab size in bytes
+     */
+    int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory currently held by this source.
+     *
+     * @return reserved bytes
+     */
+    long getReservedSize() {
+        return reserved.get();
+    }
+
+    /**
+     * Allocates a buffer of the given size.
+     *
+     * @param size buffer size in bytes
+     * @return the allocated buffer, or {@code null} if the capacity of this source is exhausted
+     */
+    ByteBuffer allocate(int size) {
+        if (size == slabSize) {
+            ByteBuffer buffer = recycled.poll();
+            if (buffer != null) {
+                buffer.clear();
+                return buffer;
+            }
+        }
+
+        while (!reserve(size)) {
+            ByteBuffer dropped = recycled.poll();
+            if (dropped == null) {
+                return null;
+            }
+            reserved.addAndGet(-dropped.capacity());
+        }
+
+        try {
+            return ByteBuffer.allocateDirect(size);
+        } catch (OutOfMemoryError e) {
+            reserved.addAndGet(-size);
+            LOG.warn("Failed to allocate {} bytes of direct memory, consider raising -XX:MaxDirectMemorySize", size);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a buffer previously obtained from {@link #allocate(int)} to this source.
+     *
+     * @param buffer the buffer to release
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() == slabSize) {
+            recycled.offer(buffer);
+        } else {
+            reserved.addAndGet(-buffer.capacity());
+        }
+    }
+
+    private boolean reserve(int size) {
+        while (true) {
+            long current = reserved.get();
+            if (current + size > capacity) {
+                return false;
+            }
+            if (reserved.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Slab allocator carving records out of the buffers of a {@link PageSource}.
+ * <p>
+ * Records are rounded up to one of a fixed set of geometrically spaced size classes. Each standard slab only holds
+ * chunks of a single size class, free chunks being kept on an intrusive free-list stored inside the slab itself, so
+ * allocating and freeing are constant time and the allocator itself holds no per-record state on heap. Records
+ * too large for the biggest size class get a dedicated buffer. Slabs that become empty are handed back to the page
+ * source, which makes them available to the other size classes.
+ * <p>
+ * Instances are not thread-safe: each {@link OffHeapSegment} owns one and only mutates it under its write lock.
+ * Reads can happen concurrently as they never touch the state of the shared buffers.
+ */
+final class SlabAllocator {
+
+    /**
+     * Address returned when an allocation fails.
+     */
+    static final long FAILED = -1L;
+
+    /**
+     * Bytes of header preceding the payload of every record.
+     */
+    static final int RECORD_HEADER_SIZE = 4;
+
+    private static final int MIN_CHUNK_SIZE = 32;
+    private static final int ALIGNMENT = 8;
+    private static final int OFFSET_BITS = 32;
+    private static final long OFFSET_MASK = 0xffffffffL;
+    private static final int GROWTH_NUMERATOR = 5;
+    private static final int GROWTH_DENOMINATOR = 4;
+    private static final int CHUNKS_PER_SLAB = 4;
+    private static final int NO_CHUNK = -1;
+
+    private final PageSource source;
+    private final int[] sizeClasses;
+    private final Slab[] available;
+    private final List<Slab> slabs = new ArrayList<Slab>();
+    private final List<Integer> freeIds = new ArrayList<Integer>();
+
+    private long occupied;
+    private long reserved;
+
+    /**
+     * Create an allocator drawing its slabs from the given source.
+     *
+     * @param source the source of the slabs
+     * @param sizeClasses the chunk sizes, as computed by {@link #sizeClasses(int)}
+     */
+    SlabAllocator(PageSource source, int[] sizeClasses) {
+        this.source = source;
+        this.sizeClasses = sizeClasses;
+        this.available = new Slab[sizeClasses.length];
+    }
+
+    /**
+     * Computes the size classes used for slabs of the given size.
+     *
+     * @param slabSize size of the standard slabs
+     * @return the ascending chunk sizes
+     */
+    static int[] sizeClasses(int slabSize) {
+        List<Integer> classes = new ArrayList<Integer>();
+        int maxChunkSize = slabSize / CHUNKS_PER_SLAB;
+        int size = MIN_CHUNK_SIZE;
+        while (size <= maxChunkSize) {
+            classes.add(size);
+            size = align(Math.max(size + ALIGNMENT, size * GROWTH_NUMERATOR / GROWTH_DENOMINATOR));
+        }
+        int[] result = new int[classes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = classes.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes a record holding the given payload occupies.
+     *
+     * @param sizeClasses the chunk sizes in use
+     * @param payloadLength the payload length in bytes
+     * @return the size of the chunk, or dedicated buffer, the record will be stored in
+     */
+    static int recordSize(int[] sizeClasses, int payloadLength) {
+        int length = payloadLength + RECORD_HEADER_SIZE;
+        int sizeClass = classFor(sizeClasses, length);
+        return sizeClass < 0 ? length : sizeClasses[sizeClass];
+    }
+
+    /**
+     * Returns the number of bytes a record holding the given payload occupies in this allocator.
+     *
+     * @param payloadLength the payload length in bytes
+     * @return the size of the chunk, or dedicated buffer, the record will be stored in
+     */
+    int recordSize(int payloadLength) {
+        return recordSize(sizeClasses, payloadLength);
+    }
+
+    /**
+     * Stores the given payload.
+     *
+     * @param payload bytes to store
+     * @return the address of the record, or {@link #FAILED} if no memory is available
+     */
+    long store(byte[] payload) {
+        long address = allocate(payload.length + RECORD_HEADER_SIZE);
+        if (address != FAILED) {
+            ByteBuffer buffer = slabFor(address).buffer.duplicate();
+            int offset = offsetOf(address);
+            buffer.putInt(offset, payload.length);
+            buffer.position(offset + RECORD_HEADER_SIZE);
+            buffer.put(payload);
+        }
+        return address;
+    }
+
+    /**
+     * Reads back the payload of the record at the given address.
+     *
+     * @param address record address
+     * @return a copy of the stored payload
+     */
+    byte[] read(long address) {
+        ByteBuffer buffer = slabFor(address).buffer.duplicate();
+        int offset = offsetOf(address);
+        byte[] payload = new byte[buffer.getInt(offset)];
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        buffer.get(payload);
+        return payload;
+    }
+
+    /**
+     * Returns a view of the payload of the record at the given address, without copying it.
+     *
+     * @param address record address
+     * @return a buffer positioned at the start of the payload and limited to its length
+     */
+    ByteBuffer payload(long address) {
+        ByteBuffer buffer = slabFor(address).buffer.duplicate();
+        int offset = offsetOf(address);
+        int length = buffer.getInt(offset);
+        buffer.limit(offset + RECORD_HEADER_SIZE + length);
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        return buffer.slice();
+    }
+
+    /**
+     * Returns the number of bytes occupied by the record at the given address.
+     *
+     * @param address record address
+     * @return the record size in bytes
+     */
+    int sizeOf(long address) {
+        return slabFor(address).chunkSize;
+    }
+
+    /**
+     * Returns the index of the slab holding the record at the given address.
+     *
+     * @param address record address
+     * @return the slab index, lower than {@link #getSlabCount()}
+     */
+    static int slabOf(long address) {
+        return (int) (address >>> OFFSET_BITS) - 1;
+    }
+
+    /**
+     * Returns the number of slab indexes currently in use, including those of released slabs awaiting reuse.
+     *
+     * @return the slab index bound
+     */
+    int getSlabCount() {
+        return slabs.size();
+    }
+
+    /**
+     * Returns the number of records held by the slab at the given index.
+     * <p>
+     * The slab returns to the page source once all of these records are freed.
+     *
+     * @param index slab index
+     * @return the number of live records in the slab, 0 if the index is not in use
+     */
+    int getSlabUsage(int index) {
+        Slab slab = slabs.get(index);
+        return slab == null ? 0 : slab.used;
+    }
+
+    /**
+     * Frees the record at the given address.
+     *
+     * @param address record address
+     */
+    void free(long address) {
+        Slab slab = slabFor(address);
+        occupied -= slab.chunkSize;
+        if (slab.sizeClass < 0) {
+            unregister(slab);
+            return;
+        }
+
+        int offset = offsetOf(address);
+        slab.buffer.putInt(offset, slab.freeHead);
+        slab.freeHead = offset;
+        if (--slab.used == 0) {
+            if (slab.listed) {
+                unlink(slab);
+            }
+            unregister(slab);
+        } else if (!slab.listed) {
+            link(slab);
+        }
+    }
+
+    /**
+     * Frees all records and returns all slabs to the page source.
+     */
+    void clear() {
+        for (Slab slab : slabs) {
+            if (slab != null) {
+                source.release(slab.buffer);
+            }
+        }
+        slabs.clear();
+        freeIds.clear();
+        for (int i = 0; i < available.length; i++) {
+            available[i] = null;
+        }
+        occupied = 0;
+        reserved = 0;
+    }
+
+    /**
+     * Returns the number of bytes occupied by live records.
+     *
+     * @return occupied bytes
+     */
+    long getOccupiedSize() {
+        return occupied;
+    }
+
+    /**
+     * Returns the number of bytes of slab memory held by this allocator.
+     *
+     * @return reserved bytes
+     */
+    long getReservedSize() {
+        return reserved;
+    }
+
+    private long allocate(int length) {
+        int sizeClass = classFor(sizeClasses, length);
+        if (sizeClass < 0) {
+            ByteBuffer buffer = source.allocate(length);
+            if (buffer == null) {
+                return FAILED;
+            }
+            Slab slab = register(buffer, -1, length);
+            slab.used = 1;
+            occupied += length;
+            return addressOf(slab, 0);
+        }
+
+        Slab slab = available[sizeClass];
+        if (slab == null) {
+            ByteBuffer buffer = source.allocate(source.getSlabSize());
+            if (buffer == null) {
+                return FAILED;
+            }
+            slab = register(buffer, sizeClass, sizeClasses[sizeClass]);
+            link(slab);
+        }
+
+        int offset;
+        if (slab.freeHead != NO_CHUNK) {
+            offset = slab.freeHead;
+            slab.freeHead = slab.buffer.getInt(offset);
+        } else {
+            offset = slab.bump;
+            slab.bump += slab.chunkSize;
+        }
+        slab.used++;
+        if (slab.freeHead == NO_CHUNK && slab.bump + slab.chunkSize > slab.buffer.capacity()) {
+            unlink(slab);
+        }
+        occupied += slab.chunkSize;
+        return addressOf(slab, offset);
+    }
+
+    private Slab register(ByteBuffer buffer, int sizeClass, int chunkSize) {
+        int id;
+        if (freeIds.isEmpty()) {
+            id = slabs.size();
+            slabs.add(null);
+        } else {
+            id = freeIds.remove(freeIds.size() - 1);
+        }
+        Slab slab = new Slab(buffer, id, sizeClass, chunkSize);
+        slabs.set(id, slab);
+        reserved += buffer.capacity();
+        return slab;
+    }
+
+    private void unregister(Slab slab) {
+        slabs.set(slab.id, null);
+        freeIds.add(slab.id);
+        reserved -= slab.buffer.capacity();
+        source.release(slab.buffer);
+    }
+
+    private void link(Slab slab) {
+        Slab head = available[slab.sizeClass];
+        slab.prev = null;
+        slab.next = head;
+        if (head != null) {
+            head.prev = slab;
+        }
+        available[slab.sizeClass] = slab;
+        slab.listed = true;
+    }
+
+    private void unlink(Slab slab) {
+        if (slab.prev == null) {
+            available[slab.sizeClass] = slab.next;
+        } else {
+            slab.prev.next = slab.next;
+        }
+        if (slab.next != null) {
+            slab.next.prev = slab.prev;
+        }
+        slab.prev = null;
+        slab.next = null;
+        slab.listed = false;
+    }
+
+    private Slab slabFor(long address) {
+        return slabs.get(slabOf(address));
+    }
+
+    private static int offsetOf(long address) {
+        return (int) (address & OFFSET_MASK);
+    }
+
+    private static long addressOf(Slab slab, int offset) {
+        return ((long) (slab.id + 1) << OFFSET_BITS) | offset;
+    }
+
+    private static int classFor(int[] sizeClasses, int length) {
+        int low = 0;
+        int high = sizeClasses.length - 1;
+        if (high < 0 || length > sizeClasses[high]) {
+            return -1;
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sizeClasses[mid] < length) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    /**
+     * A buffer carved into equally sized chunks.
+     */
+    private static final class Slab {
+        private final ByteBuffer buffer;
+        private final int id;
+        private final int sizeClass;
+        private final int chunkSize;
+        private int bump;
+        private int freeHead = NO_CHUNK;
+        private int used;
+        private boolean listed;
+        private Slab prev;
+        private Slab next;
+
+        private Slab(ByteBuffer buffer, int id, int sizeClass, int chunkSize) {
+            this.buffer = buffer;
+            this.id = id;
+            this.sizeClass = sizeClass;
+            this.chunkSize = chunkSize;
+        }
+    }
+}
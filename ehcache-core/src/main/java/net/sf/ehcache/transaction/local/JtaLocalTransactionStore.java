@@ -20,6 +20,9 @@ import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.TransactionController;
+import net.sf.ehcache.store.Computation;
+import net.sf.ehcache.store.Computations;
+import net.sf.ehcache.store.ComputingStore;
 import net.sf.ehcache.store.ElementValueComparator;
 import net.sf.ehcache.transaction.AbstractTransactionStore;
 import net.sf.ehcache.transaction.TransactionException;
@@ -52,7 +55,7 @@ import javax.transaction.xa.Xid;
  *
  * @author Ludovic Orban
  */
-public class JtaLocalTransactionStore extends AbstractTransactionStore {
+public class JtaLocalTransactionStore extends AbstractTransactionStore implements ComputingStore {
 
     private static final Logger LOG = LoggerFactory.getLogger(JtaLocalTransactionStore.class.getName());
     private static final String ALTERNATIVE_TERMINATION_MODE_SYS_PROPERTY_NAME = "net.sf.ehcache.transaction.xa.alternativeTerminationMode";
@@ -379,6 +382,19 @@ public class JtaLocalTransactionStore extends AbstractTransactionStore {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Element compute(Object key, Computation computation) throws CacheException {
+        registerInJtaContext();
+        try {
+            return Computations.compute(underlyingStore, key, computation);
+        } catch (CacheException e) {
+            setRollbackOnly();
+            throw e;
+        }
+    }
+
 
     /**
      * {@inheritDoc}
@@ -20,6 +20,9 @@ import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.TransactionController;
+import net.sf.ehcache.store.Computation;
+import net.sf.ehcache.store.Computations;
+import net.sf.ehcache.store.ComputingStore;
 import net.sf.ehcache.store.ElementValueComparator;
 import net.sf.ehcache.store.Store;
 import net.sf.ehcache.transaction.AbstractTransactionStore;
@@ -49,7 +52,7 @@ import java.util.Set;
  *
  * @author Ludovic Orban
  */
-public class LocalTransactionStore extends AbstractTransactionStore {
+public class LocalTransactionStore extends AbstractTransactionStore implements ComputingStore {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocalTransactionStore.class.getName());
 
@@ -1043,6 +1046,109 @@ public class LocalTransactionStore extends AbstractTransactionStore {
         } // while
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is soft locked in the current transaction before the computation runs, so that no other transaction can
+     * change its mapping until this one completes.
+     */
+    public Element compute(Object key, Computation computation) throws CacheException {
+        softLockKey(key);
+        return Computations.computeUnderLock(this, key, computation);
+    }
+
+    private void softLockKey(Object key) {
+        while (true) {
+            assertNotTimedOut();
+
+            Element oldElement = underlyingStore.getQuiet(key);
+            if (oldElement == null) {
+                SoftLockID softLockId = softLockManager.createSoftLockID(getCurrentTransactionContext().getTransactionId(), key,
+                    null, null);
+                SoftLock softLock = softLockManager.findSoftLockById(softLockId);
+                softLock.lock();
+                Element newElement = createElement(key, softLockId);
+                oldElement = underlyingStore.putIfAbsent(newElement);
+                if (oldElement == null) {
+                    // CAS succeeded, soft lock is in store, job done.
+                    getCurrentTransactionContext().registerSoftLock(cacheName, this, softLock);
+                    LOG.debug("softLockKey: cache [{}] key [{}] was not in, soft lock inserted", cacheName, key);
+                    return;
+                } else {
+                    // CAS failed, something with that key may now be in store, restart.
+                    softLock.unlock();
+                    LOG.debug("softLockKey: cache [{}] key [{}] was not in, soft lock insertion failed, retrying...", cacheName, key);
+                    continue;
+                }
+            } else {
+                Object value = oldElement.getObjectValue();
+                if (value instanceof SoftLockID) {
+                    SoftLockID softLockId = (SoftLockID) value;
+
+                    if (cleanupExpiredSoftLock(oldElement, softLockId)) {
+                        LOG.debug("softLockKey: cache [{}] key [{}] guarded by expired soft lock, cleaned up {}",
+                                new Object[] {cacheName, key, softLockId});
+                        continue;
+                    }
+
+                    if (softLockId.getTransactionID().equals(getCurrentTransactionContext().getTransactionId())) {
+                        // already soft locked in current transaction, job done.
+                        LOG.debug("softLockKey: cache [{}] key [{}] soft locked in current transaction", cacheName, key);
+                        return;
+                    } else {
+                        SoftLock softLock = softLockManager.findSoftLockById(softLockId);
+                        if (softLock != null) {
+                            LOG.debug("softLockKey: cache [{}] key [{}] soft locked in foreign transaction, waiting {}ms for soft lock" +
+                                    " to die...", new Object[] {cacheName, key, timeBeforeTimeout()});
+                            try {
+                                if (softLock.tryLock(timeBeforeTimeout())) {
+                                    softLock.clearTryLock();
+                                } else {
+                                    LOG.debug("softLockKey: cache [{}] key [{}] soft locked in foreign transaction and not released" +
+                                            " before current transaction timeout", cacheName, key);
+                                    if (getCurrentTransactionContext().hasLockedAnything()) {
+                                        throw new DeadLockException("deadlock detected in cache [" + cacheName + "] on key [" + key + "]" +
+                                                " between current transaction [" + getCurrentTransactionContext().getTransactionId() + "]" +
+                                                " and foreign transaction [" + softLockId.getTransactionID() + "]");
+                                    } else {
+                                        continue;
+                                    }
+                                }
+                            } catch (InterruptedException ie) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+
+                        // once the soft lock got unlocked we don't know what's in the store anymore, restart.
+                        LOG.debug("softLockKey: cache [{}] key [{}] soft locked in foreign transaction, soft lock died, retrying...",
+                                cacheName, key);
+                        continue;
+                    }
+                } else {
+                    // soft lock the current element in place, committing it unchanged unless the computation replaces it.
+                    SoftLockID softLockId = softLockManager.createSoftLockID(getCurrentTransactionContext().getTransactionId(), key,
+                        oldElement, oldElement);
+                    SoftLock softLock = softLockManager.findSoftLockById(softLockId);
+                    softLock.lock();
+                    Element newElement = createElement(key, softLockId);
+                    boolean replaced = underlyingStore.replace(oldElement, newElement, comparator);
+                    if (replaced) {
+                        // CAS succeeded, value replaced with soft lock, job done.
+                        getCurrentTransactionContext().registerSoftLock(cacheName, this, softLock);
+                        LOG.debug("softLockKey: cache [{}] key [{}] was in, replaced with soft lock", cacheName, key);
+                        return;
+                    } else {
+                        // CAS failed, something else with that key is now in store or the key disappeared, restart.
+                        softLock.unlock();
+                        LOG.debug("softLockKey: cache [{}] key [{}] was in, replacement by soft lock failed, retrying...", cacheName, key);
+                        continue;
+                    }
+                }
+            }
+
+        } // while
+    }
+
     /**
      * Commit work of the specified soft locks
      * @param softLocks the soft locks to commit
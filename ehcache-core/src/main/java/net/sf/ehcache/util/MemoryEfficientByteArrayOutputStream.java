@@ -20,6 +20,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import net.sf.ehcache.serialization.Serializer;
 
 /**
  * This class is designed to minimise the number of System.arraycopy(); methods
@@ -68,6 +71,15 @@ public final class MemoryEfficientByteArrayOutputStream extends ByteArrayOutputS
         }
     }
 
+    /**
+     * Gets the bytes as a buffer.
+     *
+     * @return a buffer wrapping the underlying byte[], without copying it
+     */
+    public synchronized ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, size()).slice();
+    }
+
     /**
      * Factory method
      * @param serializable any Object that implements Serializable
@@ -99,4 +111,18 @@ public final class MemoryEfficientByteArrayOutputStream extends ByteArrayOutputS
         lastSize = outstr.getBytes().length;
         return outstr;
     }
+
+    /**
+     * Factory method using the given serializer, sized like {@link #serialize(Serializable)}.
+     * @param object the object to serialize
+     * @param serializer the serializer to write the object with
+     * @return a ByteArrayOutputStream with the serialized object in it
+     * @throws java.io.IOException if something goes wrong with the serialization
+     */
+    public static MemoryEfficientByteArrayOutputStream serialize(Object object, Serializer serializer) throws IOException {
+        MemoryEfficientByteArrayOutputStream outstr = new MemoryEfficientByteArrayOutputStream(lastSize);
+        serializer.serialize(object, outstr);
+        lastSize = outstr.size();
+        return outstr;
+    }
 }
@@ -21,6 +21,7 @@ import static junit.framework.Assert.assertSame;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
@@ -2442,6 +2443,83 @@ public class CacheTest extends AbstractCacheTest {
     }
 
 
+    /**
+     * Checks the compute family maps, keeps and removes keys like their {@link java.util.Map} counterparts.
+     */
+    @Test
+    public void testComputeOperations() {
+        Cache cache = new Cache(new CacheConfiguration("compute", 100));
+        manager.addCache(cache);
+        RemoveCountingListener l = new RemoveCountingListener();
+        cache.getCacheEventNotificationService().registerListener(l);
+        ValueRemapper increment = new ValueRemapper() {
+            public Object remap(Object key, Object currentValue) {
+                return currentValue == null ? 1 : (Integer) currentValue + 1;
+            }
+        };
+
+        assertThat(cache.computeIfPresent("key", increment), nullValue());
+        assertThat(cache.get("key"), nullValue());
+        assertThat(cache.computeIfAbsent("key", increment).getObjectValue(), equalTo((Object) 1));
+        assertThat(cache.computeIfAbsent("key", increment).getObjectValue(), equalTo((Object) 1));
+        assertThat(cache.compute("key", increment).getObjectValue(), equalTo((Object) 2));
+        assertThat(cache.computeIfPresent("key", increment).getObjectValue(), equalTo((Object) 3));
+        assertThat(cache.get("key").getObjectValue(), equalTo((Object) 3));
+
+        ValueMerger sum = new ValueMerger() {
+            public Object merge(Object currentValue, Object value) {
+                return (Integer) currentValue + (Integer) value;
+            }
+        };
+        assertThat(cache.merge("other", 5, sum).getObjectValue(), equalTo((Object) 5));
+        assertThat(cache.merge("other", 5, sum).getObjectValue(), equalTo((Object) 10));
+
+        assertThat(cache.compute("key", new ValueRemapper() {
+            public Object remap(Object key, Object currentValue) {
+                return null;
+            }
+        }), nullValue());
+        assertThat(cache.get("key"), nullValue());
+        assertEquals(1, l.count);
+    }
+
+    /**
+     * Checks concurrent merges on a disk backed cache are not lost.
+     */
+    @Test
+    public void testConcurrentMergesAreAtomic() throws Exception {
+        final Cache cache = new Cache(new CacheConfiguration("merging", 10).overflowToDisk(true));
+        manager.addCache(cache);
+        final ValueMerger sum = new ValueMerger() {
+            public Object merge(Object currentValue, Object value) {
+                return (Integer) currentValue + (Integer) value;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        for (int j = 0; j < 1000; j++) {
+                            cache.merge(j % 50, 1, sum);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int j = 0; j < 50; j++) {
+            assertThat(cache.get(j).getObjectValue(), equalTo((Object) 80));
+        }
+    }
+
     /**
      * Checks that notification only happens once when clearOnFlush is false i.e.
      * The impact of this is that there will be one copy in each store.
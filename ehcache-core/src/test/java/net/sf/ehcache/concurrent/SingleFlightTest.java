@@ -0,0 +1,110 @@
+package net.sf.ehcache.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentLoadsOfAKeyAreCoalesced() throws Exception {
+        final SingleFlight<String, Integer> flights = new SingleFlight<String, Integer>();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Integer> load = new Callable<Integer>() {
+            public Integer call() throws Exception {
+                release.await();
+                return loads.incrementAndGet();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        return flights.get("key", load);
+                    }
+                }));
+            }
+            while (flights.size() == 0) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<Integer> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS), is(1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(loads.get(), is(1));
+        assertThat(flights.size(), is(0));
+        assertThat(flights.get("key", load), is(2));
+    }
+
+    @Test
+    public void testLoadsOfOtherKeysDoNotWait() throws Exception {
+        final SingleFlight<String, String> flights = new SingleFlight<String, String>();
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Callable<String> load = new Callable<String>() {
+                public String call() throws Exception {
+                    release.await();
+                    return "slow";
+                }
+            };
+            Future<String> slow = flights.submit("slow", load, executor);
+            assertThat(flights.submit("slow", load, executor), sameInstance(slow));
+
+            assertThat(flights.get("fast", new Callable<String>() {
+                public String call() {
+                    return "fast";
+                }
+            }, 1, TimeUnit.SECONDS), is("fast"));
+
+            release.countDown();
+            assertThat(slow.get(10, TimeUnit.SECONDS), is("slow"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedLoadsAreForgotten() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<String, String>();
+        final IllegalStateException failure = new IllegalStateException();
+        try {
+            flights.get("key", new Callable<String>() {
+                public String call() {
+                    throw failure;
+                }
+            });
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), sameInstance((Throwable) failure));
+        }
+        assertThat(flights.size(), is(0));
+        assertThat(flights.get("key", new Callable<String>() {
+            public String call() {
+                return "value";
+            }
+        }), is("value"));
+    }
+}
@@ -0,0 +1,123 @@
+package net.sf.ehcache.constructs.async;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
+import net.sf.ehcache.constructs.blocking.BlockingCache;
+import net.sf.ehcache.constructs.blocking.CacheEntryFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AsyncCacheTest {
+
+    private CacheManager manager;
+    private ExecutorService executor;
+    private Ehcache cache;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("AsyncCacheTest"));
+        manager.addCache(new net.sf.ehcache.Cache(new CacheConfiguration("async", 100)));
+        cache = manager.getEhcache("async");
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+        manager.shutdown();
+    }
+
+    @Test
+    public void testGetAndPutComplete() throws Exception {
+        AsyncCache async = new AsyncCache(cache, executor);
+        async.putAsync(new Element("key", "value")).get(10, TimeUnit.SECONDS);
+
+        assertThat(async.getAsync("key").get(10, TimeUnit.SECONDS).getObjectValue(), is((Object) "value"));
+        assertThat(async.getAsync("missing").get(10, TimeUnit.SECONDS), nullValue());
+
+        Map<Object, Element> all = async.getAllAsync(Arrays.asList("key", "missing")).get(10, TimeUnit.SECONDS);
+        assertThat(all.get("key").getObjectValue(), is((Object) "value"));
+        assertThat(all.containsKey("missing"), is(true));
+    }
+
+    @Test
+    public void testConcurrentComputesCreateOnce() throws Exception {
+        AsyncCache async = new AsyncCache(cache, executor);
+        final AtomicInteger created = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        CacheEntryFactory factory = new CacheEntryFactory() {
+            public Object createEntry(Object key) throws Exception {
+                release.await();
+                return "created-" + created.incrementAndGet();
+            }
+        };
+
+        List<CompletableFuture<Element>> futures = new ArrayList<CompletableFuture<Element>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(async.computeIfAbsentAsync("key", factory));
+        }
+        release.countDown();
+        for (CompletableFuture<Element> future : futures) {
+            assertThat(future.get(10, TimeUnit.SECONDS).getObjectValue(), is((Object) "created-1"));
+        }
+        assertThat(created.get(), is(1));
+        assertThat(cache.get("key").getObjectValue(), is((Object) "created-1"));
+    }
+
+    @Test
+    public void testMissesOnABlockingCacheDoNotLeaveTheKeyLocked() throws Exception {
+        BlockingCache blocking = new BlockingCache(cache);
+        blocking.setTimeoutMillis(1000);
+        AsyncCache async = new AsyncCache(blocking, executor);
+
+        assertThat(async.getAsync("key").get(10, TimeUnit.SECONDS), nullValue());
+
+        blocking.put(new Element("key", "value"));
+        assertThat(blocking.get("key").getObjectValue(), is((Object) "value"));
+    }
+
+    @Test
+    public void testMissesOnADecoratedBlockingCacheDoNotLeaveTheKeyLocked() throws Exception {
+        BlockingCache blocking = new BlockingCache(cache);
+        blocking.setTimeoutMillis(1000);
+        AsyncCache async = new AsyncCache(new EhcacheDecoratorAdapter(blocking), executor);
+
+        assertThat(async.getAsync("key").get(10, TimeUnit.SECONDS), nullValue());
+
+        blocking.put(new Element("key", "value"));
+        assertThat(blocking.get("key").getObjectValue(), is((Object) "value"));
+    }
+
+    @Test
+    public void testOperationsChainWithoutWaiting() throws Exception {
+        final AsyncCache async = new AsyncCache(cache, executor);
+        CompletableFuture<Element> chained = async.putAsync(new Element("key", "value"))
+            .thenCompose(new Function<Void, CompletableFuture<Element>>() {
+                public CompletableFuture<Element> apply(Void done) {
+                    return async.getAsync("key");
+                }
+            });
+        assertThat(chained.get(10, TimeUnit.SECONDS).getObjectValue(), is((Object) "value"));
+    }
+}
@@ -366,8 +366,8 @@ public class SelfPopulatingCacheTest extends CacheTest {
 
 
     /**
-     * Creating 11 Threads which attempt to get a null entry will result, eventually, in 11
-     * calls to the CacheEntryFactory
+     * Creating 11 Threads which attempt to get a null entry will result in 2
+     * calls to the CacheEntryFactory: the first 10 share the call in flight, the late one makes another
      *
      * @throws InterruptedException
      */
@@ -391,15 +391,15 @@ public class SelfPopulatingCacheTest extends CacheTest {
             }
         }
 
-        //All of the others should have timed out. The first thread will have returned null.
+        //All of the others should have shared the first thread's call, which returned null.
         // This thread should be able to have a go, thus setting the count to 2
-        Thread.sleep(12000);
+        Thread.sleep(2000);
         Thread lateThread = new CacheAccessorThread(selfPopulatingCache, "key1");
         lateThread.start();
         lateThread.join();
 
         assertEquals("The wrong number of cacheAccessorThreads tried to create selfPopulatingCache entry for key1",
-                11, cacheEntryFactoryRequests);
+                2, cacheEntryFactoryRequests);
     }
 
     /**
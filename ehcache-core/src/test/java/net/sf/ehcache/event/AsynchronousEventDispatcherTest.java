@@ -0,0 +1,307 @@
+package net.sf.ehcache.event;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.event.AsynchronousDispatchConfiguration.OverflowPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AsynchronousEventDispatcherTest {
+
+    private CacheManager cacheManager;
+    private Cache cache;
+    private RegisteredEventListeners listeners;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("asynchronousEventDispatcherTest"));
+        cache = new Cache(new CacheConfiguration("async", 0));
+        cacheManager.addCache(cache);
+        listeners = cache.getCacheEventNotificationService();
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testDeliversEventsOfEachKeyInOrder() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        assertThat(listeners.registerListener(listener, NotificationScope.ALL, new AsynchronousDispatchConfiguration().stripes(4)), is(true));
+        assertThat(listeners.registerListener(listener, NotificationScope.ALL, new AsynchronousDispatchConfiguration()), is(false));
+
+        for (int i = 0; i < 100; i++) {
+            cache.put(new Element(i % 10, i));
+        }
+        for (int k = 0; k < 10; k++) {
+            cache.remove(k);
+        }
+        awaitDelivered(listeners.getAsynchronousDispatcher(listener), 110);
+
+        for (int k = 0; k < 10; k++) {
+            List<String> expected = new ArrayList<String>();
+            expected.add("PUT " + k);
+            for (int i = k + 10; i < 100; i += 10) {
+                expected.add("UPDATED " + i);
+            }
+            expected.add("REMOVED " + (k + 90));
+            assertThat(listener.eventsFor(k), is(expected));
+        }
+        assertThat(listener.notifiedOnCallerThread, is(false));
+    }
+
+    @Test
+    public void testBatchesEventsAroundRemoveAll() throws InterruptedException {
+        BatchingListener listener = new BatchingListener();
+        listeners.registerListener(listener, NotificationScope.ALL, new AsynchronousDispatchConfiguration().stripes(2).maxBatchSize(16));
+
+        for (int i = 0; i < 50; i++) {
+            cache.put(new Element(i, i));
+        }
+        cache.removeAll();
+        for (int i = 50; i < 60; i++) {
+            cache.put(new Element(i, i));
+        }
+        awaitDelivered(listeners.getAsynchronousDispatcher(listener), 61);
+
+        List<CacheEventNotification> events = listener.events();
+        assertThat(events.size(), is(61));
+        assertThat(events.get(50).getType(), is(CacheEventNotification.Type.REMOVE_ALL));
+        for (int i = 0; i < events.size(); i++) {
+            if (i != 50) {
+                assertThat(events.get(i).getType(), is(CacheEventNotification.Type.PUT));
+                assertThat((Integer) events.get(i).getElement().getObjectKey() < 50, is(i < 50));
+            }
+        }
+        assertThat(listener.individualCallbacks, is(0));
+    }
+
+    @Test
+    public void testDropsNewestEventsWhenFull() throws InterruptedException {
+        BlockingListener listener = new BlockingListener();
+        listeners.registerListener(listener, NotificationScope.ALL, new AsynchronousDispatchConfiguration()
+            .queueCapacity(2).overflowPolicy(OverflowPolicy.DROP_NEWEST));
+        AsynchronousEventDispatcher dispatcher = listeners.getAsynchronousDispatcher(listener);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(new Element(i, i));
+        }
+        listener.release.countDown();
+        awaitSettled(dispatcher, 10);
+
+        assertThat(dispatcher.getDroppedEventCount() >= 7, is(true));
+        assertThat(listener.eventsFor(0), is(single("PUT 0")));
+        assertThat(listener.eventsFor(9).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testDropsOldestEventsWhenFull() throws InterruptedException {
+        BlockingListener listener = new BlockingListener();
+        listeners.registerListener(listener, NotificationScope.ALL, new AsynchronousDispatchConfiguration()
+            .queueCapacity(2).overflowPolicy(OverflowPolicy.DROP_OLDEST));
+        AsynchronousEventDispatcher dispatcher = listeners.getAsynchronousDispatcher(listener);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(new Element(i, i));
+        }
+        listener.release.countDown();
+        awaitSettled(dispatcher, 10);
+
+        assertThat(dispatcher.getDroppedEventCount() >= 7, is(true));
+        assertThat(listener.eventsFor(8), is(single("PUT 8")));
+        assertThat(listener.eventsFor(9), is(single("PUT 9")));
+    }
+
+    @Test
+    public void testListenerWritingToTheCacheDoesNotBlockOnItsOwnStripe() throws InterruptedException {
+        CascadingListener listener = new CascadingListener();
+        listeners.registerListener(listener, NotificationScope.ALL, new AsynchronousDispatchConfiguration()
+            .stripes(1).queueCapacity(1).overflowPolicy(OverflowPolicy.BLOCK));
+        AsynchronousEventDispatcher dispatcher = listeners.getAsynchronousDispatcher(listener);
+
+        cache.put(new Element(0, 0));
+        awaitSettled(dispatcher, 1 + CascadingListener.CASCADE);
+        assertThat(dispatcher.getDroppedEventCount() > 0, is(true));
+    }
+
+    @Test
+    public void testUnregisteringDeliversQueuedEvents() {
+        BlockingListener listener = new BlockingListener();
+        listener.release.countDown();
+        listeners.registerListener(listener, NotificationScope.ALL, new AsynchronousDispatchConfiguration());
+        for (int i = 0; i < 100; i++) {
+            cache.put(new Element(i, i));
+        }
+
+        assertThat(listeners.unregisterListener(listener), is(true));
+        assertThat(listeners.getAsynchronousDispatcher(listener), nullValue());
+        for (int i = 0; i < 100; i++) {
+            assertThat(listener.eventsFor(i), is(single("PUT " + i)));
+        }
+        cache.put(new Element(100, 100));
+        assertThat(listener.eventsFor(100).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testListenerUnregisteringItselfDoesNotWaitOnItsFullStripe() throws InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch unregistered = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void notifyElementPut(Ehcache cache, Element element) {
+                super.notifyElementPut(cache, element);
+                if (element.getObjectKey().equals(0)) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    listeners.unregisterListener(this);
+                    unregistered.countDown();
+                }
+            }
+        };
+        listeners.registerListener(listener, NotificationScope.ALL, new AsynchronousDispatchConfiguration()
+            .stripes(1).queueCapacity(1).overflowPolicy(OverflowPolicy.DROP_NEWEST));
+        AsynchronousEventDispatcher dispatcher = listeners.getAsynchronousDispatcher(listener);
+
+        cache.put(new Element(0, 0));
+        assertThat(entered.await(10, TimeUnit.SECONDS), is(true));
+        cache.put(new Element(1, 1));
+        release.countDown();
+        assertThat(unregistered.await(10, TimeUnit.SECONDS), is(true));
+        awaitSettled(dispatcher, 2);
+        assertThat(listener.eventsFor(1).isEmpty(), is(true));
+    }
+
+    private static List<String> single(String event) {
+        List<String> events = new ArrayList<String>();
+        events.add(event);
+        return events;
+    }
+
+    private static void awaitDelivered(AsynchronousEventDispatcher dispatcher, long events) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dispatcher.getDispatchedEventCount() < events && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(dispatcher.getDispatchedEventCount(), is(events));
+    }
+
+    private static void awaitSettled(AsynchronousEventDispatcher dispatcher, long events) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dispatcher.getDispatchedEventCount() + dispatcher.getDroppedEventCount() < events
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(dispatcher.getDispatchedEventCount() + dispatcher.getDroppedEventCount(), is(events));
+    }
+
+    private static class RecordingListener extends CacheEventListenerAdapter {
+
+        private final Map<Object, List<String>> events = new HashMap<Object, List<String>>();
+        private final Thread callerThread = Thread.currentThread();
+        private volatile boolean notifiedOnCallerThread;
+
+        synchronized List<String> eventsFor(Object key) {
+            List<String> keyEvents = events.get(key);
+            return keyEvents == null ? new ArrayList<String>() : new ArrayList<String>(keyEvents);
+        }
+
+        synchronized void record(String type, Element element) {
+            notifiedOnCallerThread |= Thread.currentThread() == callerThread;
+            List<String> keyEvents = events.get(element.getObjectKey());
+            if (keyEvents == null) {
+                keyEvents = new ArrayList<String>();
+                events.put(element.getObjectKey(), keyEvents);
+            }
+            keyEvents.add(type + " " + element.getObjectValue());
+        }
+
+        @Override
+        public void notifyElementPut(Ehcache cache, Element element) {
+            record("PUT", element);
+        }
+
+        @Override
+        public void notifyElementUpdated(Ehcache cache, Element element) {
+            record("UPDATED", element);
+        }
+
+        @Override
+        public void notifyElementRemoved(Ehcache cache, Element element) {
+            record("REMOVED", element);
+        }
+    }
+
+    private static class BlockingListener extends RecordingListener {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void notifyElementPut(Ehcache cache, Element element) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            super.notifyElementPut(cache, element);
+        }
+    }
+
+    /**
+     * Puts several elements from the dispatching thread when notified of the first put.
+     */
+    private static class CascadingListener extends RecordingListener {
+
+        private static final int CASCADE = 5;
+
+        @Override
+        public void notifyElementPut(Ehcache cache, Element element) {
+            super.notifyElementPut(cache, element);
+            if (element.getObjectKey().equals(0)) {
+                for (int i = 1; i <= CASCADE; i++) {
+                    cache.put(new Element(i, i));
+                }
+            }
+        }
+    }
+
+    private static class BatchingListener extends CacheEventListenerAdapter implements BatchingCacheEventListener {
+
+        private final List<CacheEventNotification> events = new ArrayList<CacheEventNotification>();
+        private volatile int individualCallbacks;
+
+        public synchronized void notifyEvents(Ehcache cache, List<CacheEventNotification> batch) {
+            events.addAll(batch);
+        }
+
+        synchronized List<CacheEventNotification> events() {
+            return new ArrayList<CacheEventNotification>(events);
+        }
+
+        @Override
+        public void notifyElementPut(Ehcache cache, Element element) {
+            individualCallbacks++;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.sf.ehcache.pool.impl;
+
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.PoolParticipant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BoundedPoolTest {
+
+    @Test
+    public void testPoolSizeTracksConcurrentAccessors() throws Exception {
+        final BoundedPool pool = new BoundedPool(Long.MAX_VALUE / 2, new FromLargestCachePoolEvictor(), new ConstantSizeOfEngine(1, 2, 3));
+        final List<PoolAccessor> accessors = new ArrayList<PoolAccessor>();
+        for (int i = 0; i < 4; i++) {
+            accessors.add(pool.createPoolAccessor(new NonEvictingParticipant(), new ConstantSizeOfEngine(1, 2, 3)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 8; t++) {
+                final PoolAccessor accessor = accessors.get(t % accessors.size());
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (int i = 0; i < 100000; i++) {
+                            long added = accessor.add("key", "value", "container", false);
+                            if (i % 2 == 0) {
+                                accessor.delete(added);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long total = 0;
+        for (PoolAccessor accessor : accessors) {
+            total += accessor.getSize();
+        }
+        assertThat(total, is(8 * 50000 * 6L));
+        assertThat(pool.getSize(), is(total));
+
+        accessors.get(0).clear();
+        accessors.get(1).unlink();
+        assertThat(pool.getSize(), is(accessors.get(2).getSize() + accessors.get(3).getSize()));
+    }
+
+    @Test
+    public void testAddsNearTheBoundAreExact() {
+        BoundedPool pool = new BoundedPool(6000, new FromLargestCachePoolEvictor(), new ConstantSizeOfEngine(1, 2, 3));
+        PoolAccessor accessor = pool.createPoolAccessor(new NonEvictingParticipant(), new ConstantSizeOfEngine(1, 2, 3));
+
+        int added = 0;
+        while (accessor.add("key", "value", "container", false) >= 0) {
+            added++;
+        }
+        assertThat(added, is(1000));
+        assertThat(pool.getSize(), is(6000L));
+    }
+
+    @Test
+    public void testShrinkingTheBoundRevokesTheKnownRoom() {
+        BoundedPool pool = new BoundedPool(6000, new FromLargestCachePoolEvictor(), new ConstantSizeOfEngine(1, 2, 3));
+        PoolAccessor accessor = pool.createPoolAccessor(new NonEvictingParticipant(), new ConstantSizeOfEngine(1, 2, 3));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(accessor.add("key", "value", "container", false), is(6L));
+        }
+        pool.setMaxSize(60);
+        assertThat(accessor.add("key", "value", "container", false), is(-1L));
+        assertThat(accessor.canAddWithoutEvicting("key", "value", "container"), is(false));
+        assertThat(pool.getSize(), is(60L));
+    }
+
+    private static final class NonEvictingParticipant implements PoolParticipant {
+
+        public boolean evict(int count, long size) {
+            return false;
+        }
+
+        public float getApproximateHitRate() {
+            return 0;
+        }
+
+        public float getApproximateMissRate() {
+            return 0;
+        }
+
+        public long getApproximateCountSize() {
+            return 0;
+        }
+    }
+}
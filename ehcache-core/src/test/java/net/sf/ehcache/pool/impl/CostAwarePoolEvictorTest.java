@@ -0,0 +1,114 @@
+package net.sf.ehcache.pool.impl;
+
+import net.sf.ehcache.pool.CostAwarePoolParticipant;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.PoolParticipant;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CostAwarePoolEvictorTest {
+
+    @Test
+    public void testEvictsFromTheCacheWithTheCheapestMisses() {
+        BoundedPool pool = new BoundedPool(600, new CostAwarePoolEvictor(), new ConstantSizeOfEngine(1, 2, 3));
+        StubParticipant cheap = new StubParticipant(10, 1000000, 100, 10);
+        StubParticipant expensive = new StubParticipant(10, 200000000, 100, 10);
+        PoolAccessor expensiveAccessor = pool.createPoolAccessor(expensive, new ConstantSizeOfEngine(1, 2, 3));
+        PoolAccessor cheapAccessor = pool.createPoolAccessor(cheap, new ConstantSizeOfEngine(1, 2, 3));
+        fill(expensiveAccessor, 50);
+        fill(cheapAccessor, 50);
+
+        assertThat(expensiveAccessor.add("key", "value", "container", false) >= 0, is(true));
+        assertThat(cheap.evicted, is(1));
+        assertThat(expensive.evicted, is(0));
+    }
+
+    @Test
+    public void testMarginalHitRateOutweighsOverallHitRate() {
+        BoundedPool pool = new BoundedPool(600, new CostAwarePoolEvictor(), new ConstantSizeOfEngine(1, 2, 3));
+        // hit a lot, but only on entries it would keep
+        StubParticipant hot = new StubParticipant(1000, 1000000, 0, 10);
+        // hit less, but its last evicted entries keep being asked for
+        StubParticipant thrashing = new StubParticipant(10, 1000000, 100, 10);
+        PoolAccessor hotAccessor = pool.createPoolAccessor(hot, new ConstantSizeOfEngine(1, 2, 3));
+        PoolAccessor thrashingAccessor = pool.createPoolAccessor(thrashing, new ConstantSizeOfEngine(1, 2, 3));
+        fill(hotAccessor, 50);
+        fill(thrashingAccessor, 50);
+
+        assertThat(thrashingAccessor.add("key", "value", "container", false) >= 0, is(true));
+        assertThat(hot.evicted, is(1));
+        assertThat(thrashing.evicted, is(0));
+    }
+
+    @Test
+    public void testParticipantsWithoutCostsUseTheAverageMissCost() {
+        BoundedPool pool = new BoundedPool(600, new CostAwarePoolEvictor(), new ConstantSizeOfEngine(1, 2, 3));
+        PoolAccessor plain = pool.createPoolAccessor(new PlainParticipant(10, 50), new ConstantSizeOfEngine(1, 2, 3));
+        fill(plain, 50);
+
+        assertThat(CostAwarePoolEvictor.evictionCost(plain, 1000), is(10f / 50 * 1000 / 6));
+    }
+
+    private static void fill(PoolAccessor accessor, int count) {
+        for (int i = 0; i < count; i++) {
+            accessor.add("key", "value", "container", true);
+        }
+    }
+
+    private static class PlainParticipant implements PoolParticipant {
+
+        private final float hitRate;
+        private final long countSize;
+        int evicted;
+
+        PlainParticipant(float hitRate, long countSize) {
+            this.hitRate = hitRate;
+            this.countSize = countSize;
+        }
+
+        public boolean evict(int count, long size) {
+            evicted += count;
+            return true;
+        }
+
+        public float getApproximateHitRate() {
+            return hitRate;
+        }
+
+        public float getApproximateMissRate() {
+            return 0;
+        }
+
+        public long getApproximateCountSize() {
+            return countSize;
+        }
+    }
+
+    private static final class StubParticipant extends PlainParticipant implements CostAwarePoolParticipant {
+
+        private final float missCost;
+        private final float marginalHitRate;
+        private final long marginalCountSize;
+
+        StubParticipant(float hitRate, float missCost, float marginalHitRate, long marginalCountSize) {
+            super(hitRate, 50);
+            this.missCost = missCost;
+            this.marginalHitRate = marginalHitRate;
+            this.marginalCountSize = marginalCountSize;
+        }
+
+        public float getApproximateMissCost() {
+            return missCost;
+        }
+
+        public float getApproximateMarginalHitRate() {
+            return marginalHitRate;
+        }
+
+        public long getApproximateMarginalCountSize() {
+            return marginalCountSize;
+        }
+    }
+}
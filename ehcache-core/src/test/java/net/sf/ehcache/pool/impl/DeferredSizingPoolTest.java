@@ -0,0 +1,188 @@
+package net.sf.ehcache.pool.impl;
+
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.RecalculatingPoolParticipant;
+import net.sf.ehcache.pool.Size;
+import net.sf.ehcache.pool.SizeOfEngine;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DeferredSizingPoolTest {
+
+    @Test
+    public void testAddsAreEstimatedAndSettledInTheBackground() throws InterruptedException {
+        LengthSizeOfEngine engine = new LengthSizeOfEngine();
+        DeferredSizingPool pool = new DeferredSizingPool(1000000, new FromLargestCachePoolEvictor(), engine);
+        RecordingStore store = new RecordingStore();
+        store.accessor = pool.createPoolAccessor(store, engine);
+
+        store.put("first", repeat('a', 100));
+        assertThat(engine.callerSizings.get(), is(1));
+        for (int i = 0; i < 10; i++) {
+            store.put(i, repeat('b', 1000));
+        }
+        assertThat(engine.callerSizings.get(), is(1));
+
+        waitForSize(store.accessor, 100 + 10 * 1000);
+        assertThat(store.recordedSize(), is(store.accessor.getSize()));
+    }
+
+    @Test
+    public void testOverCommitIsEvictedInTheBackground() throws InterruptedException {
+        LengthSizeOfEngine engine = new LengthSizeOfEngine();
+        DeferredSizingPool pool = new DeferredSizingPool(10000, new FromLargestCachePoolEvictor(), engine, 0.1f);
+        RecordingStore store = new RecordingStore();
+        store.accessor = pool.createPoolAccessor(store, engine);
+
+        store.put("first", repeat('a', 10));
+        for (int i = 0; i < 1000; i++) {
+            store.put(i, repeat('b', 100));
+            assertThat(pool.getSize() <= 11000, is(true));
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.getSize() > 10000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.getSize() <= 10000, is(true));
+        assertThat(store.recordedSize(), is(store.accessor.getSize()));
+    }
+
+    @Test
+    public void testElementsInstalledAfterTheSizerRanAreSettled() throws InterruptedException {
+        LengthSizeOfEngine engine = new LengthSizeOfEngine();
+        DeferredSizingPool pool = new DeferredSizingPool(1000000, new FromLargestCachePoolEvictor(), engine);
+        RecordingStore store = new RecordingStore();
+        store.accessor = pool.createPoolAccessor(store, engine);
+
+        store.put("first", repeat('a', 100));
+        store.put("slow", repeat('b', 1000), 50);
+        store.put("slow", repeat('c', 10), 50);
+
+        waitForSize(store.accessor, 100 + 10);
+        assertThat(store.recordedSize(), is(store.accessor.getSize()));
+    }
+
+    private static void waitForSize(PoolAccessor accessor, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (accessor.getSize() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(accessor.getSize(), is(expected));
+    }
+
+    private static String repeat(char c, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sizes string values by their length and counts the sizings done outside of the deferred sizing thread.
+     */
+    private static final class LengthSizeOfEngine implements SizeOfEngine {
+
+        private final AtomicInteger callerSizings = new AtomicInteger();
+
+        public Size sizeOf(Object key, Object value, Object container) {
+            if (!Thread.currentThread().getName().startsWith("Deferred SizeOf")) {
+                callerSizings.incrementAndGet();
+            }
+            return new Size(((String) value).length(), true);
+        }
+
+        public SizeOfEngine copyWith(int maxDepth, boolean abortWhenMaxDepthExceeded) {
+            return this;
+        }
+    }
+
+    /**
+     * A store recording the size the pool handed out for each of its entries.
+     */
+    private static final class RecordingStore implements RecalculatingPoolParticipant {
+
+        private final Map<Object, String> values = new LinkedHashMap<Object, String>();
+        private final Map<Object, Long> sizes = new LinkedHashMap<Object, Long>();
+        private PoolAccessor accessor;
+
+        void put(Object key, String value) {
+            put(key, value, 0);
+        }
+
+        /**
+         * Adds to the pool and only installs the entry after the given delay, as a store does when a put contends.
+         */
+        void put(Object key, String value, long installDelayMillis) {
+            long size = accessor.add(key, value, null, false);
+            if (size >= 0) {
+                if (installDelayMillis > 0) {
+                    try {
+                        Thread.sleep(installDelayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                synchronized (this) {
+                    values.put(key, value);
+                    Long previous = sizes.put(key, size);
+                    if (previous != null) {
+                        accessor.delete(previous);
+                    }
+                }
+            }
+        }
+
+        synchronized long recordedSize() {
+            long total = 0;
+            for (Long size : sizes.values()) {
+                total += size;
+            }
+            return total;
+        }
+
+        public synchronized boolean recalculateSize(Object key, Object value, Object container) {
+            Long size = sizes.get(key);
+            if (size == null || values.get(key) != value) {
+                return false;
+            }
+            long delta = accessor.replace(size, key, value, null, true);
+            sizes.put(key, size + delta);
+            return true;
+        }
+
+        public synchronized boolean evict(int count, long size) {
+            Iterator<Map.Entry<Object, Long>> it = sizes.entrySet().iterator();
+            for (int i = 0; i < count; i++) {
+                if (!it.hasNext()) {
+                    return false;
+                }
+                Map.Entry<Object, Long> evicted = it.next();
+                it.remove();
+                values.remove(evicted.getKey());
+                accessor.delete(evicted.getValue());
+            }
+            return true;
+        }
+
+        public float getApproximateHitRate() {
+            return 0;
+        }
+
+        public float getApproximateMissRate() {
+            return 0;
+        }
+
+        public synchronized long getApproximateCountSize() {
+            return sizes.size();
+        }
+    }
+}
@@ -82,6 +82,65 @@ public class ObjectGraphWalkerTest {
     assertThat(walker.walk(MAX_SIZEOF_DEPTH, false), is(0L));
   }
 
+  @Test
+  public void testFixedShapesAreMeasuredLikeTheirGraph() {
+    ObjectGraphWalker walker = new ObjectGraphWalker(new CountingVisitor(), new PassThroughFilter());
+
+    Long shared = 1000L;
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, new Pair(1000L, 2000L)), is(3L));
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, new Pair(shared, shared)), is(2L));
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, new Pair(1000L, null)), is(2L));
+    // auto-boxed '1' is a flyweight - it doesn't get counted
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, new Pair(1L, 2000L)), is(2L));
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, new Pair(shared, 2000L), shared), is(3L));
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, shared, new Pair(shared, 2000L)), is(3L));
+  }
+
+  @Test
+  public void testSizerReplacesTheWalkOfItsType() {
+    Sizers sizers = new Sizers();
+    ObjectGraphWalker walker = new ObjectGraphWalker(new CountingVisitor(), new PassThroughFilter(), sizers);
+    ObjectGraphWalker otherWalker = new ObjectGraphWalker(new CountingVisitor(), new PassThroughFilter());
+
+    sizers.register(new Sizer<SomeInnerClass>() {
+      public Class<SomeInnerClass> getType() {
+        return SomeInnerClass.class;
+      }
+
+      public long sizeOf(SomeInnerClass instance) {
+        return 42L;
+      }
+    });
+    try {
+      SomeInnerClass sized = new SomeInnerClass();
+      assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, sized), is(42L));
+      assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, (Object) new Object[] {sized, sized}), is(43L));
+      assertThat(otherWalker.walk(MAX_SIZEOF_DEPTH, false, sized), is(14L));
+    } finally {
+      sizers.unregister(SomeInnerClass.class);
+    }
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, new SomeInnerClass()), is(14L));
+  }
+
+  private static final class CountingVisitor implements ObjectGraphWalker.Visitor {
+    public long visit(final Object object) {
+      return 1;
+    }
+  }
+
+  private static final class Pair {
+
+    private final Long first;
+    private final Long second;
+    private final int  hash;
+
+    private Pair(Long first, Long second) {
+      this.first = first;
+      this.second = second;
+      this.hash = 31 * (first == null ? 0 : first.hashCode()) + (second == null ? 0 : second.hashCode());
+    }
+  }
+
   public class SomeInnerClass {
 
     private int      value;
@@ -186,6 +186,24 @@ public class ReflectionAttributeExtractorTest extends TestCase {
         assertEquals("base", rae.attributeFor(element, ""));
     }
 
+    public void testChainedPathOverAlternatingTypes() {
+        ReflectionAttributeExtractor rae = new ReflectionAttributeExtractor("value.reference.field");
+        Element sub = new Element("k", new Ref(new Sub()));
+        Element base = new Element("k", new Ref(new Base()));
+        Element missing = new Element("k", new Ref("v"));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("base", rae.attributeFor(sub, ""));
+            assertEquals("base", rae.attributeFor(base, ""));
+            try {
+                rae.attributeFor(missing, "");
+                fail();
+            } catch (AttributeExtractorException aee) {
+                // expected
+            }
+        }
+    }
+
     public void testExceptions() {
         Element element = new Element("k", "v");
 
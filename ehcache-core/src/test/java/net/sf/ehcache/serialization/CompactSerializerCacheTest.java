@@ -0,0 +1,74 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serialization;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.config.SerializerConfiguration;
+import net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy;
+import net.sf.ehcache.store.disk.DiskStoreHelper;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CompactSerializerCacheTest {
+
+    @Test
+    public void testDiskAndCopyUseConfiguredSerializer() throws Exception {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration("aCache", 10)
+            .overflowToDisk(true)
+            .copyOnRead(true)
+            .copyOnWrite(true)
+            .serializer(new SerializerConfiguration().className(CompactSerializer.class.getName()));
+        CacheManager cm = new CacheManager(
+            new Configuration()
+                .cache(cacheConfiguration)
+                .name("testDiskAndCopyUseConfiguredSerializer")
+                .diskStore(new DiskStoreConfiguration().path("java.io.tmpdir/testDiskAndCopyUseConfiguredSerializer"))
+        );
+        try {
+            Cache cache = cm.getCache("aCache");
+            assertThat(cache.getCacheConfiguration().getSerializer(), instanceOf(CompactSerializer.class));
+            assertThat(cache.getCacheConfiguration().getCopyStrategy(), instanceOf(ReadWriteSerializationCopyStrategy.class));
+
+            StringBuilder value = new StringBuilder("value");
+            cache.put(new Element("mutable", value));
+            value.append("-changed");
+            assertThat(cache.get("mutable").getObjectValue().toString(), is("value"));
+            assertThat(cache.get("mutable").getObjectValue(), not(sameInstance(cache.get("mutable").getObjectValue())));
+
+            for (int i = 0; i < 1000; i++) {
+                cache.put(new Element(i, "value-" + i));
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            for (int i = 0; i < 1000; i++) {
+                assertThat(cache.get(i).getObjectValue(), is((Object) ("value-" + i)));
+            }
+        } finally {
+            cm.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.ElementIdHelper;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CompactSerializerTest {
+
+    private final Serializer serializer = new CompactSerializer();
+
+    @Test
+    public void testBuiltInTypesRoundTrip() throws Exception {
+        List<Object> values = Arrays.<Object>asList(null, "", "h\u00e9llo \u4e16\u754c", 42, -1L, (short) 7, (byte) -3, 'x',
+                1.5f, Math.PI, true, false);
+        for (Object value : values) {
+            assertThat(roundTrip(value), is(value));
+        }
+        assertTrue(Arrays.equals((byte[]) roundTrip(new byte[] {1, 2, 3}), new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    public void testOtherTypesFallBackToJavaSerialization() throws Exception {
+        ArrayList<String> list = new ArrayList<String>(Arrays.asList("a", "b"));
+        assertThat(roundTrip(list), is((Object) list));
+    }
+
+    @Test
+    public void testElementMetadataRoundTrip() throws Exception {
+        Element element = new Element("key", 12L, 3L, 1000L, 2000L, 5L, false, 60, 30, 1500L);
+        ElementIdHelper.setId(element, 99L);
+
+        Element copy = (Element) roundTrip(element);
+        assertThat(copy.getObjectKey(), is((Object) "key"));
+        assertThat(copy.getObjectValue(), is((Object) 12L));
+        assertThat(copy.getVersion(), is(3L));
+        assertThat(copy.getCreationTime(), is(1000L));
+        assertThat(copy.getLastAccessTime(), is(2000L));
+        assertThat(copy.getHitCount(), is(5L));
+        assertThat(copy.usesCacheDefaultLifespan(), is(false));
+        assertThat(copy.getTimeToLive(), is(60));
+        assertThat(copy.getTimeToIdle(), is(30));
+        assertThat(copy.getLastUpdateTime(), is(1500L));
+        assertThat(ElementIdHelper.getId(copy), is(99L));
+    }
+
+    @Test
+    public void testCompactFormIsSmallerThanJavaSerialization() throws Exception {
+        Element element = new Element("key", "value");
+        assertTrue(serialize(new CompactSerializer(), element).length < serialize(new JavaSerializer(), element).length / 2);
+    }
+
+    private Object roundTrip(Object object) throws IOException, ClassNotFoundException {
+        byte[] bytes = serialize(serializer, object);
+        return serializer.deserialize(new ByteArrayInputStream(bytes), getClass().getClassLoader());
+    }
+
+    private static byte[] serialize(Serializer serializer, Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(object, out);
+        return out.toByteArray();
+    }
+}
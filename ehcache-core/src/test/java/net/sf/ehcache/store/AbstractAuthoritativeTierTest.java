@@ -6,7 +6,11 @@ import net.sf.ehcache.config.CacheConfiguration;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Map;
+
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 /**
@@ -63,6 +67,37 @@ public abstract class AbstractAuthoritativeTierTest<T extends AuthoritativeTier>
         }
     }
 
+    @Test
+    public void testFaultAllMarksFoundEntriesFaulted() throws Exception {
+        CacheManager cacheManager = createCacheManager();
+        T authoritativeTier = createAuthoritativeTier(cacheManager);
+
+        try {
+          authoritativeTier.removeAll();
+          authoritativeTier.putAll(Arrays.asList(new Element("1", "one"), new Element("2", "two"), new Element("3", "three")));
+          assertThat(isFaulted("1", authoritativeTier), is(false));
+
+          Map<Object, Element> faulted = authoritativeTier.faultAll(Arrays.asList("1", "2", "4"), false);
+          assertThat(faulted.size(), is(3));
+          assertThat(faulted.get("1").getObjectValue(), is((Object) "one"));
+          assertThat(faulted.get("2").getObjectValue(), is((Object) "two"));
+          assertThat(faulted.get("4"), nullValue());
+          assertThat(isFaulted("1", authoritativeTier), is(true));
+          assertThat(isFaulted("2", authoritativeTier), is(true));
+          assertThat(isFaulted("3", authoritativeTier), is(false));
+
+          authoritativeTier.removeAll(Arrays.asList("1", "3"));
+          assertThat(authoritativeTier.getAllQuiet(Arrays.asList("1", "2", "3")).get("2").getObjectValue(), is((Object) "two"));
+          assertThat(authoritativeTier.containsKey("1"), is(false));
+          assertThat(authoritativeTier.containsKey("3"), is(false));
+        }
+        finally {
+          if(cacheManager != null ) {
+            cacheManager.shutdown();
+          }
+        }
+    }
+
     protected abstract T createAuthoritativeTier(CacheManager cacheManager) throws Exception;
 
     protected abstract boolean isFaulted(Object key, T authoritativeTier);
@@ -0,0 +1,140 @@
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Attribute;
+import net.sf.ehcache.search.Direction;
+import net.sf.ehcache.search.Person;
+import net.sf.ehcache.search.Person.Gender;
+import net.sf.ehcache.search.Result;
+import net.sf.ehcache.search.Results;
+import net.sf.ehcache.search.aggregator.Average;
+import net.sf.ehcache.search.aggregator.Count;
+import net.sf.ehcache.search.aggregator.Sum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BruteForceSearchManagerTest {
+
+    private static final String PARALLEL_PROPERTY = "net.sf.ehcache.store.parallel.config.parallelSearch";
+    private static final String STREAMING_PROPERTY = "net.sf.ehcache.store.parallel.config.streamingSearchResults";
+
+    private CacheManager cacheManager;
+    private Ehcache cache;
+    private Attribute<Integer> age;
+    private Attribute<Gender> gender;
+
+    @Before
+    public void setUp() {
+        System.setProperty(PARALLEL_PROPERTY, "true");
+        System.setProperty(STREAMING_PROPERTY, "true");
+        cacheManager = new CacheManager(new Configuration().name("bruteForceSearchManagerTest"));
+        CacheConfiguration configuration = new CacheConfiguration("parallel", 0).searchable(new Searchable()
+            .searchAttribute(new SearchAttribute().name("age").expression("value.getAge()"))
+            .searchAttribute(new SearchAttribute().name("gender").expression("value.getGender()")));
+        cacheManager.addCache(new Cache(configuration));
+        cache = cacheManager.getEhcache("parallel");
+        age = cache.getSearchAttribute("age");
+        gender = cache.getSearchAttribute("gender");
+
+        for (int i = 0; i < 10000; i++) {
+            cache.put(new Element(i, new Person("Person" + i, i, i % 2 == 0 ? Gender.MALE : Gender.FEMALE)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(PARALLEL_PROPERTY);
+        System.clearProperty(STREAMING_PROPERTY);
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testOrderedQueryKeepsTheBestResults() {
+        Results results = cache.createQuery().addCriteria(age.lt(9000)).includeKeys().addOrderBy(age, Direction.DESCENDING)
+            .maxResults(3).execute();
+        assertThat(keys(results.all()), is(Arrays.<Object>asList(8999, 8998, 8997)));
+
+        results = cache.createQuery().addCriteria(age.ge(0)).includeKeys().includeAggregator(age.sum())
+            .addOrderBy(age, Direction.ASCENDING).maxResults(4).execute();
+        assertThat(keys(results.all()), is(Arrays.<Object>asList(0, 1, 2, 3)));
+        assertThat(results.all().get(0).getAggregatorResults().get(0), is((Object) 6L));
+    }
+
+    @Test
+    public void testAggregatesAreMergedAcrossSegments() {
+        Results results = cache.createQuery().addCriteria(age.ge(0)).includeAggregator(age.count(), age.sum(), age.min(), age.max())
+            .execute();
+        assertThat(results.size(), is(1));
+        assertThat(results.all().get(0).getAggregatorResults(), is(Arrays.<Object>asList(10000, 49995000L, 0, 9999)));
+
+        results = cache.createQuery().addCriteria(age.lt(10)).includeAttribute(gender).includeAggregator(age.count(), age.sum())
+            .addGroupBy(gender).addOrderBy(gender, Direction.ASCENDING).execute();
+        assertThat(results.size(), is(2));
+        assertThat(results.all().get(0).getAggregatorResults(), is(Arrays.<Object>asList(5, 20L)));
+        assertThat(results.all().get(1).getAggregatorResults(), is(Arrays.<Object>asList(5, 25L)));
+    }
+
+    @Test
+    public void testUnorderedResultsArePagedLazily() {
+        Results results = cache.createQuery().addCriteria(gender.eq(Gender.MALE)).includeKeys().execute();
+        List<Result> firstPage = results.range(0, 10);
+        assertThat(firstPage.size(), is(10));
+        assertThat(results.range(0, 10), is(firstPage));
+        assertThat(results.range(4995, 10).size(), is(5));
+        assertThat(results.size(), is(5000));
+        assertThat(results.hasKeys(), is(true));
+
+        results = cache.createQuery().addCriteria(gender.eq(Gender.MALE)).includeKeys().maxResults(20).execute();
+        assertThat(results.all().size(), is(20));
+    }
+
+    @Test
+    public void testPartialAggregatorsMerge() {
+        Sum sum = new Sum(age);
+        Sum partialSum = sum.createClone();
+        sum.accept(1);
+        partialSum.accept(2);
+        partialSum.accept(3);
+        sum.merge(partialSum);
+        assertThat(sum.aggregateResult(), is((Number) 6L));
+
+        Average average = new Average(age);
+        Average partialAverage = average.createClone();
+        partialAverage.accept(2);
+        partialAverage.accept(4);
+        average.merge(partialAverage);
+        assertThat(average.aggregateResult(), is((Number) 3.0f));
+        average.merge(average.createClone());
+        assertThat(average.aggregateResult(), is((Number) 3.0f));
+
+        Count count = new Count();
+        Count partialCount = count.createClone();
+        count.accept(null);
+        partialCount.accept(null);
+        count.merge(partialCount);
+        assertThat(count.aggregateResult(), is(2));
+    }
+
+    private static List<Object> keys(List<Result> results) {
+        List<Object> keys = new ArrayList<Object>();
+        for (Result result : results) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+}
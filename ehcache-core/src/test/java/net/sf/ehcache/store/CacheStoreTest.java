@@ -20,7 +20,9 @@ import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -166,6 +168,87 @@ public class CacheStoreTest {
         }, false), nullValue());
     }
 
+    @Test
+    public void testGetAllFaultsMissingKeysInOneBulkLoad() {
+        final AtomicInteger bulkFaults = new AtomicInteger();
+        final Store memStore = createMemStore(10);
+        CachingTier<Object, Element> cachingTier = new OnHeapCachingTier<Object, Element>(new CountBasedBackEnd<Object, Object>(10));
+        CacheStore cacheStore = new CacheStore(cachingTier, new DelegatingStoreAuthority(memStore,
+            new DelegatingStoreAuthority.FaultAction() {
+            @Override
+            public Element fault(final Object key, final boolean updateStats) {
+                return memStore.get(key);
+            }
+        }, new DelegatingStoreAuthority.FlushAction() {
+            @Override
+            public boolean flush(final Element element) {
+                return true;
+            }
+        }) {
+            @Override
+            public Map<Object, Element> faultAll(final Collection<?> keys, final boolean updateStats) {
+                bulkFaults.getAndIncrement();
+                return super.faultAll(keys, updateStats);
+            }
+        });
+
+        memStore.put(new Element(1, "one"));
+        memStore.put(new Element(2, "two"));
+        memStore.put(new Element(3, "three"));
+
+        Map<Object, Element> elements = cacheStore.getAll(Arrays.asList(1, 2, 3, 4));
+        assertThat(bulkFaults.get(), is(1));
+        assertThat(elements.size(), is(4));
+        assertThat(elements.get(1).getObjectValue(), equalTo((Object)"one"));
+        assertThat(elements.get(3).getObjectValue(), equalTo((Object)"three"));
+        assertThat(elements.get(4), nullValue());
+        assertThat(cachingTier.contains(2), is(true));
+
+        elements = cacheStore.getAll(Arrays.asList(1, 2));
+        assertThat(bulkFaults.get(), is(1));
+        assertThat(elements.get(2).getObjectValue(), equalTo((Object)"two"));
+
+        cacheStore.removeAll(Arrays.asList(1, 2));
+        assertThat(cachingTier.contains(1), is(false));
+        assertThat(memStore.containsKey(2), is(false));
+        assertThat(cacheStore.getAll(Arrays.asList(1, 3)).get(1), nullValue());
+        assertThat(bulkFaults.get(), is(2));
+    }
+
+    @Test
+    public void testComputeReplacesFaultedEntry() {
+        final Store memStore = createMemStore(10);
+        CachingTier<Object, Element> cachingTier = new OnHeapCachingTier<Object, Element>(new CountBasedBackEnd<Object, Object>(10));
+        CacheStore cacheStore = new CacheStore(cachingTier, new DelegatingStoreAuthority(memStore,
+            new DelegatingStoreAuthority.FaultAction() {
+            @Override
+            public Element fault(final Object key, final boolean updateStats) {
+                return memStore.get(key);
+            }
+        }, new DelegatingStoreAuthority.FlushAction() {
+            @Override
+            public boolean flush(final Element element) {
+                return true;
+            }
+        }));
+        final AtomicInteger computations = new AtomicInteger();
+        Computation append = new Computation() {
+            @Override
+            public Element compute(final Object key, final Element current) {
+                computations.getAndIncrement();
+                return new Element(key, current == null ? NAME : current.getObjectValue() + NAME);
+            }
+        };
+
+        assertThat(cacheStore.compute(KEY, append).getObjectValue(), equalTo((Object)NAME));
+        assertThat(cacheStore.get(KEY).getObjectValue(), equalTo((Object)NAME));
+        assertThat(cachingTier.contains(KEY), is(true));
+        assertThat(cacheStore.compute(KEY, append).getObjectValue(), equalTo((Object)(NAME + NAME)));
+        assertThat(cachingTier.contains(KEY), is(false));
+        assertThat(cacheStore.get(KEY).getObjectValue(), equalTo((Object)(NAME + NAME)));
+        assertThat(computations.get(), is(2));
+    }
+
     @Test
     public void testRegistersValveWithAuthority() throws Exception {
         ArgumentCaptor<Callable> captor = ArgumentCaptor.forClass(Callable.class);
@@ -208,6 +291,15 @@ class DelegatingStoreAuthority implements AuthoritativeTier {
         return faultAction.fault(key, updateStats);
     }
 
+    @Override
+    public Map<Object, Element> faultAll(final Collection<?> keys, final boolean updateStats) {
+        final Map<Object, Element> elements = new HashMap<Object, Element>();
+        for (Object key : keys) {
+            elements.put(key, fault(key, updateStats));
+        }
+        return elements;
+    }
+
     @Override
     public boolean putFaulted(final Element element) {
         return delegate.put(element);
@@ -0,0 +1,32 @@
+package net.sf.ehcache.store;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class EvictedKeyGhostsTest {
+
+    @Test
+    public void testMissesOnEvictedKeysAreGhostHits() throws InterruptedException {
+        EvictedKeyGhosts ghosts = new EvictedKeyGhosts(16);
+        for (int i = 0; i < 8; i++) {
+            ghosts.evicted("key-" + i);
+        }
+        int size = ghosts.size();
+        assertThat(size > 0 && size <= 8, is(true));
+
+        ghosts.hitRate();
+        ghosts.missed("key-0");
+        ghosts.missed("key-0");
+        ghosts.missed("unknown");
+        assertThat(ghosts.size() <= size, is(true));
+
+        Thread.sleep(1100);
+        float rate = ghosts.hitRate();
+        assertThat("rate " + rate, rate > 0 && rate <= 1, is(true));
+
+        ghosts.clear();
+        assertThat(ghosts.size(), is(0));
+    }
+}
@@ -0,0 +1,114 @@
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Attribute;
+import net.sf.ehcache.search.Person;
+import net.sf.ehcache.search.Person.Gender;
+import net.sf.ehcache.search.Query;
+import net.sf.ehcache.search.Result;
+import net.sf.ehcache.search.expression.Criteria;
+import net.sf.ehcache.search.expression.Not;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class IndexedSearchManagerTest {
+
+    private static final String INDEXES_PROPERTY = "net.sf.ehcache.store.indexed.config.searchIndexes";
+
+    private CacheManager cacheManager;
+    private Ehcache cache;
+    private Attribute<Integer> age;
+    private Attribute<Gender> gender;
+    private Attribute<String> name;
+
+    @Before
+    public void setUp() {
+        System.setProperty(INDEXES_PROPERTY, "true");
+        cacheManager = new CacheManager(new Configuration().name("indexedSearchManagerTest"));
+        CacheConfiguration configuration = new CacheConfiguration("indexed", 0).searchable(new Searchable()
+            .searchAttribute(new SearchAttribute().name("age").expression("value.getAge()").type("int"))
+            .searchAttribute(new SearchAttribute().name("gender").expression("value.getGender()").type(Gender.class.getName()))
+            .searchAttribute(new SearchAttribute().name("name").expression("value.getName()").type("String")));
+        cacheManager.addCache(new Cache(configuration));
+        cache = cacheManager.getEhcache("indexed");
+        age = cache.getSearchAttribute("age");
+        gender = cache.getSearchAttribute("gender");
+        name = cache.getSearchAttribute("name");
+
+        for (int i = 0; i < 100; i++) {
+            cache.put(new Element(i, new Person("Person" + i, i, i % 2 == 0 ? Gender.MALE : Gender.FEMALE)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(INDEXES_PROPERTY);
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testIndexedCriteria() {
+        assertThat(keysMatching(age.eq(42)), is(keys(42)));
+        assertThat(keysMatching(age.in(new HashSet<Integer>(Arrays.asList(1, 2, 200)))), is(keys(1, 2)));
+        assertThat(keysMatching(age.between(10, 12)), is(keys(10, 11, 12)));
+        assertThat(keysMatching(age.between(10, 12, false, false)), is(keys(11)));
+        assertThat(keysMatching(age.gt(97)), is(keys(98, 99)));
+        assertThat(keysMatching(age.le(1)), is(keys(0, 1)));
+        assertThat(keysMatching(name.eq("PERSON7")), is(keys(7)));
+        assertThat(keysMatching(name.ilike("person9?")), is(keys(90, 91, 92, 93, 94, 95, 96, 97, 98, 99)));
+        assertThat(keysMatching(age.lt(10).and(gender.eq(Gender.FEMALE))), is(keys(1, 3, 5, 7, 9)));
+        assertThat(keysMatching(age.eq(3).or(age.eq(5))), is(keys(3, 5)));
+        assertThat(keysMatching(new Not(age.ge(2))), is(keys(0, 1)));
+    }
+
+    @Test
+    public void testUnindexedCriteriaFallBackToScanning() {
+        assertThat(keysMatching(age.ne(0)).size(), is(99));
+        assertThat(keysMatching(name.ilike("*1")), is(keys(1, 11, 21, 31, 41, 51, 61, 71, 81, 91)));
+        assertThat(keysMatching(age.lt(2).or(name.ilike("*99"))), is(keys(0, 1, 99)));
+    }
+
+    @Test
+    public void testIndexesFollowMutations() {
+        cache.put(new Element(42, new Person("Someone", 142, Gender.MALE)));
+        assertThat(keysMatching(age.eq(42)), is(keys()));
+        assertThat(keysMatching(age.eq(142)), is(keys(42)));
+
+        cache.remove(43);
+        assertThat(keysMatching(age.between(43, 44)), is(keys(44)));
+
+        cache.replace(new Element(44, new Person("Person44", 44, Gender.MALE)), new Element(44, new Person("Other", 1, Gender.MALE)));
+        assertThat(keysMatching(age.eq(1)), is(keys(1, 44)));
+
+        cache.removeAll();
+        assertThat(keysMatching(age.ge(0)), is(keys()));
+    }
+
+    private Set<Object> keysMatching(Criteria criteria) {
+        Set<Object> keys = new HashSet<Object>();
+        Query query = cache.createQuery().addCriteria(criteria).includeKeys();
+        for (Result result : query.execute().all()) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    private static Set<Object> keys(Integer... keys) {
+        return new HashSet<Object>(Arrays.asList((Object[]) keys));
+    }
+}
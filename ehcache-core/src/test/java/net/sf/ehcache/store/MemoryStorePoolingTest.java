@@ -7,6 +7,8 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -391,4 +393,21 @@ public class MemoryStorePoolingTest {
         assertEquals(1, memoryStore.getSize());
     }
 
+    @Test
+    public void testPutAllThenRemoveAll() throws Exception {
+        List<Element> elements = new ArrayList<Element>();
+        for (int i = 0; i < 20; i++) {
+            elements.add(new Element(i, "" + i));
+        }
+        memoryStore.putAll(elements);
+
+        assertEquals(2, memoryStore.getSize());
+        assertEquals(16384 * 2, onHeapPool.getSize());
+
+        memoryStore.removeAll(memoryStore.getKeys());
+
+        assertEquals(0, memoryStore.getSize());
+        assertEquals(0, onHeapPool.getSize());
+    }
+
 }
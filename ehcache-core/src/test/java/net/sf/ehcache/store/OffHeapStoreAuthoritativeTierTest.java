@@ -0,0 +1,34 @@
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.CacheStoreHelper;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.MemoryUnit;
+import net.sf.ehcache.store.offheap.OffHeapStore;
+
+import java.lang.reflect.Field;
+
+public class OffHeapStoreAuthoritativeTierTest extends AbstractAuthoritativeTierTest<OffHeapStore> {
+
+    @Override
+    protected OffHeapStore createAuthoritativeTier(CacheManager cacheManager) throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("test/OffHeap", 1).maxBytesLocalOffHeap(1, MemoryUnit.MEGABYTES));
+        cacheManager.addCache(cache);
+        Field f = CacheStore.class.getDeclaredField("authoritativeTier");
+        f.setAccessible(true);
+        return (OffHeapStore) f.get(new CacheStoreHelper(cache).getStore());
+    }
+
+    @Override
+    protected boolean isFaulted(final Object key, final OffHeapStore offHeapStore) {
+        return offHeapStore.isFaulted(key);
+    }
+
+    @Override
+    protected CacheManager createCacheManager() {
+        Configuration configuration = new Configuration().name(OffHeapStoreAuthoritativeTierTest.class.getSimpleName());
+        return new CacheManager(configuration);
+    }
+}
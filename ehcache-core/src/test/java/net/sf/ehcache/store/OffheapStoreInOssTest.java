@@ -19,12 +19,17 @@ package net.sf.ehcache.store;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
 
 import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.MemoryUnit;
 import org.junit.Assert;
 import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
 /**
  * @author hhuynh
  */
@@ -37,6 +42,43 @@ public class OffheapStoreInOssTest {
         try {
             Cache cache = new Cache(new CacheConfiguration("test", 1).overflowToOffHeap(true).maxMemoryOffHeap("1M"));
             manager.addCache(cache);
+            for (int i = 0; i < 100; i++) {
+                cache.put(new Element(i, "value" + i));
+            }
+            assertThat(cache.getSize(), is(100));
+            assertThat(cache.getStatistics().getLocalOffHeapSize(), is(100L));
+            for (int i = 0; i < 100; i++) {
+                assertThat(cache.get(i).getObjectValue(), is((Object) ("value" + i)));
+            }
+            assertThat(cache.remove(42), is(true));
+            assertThat(cache.get(42), is((Element) null));
+        } finally {
+          manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testOffheapEvictsWhenFull() throws Exception {
+      CacheManager manager = new CacheManager(new Configuration());
+        try {
+            Cache cache = new Cache(new CacheConfiguration("test", 1).maxBytesLocalOffHeap(1, MemoryUnit.MEGABYTES));
+            manager.addCache(cache);
+            for (int i = 0; i < 1000; i++) {
+                cache.put(new Element(i, new byte[4096]));
+            }
+            Assert.assertTrue(cache.getSize() < 1000);
+            Assert.assertTrue(cache.getStatistics().getLocalOffHeapSizeInBytes() <= MemoryUnit.MEGABYTES.toBytes(1));
+        } finally {
+          manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testOffheapAndDiskInOss() throws Exception {
+      CacheManager manager = new CacheManager(new Configuration());
+        try {
+            Cache cache = new Cache(new CacheConfiguration("test", 1).overflowToOffHeap(true).maxMemoryOffHeap("1M").overflowToDisk(true));
+            manager.addCache(cache);
             Assert.fail();
         } catch (CacheException e) {
             // expected
@@ -0,0 +1,113 @@
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+import org.junit.Test;
+
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PrimitiveKeyMemoryStoreTest {
+
+    private static final DefaultElementValueComparator COMPARATOR = new DefaultElementValueComparator(new CacheConfiguration()
+        .copyOnRead(false).copyOnWrite(false));
+
+    @Test
+    public void testStoresLongAndIntegerKeysApart() {
+        PrimitiveKeyMemoryStore store = PrimitiveKeyMemoryStore.create(new Cache(new CacheConfiguration("primitive", 0)));
+        assertThat(store.put(new Element(1L, "long")), is(true));
+        assertThat(store.put(new Element(1, "int")), is(true));
+        assertThat(store.put(new Element(1L, "long2")), is(false));
+
+        assertThat(store.getSize(), is(2));
+        assertThat(store.get(1L).getObjectValue(), is((Object) "long2"));
+        assertThat(store.get(1).getObjectValue(), is((Object) "int"));
+        assertThat(store.get(1).getObjectKey(), is((Object) 1));
+        assertThat(store.get("1"), nullValue());
+        assertThat(store.containsKey(2L), is(false));
+
+        try {
+            store.put(new Element("1", "string"));
+            fail();
+        } catch (CacheException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMaterializesElementMetadata() {
+        PrimitiveKeyMemoryStore store = PrimitiveKeyMemoryStore.create(new Cache(new CacheConfiguration("primitive", 0)));
+        Element element = new Element(42L, "value", 7L);
+        element.setTimeToLive(10);
+        store.put(element);
+
+        Element stored = store.getQuiet(42L);
+        assertThat(stored.getVersion(), is(7L));
+        assertThat(stored.getTimeToLive(), is(10));
+        assertThat(stored.isLifespanSet(), is(true));
+        assertThat(stored.getCreationTime(), is(element.getCreationTime()));
+
+        assertThat(store.get(42L).getHitCount(), is(0L));
+        assertThat(store.getQuiet(42L).getHitCount(), is(1L));
+    }
+
+    @Test
+    public void testRemovalsKeepProbeSequencesIntact() {
+        PrimitiveKeyMemoryStore store = PrimitiveKeyMemoryStore.create(new Cache(new CacheConfiguration("primitive", 0)));
+        for (long i = 0; i < 10000; i++) {
+            store.put(new Element(i, i));
+        }
+        for (long i = 0; i < 10000; i += 2) {
+            assertThat(store.remove(i).getObjectValue(), is((Object) i));
+        }
+        assertThat(store.getSize(), is(5000));
+        for (long i = 0; i < 10000; i++) {
+            assertThat(store.containsKey(i), is(i % 2 == 1));
+        }
+        assertThat(new HashSet<Object>(store.getKeys()).size(), is(5000));
+
+        store.removeAll();
+        assertThat(store.getSize(), is(0));
+    }
+
+    @Test
+    public void testConditionalOperations() {
+        PrimitiveKeyMemoryStore store = PrimitiveKeyMemoryStore.create(new Cache(new CacheConfiguration("primitive", 0)));
+        assertThat(store.putIfAbsent(new Element(1L, "a")), nullValue());
+        assertThat(store.putIfAbsent(new Element(1L, "b")).getObjectValue(), is((Object) "a"));
+        assertThat(store.replace(new Element(1L, "b"), new Element(1L, "c"), COMPARATOR), is(false));
+        assertThat(store.replace(new Element(1L, "a"), new Element(1L, "c"), COMPARATOR), is(true));
+        assertThat(store.replace(new Element(2L, "x")), nullValue());
+        assertThat(store.removeElement(new Element(1L, "a"), COMPARATOR), nullValue());
+        assertThat(store.removeElement(new Element(1L, "c"), COMPARATOR).getObjectValue(), is((Object) "c"));
+        assertThat(store.getSize(), is(0));
+    }
+
+    @Test
+    public void testEvictsDownToCapacity() {
+        PrimitiveKeyMemoryStore store = PrimitiveKeyMemoryStore.create(new Cache(new CacheConfiguration("primitive", 100)));
+        for (long i = 0; i < 1000; i++) {
+            store.put(new Element(i, i));
+        }
+        assertThat(store.getSize() <= 101, is(true));
+    }
+
+    @Test
+    public void testIsOnlyEnabledOnRequest() {
+        Cache cache = new Cache(new CacheConfiguration("primitive", 100));
+        assertThat(PrimitiveKeyMemoryStore.isEnabled(cache, new UnboundedPool()), is(false));
+        System.setProperty("net.sf.ehcache.store.primitive.config.primitiveKeys", "true");
+        try {
+            assertThat(PrimitiveKeyMemoryStore.isEnabled(cache, new UnboundedPool()), is(true));
+        } finally {
+            System.clearProperty("net.sf.ehcache.store.primitive.config.primitiveKeys");
+        }
+    }
+}
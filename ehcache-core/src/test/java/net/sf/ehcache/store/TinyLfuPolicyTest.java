@@ -0,0 +1,128 @@
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+import net.sf.ehcache.store.cachingtier.CountBasedBackEnd;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuPolicyTest {
+
+    private static final int CAPACITY = 100;
+
+    @Test
+    public void testEstimatesFrequencies() {
+        TinyLfuPolicy policy = new TinyLfuPolicy(CAPACITY);
+        for (int i = 0; i < 5; i++) {
+            policy.recordAccess("hot");
+        }
+        policy.recordAccess("warm");
+        assertThat(policy.frequency("hot"), is(5));
+        assertThat(policy.frequency("warm"), is(1));
+        assertThat(policy.frequency("cold"), is(0));
+    }
+
+    @Test
+    public void testAgesFrequencies() {
+        TinyLfuPolicy policy = new TinyLfuPolicy(CAPACITY);
+        for (int i = 0; i < 8; i++) {
+            policy.recordAccess("hot");
+        }
+        for (int i = 0; i < 10000; i++) {
+            policy.recordAccess(i);
+        }
+        assertTrue(policy.frequency("hot") < 8);
+    }
+
+    @Test
+    public void testRejectsCandidatesLessPopularThanTheVictim() {
+        TinyLfuPolicy policy = new TinyLfuPolicy(CAPACITY);
+        Element hot = new Element("hot", "hot");
+        Element cold = new Element("cold", "cold");
+        for (int i = 0; i < 5; i++) {
+            policy.recordAccess(hot.getObjectKey());
+        }
+        policy.recordInsertion(cold.getObjectKey(), 1);
+        policy.recordInsertion("newcomer", 1);
+        assertThat(policy.pollCandidate(), is((Object) "cold"));
+        assertThat(policy.pollCandidate(), nullValue());
+
+        assertThat(policy.selectedBasedOnPolicy(new Element[] {hot}, null, cold), sameInstance(cold));
+        policy.recordAccess(cold.getObjectKey());
+        policy.recordAccess(hot.getObjectKey());
+        assertThat(policy.selectedBasedOnPolicy(new Element[] {cold}, null, hot), sameInstance(cold));
+    }
+
+    @Test
+    public void testQueuesAllTheKeysLeavingTheWindow() {
+        TinyLfuPolicy policy = new TinyLfuPolicy(CAPACITY);
+        for (String key : new String[] {"a", "b", "c", "d", "e"}) {
+            policy.recordInsertion(key, 300);
+        }
+        assertThat(policy.pollCandidate(), is((Object) "a"));
+        assertThat(policy.pollCandidate(), is((Object) "b"));
+        assertThat(policy.pollCandidate(), nullValue());
+    }
+
+    @Test
+    public void testMemoryStoreKeepsHotEntriesThroughAScan() {
+        Store store = MemoryStore.create(new Cache(new CacheConfiguration("tinyLfu", CAPACITY)
+            .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.TINYLFU)), new UnboundedPool());
+        assertThat(store.getInMemoryEvictionPolicy() instanceof TinyLfuPolicy, is(true));
+        for (int i = 0; i < CAPACITY; i++) {
+            store.put(new Element("hot" + i, i));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < CAPACITY; i++) {
+                store.get("hot" + i);
+            }
+        }
+        for (int i = 0; i < CAPACITY * 10; i++) {
+            store.put(new Element("scan" + i, i));
+        }
+        assertTrue(store.getSize() <= CAPACITY);
+        assertTrue(countPresent(store) > CAPACITY * 8 / 10);
+    }
+
+    @Test
+    public void testCountBasedBackEndKeepsHotEntriesThroughAScan() {
+        CountBasedBackEnd<Object, Object> backEnd = new CountBasedBackEnd<Object, Object>(CAPACITY, new TinyLfuPolicy(CAPACITY));
+        TinyLfuPolicy policy = (TinyLfuPolicy) backEnd.getPolicy();
+        for (int i = 0; i < CAPACITY; i++) {
+            backEnd.putIfAbsent("hot" + i, new Element("hot" + i, i));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < CAPACITY; i++) {
+                policy.recordAccess("hot" + i);
+            }
+        }
+        for (int i = 0; i < CAPACITY * 10; i++) {
+            backEnd.putIfAbsent("scan" + i, new Element("scan" + i, i));
+        }
+        int present = 0;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (backEnd.containsKey("hot" + i)) {
+                present++;
+            }
+        }
+        assertTrue(backEnd.size() <= CAPACITY);
+        assertTrue(present > CAPACITY * 8 / 10);
+    }
+
+    private static int countPresent(Store store) {
+        int present = 0;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (store.containsKey("hot" + i)) {
+                present++;
+            }
+        }
+        return present;
+    }
+}
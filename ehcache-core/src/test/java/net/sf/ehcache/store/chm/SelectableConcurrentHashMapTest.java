@@ -9,6 +9,14 @@ import java.lang.reflect.Field;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
@@ -83,6 +91,104 @@ public class SelectableConcurrentHashMapTest {
             not(sameInstance(evictionIterator.currentTable)));
     }
 
+    @Test
+    public void testReadsDoNotBlockOnSegmentLock() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ReentrantReadWriteLock.WriteLock lock = map.lockFor(1).writeLock();
+        lock.lock();
+        try {
+            Future<Element> get = executor.submit(new Callable<Element>() {
+                public Element call() {
+                    return map.get(1);
+                }
+            });
+            assertThat(get.get(10, TimeUnit.SECONDS).getObjectKey(), is((Object) 1));
+            Future<Boolean> containsKey = executor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return map.containsKey(2);
+                }
+            });
+            assertThat(containsKey.get(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            lock.unlock();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadsSeeConsistentValuesWhileSegmentsRehash() throws Exception {
+        final SelectableConcurrentHashMap map = new SelectableConcurrentHashMap(
+            new UnboundedPool().createPoolAccessor(null, null), 1, 0.75f, 1, 0, null);
+        final int count = 20000;
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger failures = new AtomicInteger();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    for (int i = 0; i < count; i += 97) {
+                        Element e = map.get(i);
+                        if (e != null && !e.getObjectValue().equals("value-" + i)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        };
+        reader.start();
+        try {
+            for (int i = 0; i < count; i++) {
+                map.put(i, new Element(i, "value-" + i), 0);
+                if (i % 3 == 0) {
+                    map.remove(i / 2);
+                }
+            }
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+        assertThat(failures.get(), is(0));
+        assertThat(map.get(count - 1).getObjectValue(), is((Object) ("value-" + (count - 1))));
+    }
+
+    @Test
+    public void testAccessOrderedMapEvictsLeastRecentlyUsed() {
+        final SelectableConcurrentHashMap map = new SelectableConcurrentHashMap(
+            new UnboundedPool().createPoolAccessor(null, null), 1, 10, null, true);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, new Element(i, i), 0);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertThat(map.get(i).getObjectKey(), is((Object) i));
+        }
+        for (int i = 10; i < 15; i++) {
+            map.put(i, new Element(i, i), 0);
+        }
+        assertThat(map.quickSize(), is(10));
+        for (int i = 0; i < 15; i++) {
+            assertThat("key " + i, map.containsKey(i), is(i < 5 || i >= 10));
+        }
+    }
+
+    @Test
+    public void testAccessOrderedMapHonorsMaxSize() {
+        final int maximumSize = 1000;
+        final SelectableConcurrentHashMap map = new SelectableConcurrentHashMap(
+            new UnboundedPool().createPoolAccessor(null, null), 100, maximumSize, null, true);
+        for (int i = 0; i < maximumSize * 100; i++) {
+            map.put(i, new Element(i, "valueof " + i), 0);
+            map.get(i / 2);
+            assertThat("At iteration #" + i + ", the size is " + map.quickSize(), map.quickSize() <= maximumSize, is(true));
+        }
+        for (int i = 0; i < maximumSize * 100; i += 3) {
+            map.remove(i);
+        }
+        map.clear();
+        assertThat(map.evict(), is(false));
+        map.put(0, new Element(0, 0), 0);
+        assertThat(map.get(0).getObjectKey(), is((Object) 0));
+    }
+
     private <T> Set<T> expectedSet(T... values) {
         final Set<T> set = new HashSet<T>();
         Collections.addAll(set, values);
@@ -0,0 +1,100 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskAccessMode;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Round-trips entries through the disk store with each of the data file access modes.
+ */
+public class DiskAccessModeTest {
+
+    @Test
+    public void testStreamAccess() throws Exception {
+        assertRoundTrip(DiskAccessMode.STREAM);
+    }
+
+    @Test
+    public void testChannelAccess() throws Exception {
+        assertRoundTrip(DiskAccessMode.CHANNEL);
+    }
+
+    @Test
+    public void testMappedAccess() throws Exception {
+        assertRoundTrip(DiskAccessMode.MAPPED);
+    }
+
+    @Test
+    public void testAccessModeParsing() {
+        assertThat(new CacheConfiguration().getDiskAccessMode(), is(CacheConfiguration.DEFAULT_DISK_ACCESS_MODE));
+        assertThat(new CacheConfiguration().diskAccessMode("mapped").getDiskAccessMode(), is(DiskAccessMode.MAPPED));
+        assertThat(new CacheConfiguration().diskAccessMode("Channel").getDiskAccessMode(), is(DiskAccessMode.CHANNEL));
+    }
+
+    private static void assertRoundTrip(DiskAccessMode mode) throws Exception {
+        String name = "testDiskAccess" + mode;
+        CacheManager cm = new CacheManager(
+            new Configuration()
+                .cache(new CacheConfiguration("aCache", 10)
+                    .overflowToDisk(true)
+                    .diskAccessStripes(4)
+                    .diskAccessMode(mode)
+                )
+                .name(name)
+                .diskStore(new DiskStoreConfiguration().path("java.io.tmpdir/" + name))
+        );
+        try {
+            Cache cache = cm.getCache("aCache");
+
+            for (int i = 0; i < 1000; i++) {
+                cache.put(new Element(i, "value-" + i));
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            assertThat(cache.getStatistics().getLocalDiskSize(), is(1000L));
+
+            for (int i = 0; i < 1000; i++) {
+                assertThat(cache.get(i).getObjectValue(), is((Object) ("value-" + i)));
+            }
+
+            for (int i = 0; i < 1000; i += 2) {
+                cache.put(new Element(i, new byte[i]));
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            for (int i = 0; i < 1000; i++) {
+                Object value = cache.get(i).getObjectValue();
+                if (i % 2 == 0) {
+                    assertThat(((byte[]) value).length, is(i));
+                } else {
+                    assertThat(value, is((Object) ("value-" + i)));
+                }
+            }
+        } finally {
+            cm.shutdown();
+        }
+    }
+}
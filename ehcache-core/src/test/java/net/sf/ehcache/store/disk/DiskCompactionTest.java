@@ -0,0 +1,77 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the compaction of the disk store data file.
+ */
+public class DiskCompactionTest {
+
+    @Test
+    public void testCompactionShrinksDataFile() throws Exception {
+        CacheManager cm = new CacheManager(
+            new Configuration()
+                .cache(new CacheConfiguration("aCache", 10)
+                    .overflowToDisk(true)
+                )
+                .name("testCompactionShrinksDataFile")
+                .diskStore(new DiskStoreConfiguration().path("java.io.tmpdir/testCompactionShrinksDataFile"))
+        );
+        try {
+            Cache cache = cm.getCache("aCache");
+            DiskStorageFactory factory = DiskStoreHelper.getDiskStorageFactory(cache);
+
+            for (int i = 0; i < 5000; i++) {
+                cache.put(new Element(i, new byte[200 + i % 50]));
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            for (int i = 0; i < 5000; i++) {
+                if (i % 5 != 0) {
+                    cache.remove(i);
+                }
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+            float fragmentation = factory.getFragmentation();
+            long fileSize = factory.getOnDiskSizeInBytes();
+            assertTrue(fragmentation > 0.5f);
+
+            assertTrue(factory.compact(0f) > 0);
+
+            assertTrue(factory.getFragmentation() < fragmentation);
+            assertTrue(factory.getOnDiskSizeInBytes() < fileSize);
+            for (int i = 0; i < 5000; i += 5) {
+                assertThat(((byte[]) cache.get(i).getObjectValue()).length, is(200 + i % 50));
+            }
+        } finally {
+            cm.shutdown();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import net.sf.ehcache.serialization.JavaSerializer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the replay and checkpointing of the disk store index log.
+ */
+public class DiskIndexLogTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("DiskIndexLogTest", ".index");
+        file.deleteOnExit();
+        new FileOutputStream(file).close();
+    }
+
+    @Test
+    public void testReplayAppliesRemovesByPosition() throws Exception {
+        DiskIndexLog log = newLog();
+        assertThat(log.open().size(), is(0));
+        DiskIndexLog.Records records = log.records();
+        records.put("a", 0, 100, 1, 1000);
+        records.put("b", 100, 50, 2, 2000);
+        records.put("c", 150, 10, 3, 3000);
+        records.remove(100);
+        log.append(records);
+        log.close();
+
+        Map<Object, DiskIndexLog.Entry> entries = replay();
+        assertThat(entries.size(), is(2));
+        DiskIndexLog.Entry c = entries.get("c");
+        assertThat(c, notNullValue());
+        assertThat(c.getPosition(), is(150L));
+        assertThat(c.getSize(), is(10));
+        assertThat(c.getHitCount(), is(3L));
+        assertThat(c.getExpiry(), is(3000L));
+        assertThat(entries.get("a").getPosition(), is(0L));
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws Exception {
+        DiskIndexLog log = newLog();
+        log.open();
+        DiskIndexLog.Records records = log.records();
+        records.put("a", 0, 100, 0, 0);
+        records.put("b", 100, 100, 0, 0);
+        log.append(records);
+        long length = log.length();
+        log.close();
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] {1, 0, 0, 0, 42, 7});
+        out.close();
+
+        log = newLog();
+        assertThat(log.open().size(), is(2));
+        assertThat(log.length(), is(length));
+        records = log.records();
+        records.put("c", 200, 100, 0, 0);
+        log.append(records);
+        log.close();
+
+        assertThat(replay().size(), is(3));
+    }
+
+    @Test
+    public void testCheckpointKeepsConcurrentRecords() throws Exception {
+        DiskIndexLog log = newLog();
+        log.open();
+        DiskIndexLog.Records records = log.records();
+        for (int i = 0; i < 100; i++) {
+            records.put(i, i * 10, 10, 0, 0);
+            records.remove(i * 10);
+        }
+        records.put("a", 0, 10, 0, 0);
+        records.put("b", 10, 10, 0, 0);
+        log.append(records);
+        long length = log.length();
+
+        DiskIndexLog.Checkpoint checkpoint = log.checkpoint();
+        checkpoint.put("a", 0, 10, 5, 0);
+        checkpoint.put("b", 10, 10, 0, 0);
+        records = log.records();
+        records.put("c", 20, 10, 0, 0);
+        records.remove(10);
+        log.append(records);
+        checkpoint.commit();
+        assertThat(log.length() < length, is(true));
+        log.close();
+
+        Map<Object, DiskIndexLog.Entry> entries = replay();
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get("a").getHitCount(), is(5L));
+        assertThat(entries.get("c").getPosition(), is(20L));
+    }
+
+    @Test
+    public void testInterruptedRelocationKeepsLatestCopy() throws Exception {
+        DiskIndexLog log = newLog();
+        log.open();
+        DiskIndexLog.Records records = log.records();
+        records.put("a", 1000, 10, 0, 0);
+        records.put("a", 0, 10, 0, 0);
+        log.append(records);
+        log.close();
+
+        log = newLog();
+        Collection<DiskIndexLog.Entry> entries = log.open();
+        assertThat(entries.size(), is(1));
+        assertThat(entries.iterator().next().getPosition(), is(0L));
+        assertThat(log.isDirty(), is(true));
+        log.close();
+    }
+
+    private DiskIndexLog newLog() {
+        return new DiskIndexLog(file, new JavaSerializer(), getClass().getClassLoader());
+    }
+
+    private Map<Object, DiskIndexLog.Entry> replay() throws Exception {
+        DiskIndexLog log = newLog();
+        try {
+            Map<Object, DiskIndexLog.Entry> entries = new HashMap<Object, DiskIndexLog.Entry>();
+            for (DiskIndexLog.Entry entry : log.open()) {
+                entries.put(entry.getKey(), entry);
+            }
+            return entries;
+        } finally {
+            log.close();
+        }
+    }
+}
@@ -37,6 +37,16 @@ public class DiskStoreHelper {
         }
     }
 
+    public static DiskStorageFactory getDiskStorageFactory(final Cache cache) {
+        Store store = new CacheStoreHelper(cache).getStore();
+        if (store instanceof CacheStore) {
+            store = getField("authoritativeTier", store);
+        } else if (store instanceof LegacyStoreWrapper) {
+            store = getField("disk", store);
+        }
+        return getField("disk", store);
+    }
+
     private static <T> T getField(final String fieldName, final Object obj) {
         try {
             Field field = null;
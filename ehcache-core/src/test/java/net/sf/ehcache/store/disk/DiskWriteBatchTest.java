@@ -0,0 +1,79 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the disk store writing elements in batches.
+ */
+public class DiskWriteBatchTest {
+
+    @Test
+    public void testBatchedWrites() throws Exception {
+        assertRoundTrip("testBatchedWrites", new CacheConfiguration("aCache", 10)
+            .overflowToDisk(true)
+            .diskWriterThreads(2)
+            .diskWriteBatchSize(32));
+    }
+
+    @Test
+    public void testSynchronousBatchedWrites() throws Exception {
+        assertRoundTrip("testSynchronousBatchedWrites", new CacheConfiguration("aCache", 10)
+            .overflowToDisk(true)
+            .diskPersistent(true)
+            .diskWriteBatchSize(64)
+            .diskWriteBatchSync(true));
+    }
+
+    private static void assertRoundTrip(String name, CacheConfiguration cacheConfiguration) throws Exception {
+        CacheManager cm = new CacheManager(
+            new Configuration()
+                .cache(cacheConfiguration)
+                .name(name)
+                .diskStore(new DiskStoreConfiguration().path("java.io.tmpdir/" + name))
+        );
+        try {
+            Cache cache = cm.getCache("aCache");
+            cache.removeAll();
+
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 1000; i++) {
+                    cache.put(new Element(i, new byte[i % 100 + round]));
+                }
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            assertThat(cache.getStatistics().getLocalDiskSize(), is(1000L));
+
+            for (int i = 0; i < 1000; i++) {
+                assertThat(((byte[]) cache.get(i).getObjectValue()).length, is(i % 100 + 2));
+            }
+        } finally {
+            cm.shutdown();
+        }
+    }
+}
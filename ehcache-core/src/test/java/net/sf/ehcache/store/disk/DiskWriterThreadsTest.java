@@ -0,0 +1,73 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the disk store with several writer threads.
+ */
+public class DiskWriterThreadsTest {
+
+    @Test
+    public void testWriterThreadsRoundedToPowerOfTwo() {
+        assertThat(new CacheConfiguration().getDiskWriterThreads(), is(CacheConfiguration.DEFAULT_DISK_WRITER_THREADS));
+        assertThat(new CacheConfiguration().diskWriterThreads(0).getDiskWriterThreads(), is(1));
+        assertThat(new CacheConfiguration().diskWriterThreads(3).getDiskWriterThreads(), is(4));
+        assertThat(new CacheConfiguration().diskWriterThreads(8).getDiskWriterThreads(), is(8));
+    }
+
+    @Test
+    public void testLastWriteWinsWithSeveralWriters() throws Exception {
+        CacheManager cm = new CacheManager(
+            new Configuration()
+                .cache(new CacheConfiguration("aCache", 10)
+                    .overflowToDisk(true)
+                    .diskWriterThreads(4)
+                )
+                .name("testLastWriteWinsWithSeveralWriters")
+                .diskStore(new DiskStoreConfiguration().path("java.io.tmpdir/testLastWriteWinsWithSeveralWriters"))
+        );
+        try {
+            Cache cache = cm.getCache("aCache");
+
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 500; i++) {
+                    cache.put(new Element(i, "value-" + i + "-" + round));
+                }
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            assertThat(cache.getStatistics().getLocalDiskSize(), is(500L));
+
+            for (int i = 0; i < 500; i++) {
+                assertThat(cache.get(i).getObjectValue(), is((Object) ("value-" + i + "-9")));
+            }
+        } finally {
+            cm.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk.ods;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SegregatedFileAllocatorTest {
+
+    @Test
+    public void testSmallRecordsShareSlabs() {
+        SegregatedFileAllocator test = new SegregatedFileAllocator(Long.MAX_VALUE, null, 1);
+        Region first = test.alloc(100);
+        Region second = test.alloc(100);
+        assertThat(second.start() - first.start(), is(112L));
+        assertThat(test.getOccupiedSize(), is(200L));
+
+        test.free(first);
+        assertThat(test.alloc(90).start(), is(first.start()));
+    }
+
+    @Test
+    public void testFileShrinksWhenEverythingIsFreed() {
+        SegregatedFileAllocator test = new SegregatedFileAllocator(Long.MAX_VALUE, null, 2);
+        List<Region> regions = new ArrayList<Region>();
+        Random rndm = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            regions.add(test.alloc(1 + rndm.nextInt(2 * SegregatedFileAllocator.MAX_SLOT_SIZE)));
+        }
+        for (Region r : regions) {
+            test.free(r);
+        }
+        assertThat(test.getOccupiedSize(), is(0L));
+        assertThat(test.getFileSize(), is(0L));
+    }
+
+    @Test
+    public void testExtentsCanBeFreedPiecewise() {
+        SegregatedFileAllocator test = new SegregatedFileAllocator(Long.MAX_VALUE, null, 1);
+        Region extent = test.allocExtent(300);
+        test.free(new Region(extent.start(), extent.start() + 99));
+        test.free(new Region(extent.start() + 100, extent.start() + 299));
+        assertThat(test.getFileSize(), is(0L));
+    }
+
+    @Test
+    public void testAllocationsNeverOverlap() {
+        SegregatedFileAllocator test = new SegregatedFileAllocator(Long.MAX_VALUE, null, 4);
+        List<Region> live = new ArrayList<Region>();
+        Random rndm = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            if (live.isEmpty() || rndm.nextInt(3) != 0) {
+                live.add(test.alloc(1 + rndm.nextInt(rndm.nextBoolean() ? 512 : 100000)));
+            } else {
+                test.free(live.remove(rndm.nextInt(live.size())));
+            }
+        }
+        BitSet used = new BitSet();
+        long occupied = 0;
+        for (Region r : live) {
+            assertThat(used.get((int) r.start(), (int) r.end() + 1).isEmpty(), is(true));
+            used.set((int) r.start(), (int) r.end() + 1);
+            occupied += r.size();
+        }
+        assertThat(test.getOccupiedSize(), is(occupied));
+        assertTrue(test.getFragmentation() >= 0f && test.getFragmentation() < 1f);
+    }
+}
@@ -0,0 +1,102 @@
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.MemoryUnit;
+import net.sf.ehcache.pool.Pool;
+import net.sf.ehcache.pool.impl.BoundedPool;
+import net.sf.ehcache.pool.impl.FromLargestCachePoolEvictor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapStoreTest {
+
+    private CacheManager cacheManager;
+    private OffHeapStore store;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name(OffHeapStoreTest.class.getSimpleName()));
+        Cache cache = new Cache(new CacheConfiguration("offheap", 0).maxBytesLocalOffHeap(1, MemoryUnit.MEGABYTES));
+        cacheManager.addCache(cache);
+        store = OffHeapStore.create(cache);
+    }
+
+    @After
+    public void tearDown() {
+        store.dispose();
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testSegmentWithoutMappingsEvictsFromTheOthers() {
+        String value = new String(new char[1000]);
+        int filled = 0;
+        for (int i = 0; filled < 5000; i++) {
+            String key = "other-" + i;
+            if (segmentOf(key) != 0) {
+                store.put(new Element(key, value));
+                filled++;
+            }
+        }
+
+        for (int i = 0, put = 0; put < 10; i++) {
+            String key = "skewed-" + i;
+            if (segmentOf(key) == 0) {
+                store.put(new Element(key, value));
+                assertThat(store.getQuiet(key), notNullValue());
+                put++;
+            }
+        }
+    }
+
+    @Test
+    public void testKeysAreFoundByTheirSerializedForm() {
+        for (int i = 0; i < 100; i++) {
+            store.put(new Element(Integer.valueOf(i), "value-" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertThat(store.getQuiet(Integer.valueOf(i)).getObjectValue(), is((Object) ("value-" + i)));
+            assertThat(store.containsKey(Integer.valueOf(i)), is(true));
+        }
+        assertThat(store.getKeys().size(), is(100));
+    }
+
+    @Test
+    public void testStoresSharingAPoolShareItsMemory() {
+        long poolSize = MemoryUnit.MEGABYTES.toBytes(1);
+        Pool pool = new BoundedPool(poolSize, new FromLargestCachePoolEvictor(), null);
+        Cache first = new Cache(new CacheConfiguration("first", 0));
+        Cache second = new Cache(new CacheConfiguration("second", 0));
+        cacheManager.addCache(first);
+        cacheManager.addCache(second);
+        OffHeapStore firstStore = OffHeapStore.create(first, pool);
+        OffHeapStore secondStore = OffHeapStore.create(second, pool);
+        try {
+            String value = new String(new char[1000]);
+            for (int i = 0; i < 5000; i++) {
+                firstStore.put(new Element("first-" + i, value));
+                secondStore.put(new Element("second-" + i, value));
+            }
+            long allocated = firstStore.getOffHeapAllocatedSizeInBytes() + secondStore.getOffHeapAllocatedSizeInBytes();
+            assertTrue(allocated + " > " + poolSize, allocated <= poolSize);
+        } finally {
+            firstStore.dispose();
+            secondStore.dispose();
+        }
+    }
+
+    private static int segmentOf(Object key) {
+        // 1MB stores have 16 segments
+        return OffHeapStore.hash(key.hashCode()) >>> 28;
+    }
+}
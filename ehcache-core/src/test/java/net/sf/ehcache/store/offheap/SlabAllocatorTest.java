@@ -0,0 +1,97 @@
+package net.sf.ehcache.store.offheap;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class SlabAllocatorTest {
+
+    private static final int SLAB_SIZE = 4096;
+
+    @Test
+    public void testRecordsSurviveRandomAllocationsAndFrees() {
+        PageSource source = new PageSource(64 * SLAB_SIZE, SLAB_SIZE);
+        SlabAllocator allocator = new SlabAllocator(source, SlabAllocator.sizeClasses(SLAB_SIZE));
+        Map<Long, byte[]> live = new HashMap<Long, byte[]>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            if (live.isEmpty() || random.nextBoolean()) {
+                byte[] payload = new byte[random.nextInt(random.nextInt(10) == 0 ? 3 * SLAB_SIZE : 200)];
+                random.nextBytes(payload);
+                long address = allocator.store(payload);
+                if (address != SlabAllocator.FAILED) {
+                    live.put(address, payload);
+                }
+            } else {
+                Long address = live.keySet().iterator().next();
+                assertArrayEquals(live.remove(address), allocator.read(address));
+                allocator.free(address);
+            }
+        }
+
+        long occupied = 0;
+        for (Map.Entry<Long, byte[]> e : live.entrySet()) {
+            assertArrayEquals(e.getValue(), allocator.read(e.getKey()));
+            occupied += allocator.sizeOf(e.getKey());
+        }
+        assertThat(allocator.getOccupiedSize(), is(occupied));
+
+        for (Long address : live.keySet()) {
+            allocator.free(address);
+        }
+        assertThat(allocator.getOccupiedSize(), is(0L));
+        assertThat(allocator.getReservedSize(), is(0L));
+    }
+
+    @Test
+    public void testAllocationFailsWhenSourceIsExhausted() {
+        PageSource source = new PageSource(SLAB_SIZE, SLAB_SIZE);
+        SlabAllocator allocator = new SlabAllocator(source, SlabAllocator.sizeClasses(SLAB_SIZE));
+
+        int stored = 0;
+        while (allocator.store(new byte[100]) != SlabAllocator.FAILED) {
+            stored++;
+        }
+        assertThat(stored, is(SLAB_SIZE / SlabAllocator.recordSize(SlabAllocator.sizeClasses(SLAB_SIZE), 100)));
+        assertThat(allocator.store(new byte[2 * SLAB_SIZE]), is(SlabAllocator.FAILED));
+    }
+
+    @Test
+    public void testEmptySlabsAreReusedAcrossSizeClasses() {
+        PageSource source = new PageSource(SLAB_SIZE, SLAB_SIZE);
+        SlabAllocator allocator = new SlabAllocator(source, SlabAllocator.sizeClasses(SLAB_SIZE));
+
+        long small = allocator.store(new byte[10]);
+        assertThat(allocator.store(new byte[500]), is(SlabAllocator.FAILED));
+        allocator.free(small);
+        long large = allocator.store(new byte[500]);
+        assertThat(large == SlabAllocator.FAILED, is(false));
+    }
+
+    @Test
+    public void testSlabUsageTracksTheRecordsOfEachSlab() {
+        PageSource source = new PageSource(2 * SLAB_SIZE, SLAB_SIZE);
+        SlabAllocator allocator = new SlabAllocator(source, SlabAllocator.sizeClasses(SLAB_SIZE));
+
+        long first = allocator.store(new byte[10]);
+        long second = allocator.store(new byte[10]);
+        long other = allocator.store(new byte[500]);
+        int slab = SlabAllocator.slabOf(first);
+        assertThat(SlabAllocator.slabOf(second), is(slab));
+        assertThat(allocator.getSlabCount(), is(2));
+        assertThat(allocator.getSlabUsage(slab), is(2));
+        assertThat(allocator.getSlabUsage(SlabAllocator.slabOf(other)), is(1));
+
+        allocator.free(first);
+        allocator.free(second);
+        assertThat(allocator.getSlabUsage(slab), is(0));
+        assertThat(allocator.store(new byte[500]) == SlabAllocator.FAILED, is(false));
+    }
+}
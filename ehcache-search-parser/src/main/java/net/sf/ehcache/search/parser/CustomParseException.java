@@ -22,7 +22,8 @@ public class CustomParseException extends ParseException {
         DATE_LITERAL("Error parsing date literal:"), SQLDATE_LITERAL("Error parsing sqldate literal:"),
         STRING_LITERAL("Error parsing string literal:"),
         CLASS_LITERAL("Error parsing class literal:"), ENUM_LITERAL("Error parsing enum literal:"),
-        MEMBER_LITERAL("Error parsing member literal:"), CHAR_LITERAL("Error parsing char literal");
+        MEMBER_LITERAL("Error parsing member literal:"), CHAR_LITERAL("Error parsing char literal"),
+        PARAMETER("Error parsing query parameter:");
 
         private String msg;
 
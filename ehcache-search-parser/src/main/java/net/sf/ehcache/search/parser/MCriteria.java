@@ -26,6 +26,15 @@ import net.sf.ehcache.search.expression.NotNull;
  */
 public interface MCriteria extends ModelElement<Criteria> {
 
+    /**
+     * Gets the criteria as an ehcache object, binding any positional parameters to the given values.
+     *
+     * @param loader     the class loader
+     * @param parameters the parameter values, or null if none are bound
+     * @return the criteria
+     */
+    Criteria asEhcacheObject(ClassLoader loader, Object[] parameters);
+
     /**
      * The Enum for simple operations.
      */
@@ -165,19 +174,27 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
+            return asEhcacheObject(loader, null);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MCriteria#asEhcacheObject(java.lang.ClassLoader, java.lang.Object[])
+         */
+        public Criteria asEhcacheObject(ClassLoader loader, Object[] parameters) {
             switch (op) {
                 case EQ:
-                    return new EqualTo(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new EqualTo(attr.asEhcacheAttributeString(), MValue.MParameter.valueOf(getRhs(), loader, parameters));
                 case NE:
-                    return new NotEqualTo(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new NotEqualTo(attr.asEhcacheAttributeString(), MValue.MParameter.valueOf(getRhs(), loader, parameters));
                 case GT:
-                    return new GreaterThan(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new GreaterThan(attr.asEhcacheAttributeString(), MValue.MParameter.valueOf(getRhs(), loader, parameters));
                 case LE:
-                    return new LessThanOrEqual(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new LessThanOrEqual(attr.asEhcacheAttributeString(), MValue.MParameter.valueOf(getRhs(), loader, parameters));
                 case LT:
-                    return new LessThan(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new LessThan(attr.asEhcacheAttributeString(), MValue.MParameter.valueOf(getRhs(), loader, parameters));
                 case GE:
-                    return new GreaterThanOrEqual(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new GreaterThanOrEqual(attr.asEhcacheAttributeString(), MValue.MParameter.valueOf(getRhs(), loader, parameters));
                 case NULL:
                     return new IsNull(attr.asEhcacheAttributeString());
                 case NOT_NULL:
@@ -328,8 +345,16 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
-            return new net.sf.ehcache.search.expression.Between(attr.asEhcacheAttributeString(), getMin().asEhcacheObject(loader),
-                getMax().asEhcacheObject(loader), isIncludeMin(), isIncludeMax());
+            return asEhcacheObject(loader, null);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MCriteria#asEhcacheObject(java.lang.ClassLoader, java.lang.Object[])
+         */
+        public Criteria asEhcacheObject(ClassLoader loader, Object[] parameters) {
+            return new net.sf.ehcache.search.expression.Between(attr.asEhcacheAttributeString(), MValue.MParameter.valueOf(getMin(), loader, parameters),
+                MValue.MParameter.valueOf(getMax(), loader, parameters), isIncludeMin(), isIncludeMax());
         }
 
         /*
@@ -432,6 +457,14 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
+            return asEhcacheObject(loader, null);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MCriteria#asEhcacheObject(java.lang.ClassLoader, java.lang.Object[])
+         */
+        public Criteria asEhcacheObject(ClassLoader loader, Object[] parameters) {
             return new net.sf.ehcache.search.expression.ILike(attr.asEhcacheAttributeString(), getRegexp());
         }
 
@@ -509,12 +542,20 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
+            return asEhcacheObject(loader, null);
+        }
 
-            Criteria crit = new net.sf.ehcache.search.expression.Or(crits[crits.length - 2].asEhcacheObject(loader),
-                crits[crits.length - 1].asEhcacheObject(loader));
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MCriteria#asEhcacheObject(java.lang.ClassLoader, java.lang.Object[])
+         */
+        public Criteria asEhcacheObject(ClassLoader loader, Object[] parameters) {
+
+            Criteria crit = new net.sf.ehcache.search.expression.Or(crits[crits.length - 2].asEhcacheObject(loader, parameters),
+                crits[crits.length - 1].asEhcacheObject(loader, parameters));
             if (crits.length > 2) {
                 for (int i = crits.length - 3; i >= 0; i--) {
-                    crit = new net.sf.ehcache.search.expression.Or(crits[i].asEhcacheObject(loader), crit);
+                    crit = new net.sf.ehcache.search.expression.Or(crits[i].asEhcacheObject(loader, parameters), crit);
                 }
             }
             return crit;
@@ -585,11 +626,19 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
-            Criteria crit = new net.sf.ehcache.search.expression.And(crits[crits.length - 2].asEhcacheObject(loader),
-                crits[crits.length - 1].asEhcacheObject(loader));
+            return asEhcacheObject(loader, null);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MCriteria#asEhcacheObject(java.lang.ClassLoader, java.lang.Object[])
+         */
+        public Criteria asEhcacheObject(ClassLoader loader, Object[] parameters) {
+            Criteria crit = new net.sf.ehcache.search.expression.And(crits[crits.length - 2].asEhcacheObject(loader, parameters),
+                crits[crits.length - 1].asEhcacheObject(loader, parameters));
             if (crits.length > 2) {
                 for (int i = crits.length - 3; i >= 0; i--) {
-                    crit = new net.sf.ehcache.search.expression.And(crits[i].asEhcacheObject(loader), crit);
+                    crit = new net.sf.ehcache.search.expression.And(crits[i].asEhcacheObject(loader, parameters), crit);
                 }
             }
             return crit;
@@ -664,7 +713,15 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
-            return new net.sf.ehcache.search.expression.Not(crit.asEhcacheObject(loader));
+            return asEhcacheObject(loader, null);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MCriteria#asEhcacheObject(java.lang.ClassLoader, java.lang.Object[])
+         */
+        public Criteria asEhcacheObject(ClassLoader loader, Object[] parameters) {
+            return new net.sf.ehcache.search.expression.Not(crit.asEhcacheObject(loader, parameters));
         }
 
         /*
@@ -768,6 +825,14 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
+            return asEhcacheObject(loader, null);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MCriteria#asEhcacheObject(java.lang.ClassLoader, java.lang.Object[])
+         */
+        public Criteria asEhcacheObject(ClassLoader loader, Object[] parameters) {
             return new net.sf.ehcache.search.expression.ILike(attr.asEhcacheAttributeString(), getILikeRegex());
         }
 
@@ -10,6 +10,7 @@ package net.sf.ehcache.search.parser;
 
 import java.util.Date;
 
+import net.sf.ehcache.search.SearchException;
 import net.sf.ehcache.search.parser.CustomParseException.Message;
 
 /**
@@ -505,5 +506,90 @@ public abstract class MValue<T> implements ModelElement<T> {
         }
     }
 
+    /**
+     * The model class for positional '?' parameters, whose value is only known once the
+     * parameters of a prepared query are bound.
+     */
+    public static class MParameter extends MValue<Object> {
+
+        /**
+         * The zero based position of the parameter.
+         */
+        private final int index;
+
+        /**
+         * Instantiates a new m parameter.
+         *
+         * @param tok   the token
+         * @param index the zero based position of the parameter
+         */
+        public MParameter(Token tok, int index) {
+            super(tok, "parameter", Message.PARAMETER, Integer.toString(index));
+            this.index = index;
+        }
+
+        /**
+         * Gets the zero based position of the parameter.
+         *
+         * @return the index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets the value of the given model element, looking positional parameters up in the given values.
+         *
+         * @param element    the model element
+         * @param loader     the class loader
+         * @param parameters the parameter values, or null if none are bound
+         * @return the value
+         * @throws SearchException if the element is a parameter with no bound value
+         */
+        static Object valueOf(ModelElement<?> element, ClassLoader loader, Object[] parameters) {
+            if (element instanceof MParameter) {
+                return ((MParameter) element).valueIn(parameters);
+            } else {
+                return element.asEhcacheObject(loader);
+            }
+        }
+
+        /**
+         * Gets the value bound to this parameter.
+         *
+         * @param parameters the parameter values, or null if none are bound
+         * @return the value
+         * @throws SearchException if no value is bound at this position
+         */
+        Object valueIn(Object[] parameters) {
+            if (parameters == null || index >= parameters.length) {
+                throw new SearchException("No value bound for query parameter " + (index + 1));
+            }
+            return parameters[index];
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MValue#asJavaObject()
+         */
+        @Override
+        protected Object constructJavaObject() {
+            return valueIn(null);
+        }
+
+        @Override
+        public Object asEhcacheObject(ClassLoader loader) {
+            return valueIn(null);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MValue#toString()
+         */
+        @Override
+        public String toString() {
+            return "?";
+        }
+    }
 
 }
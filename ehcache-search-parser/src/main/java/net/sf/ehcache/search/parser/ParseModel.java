@@ -75,6 +75,11 @@ public class ParseModel {
 
     private boolean cacheManagerNameWasAttempted = false;
 
+    /**
+     * The number of positional parameters.
+     */
+    private int parameterCount = 0;
+
     /**
      * Instantiates a new query parse model.
      */
@@ -257,21 +262,60 @@ public class ParseModel {
         return groupBy;
     }
 
+    /**
+     * Registers a new positional parameter.
+     *
+     * @return the zero based index of the parameter
+     */
+    public int addParameter() {
+        return parameterCount++;
+    }
+
+    /**
+     * Gets the number of positional parameters.
+     *
+     * @return the parameter count
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Gets the query as an instantiated ehcache query object, binding the positional parameters
+     * in order.
+     *
+     * @param ehcache    the ehcache
+     * @param parameters the parameter values
+     * @return the query
+     */
+    public Query getQuery(Ehcache ehcache, Object... parameters) {
+        if (parameters.length != parameterCount) {
+            throw new SearchException("Query expects " + parameterCount + " parameter(s) but " + parameters.length
+                + " were given");
+        }
+        return buildQuery(ehcache, parameters);
+    }
+
     /**
      * Gets the query as an instantiated ehcache query object.
      *
      * @param ehcache the ehcache
      * @return the query
+     * @throws SearchException if the statement has positional parameters
      */
-    @SuppressWarnings("rawtypes")
     public Query getQuery(Ehcache ehcache) {
+        return buildQuery(ehcache, null);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Query buildQuery(Ehcache ehcache, Object[] parameters) {
     	ClassLoader loader = ehcache.getCacheConfiguration().getClassLoader();    	
     	
         Query q = ehcache.createQuery();
 
         // single criteria
         if (criteria != null) {
-            q.addCriteria(criteria.asEhcacheObject(loader));
+            q.addCriteria(criteria.asEhcacheObject(loader, parameters));
         }
 
         // limit.
@@ -0,0 +1,60 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.ehcache.search.parser;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.search.Query;
+import net.sf.ehcache.search.SearchException;
+
+/**
+ * A statement parsed once by {@link QueryManagerImpl#prepareQuery(String)}, from which queries can be created
+ * repeatedly by binding its positional '?' parameters.
+ */
+public class PreparedQuery {
+
+    private final Ehcache cache;
+    private final ParseModel model;
+
+    PreparedQuery(Ehcache cache, ParseModel model) {
+        this.cache = cache;
+        this.model = model;
+    }
+
+    /**
+     * Creates a new query, binding the given values to the statement's parameters in order.
+     *
+     * @param parameters the parameter values
+     * @return a new query against the cache named in the statement
+     * @throws SearchException if the number of values does not match the statement's parameters
+     */
+    public Query createQuery(Object... parameters) throws SearchException {
+        return model.getQuery(cache, parameters);
+    }
+
+    /**
+     * Gets the number of positional parameters in the statement.
+     *
+     * @return the parameter count
+     */
+    public int getParameterCount() {
+        return model.getParameterCount();
+    }
+
+    @Override
+    public String toString() {
+        return model.toString();
+    }
+}
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -36,8 +37,20 @@ import net.sf.ehcache.search.query.QueryManager;
  */
 public class QueryManagerImpl implements QueryManager {
 
+    /**
+     * The number of parsed statements kept around for reuse.
+     */
+    static final int PARSE_CACHE_SIZE = 256;
+
     private final Map<CacheManager, List<Ehcache>> cacheManagerEhcacheMap = new HashMap<CacheManager, List<Ehcache>>();
 
+    private final Map<String, ParseModel> parseCache = new LinkedHashMap<String, ParseModel>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ParseModel> eldest) {
+            return size() > PARSE_CACHE_SIZE;
+        }
+    };
+
     public QueryManagerImpl(Collection<Ehcache> ehcaches) {
         CacheManager cm;
         for (Ehcache ehcache : ehcaches) {
@@ -58,27 +71,30 @@ public class QueryManagerImpl implements QueryManager {
 
     @Override
     public Query createQuery(String statement) throws SearchException {
-        Map<String, String> cacheManagerCacheNameMap = extractSearchCacheName(statement);
-        String cacheManagerName = cacheManagerCacheNameMap.values().iterator().next();
-        String cacheName = cacheManagerCacheNameMap.keySet().iterator().next();
-        if (cacheManagerCacheNameMap.size() == 0) {
-            throw new SearchException("Please specify the cache's name with the FROM clause.");
-        } else {
-            return createQuery(getCache(cacheName, cacheManagerName), statement);
+        ParseModel model = parse(statement);
+        if (model.getParameterCount() > 0) {
+            throw new SearchException("Statements with '?' parameters must be prepared with prepareQuery(String)");
         }
+        return model.getQuery(getCache(model));
+    }
+
+    /**
+     * Parses the given statement once so that it can be turned into queries repeatedly, binding
+     * any positional '?' parameters on each call.
+     *
+     * @param statement the statement
+     * @return the prepared query
+     * @throws SearchException if the statement cannot be parsed
+     * @throws CacheException if the cache named in the FROM clause cannot be found
+     */
+    public PreparedQuery prepareQuery(String statement) throws SearchException, CacheException {
+        ParseModel model = parse(statement);
+        return new PreparedQuery(getCache(model), model);
     }
 
     // returns a map of cache name and cache manager name
     Map<String, String> extractSearchCacheName(String statement) throws SearchException {
-        EhcacheSearchParser parser = new EhcacheSearchParser(new StringReader(statement));
-        ParseModel model = null;
-        try {
-            model = parser.QueryStatement();
-        } catch (ParseException p) {
-            throw new SearchException(p);
-        } catch (TokenMgrError e) {
-            throw new SearchException(e);   
-        }
+        ParseModel model = parse(statement);
         Map<String, String> retMap = new HashMap<String, String>();
         String cacheName = model.getCacheName();
         String cacheManagerName = model.getCacheManagerName();
@@ -87,6 +103,17 @@ public class QueryManagerImpl implements QueryManager {
     }
 
     private Query createQuery(Ehcache cache, String statement) throws SearchException {
+        return parse(statement).getQuery(cache);
+    }
+
+    ParseModel parse(String statement) throws SearchException {
+        synchronized (parseCache) {
+            ParseModel model = parseCache.get(statement);
+            if (model != null) {
+                return model;
+            }
+        }
+
         EhcacheSearchParser parser = new EhcacheSearchParser(new StringReader(statement));
         ParseModel model;
         try {
@@ -96,8 +123,18 @@ public class QueryManagerImpl implements QueryManager {
         } catch (TokenMgrError e) {
             throw new SearchException(e);   
         }
-        
-        return model.getQuery(cache);
+
+        synchronized (parseCache) {
+            parseCache.put(statement, model);
+        }
+        return model;
+    }
+
+    private Ehcache getCache(ParseModel model) throws CacheException {
+        if (model.getCacheName() == null) {
+            throw new SearchException("Please specify the cache's name with the FROM clause.");
+        }
+        return getCache(model.getCacheName(), model.getCacheManagerName());
     }
 
     private Ehcache getCache(String cacheName, String cacheManagerName) throws CacheException {
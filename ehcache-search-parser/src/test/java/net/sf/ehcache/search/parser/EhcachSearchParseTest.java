@@ -34,6 +34,7 @@ import net.sf.ehcache.config.Searchable;
 import net.sf.ehcache.search.Attribute;
 import net.sf.ehcache.search.Result;
 import net.sf.ehcache.search.Results;
+import net.sf.ehcache.search.SearchException;
 import net.sf.ehcache.search.expression.EqualTo;
 
 import org.junit.After;
@@ -392,6 +393,55 @@ public class EhcachSearchParseTest {
         }
     }
 
+    @Test
+    public void testPreparedQuery() {
+        PreparedQuery prepared = new QueryManagerImpl(ehcaches).prepareQuery("select key from cache1 where age between ? and ? and zip != ?");
+        Assert.assertEquals(3, prepared.getParameterCount());
+        Assert.assertEquals(3, prepared.createQuery(12, 14, "21099").execute().size());
+        Assert.assertEquals(2, prepared.createQuery(12, 14, "21013").execute().size());
+        Assert.assertEquals(0, prepared.createQuery(40, 50, "21013").execute().size());
+    }
+
+    @Test
+    public void testPreparedQueryRejectsWrongParameterCount() {
+        PreparedQuery prepared = new QueryManagerImpl(ehcaches).prepareQuery("select key from cache1 where age in (?, ?)");
+        Assert.assertEquals(2, prepared.createQuery(12, 13).execute().size());
+        try {
+            prepared.createQuery(12);
+            Assert.fail();
+        } catch (SearchException e) {
+            // expected
+        }
+        try {
+            new QueryManagerImpl(ehcaches).createQuery("select key from cache1 where age = ?");
+            Assert.fail();
+        } catch (SearchException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnboundParameterIsRejected() {
+        QueryManagerImpl queryManager = new QueryManagerImpl(ehcaches);
+        ParseModel model = queryManager.parse("select key from cache1 where age = ?");
+        try {
+            model.getQuery(cache);
+            Assert.fail();
+        } catch (SearchException e) {
+            // expected
+        }
+        Assert.assertEquals(1, model.getQuery(cache, 12).execute().size());
+    }
+
+    @Test
+    public void testRepeatedStatementsAreParsedOnce() {
+        String st = "select key from cache1 where age > 25";
+        QueryManagerImpl queryManager = new QueryManagerImpl(ehcaches);
+        Assert.assertEquals(4, queryManager.createQuery(st).execute().size());
+        Assert.assertEquals(4, queryManager.createQuery(st).execute().size());
+        Assert.assertSame(queryManager.parse(st), queryManager.parse(st));
+    }
+
     private Cache getCache(String st) {
         QueryManagerImpl queryParser = new QueryManagerImpl(ehcaches);
         Map<String, String> m = queryParser.extractSearchCacheName(st);